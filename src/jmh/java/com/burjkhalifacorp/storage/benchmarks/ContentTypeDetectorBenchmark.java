@@ -0,0 +1,47 @@
+package com.burjkhalifacorp.storage.benchmarks;
+
+import com.burjkhalifacorp.storage.service.ContentTypeDetector;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentTypeDetectorBenchmark {
+    // header of up to 64KB is what upload keeps for detection
+    @Param({"png", "pdf", "text", "binary"})
+    private String content;
+
+    private final ContentTypeDetector detector = new ContentTypeDetector();
+    private byte[] header;
+
+    @Setup
+    public void setUp() {
+        header = switch (content) {
+            case "png" -> new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0, 0, 13, 'I', 'H', 'D', 'R'};
+            case "pdf" -> "%PDF-1.7\n%âãÏÓ\n".getBytes(StandardCharsets.ISO_8859_1);
+            case "text" -> "plain text file\n".repeat(4096).getBytes(StandardCharsets.US_ASCII);
+            default -> {
+                byte[] random = new byte[64 * 1024];
+                new Random(42).nextBytes(random);
+                yield random;
+            }
+        };
+    }
+
+    @Benchmark
+    public String detectFromHeader() {
+        return detector.detect(ContentTypeDetector.DEFAULT_TYPE, header);
+    }
+
+    @Benchmark
+    public String declaredByUser() {
+        return detector.detect("image/png", header);
+    }
+}
@@ -0,0 +1,40 @@
+package com.burjkhalifacorp.storage.benchmarks;
+
+import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.mappers.FileMetadataMapper;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.Instant;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileMetadataMapperBenchmark {
+    private final FileMetadataMapper mapper = new FileMetadataMapper();
+    private FileMetadata metadata;
+
+    @Setup
+    public void setUp() {
+        metadata = new FileMetadata();
+        metadata.setExternalId(UUID.randomUUID());
+        metadata.setFilename("file.dat");
+        metadata.setTags(Set.of("scuba", "ocean", "movie", "photo", "video"));
+        metadata.setSize(1024);
+        metadata.setVisibility(Visibility.PUBLIC);
+        metadata.setContentType("application/octet-stream");
+        metadata.setUploadDate(Instant.now());
+    }
+
+    @Benchmark
+    public FileMetadataDto toDto() {
+        return mapper.toDto(metadata);
+    }
+}
@@ -0,0 +1,183 @@
+package com.burjkhalifacorp.storage.benchmarks;
+
+import com.burjkhalifacorp.storage.utils.BufferPool;
+import com.burjkhalifacorp.storage.utils.DirectBufferPool;
+import com.burjkhalifacorp.storage.utils.FileRangeInputStream;
+import com.burjkhalifacorp.storage.utils.OutputStreamChannel;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Download of local file or cached object to loopback socket. CPU of the writing thread is counted
+// in cpuNanos and sent bytes in bytes, their ratio is CPU per byte served (-prof gc shows allocations):
+// mvn -Pbenchmarks compile exec:exec -Djmh.args="LocalDownloadBenchmark -p contentSize=8388608"
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalDownloadBenchmark {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    @Param({"1048576", "8388608"})
+    private int contentSize;
+
+    private Path cachedFile;
+    private ServerSocketChannel server;
+    private SocketChannel client;
+    private ServletStream servletStream;
+    private Thread drain;
+    private final BufferPool copyBuffers = new BufferPool(64 * 1024, 1);
+    private final DirectBufferPool directCopyBuffers = new DirectBufferPool(64 * 1024, 1);
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Cost {
+        public long cpuNanos;
+        public long bytes;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        byte[] content = new byte[contentSize];
+        new Random(42).nextBytes(content);
+        cachedFile = Files.createTempFile("benchmark", ".dat");
+        Files.write(cachedFile, content);
+
+        server = ServerSocketChannel.open().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = SocketChannel.open(server.getLocalAddress());
+        SocketChannel accepted = server.accept();
+        servletStream = new ServletStream(client);
+        // receiving side only discards bytes, it's the same for every variant
+        drain = new Thread(() -> {
+            ByteBuffer sink = ByteBuffer.allocateDirect(256 * 1024);
+            try (accepted) {
+                while (accepted.read(sink.clear()) != -1) {
+                }
+            } catch (IOException ignored) {
+            }
+        }, "drain");
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.close();
+        drain.join();
+        server.close();
+        Files.deleteIfExists(cachedFile);
+    }
+
+    // former download copy: file read into pooled heap buffer, the array is written to socket
+    @Benchmark
+    public long heapBuffer(Cost cost) throws Exception {
+        long started = THREADS.getCurrentThreadCpuTime();
+        long copied = 0;
+        byte[] buffer = copyBuffers.acquire();
+        try (InputStream stream = open()) {
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                servletStream.write(buffer, 0, count);
+                copied += count;
+            }
+        } finally {
+            copyBuffers.release(buffer);
+        }
+        return count(cost, started, copied);
+    }
+
+    // download copy of FileController for local file or cached object
+    @Benchmark
+    public long directBuffer(Cost cost) throws Exception {
+        long started = THREADS.getCurrentThreadCpuTime();
+        long copied;
+        ByteBuffer buffer = directCopyBuffers.acquire();
+        try (FileRangeInputStream stream = open()) {
+            copied = stream.transferTo(OutputStreamChannel.of(servletStream), buffer);
+        } finally {
+            directCopyBuffers.release(buffer);
+        }
+        return count(cost, started, copied);
+    }
+
+    // lower bound, sendfile straight to socket
+    @Benchmark
+    public long sendfile(Cost cost) throws Exception {
+        long started = THREADS.getCurrentThreadCpuTime();
+        long copied = 0;
+        try (FileChannel channel = FileChannel.open(cachedFile, StandardOpenOption.READ)) {
+            while (copied < contentSize) {
+                copied += channel.transferTo(copied, contentSize - copied, client);
+            }
+        }
+        return count(cost, started, copied);
+    }
+
+    private FileRangeInputStream open() throws IOException {
+        return new FileRangeInputStream(FileChannel.open(cachedFile, StandardOpenOption.READ), 0, contentSize);
+    }
+
+    private static long count(Cost cost, long started, long copied) {
+        cost.cpuNanos += THREADS.getCurrentThreadCpuTime() - started;
+        cost.bytes += copied;
+        return copied;
+    }
+
+    // stands in for Tomcat's response stream, which writes to socket in slices of its 8KB response buffer.
+    // Array slices are wrapped, so JDK copies them to its temporary direct buffer, direct ones are written as is
+    private static class ServletStream extends OutputStream implements WritableByteChannel {
+        private static final int RESPONSE_BUFFER_SIZE = 8 * 1024;
+        private final SocketChannel socket;
+
+        ServletStream(SocketChannel socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            write(ByteBuffer.wrap(b, off, len));
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            int count = src.remaining();
+            int limit = src.limit();
+            while (src.hasRemaining()) {
+                src.limit(Math.min(limit, src.position() + RESPONSE_BUFFER_SIZE));
+                while (src.hasRemaining()) {
+                    socket.write(src);
+                }
+                src.limit(limit);
+            }
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return socket.isOpen();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.burjkhalifacorp.storage.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.minio.MinioClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+
+// In-process S3 endpoint with only what MinioClient needs for single request put and ranged get.
+// Keeps objects in memory, so benchmarks measure client side of transfers, not storage.
+public class MinioStandIn implements AutoCloseable {
+    public static final String BUCKET = "benchmarks";
+
+    private final HttpServer server;
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+    public MinioStandIn() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    public MinioClient client() {
+        return MinioClient.builder()
+                .endpoint("http://127.0.0.1:" + server.getAddress().getPort())
+                .credentials("benchmark", "benchmark")
+                // known region skips bucket location request
+                .region("us-east-1")
+                .build();
+    }
+
+    public void put(String object, byte[] content) {
+        objects.put("/" + BUCKET + "/" + object, content);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String key = exchange.getRequestURI().getPath();
+        try (exchange; InputStream body = exchange.getRequestBody()) {
+            switch (exchange.getRequestMethod()) {
+                case "PUT" -> {
+                    objects.put(key, body.readAllBytes());
+                    exchange.getResponseHeaders().add("ETag", "\"stand-in\"");
+                    exchange.sendResponseHeaders(200, -1);
+                }
+                case "GET" -> sendObject(exchange, objects.get(key));
+                default -> exchange.sendResponseHeaders(501, -1);
+            }
+        }
+    }
+
+    private void sendObject(HttpExchange exchange, byte[] content) throws IOException {
+        if (content == null) {
+            exchange.sendResponseHeaders(404, -1);
+            return;
+        }
+
+        int offset = 0;
+        int length = content.length;
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        if (range != null) {
+            // MinioClient sends bytes=start-end or bytes=start-
+            String[] bounds = range.substring("bytes=".length()).split("-", -1);
+            offset = Integer.parseInt(bounds[0]);
+            int end = bounds[1].isEmpty() ? content.length - 1 : Integer.parseInt(bounds[1]);
+            length = end - offset + 1;
+        }
+
+        exchange.sendResponseHeaders(range != null ? 206 : 200, length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content, offset, length);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
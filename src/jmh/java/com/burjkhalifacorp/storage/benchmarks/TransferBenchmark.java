@@ -0,0 +1,99 @@
+package com.burjkhalifacorp.storage.benchmarks;
+
+import com.burjkhalifacorp.storage.utils.BufferPool;
+import com.burjkhalifacorp.storage.utils.UploadHelperInputStream;
+import io.minio.GetObjectArgs;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Byte moving paths of upload and download against in-process MinIO stand-in
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransferBenchmark {
+    private static final String OBJECT = "object";
+    private static final long PART_SIZE = 10 * 1024 * 1024;
+
+    @Param({"65536", "1048576", "8388608"})
+    private int contentSize;
+
+    private MinioStandIn standIn;
+    private MinioClient minioClient;
+    private byte[] content;
+    private final BufferPool copyBuffers = new BufferPool(64 * 1024, 1);
+
+    @Setup
+    public void setUp() throws Exception {
+        content = new byte[contentSize];
+        new Random(42).nextBytes(content);
+
+        standIn = new MinioStandIn();
+        standIn.put(OBJECT, content);
+        minioClient = standIn.client();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        standIn.close();
+    }
+
+    // object written through the same stream as upload parts of UploadSessionServiceImpl
+    @Benchmark
+    public Object upload() throws Exception {
+        UploadHelperInputStream helperStream = new UploadHelperInputStream(
+                new ByteArrayInputStream(content), MessageDigest.getInstance("SHA-256"), null);
+        return minioClient.putObject(
+                PutObjectArgs.builder()
+                        .bucket(MinioStandIn.BUCKET)
+                        .object("upload")
+                        .stream(helperStream, content.length, PART_SIZE)
+                        .build());
+    }
+
+    // 8KB buffer copy of InputStream.transferTo, baseline of the pooled copy
+    @Benchmark
+    public long downloadFromStorage() throws Exception {
+        try (InputStream stream = getObject()) {
+            return stream.transferTo(OutputStream.nullOutputStream());
+        }
+    }
+
+    // download copy of FileController from object storage
+    @Benchmark
+    public long downloadFromStoragePooled() throws Exception {
+        OutputStream out = OutputStream.nullOutputStream();
+        byte[] buffer = copyBuffers.acquire();
+        try (InputStream stream = getObject()) {
+            long copied = 0;
+            int count;
+            while ((count = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+                copied += count;
+            }
+            return copied;
+        } finally {
+            copyBuffers.release(buffer);
+        }
+    }
+
+    private InputStream getObject() throws Exception {
+        return minioClient.getObject(
+                GetObjectArgs.builder()
+                        .bucket(MinioStandIn.BUCKET)
+                        .object(OBJECT)
+                        .offset(0L)
+                        .length((long) content.length)
+                        .build());
+    }
+}
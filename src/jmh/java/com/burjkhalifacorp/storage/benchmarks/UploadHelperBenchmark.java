@@ -0,0 +1,68 @@
+package com.burjkhalifacorp.storage.benchmarks;
+
+import com.burjkhalifacorp.storage.utils.BufferPool;
+import com.burjkhalifacorp.storage.utils.UploadHelperInputStream;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Upload part stream of UploadSessionServiceImpl read with buffer sizes used by MinIO client and servlet container
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class UploadHelperBenchmark {
+    @Param({"65536", "8388608"})
+    private int contentSize;
+
+    @Param({"4096", "16384", "65536"})
+    private int bufferSize;
+
+    private final BufferPool headerPool = UploadHelperInputStream.newHeaderPool(1);
+    private byte[] content;
+    private byte[] buffer;
+
+    @Setup
+    public void setUp() {
+        content = new byte[contentSize];
+        new Random(42).nextBytes(content);
+        buffer = new byte[bufferSize];
+    }
+
+    // first part of resumable upload: counted, hashed and header captured
+    @Benchmark
+    public void readWithHeader(Blackhole blackhole) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        UploadHelperInputStream helperStream = new UploadHelperInputStream(
+                new ByteArrayInputStream(content), digest, headerPool);
+        try {
+            while (helperStream.read(buffer) != -1) {
+                blackhole.consume(buffer);
+            }
+            blackhole.consume(digest.digest());
+            blackhole.consume(helperStream.getHeader());
+        } finally {
+            helperStream.release();
+        }
+    }
+
+    // next parts: counted and hashed only
+    @Benchmark
+    public void readWithoutHeader(Blackhole blackhole) throws IOException, NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        UploadHelperInputStream helperStream = new UploadHelperInputStream(
+                new ByteArrayInputStream(content), digest, null);
+        while (helperStream.read(buffer) != -1) {
+            blackhole.consume(buffer);
+        }
+        blackhole.consume(digest.digest());
+    }
+}
@@ -0,0 +1,25 @@
+package com.burjkhalifacorp.storage.api.actuator;
+
+import com.burjkhalifacorp.storage.api.models.QueryPlanReport;
+import com.burjkhalifacorp.storage.service.QueryPlanInspector;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// GET /actuator/queryplans, runs explain for every listing query
+@Component
+@Endpoint(id = "queryplans")
+public class QueryPlansEndpoint {
+    private final QueryPlanInspector queryPlanInspector;
+
+    public QueryPlansEndpoint(QueryPlanInspector queryPlanInspector) {
+        this.queryPlanInspector = queryPlanInspector;
+    }
+
+    @ReadOperation
+    public List<QueryPlanReport> queryPlans() {
+        return queryPlanInspector.inspect();
+    }
+}
@@ -0,0 +1,27 @@
+package com.burjkhalifacorp.storage.api.actuator;
+
+import com.burjkhalifacorp.storage.service.TagCountService;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+
+// POST /actuator/tagcounts, recounts tags of all files after failed counter updates
+@Component
+@Endpoint(id = "tagcounts")
+public class TagCountsEndpoint {
+    private final TagCountService tagCountService;
+
+    public TagCountsEndpoint(TagCountService tagCountService) {
+        this.tagCountService = tagCountService;
+    }
+
+    @WriteOperation
+    public Map<String, Object> rebuild() {
+        Optional<Long> counters = tagCountService.rebuild();
+        return counters.<Map<String, Object>>map(count -> Map.of("rebuilt", true, "counters", count))
+                .orElseGet(() -> Map.of("rebuilt", false));
+    }
+}
@@ -2,8 +2,10 @@ package com.burjkhalifacorp.storage.api.controller;
 
 import com.burjkhalifacorp.storage.api.models.ErrorResponse;
 import com.burjkhalifacorp.storage.errors.StorageException;
+import com.burjkhalifacorp.storage.errors.TooManyRequestsException;
 import jakarta.validation.ValidationException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
@@ -22,6 +24,16 @@ public class ApiExceptionHandler {
                 .body(new ErrorResponse(ex.getMessage(), "", ex.getStatusCode().value()));
     }
 
+    @ExceptionHandler(TooManyRequestsException.class)
+    @ResponseBody
+    public ResponseEntity<ErrorResponse> handleTooManyRequests(TooManyRequestsException ex) {
+        log.warn("api exception occurred: {}", ex.getMessage());
+        return ResponseEntity
+                .status(ex.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(new ErrorResponse(ex.getMessage(), "", ex.getStatusCode().value()));
+    }
+
     @ExceptionHandler({ValidationException.class})
     public ResponseEntity<ErrorResponse> handleCoreValidation(ValidationException ex) {
         log.error("validate exception occurred: {}", ex.getMessage());
@@ -0,0 +1,79 @@
+package com.burjkhalifacorp.storage.api.controller;
+
+import org.springframework.http.HttpRange;
+
+import java.util.List;
+
+// Range, conditional and encoding headers of downloads, shared by servlet and reactive controllers
+final class DownloadHeaders {
+    private DownloadHeaders() {
+    }
+
+    static List<HttpRange> parseRanges(String range, long fileSize) {
+        List<HttpRange> ranges = HttpRange.parseRanges(range);
+        long totalLength = 0;
+        for (HttpRange httpRange : ranges) {
+            long rangeStart = httpRange.getRangeStart(fileSize);
+            long rangeEnd = httpRange.getRangeEnd(fileSize);
+            if (rangeStart >= fileSize || rangeEnd < rangeStart) {
+                throw new IllegalArgumentException("range %s is outside of file".formatted(httpRange));
+            }
+            totalLength += rangeEnd - rangeStart + 1;
+        }
+        // overlapping ranges shouldn't make us send more than the whole file
+        if (ranges.size() > 1 && totalLength > fileSize) {
+            throw new IllegalArgumentException("total length of ranges exceeds file size");
+        }
+        return ranges;
+    }
+
+    static boolean etagListMatches(String etagList, String etag) {
+        for (String candidate : etagList.split(",")) {
+            String trimmed = candidate.trim();
+            if (trimmed.equals("*")) {
+                return true;
+            }
+            // weak comparison as required for If-None-Match
+            if (trimmed.startsWith("W/")) {
+                trimmed = trimmed.substring(2);
+            }
+            if (trimmed.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean acceptsEncoding(String acceptEncoding, String encoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String candidate : acceptEncoding.split(",")) {
+            String[] parts = candidate.trim().split(";");
+            String coding = parts[0].trim();
+            if (!coding.equalsIgnoreCase(encoding) && !coding.equals("*")) {
+                continue;
+            }
+            // q=0 means the encoding isn't acceptable
+            boolean rejected = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        rejected = Double.parseDouble(parameter.substring(2)) == 0;
+                    } catch (NumberFormatException ex) {
+                        rejected = true;
+                    }
+                }
+            }
+            if (!rejected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String contentRange(long offset, long length, long fileSize) {
+        return "bytes %d-%d/%d".formatted(offset, offset + length - 1, fileSize);
+    }
+}
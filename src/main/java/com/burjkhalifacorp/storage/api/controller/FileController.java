@@ -1,13 +1,27 @@
 package com.burjkhalifacorp.storage.api.controller;
+import com.burjkhalifacorp.storage.api.models.ArchiveFormat;
+import com.burjkhalifacorp.storage.api.models.BatchRequestDto;
+import com.burjkhalifacorp.storage.api.models.BatchResultDto;
+import com.burjkhalifacorp.storage.api.models.BatchTagsRequestDto;
 import com.burjkhalifacorp.storage.api.models.ErrorResponse;
 import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.api.models.FileSliceDto;
 import com.burjkhalifacorp.storage.api.models.FileSortBy;
+import com.burjkhalifacorp.storage.api.models.PresignedUrlDto;
+import com.burjkhalifacorp.storage.api.models.TagCountDto;
+import com.burjkhalifacorp.storage.api.models.TagMatch;
 
 import com.burjkhalifacorp.storage.common.AppConstants;
 import com.burjkhalifacorp.storage.common.Visibility;
 import com.burjkhalifacorp.storage.errors.BadRequestException;
+import com.burjkhalifacorp.storage.service.ArchiveWriter;
 import com.burjkhalifacorp.storage.service.FileService;
+import com.burjkhalifacorp.storage.service.TransferGovernor;
 import com.burjkhalifacorp.storage.service.models.StoredFile;
+import com.burjkhalifacorp.storage.utils.BufferPool;
+import com.burjkhalifacorp.storage.utils.DirectBufferPool;
+import com.burjkhalifacorp.storage.utils.LocalFileStream;
+import com.burjkhalifacorp.storage.utils.OutputStreamChannel;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.parameters.RequestBody;
 import io.swagger.v3.oas.annotations.media.Schema;
@@ -21,15 +35,22 @@ import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.scheduling.annotation.Async;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.unit.DataSize;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -41,6 +62,12 @@ import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBo
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
@@ -51,16 +78,36 @@ import java.util.function.Supplier;
 @RestController
 @Slf4j
 @Validated
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/v1/files")
 public class FileController {
     private final FileService fileService;
 
     private final Executor downloadsExecutor;
 
+    private final ArchiveWriter archiveWriter;
+
+    private final TransferGovernor transferGovernor;
+
+    // content of remote objects is copied through pooled buffers, writes larger than Tomcat's socket buffer
+    // are handed to the socket without being copied into it
+    private final BufferPool copyBuffers;
+
+    // local files and cached objects are read into direct buffers which Tomcat writes to socket as they are
+    private final DirectBufferPool directCopyBuffers;
+
     public FileController(FileService fileService,
-                          @Qualifier("downloadsExecutor") Executor downloadsExecutor) {
+                          @Qualifier("downloadsExecutor") Executor downloadsExecutor,
+                          ArchiveWriter archiveWriter,
+                          TransferGovernor transferGovernor,
+                          @Value("${downloads.copy-buffer-size}") DataSize copyBufferSize,
+                          @Value("${downloads.pooled-copy-buffers}") int pooledCopyBuffers) {
         this.fileService = fileService;
         this.downloadsExecutor = downloadsExecutor;
+        this.archiveWriter = archiveWriter;
+        this.transferGovernor = transferGovernor;
+        this.copyBuffers = new BufferPool((int) copyBufferSize.toBytes(), pooledCopyBuffers);
+        this.directCopyBuffers = new DirectBufferPool((int) copyBufferSize.toBytes(), pooledCopyBuffers);
     }
 
     @Operation(
@@ -86,7 +133,8 @@ public class FileController {
             @RequestParam @NotBlank String filename,
             @RequestParam Visibility visibility,
             @Size(max = AppConstants.MAX_TAGS, message = "Max {max} tags allowed")
-            @RequestParam(defaultValue = "") Set<String> tags
+            @RequestParam(defaultValue = "") Set<String> tags,
+            @RequestHeader(value = AppConstants.CONTENT_SHA256_HEADER, required = false) String contentSha256
     ) throws IOException {
         // storing of empty files meaningless
         if(request.getContentLengthLong() == 0) {
@@ -94,10 +142,13 @@ public class FileController {
         }
 
         final String contentType = request.getContentType();
-        final InputStream inputStream = request.getInputStream();
-        FileMetadataDto fileMetadataDto = fileService.upload(
-                userId, filename, contentType, visibility, tags, inputStream);
-        return ResponseEntity.ok(fileMetadataDto);
+        try (TransferGovernor.Transfer transfer = transferGovernor.admit(userId)) {
+            final InputStream inputStream = transfer.govern(request.getInputStream());
+            FileMetadataDto fileMetadataDto = fileService.upload(
+                    userId, filename, contentType, visibility, tags, contentSha256,
+                    request.getContentLengthLong(), inputStream);
+            return ResponseEntity.ok(fileMetadataDto);
+        }
     }
 
     @Operation(
@@ -114,6 +165,7 @@ public class FileController {
     public ResponseEntity<Page<FileMetadataDto>> listPublicFiles(
             @RequestParam @NotBlank String userId,
             @RequestParam(defaultValue = "") Set<String> tags,
+            @RequestParam(defaultValue = "ANY") TagMatch tagMatch,
             @RequestParam(defaultValue = "0") @Min(0) int page,
             @Min(1) @Max(value = AppConstants.MAX_FILES_PAGE_SIZE, message = "Max {value} page size allowed")
             @RequestParam(defaultValue = "20") int size,
@@ -122,7 +174,7 @@ public class FileController {
     ) {
         Sort sort = Sort.by(sortBy.getDbField());
         Pageable pageable = PageRequest.of(page, size, ascending ? sort.ascending() : sort.descending());
-        Page<FileMetadataDto> pageOfFiles = fileService.listPublicFiles(tags, pageable);
+        Page<FileMetadataDto> pageOfFiles = fileService.listPublicFiles(tags, tagMatch, pageable);
         return ResponseEntity.ok(pageOfFiles);
     }
 
@@ -140,6 +192,7 @@ public class FileController {
     public ResponseEntity<Page<FileMetadataDto>> listUserFiles(
             @RequestParam @NotBlank String userId,
             @RequestParam(defaultValue = "") Set<String> tags,
+            @RequestParam(defaultValue = "ANY") TagMatch tagMatch,
             @RequestParam(defaultValue = "0") @Min(0) int page,
             @Min(1) @Max(value = AppConstants.MAX_FILES_PAGE_SIZE, message = "Max {value} page size allowed")
             @RequestParam(defaultValue = "20") int size,
@@ -148,10 +201,106 @@ public class FileController {
     ) {
         Sort sort = Sort.by(sortBy.getDbField());
         Pageable pageable = PageRequest.of(page, size, ascending ? sort.ascending() : sort.descending());
-        Page<FileMetadataDto> pageOfFiles = fileService.listUserFiles(userId, tags, pageable);
+        Page<FileMetadataDto> pageOfFiles = fileService.listUserFiles(userId, tags, tagMatch, pageable);
         return ResponseEntity.ok(pageOfFiles);
     }
 
+    @Operation(
+            summary = "List public files by cursor, without total count. Next page is requested with nextCursor of previous one",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @GetMapping("/public/scroll")
+    public ResponseEntity<FileSliceDto> scrollPublicFiles(
+            @RequestParam @NotBlank String userId,
+            @RequestParam(defaultValue = "") Set<String> tags,
+            @RequestParam(defaultValue = "ANY") TagMatch tagMatch,
+            @RequestParam(required = false) String cursor,
+            @Min(1) @Max(value = AppConstants.MAX_FILES_PAGE_SIZE, message = "Max {value} page size allowed")
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "UPLOAD_DATE") FileSortBy sortBy,
+            @RequestParam(defaultValue = "true") boolean ascending
+    ) {
+        Sort sort = Sort.by(sortBy.getDbField());
+        FileSliceDto slice = fileService.scrollPublicFiles(
+                tags, tagMatch, ascending ? sort.ascending() : sort.descending(), size, cursor);
+        return ResponseEntity.ok(slice);
+    }
+
+    @Operation(
+            summary = "List files uploaded by user by cursor, without total count. Next page is requested with nextCursor of previous one",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @GetMapping("/my/scroll")
+    public ResponseEntity<FileSliceDto> scrollUserFiles(
+            @RequestParam @NotBlank String userId,
+            @RequestParam(defaultValue = "") Set<String> tags,
+            @RequestParam(defaultValue = "ANY") TagMatch tagMatch,
+            @RequestParam(required = false) String cursor,
+            @Min(1) @Max(value = AppConstants.MAX_FILES_PAGE_SIZE, message = "Max {value} page size allowed")
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "UPLOAD_DATE") FileSortBy sortBy,
+            @RequestParam(defaultValue = "true") boolean ascending
+    ) {
+        Sort sort = Sort.by(sortBy.getDbField());
+        FileSliceDto slice = fileService.scrollUserFiles(
+                userId, tags, tagMatch, ascending ? sort.ascending() : sort.descending(), size, cursor);
+        return ResponseEntity.ok(slice);
+    }
+
+    @Operation(
+            summary = "Count public files by tags. Counts of given tags, or the most used tags when none are given",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @GetMapping("/public/tags")
+    public ResponseEntity<List<TagCountDto>> countPublicTags(
+            @RequestParam @NotBlank String userId,
+            @Size(max = AppConstants.MAX_TAG_COUNTS, message = "Max {max} tags allowed")
+            @RequestParam(defaultValue = "") Set<String> tags,
+            @Min(1) @Max(value = AppConstants.MAX_TAG_COUNTS, message = "Max {value} tags allowed")
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        return ResponseEntity.ok(fileService.countPublicTags(tags, limit));
+    }
+
+    @Operation(
+            summary = "Count files uploaded by user by tags. Counts of given tags, or the most used tags when none are given",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @GetMapping("/my/tags")
+    public ResponseEntity<List<TagCountDto>> countUserTags(
+            @RequestParam @NotBlank String userId,
+            @Size(max = AppConstants.MAX_TAG_COUNTS, message = "Max {max} tags allowed")
+            @RequestParam(defaultValue = "") Set<String> tags,
+            @Min(1) @Max(value = AppConstants.MAX_TAG_COUNTS, message = "Max {value} tags allowed")
+            @RequestParam(defaultValue = "20") int limit
+    ) {
+        return ResponseEntity.ok(fileService.countUserTags(userId, tags, limit));
+    }
+
     @Operation(
             summary = "Download file from storage",
             responses = {
@@ -166,35 +315,164 @@ public class FileController {
     @GetMapping("/{fileId}")
     public CompletableFuture<ResponseEntity<StreamingResponseBody>> downloadFile(
             @PathVariable UUID fileId,
-            @RequestParam @NotBlank String userId
+            @RequestParam @NotBlank String userId,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
     ) {
-        Supplier<ResponseEntity<StreamingResponseBody>> downloadTask = () -> {
+        // metadata lookup blocks, object storage is awaited without holding thread
+        Supplier<StoredFile> lookupTask = () -> {
             log.info("processing download request from user {}, file {}, thread {}", userId, fileId, Thread.currentThread().getName());
-            final StoredFile storedFile = fileService.getFile(userId, fileId);
-            StreamingResponseBody responseBody = outputStream -> {
-                try (InputStream fileStream = storedFile.getInputStream()) {
-                    final int BUFFER_SIZE = 16 * 1024;
-                    byte[] buffer = new byte[BUFFER_SIZE];
-                    int byteCount;
-                    while ((byteCount = fileStream.read(buffer)) != -1) {
-                        outputStream.write(buffer, 0, byteCount);
-                    }
-                } catch (Exception ex) {
-                    log.error("error occurred during download: {}", ex);
-                    throw ex;
-                }
-            };
+            return fileService.getFile(userId, fileId);
+        };
+        // rejected before it takes place in executor queue, admitted one is released when body is written
+        final TransferGovernor.Transfer transfer = transferGovernor.admit(userId);
+        try {
+            return CompletableFuture.supplyAsync(lookupTask, downloadsExecutor)
+                    .thenCompose(storedFile -> prepareDownload(storedFile, range, ifNoneMatch, ifRange, acceptEncoding))
+                    .thenApply(response -> governed(transfer, response))
+                    .whenComplete((response, ex) -> {
+                        if (ex != null) {
+                            transfer.close();
+                        }
+                    });
+        } catch (RuntimeException ex) {
+            transfer.close();
+            throw ex;
+        }
+    }
 
-            FileMetadataDto fileMetadataDto = storedFile.getMetadata();
+    // body is written through transfer, responses without body release it at once
+    private static ResponseEntity<StreamingResponseBody> governed(
+            TransferGovernor.Transfer transfer, ResponseEntity<StreamingResponseBody> response) {
+        final StreamingResponseBody body = response.getBody();
+        if (body == null) {
+            transfer.close();
+            return response;
+        }
+        return new ResponseEntity<>(outputStream -> {
+            try (transfer) {
+                body.writeTo(transfer.govern(outputStream));
+            }
+        }, response.getHeaders(), response.getStatusCode());
+    }
 
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION,
-                            "attachment; filename=" + fileMetadataDto.getFilename())
-                    .header(HttpHeaders.CONTENT_TYPE, fileMetadataDto.getContentType())
-                    .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(fileMetadataDto.getSize()))
-                    .body(responseBody);
-        };
-        return CompletableFuture.supplyAsync(downloadTask, downloadsExecutor);
+    @Operation(
+            summary = "Get URL to download file from object storage directly, available in presigned mode",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @GetMapping("/{fileId}/url")
+    public ResponseEntity<PresignedUrlDto> getDownloadUrl(
+            @PathVariable UUID fileId,
+            @RequestParam @NotBlank String userId
+    ) {
+        return ResponseEntity.ok(fileService.getDownloadUrl(userId, fileId));
+    }
+
+    private CompletableFuture<ResponseEntity<StreamingResponseBody>> prepareDownload(
+            StoredFile storedFile, String range, String ifNoneMatch, String ifRange, String acceptEncoding) {
+        final FileMetadataDto fileMetadataDto = storedFile.getMetadata();
+        // encoded object is passed as is to client which accepts its encoding, ranges are taken from decoded content
+        final boolean passEncoded = storedFile.getEncoding() != null && range == null
+                && DownloadHeaders.acceptsEncoding(acceptEncoding, storedFile.getEncoding());
+        // encoded representation has its own tag, as its bytes differ
+        final String etag = passEncoded
+                ? "\"" + storedFile.getHash() + "-" + storedFile.getEncoding() + "\""
+                : "\"" + storedFile.getHash() + "\"";
+
+        // revalidation is answered from metadata only
+        if (ifNoneMatch != null && DownloadHeaders.etagListMatches(ifNoneMatch, etag)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .build());
+        }
+
+        // range is ignored if client has other version of file
+        final boolean useRange = range != null && (ifRange == null || ifRange.trim().equals(etag));
+        final List<HttpRange> ranges;
+        try {
+            ranges = useRange ? DownloadHeaders.parseRanges(range, fileMetadataDto.getSize()) : List.of();
+        } catch (IllegalArgumentException ex) {
+            log.warn("unsatisfiable range {} for file {}: {}", range, fileMetadataDto.getId(), ex.getMessage());
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + fileMetadataDto.getSize())
+                    .build());
+        }
+
+        ResponseEntity.BodyBuilder responseBuilder = ranges.isEmpty()
+                ? ResponseEntity.ok()
+                : ResponseEntity.status(HttpStatus.PARTIAL_CONTENT);
+        responseBuilder
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=" + fileMetadataDto.getFilename())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .eTag(etag);
+        if (storedFile.getEncoding() != null) {
+            responseBuilder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        if (passEncoded) {
+            return storedFile.openEncodedStreamAsync()
+                    .thenApply(fileStream -> responseBuilder
+                            .header(HttpHeaders.CONTENT_TYPE, fileMetadataDto.getContentType())
+                            .header(HttpHeaders.CONTENT_ENCODING, storedFile.getEncoding())
+                            .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(storedFile.getEncodedSize()))
+                            .body(outputStream -> copyStream(fileStream, outputStream)));
+        }
+
+        if (ranges.size() > 1) {
+            final String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+            return CompletableFuture.completedFuture(responseBuilder
+                    .header(HttpHeaders.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary)
+                    .body(outputStream -> writeMultipartRanges(storedFile, ranges, boundary, outputStream)));
+        }
+
+        final long offset = ranges.isEmpty() ? 0 : ranges.get(0).getRangeStart(fileMetadataDto.getSize());
+        final long length = ranges.isEmpty()
+                ? fileMetadataDto.getSize()
+                : ranges.get(0).getRangeEnd(fileMetadataDto.getSize()) - offset + 1;
+        if (!ranges.isEmpty()) {
+            responseBuilder.header(HttpHeaders.CONTENT_RANGE,
+                    DownloadHeaders.contentRange(offset, length, fileMetadataDto.getSize()));
+        }
+
+        return storedFile.openStreamAsync(offset, length)
+                .thenApply(fileStream -> responseBuilder
+                        .header(HttpHeaders.CONTENT_TYPE, fileMetadataDto.getContentType())
+                        .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(length))
+                        .body(outputStream -> copyStream(fileStream, outputStream)));
+    }
+
+    @Operation(
+            summary = "Download many files as zip or tar archive streamed on the fly. Files are given by ids or by tags of own files",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @GetMapping("/archive")
+    public ResponseEntity<StreamingResponseBody> downloadArchive(
+            @RequestParam @NotBlank String userId,
+            @RequestParam(defaultValue = "") List<UUID> ids,
+            @RequestParam(defaultValue = "") Set<String> tags,
+            @RequestParam(defaultValue = "ZIP") ArchiveFormat format
+    ) {
+        // files are checked before response is started, so missing or foreign file fails whole request
+        Iterator<StoredFile> files = fileService.getFiles(userId, ids, tags);
+        return governed(transferGovernor.admit(userId), ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=files." + format.getExtension())
+                .header(HttpHeaders.CONTENT_TYPE, format.getContentType())
+                .body(outputStream -> archiveWriter.write(files, format, outputStream)));
     }
 
     @Operation(
@@ -236,4 +514,104 @@ public class FileController {
         FileMetadataDto updateMetadata = fileService.renameFile(userId, fileId, filename);
         return ResponseEntity.ok(updateMetadata);
     }
+
+    @Operation(
+            summary = "Delete many files at once. Result of every file is reported, the request fails only if batch itself is invalid",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @PostMapping("/batch/delete")
+    public ResponseEntity<BatchResultDto> deleteFiles(
+            @RequestParam @NotBlank String userId,
+            @org.springframework.web.bind.annotation.RequestBody BatchRequestDto request
+    ) {
+        BatchResultDto result = fileService.deleteFiles(userId, request.getIds());
+        return ResponseEntity.ok(result);
+    }
+
+    @Operation(
+            summary = "Get metadata of many files at once. Public files of other users are readable",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @PostMapping("/batch/metadata")
+    public ResponseEntity<BatchResultDto> getFilesMetadata(
+            @RequestParam @NotBlank String userId,
+            @org.springframework.web.bind.annotation.RequestBody BatchRequestDto request
+    ) {
+        BatchResultDto result = fileService.getFilesMetadata(userId, request.getIds());
+        return ResponseEntity.ok(result);
+    }
+
+    @Operation(
+            summary = "Add and remove tags of many files at once. Tags are removed first, then added",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @PostMapping("/batch/tags")
+    public ResponseEntity<BatchResultDto> updateTags(
+            @RequestParam @NotBlank String userId,
+            @org.springframework.web.bind.annotation.RequestBody BatchTagsRequestDto request
+    ) {
+        BatchResultDto result = fileService.updateTags(userId, request.getIds(), request.getAdd(), request.getRemove());
+        return ResponseEntity.ok(result);
+    }
+
+    private void writeMultipartRanges(
+            StoredFile storedFile, List<HttpRange> ranges, String boundary, OutputStream outputStream
+    ) throws IOException {
+        final long fileSize = storedFile.getMetadata().getSize();
+        for (HttpRange httpRange : ranges) {
+            final long offset = httpRange.getRangeStart(fileSize);
+            final long length = httpRange.getRangeEnd(fileSize) - offset + 1;
+            String partHeader = "\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + storedFile.getMetadata().getContentType() + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + DownloadHeaders.contentRange(offset, length, fileSize) + "\r\n\r\n";
+            outputStream.write(partHeader.getBytes(StandardCharsets.US_ASCII));
+            copyStream(storedFile.openStream(offset, length), outputStream);
+        }
+        outputStream.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void copyStream(InputStream inputStream, OutputStream outputStream) throws IOException {
+        try (InputStream fileStream = inputStream) {
+            final WritableByteChannel channel = OutputStreamChannel.of(outputStream);
+            if (channel != null && fileStream instanceof LocalFileStream local && local.isLocalFile()) {
+                ByteBuffer buffer = directCopyBuffers.acquire();
+                try {
+                    local.transferTo(channel, buffer);
+                } finally {
+                    directCopyBuffers.release(buffer);
+                }
+                return;
+            }
+            byte[] buffer = copyBuffers.acquire();
+            try {
+                int count;
+                while ((count = fileStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, count);
+                }
+            } finally {
+                copyBuffers.release(buffer);
+            }
+        } catch (Exception ex) {
+            log.error("error occurred during download: {}", ex);
+            throw ex;
+        }
+    }
 }
@@ -0,0 +1,81 @@
+package com.burjkhalifacorp.storage.api.controller;
+
+import com.burjkhalifacorp.storage.api.models.ErrorResponse;
+import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.api.models.PresignedUploadDto;
+import com.burjkhalifacorp.storage.common.AppConstants;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.service.PresignedUploadService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Set;
+import java.util.UUID;
+
+@Tag(name = "Storage Service")
+@RestController
+@Slf4j
+@Validated
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequestMapping("/api/v1/files/presigned-uploads")
+public class PresignedUploadController {
+    private final PresignedUploadService presignedUploadService;
+
+    public PresignedUploadController(PresignedUploadService presignedUploadService) {
+        this.presignedUploadService = presignedUploadService;
+    }
+
+    @Operation(
+            summary = "Start upload to object storage directly, content is put to returned URL. Available in presigned mode",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @PostMapping
+    public ResponseEntity<PresignedUploadDto> createUpload(
+            @RequestParam @NotBlank String userId,
+            @RequestParam @NotBlank String filename,
+            @RequestParam Visibility visibility,
+            @Size(max = AppConstants.MAX_TAGS, message = "Max {max} tags allowed")
+            @RequestParam(defaultValue = "") Set<String> tags,
+            @RequestParam(required = false) String contentType
+    ) {
+        return ResponseEntity.ok(presignedUploadService.createUpload(userId, filename, contentType, visibility, tags));
+    }
+
+    @Operation(
+            summary = "Complete upload to object storage and create file from uploaded content",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @PostMapping("/{uploadId}/complete")
+    public ResponseEntity<FileMetadataDto> completeUpload(
+            @PathVariable UUID uploadId,
+            @RequestParam @NotBlank String userId
+    ) {
+        return ResponseEntity.ok(presignedUploadService.completeUpload(userId, uploadId));
+    }
+}
@@ -0,0 +1,245 @@
+package com.burjkhalifacorp.storage.api.controller;
+
+import com.burjkhalifacorp.storage.api.models.ErrorResponse;
+import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.common.AppConstants;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.errors.BadRequestException;
+import com.burjkhalifacorp.storage.service.ReactiveFileService;
+import com.burjkhalifacorp.storage.service.TransferGovernor;
+import com.burjkhalifacorp.storage.service.models.StoredFile;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.parameters.RequestBody;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+// Upload, download and delete of FileController on Netty, active with reactive profile. Request body
+// and responses are streamed without holding a thread per transfer. Content streams of object storage
+// and local cache are blocking, they are read on bounded elastic scheduler into buffers of Netty.
+// Multiple ranges aren't supported, full content is returned for them
+@Tag(name = "Storage Service")
+@RestController
+@Slf4j
+@Validated
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@RequestMapping("/api/v1/files")
+public class ReactiveFileController {
+    private final ReactiveFileService fileService;
+
+    private final TransferGovernor transferGovernor;
+
+    private final int copyBufferSize;
+
+    public ReactiveFileController(ReactiveFileService fileService,
+                                  TransferGovernor transferGovernor,
+                                  @Value("${downloads.copy-buffer-size}") DataSize copyBufferSize) {
+        this.fileService = fileService;
+        this.transferGovernor = transferGovernor;
+        this.copyBufferSize = (int) copyBufferSize.toBytes();
+    }
+
+    @Operation(
+            summary = "Upload file to storage as raw binary stream",
+            requestBody = @RequestBody(
+                    content = @Content(
+                            mediaType = "application/octet-stream",
+                            schema = @Schema(type = "string", format = "binary")
+                    )
+            ),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @PostMapping("/upload")
+    public Mono<ResponseEntity<FileMetadataDto>> uploadFile(
+            ServerHttpRequest request,
+            @RequestParam @NotBlank String userId,
+            @RequestParam @NotBlank String filename,
+            @RequestParam Visibility visibility,
+            @Size(max = AppConstants.MAX_TAGS, message = "Max {max} tags allowed")
+            @RequestParam(defaultValue = "") Set<String> tags,
+            @RequestHeader(value = AppConstants.CONTENT_SHA256_HEADER, required = false) String contentSha256
+    ) {
+        // storing of empty files meaningless, chunked body is checked after it's read
+        if (request.getHeaders().getContentLength() == 0) {
+            throw new BadRequestException("empty file isn't acceptable");
+        }
+
+        final String contentType = request.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE);
+        final TransferGovernor.Transfer transfer = transferGovernor.admit(userId);
+        return fileService.upload(userId, filename, contentType, visibility, tags, contentSha256,
+                        transfer.govern(request.getBody()))
+                .map(ResponseEntity::ok)
+                .doFinally(signal -> transfer.close());
+    }
+
+    @Operation(
+            summary = "Download file from storage",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @GetMapping("/{fileId}")
+    public Mono<ResponseEntity<Flux<DataBuffer>>> downloadFile(
+            ServerHttpResponse response,
+            @PathVariable UUID fileId,
+            @RequestParam @NotBlank String userId,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) {
+        log.info("processing download request from user {}, file {}", userId, fileId);
+        // admitted transfer is released when body is written, responses without body release it at once
+        final TransferGovernor.Transfer transfer = transferGovernor.admit(userId);
+        return fileService.getFile(userId, fileId)
+                .flatMap(storedFile -> prepareDownload(
+                        storedFile, range, ifNoneMatch, ifRange, acceptEncoding, response.bufferFactory(), transfer))
+                .doOnError(ex -> transfer.close())
+                .doOnCancel(transfer::close);
+    }
+
+    @Operation(
+            summary = "Delete file from storage",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @DeleteMapping("/{fileId}")
+    public Mono<ResponseEntity<Void>> deleteFile(
+            @PathVariable UUID fileId,
+            @RequestParam @NotBlank String userId
+    ) {
+        return fileService.deleteFile(userId, fileId)
+                .then(Mono.fromSupplier(() -> ResponseEntity.ok().<Void>build()));
+    }
+
+    private Mono<ResponseEntity<Flux<DataBuffer>>> prepareDownload(
+            StoredFile storedFile, String range, String ifNoneMatch, String ifRange, String acceptEncoding,
+            DataBufferFactory bufferFactory, TransferGovernor.Transfer transfer) {
+        final FileMetadataDto fileMetadataDto = storedFile.getMetadata();
+        // encoded object is passed as is to client which accepts its encoding, ranges are taken from decoded content
+        final boolean passEncoded = storedFile.getEncoding() != null && range == null
+                && DownloadHeaders.acceptsEncoding(acceptEncoding, storedFile.getEncoding());
+        // encoded representation has its own tag, as its bytes differ
+        final String etag = passEncoded
+                ? "\"" + storedFile.getHash() + "-" + storedFile.getEncoding() + "\""
+                : "\"" + storedFile.getHash() + "\"";
+
+        // revalidation is answered from metadata only
+        if (ifNoneMatch != null && DownloadHeaders.etagListMatches(ifNoneMatch, etag)) {
+            transfer.close();
+            return Mono.just(ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(etag)
+                    .build());
+        }
+
+        // range is ignored if client has other version of file
+        final boolean useRange = range != null && (ifRange == null || ifRange.trim().equals(etag));
+        List<HttpRange> ranges;
+        try {
+            ranges = useRange ? DownloadHeaders.parseRanges(range, fileMetadataDto.getSize()) : List.of();
+        } catch (IllegalArgumentException ex) {
+            log.warn("unsatisfiable range {} for file {}: {}", range, fileMetadataDto.getId(), ex.getMessage());
+            transfer.close();
+            return Mono.just(ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + fileMetadataDto.getSize())
+                    .build());
+        }
+        if (ranges.size() > 1) {
+            ranges = List.of();
+        }
+
+        ResponseEntity.BodyBuilder responseBuilder = ranges.isEmpty()
+                ? ResponseEntity.ok()
+                : ResponseEntity.status(HttpStatus.PARTIAL_CONTENT);
+        responseBuilder
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=" + fileMetadataDto.getFilename())
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .eTag(etag);
+        if (storedFile.getEncoding() != null) {
+            responseBuilder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+
+        if (passEncoded) {
+            return Mono.fromFuture(storedFile::openEncodedStreamAsync)
+                    .map(fileStream -> responseBuilder
+                            .header(HttpHeaders.CONTENT_TYPE, fileMetadataDto.getContentType())
+                            .header(HttpHeaders.CONTENT_ENCODING, storedFile.getEncoding())
+                            .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(storedFile.getEncodedSize()))
+                            .body(body(fileStream, bufferFactory, transfer)));
+        }
+
+        final long offset = ranges.isEmpty() ? 0 : ranges.get(0).getRangeStart(fileMetadataDto.getSize());
+        final long length = ranges.isEmpty()
+                ? fileMetadataDto.getSize()
+                : ranges.get(0).getRangeEnd(fileMetadataDto.getSize()) - offset + 1;
+        if (!ranges.isEmpty()) {
+            responseBuilder.header(HttpHeaders.CONTENT_RANGE,
+                    DownloadHeaders.contentRange(offset, length, fileMetadataDto.getSize()));
+        }
+
+        return Mono.fromFuture(() -> storedFile.openStreamAsync(offset, length))
+                .map(fileStream -> responseBuilder
+                        .header(HttpHeaders.CONTENT_TYPE, fileMetadataDto.getContentType())
+                        .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(length))
+                        .body(body(fileStream, bufferFactory, transfer)));
+    }
+
+    // stream is read when Netty requests more, at most one buffer ahead of the socket
+    private Flux<DataBuffer> body(
+            InputStream fileStream, DataBufferFactory bufferFactory, TransferGovernor.Transfer transfer) {
+        Flux<DataBuffer> content = DataBufferUtils.readInputStream(() -> fileStream, bufferFactory, copyBufferSize)
+                .subscribeOn(Schedulers.boundedElastic());
+        return transfer.govern(content)
+                .doFinally(signal -> transfer.close());
+    }
+}
@@ -0,0 +1,163 @@
+package com.burjkhalifacorp.storage.api.controller;
+
+import com.burjkhalifacorp.storage.api.models.ErrorResponse;
+import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.api.models.UploadPartDto;
+import com.burjkhalifacorp.storage.api.models.UploadSessionDto;
+import com.burjkhalifacorp.storage.common.AppConstants;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.service.TransferGovernor;
+import com.burjkhalifacorp.storage.service.UploadSessionService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.parameters.RequestBody;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Size;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.UUID;
+
+@Tag(name = "Storage Service")
+@RestController
+@Slf4j
+@Validated
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@RequestMapping("/api/v1/files/uploads")
+public class UploadSessionController {
+    private final UploadSessionService uploadSessionService;
+
+    private final TransferGovernor transferGovernor;
+
+    public UploadSessionController(UploadSessionService uploadSessionService, TransferGovernor transferGovernor) {
+        this.uploadSessionService = uploadSessionService;
+        this.transferGovernor = transferGovernor;
+    }
+
+    @Operation(
+            summary = "Start resumable upload, file content is uploaded in parts",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @PostMapping
+    public ResponseEntity<UploadSessionDto> createSession(
+            @RequestParam @NotBlank String userId,
+            @RequestParam @NotBlank String filename,
+            @RequestParam Visibility visibility,
+            @Size(max = AppConstants.MAX_TAGS, message = "Max {max} tags allowed")
+            @RequestParam(defaultValue = "") Set<String> tags,
+            @RequestParam(required = false) String contentType
+    ) {
+        UploadSessionDto session = uploadSessionService.createSession(
+                userId, filename, contentType, visibility, tags);
+        return ResponseEntity.ok(session);
+    }
+
+    @Operation(
+            summary = "Upload part of file as raw binary stream, parts could be uploaded in parallel and retried",
+            requestBody = @RequestBody(
+                    content = @Content(
+                            mediaType = "application/octet-stream",
+                            schema = @Schema(type = "string", format = "binary")
+                    )
+            ),
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @PutMapping("/{sessionId}/parts/{partNumber}")
+    public ResponseEntity<UploadPartDto> uploadPart(
+            HttpServletRequest request,
+            @PathVariable UUID sessionId,
+            @PathVariable @Min(1) @Max(AppConstants.MAX_UPLOAD_PARTS) int partNumber,
+            @RequestParam @NotBlank String userId
+    ) throws IOException {
+        try (TransferGovernor.Transfer transfer = transferGovernor.admit(userId)) {
+            UploadPartDto part = uploadSessionService.uploadPart(userId, sessionId, partNumber,
+                    request.getContentLengthLong(), transfer.govern(request.getInputStream()));
+            return ResponseEntity.ok(part);
+        }
+    }
+
+    @Operation(
+            summary = "Get state of resumable upload with uploaded parts",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @GetMapping("/{sessionId}")
+    public ResponseEntity<UploadSessionDto> getSession(
+            @PathVariable UUID sessionId,
+            @RequestParam @NotBlank String userId
+    ) {
+        return ResponseEntity.ok(uploadSessionService.getSession(userId, sessionId));
+    }
+
+    @Operation(
+            summary = "Complete resumable upload and create file from uploaded parts",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @PostMapping("/{sessionId}/complete")
+    public ResponseEntity<FileMetadataDto> completeSession(
+            @PathVariable UUID sessionId,
+            @RequestParam @NotBlank String userId
+    ) {
+        return ResponseEntity.ok(uploadSessionService.completeSession(userId, sessionId));
+    }
+
+    @Operation(
+            summary = "Abort resumable upload and drop uploaded parts",
+            responses = {
+                    @ApiResponse(responseCode = "200", description = "Success"),
+                    @ApiResponse(
+                            description = "API Error",
+                            content = @Content(mediaType = "application/json",
+                                    schema = @Schema(implementation = ErrorResponse.class))
+                    )
+            })
+    @DeleteMapping("/{sessionId}")
+    public ResponseEntity<Void> abortSession(
+            @PathVariable UUID sessionId,
+            @RequestParam @NotBlank String userId
+    ) {
+        uploadSessionService.abortSession(userId, sessionId);
+        return ResponseEntity.ok().build();
+    }
+}
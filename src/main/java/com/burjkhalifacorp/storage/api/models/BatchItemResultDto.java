@@ -0,0 +1,21 @@
+package com.burjkhalifacorp.storage.api.models;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.UUID;
+
+// Result of operation on one file of batch, status is the one single file request would return
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchItemResultDto {
+    private UUID id;
+    private int status;
+    private String error;
+    // file after operation, absent for deleted and failed ones
+    private FileMetadataDto file;
+}
@@ -0,0 +1,17 @@
+package com.burjkhalifacorp.storage.api.models;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchRequestDto {
+    private List<UUID> ids;
+}
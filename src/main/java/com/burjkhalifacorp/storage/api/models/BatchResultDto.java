@@ -0,0 +1,17 @@
+package com.burjkhalifacorp.storage.api.models;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Results in order of requested ids, repeated ids are reported once
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchResultDto {
+    private List<BatchItemResultDto> results;
+}
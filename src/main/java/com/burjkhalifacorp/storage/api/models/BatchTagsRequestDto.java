@@ -0,0 +1,21 @@
+package com.burjkhalifacorp.storage.api.models;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+// Tags are removed first, so tag present in both sets stays on files
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchTagsRequestDto {
+    private List<UUID> ids;
+    private Set<String> add;
+    private Set<String> remove;
+}
@@ -1,5 +1,6 @@
 package com.burjkhalifacorp.storage.api.models;
 
+import com.burjkhalifacorp.storage.common.EnrichmentState;
 import com.burjkhalifacorp.storage.common.Visibility;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
@@ -8,6 +9,7 @@ import lombok.NoArgsConstructor;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Getter
@@ -22,4 +24,7 @@ public class FileMetadataDto {
     private Visibility visibility;
     private String contentType;
     private Instant uploadDate;
+    // while PENDING content type is the declared one and attributes aren't extracted yet
+    private EnrichmentState enrichment;
+    private Map<String, String> attributes;
 }
@@ -0,0 +1,19 @@
+package com.burjkhalifacorp.storage.api.models;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Page of listing without total count, next page is requested with nextCursor
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+public class FileSliceDto {
+    private List<FileMetadataDto> content;
+    private boolean hasNext;
+    private String nextCursor;
+}
@@ -3,7 +3,7 @@ package com.burjkhalifacorp.storage.api.models;
 public enum FileSortBy {
     FILENAME("filename"),
     UPLOAD_DATE("uploadDate"),
-    TAG("tag"),
+    TAG("tagsSortKey"),
     CONTENT_TYPE("contentType"),
     FILE_SIZE("size");
 
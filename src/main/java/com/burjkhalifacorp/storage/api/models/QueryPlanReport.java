@@ -0,0 +1,22 @@
+package com.burjkhalifacorp.storage.api.models;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Winning plan of one listing query shape, flags mark plans that degrade on big collections
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+public class QueryPlanReport {
+    private String query;
+    private String filter;
+    private String sort;
+    private List<String> indexes;
+    private boolean collectionScan;
+    private boolean inMemorySort;
+}
@@ -0,0 +1,9 @@
+package com.burjkhalifacorp.storage.api.models;
+
+// How files are filtered by given tags
+public enum TagMatch {
+    // file has at least one of the tags
+    ANY,
+    // file has every tag
+    ALL
+}
@@ -0,0 +1,25 @@
+package com.burjkhalifacorp.storage.api.models;
+
+import com.burjkhalifacorp.storage.common.Visibility;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadSessionDto {
+    private UUID id;
+    private String filename;
+    private List<String> tags;
+    private Visibility visibility;
+    private Instant createdDate;
+    private long uploadedSize;
+    private List<UploadPartDto> parts;
+}
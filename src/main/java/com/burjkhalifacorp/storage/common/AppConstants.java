@@ -3,4 +3,14 @@ package com.burjkhalifacorp.storage.common;
 public class AppConstants {
     public static final int MAX_TAGS = 5;
     public static final int MAX_FILES_PAGE_SIZE = 50;
+    public static final int MAX_BATCH_SIZE = 1000;
+    public static final int MAX_TAG_COUNTS = 100;
+    // optional SHA-256 of uploaded content declared by client, hex encoded
+    public static final String CONTENT_SHA256_HEADER = "X-Content-SHA256";
+    // limits of MinIO multipart upload, last part may be smaller than minimum
+    public static final long MIN_UPLOAD_PART_SIZE = 5L * 1024 * 1024;
+    public static final long MAX_UPLOAD_PART_SIZE = 5L * 1024 * 1024 * 1024;
+    public static final int MAX_UPLOAD_PARTS = 10000;
+    // beginning of uploaded content kept for type detection
+    public static final int CONTENT_HEADER_SIZE = 64 * 1024;
 }
@@ -0,0 +1,8 @@
+package com.burjkhalifacorp.storage.common;
+
+public enum EnrichmentState {
+    // content type is provisional, attributes aren't extracted yet
+    PENDING,
+    DONE,
+    FAILED
+}
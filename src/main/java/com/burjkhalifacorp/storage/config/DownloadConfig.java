@@ -1,14 +1,23 @@
 package com.burjkhalifacorp.storage.config;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Configuration
 public class DownloadConfig {
+    public static final String EXECUTOR_NAME = "downloadsExecutor";
+
     @Value("${downloads.core-pool-size}")
     private int corePoolSize;
 
@@ -18,8 +27,23 @@ public class DownloadConfig {
     @Value("${downloads.queue-capacity}")
     private int queueCapacity;
 
-    @Bean(name = "downloadsExecutor")
-    public Executor executor() {
+    @Value("${downloads.virtual-concurrency-limit}")
+    private int virtualConcurrencyLimit;
+
+    @Bean(name = EXECUTOR_NAME)
+    public Executor executor(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        // active with spring.threads.virtual.enabled on Java 21+, same switch moves Tomcat to virtual threads
+        if (Threading.VIRTUAL.isActive(environment)) {
+            // every download waits on MinIO in its own virtual thread instead of holding pooled one
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("download-task-");
+            executor.setVirtualThreads(true);
+            executor.setConcurrencyLimit(virtualConcurrencyLimit);
+            meterRegistry.ifAvailable(registry -> monitorVirtual(executor, registry));
+            return executor;
+        }
+
+        // pool is monitored by actuator as executor.* meters tagged with bean name
+
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
         executor.setCorePoolSize(corePoolSize);
         executor.setMaxPoolSize(maxPoolSize);
@@ -28,4 +52,30 @@ public class DownloadConfig {
         executor.initialize();
         return executor;
     }
+
+    // same meters as actuator publishes for pools, queued are downloads waiting for concurrency limit
+    private static void monitorVirtual(SimpleAsyncTaskExecutor executor, MeterRegistry registry) {
+        AtomicInteger queued = new AtomicInteger();
+        AtomicInteger active = new AtomicInteger();
+        Gauge.builder("executor.queued", queued, AtomicInteger::get)
+                .tag("name", EXECUTOR_NAME)
+                .register(registry);
+        Gauge.builder("executor.active", active, AtomicInteger::get)
+                .tag("name", EXECUTOR_NAME)
+                .register(registry);
+
+        // decorator is applied on submission before the concurrency throttle
+        executor.setTaskDecorator(task -> {
+            queued.incrementAndGet();
+            return () -> {
+                queued.decrementAndGet();
+                active.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                }
+            };
+        });
+    }
 }
@@ -0,0 +1,31 @@
+package com.burjkhalifacorp.storage.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+
+@Configuration
+public class EnrichmentConfig {
+    public static final String EXECUTOR_NAME = "enrichmentExecutor";
+
+    @Value("${enrichment.pool-size}")
+    private int poolSize;
+
+    @Value("${enrichment.queue-capacity}")
+    private int queueCapacity;
+
+    // reads uploaded files back after upload is acknowledged, full queue rejects new files
+    @Bean(name = EXECUTOR_NAME)
+    public Executor executor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("enrichment-");
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,30 @@
+package com.burjkhalifacorp.storage.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+
+@Configuration
+@ConditionalOnProperty(name = "storage.backend", havingValue = "local")
+public class LocalStoreConfig {
+    public static final String EXECUTOR_NAME = "localStoreExecutor";
+
+    @Value("${storage.local.io-threads}")
+    private int ioThreads;
+
+    // writes objects and parts to local disk, so parts of one upload are written in parallel
+    // like they are sent to MinIO
+    @Bean(name = EXECUTOR_NAME)
+    public Executor executor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(ioThreads);
+        executor.setMaxPoolSize(ioThreads);
+        executor.setThreadNamePrefix("local-store-");
+        executor.initialize();
+        return executor;
+    }
+}
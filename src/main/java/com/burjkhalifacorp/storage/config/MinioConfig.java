@@ -1,11 +1,19 @@
 package com.burjkhalifacorp.storage.config;
 
+import io.minio.MinioAsyncClient;
 import io.minio.MinioClient;
+import io.minio.http.HttpUtils;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.concurrent.TimeUnit;
+
 @Configuration
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
 public class MinioConfig {
 
     @Value("${minio.endpoint}")
@@ -17,6 +25,9 @@ public class MinioConfig {
     @Value("${minio.secret-key}")
     private String secretKey;
 
+    @Value("${minio.max-requests}")
+    private int maxRequests;
+
     @Bean
     public MinioClient client() {
         return MinioClient.builder()
@@ -24,4 +35,27 @@ public class MinioConfig {
                 .credentials(accessKey, secretKey)
                 .build();
     }
+
+    // multipart upload API is exposed by async client only
+    @Bean
+    public MinioAsyncClient asyncClient() {
+        return MinioAsyncClient.builder()
+                .endpoint(endpoint)
+                .credentials(accessKey, secretKey)
+                .httpClient(asyncHttpClient())
+                .build();
+    }
+
+    // default dispatcher runs only 5 async calls per host, parallel part uploads would queue behind it
+    private OkHttpClient asyncHttpClient() {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(maxRequests);
+        dispatcher.setMaxRequestsPerHost(maxRequests);
+        // same timeouts as MinIO client uses by default
+        long timeout = TimeUnit.MINUTES.toMillis(5);
+        return HttpUtils.newDefaultHttpClient(timeout, timeout, timeout)
+                .newBuilder()
+                .dispatcher(dispatcher)
+                .build();
+    }
 }
@@ -0,0 +1,10 @@
+package com.burjkhalifacorp.storage.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+// Expired upload sessions are aborted on every instance, reconciler runs where it's enabled
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
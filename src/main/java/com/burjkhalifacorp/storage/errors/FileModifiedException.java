@@ -0,0 +1,9 @@
+package com.burjkhalifacorp.storage.errors;
+
+import org.springframework.http.HttpStatus;
+
+public class FileModifiedException extends StorageException {
+    public FileModifiedException() {
+        super("File is being modified", HttpStatus.CONFLICT);
+    }
+}
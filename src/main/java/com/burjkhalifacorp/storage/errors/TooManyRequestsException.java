@@ -0,0 +1,16 @@
+package com.burjkhalifacorp.storage.errors;
+
+import org.springframework.http.HttpStatus;
+
+public class TooManyRequestsException extends StorageException {
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(long retryAfterSeconds) {
+        super("Too many transfers, retry later", HttpStatus.TOO_MANY_REQUESTS);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,9 @@
+package com.burjkhalifacorp.storage.errors;
+
+import org.springframework.http.HttpStatus;
+
+public class UploadSessionConflictException extends StorageException {
+    public UploadSessionConflictException() {
+        super("Upload session is being completed", HttpStatus.CONFLICT);
+    }
+}
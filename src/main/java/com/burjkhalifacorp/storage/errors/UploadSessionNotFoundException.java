@@ -0,0 +1,11 @@
+package com.burjkhalifacorp.storage.errors;
+
+import org.springframework.http.HttpStatus;
+
+import java.util.UUID;
+
+public class UploadSessionNotFoundException extends StorageException {
+    public UploadSessionNotFoundException(UUID sessionId) {
+        super("Upload session %s not found".formatted(sessionId), HttpStatus.NOT_FOUND);
+    }
+}
@@ -14,7 +14,9 @@ public class FileMetadataMapper {
                 metadata.getSize(),
                 metadata.getVisibility(),
                 metadata.getContentType(),
-                metadata.getUploadDate()
+                metadata.getUploadDate(),
+                metadata.getEnrichment(),
+                metadata.getAttributes()
         );
     }
 }
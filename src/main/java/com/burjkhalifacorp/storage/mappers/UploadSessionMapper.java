@@ -0,0 +1,33 @@
+package com.burjkhalifacorp.storage.mappers;
+
+import com.burjkhalifacorp.storage.api.models.UploadPartDto;
+import com.burjkhalifacorp.storage.api.models.UploadSessionDto;
+import com.burjkhalifacorp.storage.persist.models.UploadPart;
+import com.burjkhalifacorp.storage.persist.models.UploadSession;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+
+@Component
+public class UploadSessionMapper {
+    public UploadSessionDto toDto(UploadSession session) {
+        List<UploadPartDto> parts = session.getParts().values().stream()
+                .sorted(Comparator.comparingInt(UploadPart::getPartNumber))
+                .map(this::toDto)
+                .toList();
+        return new UploadSessionDto(
+                session.getExternalId(),
+                session.getFilename(),
+                session.getTags(),
+                session.getVisibility(),
+                session.getCreatedDate(),
+                parts.stream().mapToLong(UploadPartDto::getSize).sum(),
+                parts
+        );
+    }
+
+    public UploadPartDto toDto(UploadPart part) {
+        return new UploadPartDto(part.getPartNumber(), part.getSize(), part.getHash());
+    }
+}
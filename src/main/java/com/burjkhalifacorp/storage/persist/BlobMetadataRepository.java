@@ -0,0 +1,13 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.persist.models.BlobMetadata;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface BlobMetadataRepository extends MongoRepository<BlobMetadata, String>, BlobMetadataRepositoryCustom {
+    List<BlobMetadata> findByStorageKeyIn(Collection<String> storageKeys);
+}
@@ -0,0 +1,35 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.persist.models.BlobMetadata;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+// Atomic reference counting on blobs, done with single document updates to be safe under parallel uploads
+public interface BlobMetadataRepositoryCustom {
+    // Increments reference counter, creates blob pointing to storageKey if it doesn't exist yet.
+    // Returns actual blob, its storageKey differs from passed one if content was already stored.
+    BlobMetadata acquire(String hash, String storageKey, long size, long storedSize, String encoding);
+
+    // Decrements reference counter, returns blob state after update or empty if blob doesn't exist
+    Optional<BlobMetadata> release(String hash);
+
+    // Removes blob only if nobody references it, returns removed blob
+    Optional<BlobMetadata> removeIfUnreferenced(String hash);
+
+    // Removes blob which object is lost whatever references it. Blob created again under other key
+    // by upload of the same content is kept. False when there was no such blob
+    boolean removeLost(String hash, String storageKey);
+
+    // Decrements reference counters of many blobs by given numbers in one bulk write
+    void releaseAll(Map<String, Integer> references);
+
+    // Blobs of given hashes which nobody references, they still must be removed with removeIfUnreferenced
+    List<BlobMetadata> findUnreferenced(Collection<String> hashes);
+
+    // All blobs in storageKey order, read by unique index in batches of given size. Stream must be closed
+    Stream<BlobMetadata> streamOrderedByStorageKey(int batchSize);
+}
@@ -0,0 +1,91 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.persist.models.BlobMetadata;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public class BlobMetadataRepositoryCustomImpl implements BlobMetadataRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    public BlobMetadataRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public BlobMetadata acquire(String hash, String storageKey, long size, long storedSize, String encoding) {
+        Query query = Query.query(Criteria.where("_id").is(hash));
+        Update update = new Update()
+                .inc("refCount", 1)
+                .setOnInsert("storageKey", storageKey)
+                .setOnInsert("size", size)
+                .setOnInsert("storedSize", storedSize)
+                .setOnInsert("encoding", encoding)
+                .setOnInsert("createdDate", Instant.now());
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+        try {
+            return mongoTemplate.findAndModify(query, update, options, BlobMetadata.class);
+        } catch (DuplicateKeyException ex) {
+            // parallel upsert of the same hash, second attempt will find inserted document
+            return mongoTemplate.findAndModify(query, update, options, BlobMetadata.class);
+        }
+    }
+
+    @Override
+    public Optional<BlobMetadata> release(String hash) {
+        Query query = Query.query(Criteria.where("_id").is(hash));
+        Update update = new Update().inc("refCount", -1);
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+                query, update, FindAndModifyOptions.options().returnNew(true), BlobMetadata.class));
+    }
+
+    @Override
+    public Optional<BlobMetadata> removeIfUnreferenced(String hash) {
+        Query query = Query.query(Criteria.where("_id").is(hash).and("refCount").lte(0));
+        return Optional.ofNullable(mongoTemplate.findAndRemove(query, BlobMetadata.class));
+    }
+
+    @Override
+    public boolean removeLost(String hash, String storageKey) {
+        Query query = Query.query(Criteria.where("_id").is(hash).and("storageKey").is(storageKey));
+        return mongoTemplate.remove(query, BlobMetadata.class).getDeletedCount() > 0;
+    }
+
+    @Override
+    public void releaseAll(Map<String, Integer> references) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, BlobMetadata.class);
+        references.forEach((hash, count) -> bulk.updateOne(
+                Query.query(Criteria.where("_id").is(hash)),
+                new Update().inc("refCount", -count)));
+        bulk.execute();
+    }
+
+    @Override
+    public List<BlobMetadata> findUnreferenced(Collection<String> hashes) {
+        Query query = Query.query(Criteria.where("_id").in(hashes).and("refCount").lte(0));
+        return mongoTemplate.find(query, BlobMetadata.class);
+    }
+
+    @Override
+    public Stream<BlobMetadata> streamOrderedByStorageKey(int batchSize) {
+        Query query = new Query()
+                .with(Sort.by("storageKey"))
+                .cursorBatchSize(batchSize)
+                // reader is rate limited, cursor may stay idle longer than server timeout
+                .noCursorTimeout();
+        query.fields().include("storageKey", "refCount", "createdDate");
+        return mongoTemplate.stream(query, BlobMetadata.class);
+    }
+}
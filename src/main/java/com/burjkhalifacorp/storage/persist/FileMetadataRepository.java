@@ -7,21 +7,39 @@ import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 import org.springframework.data.domain.Page;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
 
 @Repository
-public interface FileMetadataRepository extends MongoRepository<FileMetadata, String> {
+public interface FileMetadataRepository extends MongoRepository<FileMetadata, String>, FileMetadataRepositoryCustom {
     Page<FileMetadata> findByOwnerId(String ownerId, Pageable pageable);
 
     Page<FileMetadata> findByOwnerIdAndTagsIn(String ownerId, Set<String> tags, Pageable pageable);
 
+    // files having every tag. Tags index is scanned for one of them, planner tries them in given order,
+    // so caller passes the rarest tag first
+    @Query("{ 'ownerId': ?0, 'tags': { $all: ?1 } }")
+    Page<FileMetadata> findByOwnerIdAndAllTags(String ownerId, List<String> tags, Pageable pageable);
+
     Optional<FileMetadata> findByExternalId(UUID externalFileId);
 
+    List<FileMetadata> findByExternalIdIn(Collection<UUID> externalFileIds);
+
+    List<FileMetadata> findByStorageKey(String storageKey);
+
+    boolean existsByOwnerIdAndFilename(String ownerId, String filename);
+
+    boolean existsByOwnerIdAndHash(String ownerId, String hash);
+
     @Query("{ 'visibility': 'PUBLIC' }")
     Page<FileMetadata> findAllPublicFiles(Pageable pageable);
 
     @Query("{ 'tags': { $in: ?0 }, 'visibility': 'PUBLIC' }")
     Page<FileMetadata> findAllPublicFilesByTagsIn(Set<String> tags, Pageable pageable);
+
+    @Query("{ 'tags': { $all: ?0 }, 'visibility': 'PUBLIC' }")
+    Page<FileMetadata> findAllPublicFilesByAllTags(List<String> tags, Pageable pageable);
 }
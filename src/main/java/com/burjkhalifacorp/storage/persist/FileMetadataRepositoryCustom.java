@@ -0,0 +1,80 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.common.EnrichmentState;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+public interface FileMetadataRepositoryCustom {
+    // Keyset listings, _id is appended to sort as tie breaker in the direction of sort. Derived scroll queries
+    // always append _id ascending, descending listing by {field: -1, _id: 1} isn't served by listing indexes
+    Window<FileMetadata> findByOwnerId(String ownerId, ScrollPosition position, Limit limit, Sort sort);
+
+    Window<FileMetadata> findByOwnerIdAndTagsIn(
+            String ownerId, Set<String> tags, ScrollPosition position, Limit limit, Sort sort);
+
+    // files having every tag, caller passes the rarest tag first
+    Window<FileMetadata> findByOwnerIdAndAllTags(
+            String ownerId, List<String> tags, ScrollPosition position, Limit limit, Sort sort);
+
+    Window<FileMetadata> findByVisibility(Visibility visibility, ScrollPosition position, Limit limit, Sort sort);
+
+    Window<FileMetadata> findByVisibilityAndAllTags(
+            Visibility visibility, List<String> tags, ScrollPosition position, Limit limit, Sort sort);
+
+    Window<FileMetadata> findByVisibilityAndTagsIn(
+            Visibility visibility, Set<String> tags, ScrollPosition position, Limit limit, Sort sort);
+
+    // Sets tagsSortKey of files stored before it was introduced, returns number of updated files
+    long backfillTagsSortKey();
+
+    // Sets ownObjectKey of files stored under their externalId before it was introduced,
+    // returns number of updated files
+    long backfillOwnObjectKey();
+
+    // Files owning their object in ownObjectKey order, read by its index in batches of given size.
+    // Stream must be closed
+    Stream<FileMetadata> streamOwnObjectsOrderedByKey(int batchSize);
+
+    // Marks content of files as failed check, other fields aren't touched
+    void markContentMissing(Collection<String> ids);
+
+    // Removes file and returns it, empty when it's already removed. Only the caller which got the file
+    // releases its content, so parallel deletes of the same file don't release it twice
+    Optional<FileMetadata> removeById(String id);
+
+    // Removes files and returns the ones removed by this call, files removed by parallel deletes are left out
+    List<FileMetadata> removeAllById(Collection<String> ids);
+
+    // Sets filename only, so fields written by enrichment in between aren't overwritten.
+    // False when file was removed
+    boolean rename(String id, String filename);
+
+    // Writes tags of file if stored tags are still oldTags, other fields aren't touched.
+    // False when tags were changed in between or file was removed
+    boolean updateTags(FileMetadata file, List<String> oldTags);
+
+    // Enrichment results are written one by one as they are ready, other fields aren't touched.
+    // Updates of removed files match nothing
+    void setContentType(UUID externalId, String contentType);
+
+    void putAttributes(UUID externalId, Map<String, String> attributes);
+
+    void finishEnrichment(UUID externalId, EnrichmentState state, Boolean contentVerified);
+
+    // Takes up to limit PENDING files uploaded and not claimed since staleBefore, oldest first.
+    // Every file is claimed by one update, so concurrent sweeps of instances don't take the same file
+    List<FileMetadata> claimStaleEnrichments(Instant staleBefore, int limit);
+}
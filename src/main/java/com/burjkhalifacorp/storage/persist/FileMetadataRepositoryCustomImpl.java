@@ -0,0 +1,275 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.common.EnrichmentState;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+public class FileMetadataRepositoryCustomImpl implements FileMetadataRepositoryCustom {
+    private static final int BACKFILL_BATCH_SIZE = 1000;
+
+    private final MongoTemplate mongoTemplate;
+
+    public FileMetadataRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Window<FileMetadata> findByOwnerId(String ownerId, ScrollPosition position, Limit limit, Sort sort) {
+        return scroll(Criteria.where("ownerId").is(ownerId), position, limit, sort);
+    }
+
+    @Override
+    public Window<FileMetadata> findByOwnerIdAndTagsIn(
+            String ownerId, Set<String> tags, ScrollPosition position, Limit limit, Sort sort) {
+        return scroll(Criteria.where("ownerId").is(ownerId).and("tags").in(tags), position, limit, sort);
+    }
+
+    @Override
+    public Window<FileMetadata> findByOwnerIdAndAllTags(
+            String ownerId, List<String> tags, ScrollPosition position, Limit limit, Sort sort) {
+        return scroll(Criteria.where("ownerId").is(ownerId).and("tags").all(tags), position, limit, sort);
+    }
+
+    @Override
+    public Window<FileMetadata> findByVisibility(
+            Visibility visibility, ScrollPosition position, Limit limit, Sort sort) {
+        return scroll(Criteria.where("visibility").is(visibility.name()), position, limit, sort);
+    }
+
+    @Override
+    public Window<FileMetadata> findByVisibilityAndAllTags(
+            Visibility visibility, List<String> tags, ScrollPosition position, Limit limit, Sort sort) {
+        return scroll(Criteria.where("visibility").is(visibility.name()).and("tags").all(tags),
+                position, limit, sort);
+    }
+
+    @Override
+    public Window<FileMetadata> findByVisibilityAndTagsIn(
+            Visibility visibility, Set<String> tags, ScrollPosition position, Limit limit, Sort sort) {
+        return scroll(Criteria.where("visibility").is(visibility.name()).and("tags").in(tags),
+                position, limit, sort);
+    }
+
+    @Override
+    public long backfillTagsSortKey() {
+        // the same join as FileMetadata.setTags, done by server to avoid loading files
+        Document joinTags = new Document("$reduce", new Document()
+                .append("input", new Document("$ifNull", List.of("$tags", List.of())))
+                .append("initialValue", "")
+                .append("in", new Document("$cond", List.of(
+                        new Document("$eq", List.of("$$value", "")),
+                        "$$this",
+                        new Document("$concat", List.of("$$value", FileMetadata.TAGS_SORT_KEY_SEPARATOR, "$$this"))))));
+        AggregationUpdate update = AggregationUpdate.from(List.of(
+                context -> new Document("$set", new Document("tagsSortKey", joinTags))));
+
+        Query query = Query.query(Criteria.where("tagsSortKey").exists(false));
+        UpdateResult result = mongoTemplate.updateMulti(query, update, FileMetadata.class);
+        return result.getModifiedCount();
+    }
+
+    // externalId is stored as binary, its string form is made by client
+    @Override
+    public long backfillOwnObjectKey() {
+        Query query = Query.query(Criteria.where("storageKey").is(null).and("ownObjectKey").exists(false));
+        query.fields().include("externalId");
+        long updated = 0;
+        try (Stream<FileMetadata> files = mongoTemplate.stream(query, FileMetadata.class)) {
+            List<FileMetadata> batch = new ArrayList<>();
+            for (Iterator<FileMetadata> it = files.iterator(); it.hasNext(); ) {
+                batch.add(it.next());
+                if (batch.size() >= BACKFILL_BATCH_SIZE || !it.hasNext()) {
+                    BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, FileMetadata.class);
+                    batch.forEach(file -> bulk.updateOne(
+                            Query.query(Criteria.where("_id").is(file.getId())),
+                            new Update().set("ownObjectKey", file.getExternalId().toString())));
+                    updated += bulk.execute().getModifiedCount();
+                    batch.clear();
+                }
+            }
+        }
+        return updated;
+    }
+
+    @Override
+    public Stream<FileMetadata> streamOwnObjectsOrderedByKey(int batchSize) {
+        Query query = Query.query(Criteria.where("ownObjectKey").exists(true))
+                .with(Sort.by("ownObjectKey"))
+                .cursorBatchSize(batchSize)
+                // reader is rate limited, cursor may stay idle longer than server timeout
+                .noCursorTimeout();
+        query.fields().include("externalId", "ownObjectKey", "uploadDate");
+        return mongoTemplate.stream(query, FileMetadata.class);
+    }
+
+    @Override
+    public void markContentMissing(Collection<String> ids) {
+        mongoTemplate.updateMulti(
+                Query.query(Criteria.where("_id").in(ids)), new Update().set("contentVerified", false), FileMetadata.class);
+    }
+
+    @Override
+    public Optional<FileMetadata> removeById(String id) {
+        return Optional.ofNullable(
+                mongoTemplate.findAndRemove(Query.query(Criteria.where("_id").is(id)), FileMetadata.class));
+    }
+
+    // findAllAndRemove reads files before it removes them, so parallel callers would both get them.
+    // Every file is claimed by its own findAndRemove instead
+    @Override
+    public List<FileMetadata> removeAllById(Collection<String> ids) {
+        List<FileMetadata> removed = new ArrayList<>();
+        for (String id : ids) {
+            removeById(id).ifPresent(removed::add);
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean rename(String id, String filename) {
+        UpdateResult result = mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(id)), new Update().set("filename", filename), FileMetadata.class);
+        return result.getMatchedCount() > 0;
+    }
+
+    // tags are stored as read, so array equality matches unchanged tags
+    @Override
+    public boolean updateTags(FileMetadata file, List<String> oldTags) {
+        UpdateResult result = mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(file.getId()).and("tags").is(oldTags)),
+                new Update().set("tags", file.getTags()).set("tagsSortKey", file.getTagsSortKey()),
+                FileMetadata.class);
+        return result.getMatchedCount() > 0;
+    }
+
+    @Override
+    public void setContentType(UUID externalId, String contentType) {
+        updateByExternalId(externalId, new Update().set("contentType", contentType));
+    }
+
+    @Override
+    public void putAttributes(UUID externalId, Map<String, String> attributes) {
+        Update update = new Update();
+        // attributes of other extractors are kept
+        attributes.forEach((name, value) -> update.set("attributes." + name, value));
+        updateByExternalId(externalId, update);
+    }
+
+    @Override
+    public void finishEnrichment(UUID externalId, EnrichmentState state, Boolean contentVerified) {
+        updateByExternalId(externalId, new Update().set("enrichment", state).set("contentVerified", contentVerified));
+    }
+
+    @Override
+    public List<FileMetadata> claimStaleEnrichments(Instant staleBefore, int limit) {
+        Criteria stale = Criteria.where("enrichment").is(EnrichmentState.PENDING)
+                .and("uploadDate").lt(staleBefore)
+                .orOperator(Criteria.where("enrichmentClaimDate").is(null),
+                        Criteria.where("enrichmentClaimDate").lt(staleBefore));
+        Query candidates = Query.query(stale).with(Sort.by("uploadDate")).limit(limit);
+        candidates.fields().include("_id");
+
+        List<FileMetadata> claimed = new ArrayList<>();
+        for (FileMetadata candidate : mongoTemplate.find(candidates, FileMetadata.class)) {
+            // file claimed, finished or removed in between isn't matched
+            FileMetadata file = mongoTemplate.findAndModify(
+                    Query.query(Criteria.where("_id").is(candidate.getId()).andOperator(stale)),
+                    new Update().set("enrichmentClaimDate", Instant.now()),
+                    FindAndModifyOptions.options().returnNew(true),
+                    FileMetadata.class);
+            if (file != null) {
+                claimed.add(file);
+            }
+        }
+        return claimed;
+    }
+
+    // Files are read as documents, so keys of the last file keep their BSON types for the cursor
+    private Window<FileMetadata> scroll(Criteria filter, ScrollPosition position, Limit limit, Sort sort) {
+        List<Sort.Order> orders = new ArrayList<>(sort.filter(order -> !"_id".equals(order.getProperty())).toList());
+        Sort.Direction direction = orders.isEmpty() ? Sort.Direction.ASC : orders.get(orders.size() - 1).getDirection();
+        orders.add(new Sort.Order(direction, "_id"));
+
+        Criteria criteria = filter;
+        if (position instanceof KeysetScrollPosition keyset && !keyset.isInitial()) {
+            criteria = new Criteria().andOperator(filter, after(keyset.getKeys(), orders));
+        }
+        Query query = Query.query(criteria).with(Sort.by(orders));
+        if (limit.isLimited()) {
+            // one more file tells whether there is next window
+            query.limit(limit.max() + 1);
+        }
+
+        List<Document> documents = mongoTemplate.find(
+                query, Document.class, mongoTemplate.getCollectionName(FileMetadata.class));
+        boolean hasNext = limit.isLimited() && documents.size() > limit.max();
+        List<Document> window = hasNext ? documents.subList(0, limit.max()) : documents;
+        List<FileMetadata> files = window.stream()
+                .map(document -> mongoTemplate.getConverter().read(FileMetadata.class, document))
+                .toList();
+        return Window.from(files, index -> ScrollPosition.forward(keysOf(window.get(index), orders)), hasNext);
+    }
+
+    // (k1 > v1) or (k1 = v1 and k2 > v2) or ..., with $lt for descending keys
+    private static Criteria after(Map<String, Object> keys, List<Sort.Order> orders) {
+        List<Criteria> alternatives = new ArrayList<>();
+        for (int i = 0; i < orders.size(); i++) {
+            Criteria alternative = null;
+            for (int j = 0; j < i; j++) {
+                String key = orders.get(j).getProperty();
+                alternative = alternative == null
+                        ? Criteria.where(key).is(keys.get(key))
+                        : alternative.and(key).is(keys.get(key));
+            }
+            Sort.Order order = orders.get(i);
+            Criteria bound = alternative == null
+                    ? Criteria.where(order.getProperty())
+                    : alternative.and(order.getProperty());
+            if (order.isAscending()) {
+                bound.gt(keys.get(order.getProperty()));
+            } else {
+                bound.lt(keys.get(order.getProperty()));
+            }
+            alternatives.add(alternative == null ? bound : alternative);
+        }
+        return new Criteria().orOperator(alternatives);
+    }
+
+    private static Map<String, Object> keysOf(Document document, List<Sort.Order> orders) {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        for (Sort.Order order : orders) {
+            keys.put(order.getProperty(), document.get(order.getProperty()));
+        }
+        return keys;
+    }
+
+    private void updateByExternalId(UUID externalId, Update update) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("externalId").is(externalId)), update, FileMetadata.class);
+    }
+}
@@ -0,0 +1,9 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.persist.models.Migration;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MigrationRepository extends MongoRepository<Migration, String>, MigrationRepositoryCustom {
+}
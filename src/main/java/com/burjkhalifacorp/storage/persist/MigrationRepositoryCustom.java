@@ -0,0 +1,14 @@
+package com.burjkhalifacorp.storage.persist;
+
+import java.time.Duration;
+
+public interface MigrationRepositoryCustom {
+    // Claims migration for lease, false when it's done or claimed by another instance
+    boolean claim(String id, Duration lease);
+
+    // Marks claimed migration done
+    void complete(String id);
+
+    // Gives claim up, so migration is claimed again by next start
+    void release(String id);
+}
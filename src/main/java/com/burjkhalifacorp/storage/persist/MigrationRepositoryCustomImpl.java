@@ -0,0 +1,45 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.persist.models.Migration;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.Instant;
+
+public class MigrationRepositoryCustomImpl implements MigrationRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    public MigrationRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public boolean claim(String id, Duration lease) {
+        final Instant now = Instant.now();
+        Query query = Query.query(Criteria.where("_id").is(id).and("done").is(false).and("leaseUntil").lt(now));
+        Update update = new Update().set("done", false).set("leaseUntil", now.plus(lease));
+        try {
+            // missing record is inserted, existing one which doesn't match fails insert by _id
+            mongoTemplate.upsert(query, update, Migration.class);
+            return true;
+        } catch (DuplicateKeyException ex) {
+            return false;
+        }
+    }
+
+    @Override
+    public void complete(String id) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(id)),
+                new Update().set("done", true).set("doneAt", Instant.now()), Migration.class);
+    }
+
+    @Override
+    public void release(String id) {
+        mongoTemplate.updateFirst(Query.query(Criteria.where("_id").is(id).and("done").is(false)),
+                new Update().set("leaseUntil", Instant.EPOCH), Migration.class);
+    }
+}
@@ -0,0 +1,16 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.persist.models.PresignedUpload;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface PresignedUploadRepository extends MongoRepository<PresignedUpload, String> {
+    Optional<PresignedUpload> findByExternalId(UUID externalId);
+
+    // removal claims upload for completion, returns 0 if it's claimed by concurrent request
+    long deleteByExternalId(UUID externalId);
+}
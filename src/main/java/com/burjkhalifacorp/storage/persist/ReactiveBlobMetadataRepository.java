@@ -0,0 +1,10 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.persist.models.BlobMetadata;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ReactiveBlobMetadataRepository
+        extends ReactiveMongoRepository<BlobMetadata, String>, ReactiveBlobMetadataRepositoryCustom {
+}
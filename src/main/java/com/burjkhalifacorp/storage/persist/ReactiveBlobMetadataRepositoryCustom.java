@@ -0,0 +1,17 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.persist.models.BlobMetadata;
+import reactor.core.publisher.Mono;
+
+// Reference counting of BlobMetadataRepositoryCustom for reactive API, the same single document updates
+public interface ReactiveBlobMetadataRepositoryCustom {
+    // Increments reference counter, creates blob pointing to storageKey if it doesn't exist yet.
+    // Returns actual blob, its storageKey differs from passed one if content was already stored.
+    Mono<BlobMetadata> acquire(String hash, String storageKey, long size, long storedSize, String encoding);
+
+    // Decrements reference counter, returns blob state after update or empty if blob doesn't exist
+    Mono<BlobMetadata> release(String hash);
+
+    // Removes blob only if nobody references it, returns removed blob
+    Mono<BlobMetadata> removeIfUnreferenced(String hash);
+}
@@ -0,0 +1,51 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.persist.models.BlobMetadata;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.time.Instant;
+
+public class ReactiveBlobMetadataRepositoryCustomImpl implements ReactiveBlobMetadataRepositoryCustom {
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public ReactiveBlobMetadataRepositoryCustomImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<BlobMetadata> acquire(String hash, String storageKey, long size, long storedSize, String encoding) {
+        Query query = Query.query(Criteria.where("_id").is(hash));
+        Update update = new Update()
+                .inc("refCount", 1)
+                .setOnInsert("storageKey", storageKey)
+                .setOnInsert("size", size)
+                .setOnInsert("storedSize", storedSize)
+                .setOnInsert("encoding", encoding)
+                .setOnInsert("createdDate", Instant.now());
+        FindAndModifyOptions options = FindAndModifyOptions.options().upsert(true).returnNew(true);
+        return mongoTemplate.findAndModify(query, update, options, BlobMetadata.class)
+                // parallel upsert of the same hash, second attempt will find inserted document
+                .onErrorResume(DuplicateKeyException.class,
+                        ex -> mongoTemplate.findAndModify(query, update, options, BlobMetadata.class));
+    }
+
+    @Override
+    public Mono<BlobMetadata> release(String hash) {
+        Query query = Query.query(Criteria.where("_id").is(hash));
+        Update update = new Update().inc("refCount", -1);
+        return mongoTemplate.findAndModify(
+                query, update, FindAndModifyOptions.options().returnNew(true), BlobMetadata.class);
+    }
+
+    @Override
+    public Mono<BlobMetadata> removeIfUnreferenced(String hash) {
+        Query query = Query.query(Criteria.where("_id").is(hash).and("refCount").lte(0));
+        return mongoTemplate.findAndRemove(query, BlobMetadata.class);
+    }
+}
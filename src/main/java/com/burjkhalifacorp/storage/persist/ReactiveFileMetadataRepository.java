@@ -0,0 +1,21 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+// Files collection for reactive API, created with reactive profile only
+@Repository
+public interface ReactiveFileMetadataRepository extends ReactiveMongoRepository<FileMetadata, String> {
+    Mono<FileMetadata> findByExternalId(UUID externalFileId);
+
+    Mono<Boolean> existsByOwnerIdAndFilename(String ownerId, String filename);
+
+    Mono<Boolean> existsByOwnerIdAndHash(String ownerId, String hash);
+
+    // number of removed files, parallel delete of the same file gets 0
+    Mono<Long> deleteByExternalId(UUID externalFileId);
+}
@@ -0,0 +1,14 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.persist.models.TagCount;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface TagCountRepository extends MongoRepository<TagCount, String>, TagCountRepositoryCustom {
+    // read in order of scope_count_tag_idx, counters not removed yet are skipped by count
+    List<TagCount> findByScopeAndCountGreaterThanOrderByCountDescTagAsc(String scope, long count, Limit limit);
+}
@@ -0,0 +1,15 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.persist.models.TagCount;
+
+import java.util.Collection;
+
+public interface TagCountRepositoryCustom {
+    // Changes counters by counts of given records in one bulk write, missing counters are created.
+    // Counters dropped to zero are removed
+    void addAll(Collection<TagCount> deltas);
+
+    // Recounts tags of all files and corrects counters by the recount, returns number of counters.
+    // Only one rebuild may run at a time
+    long rebuild();
+}
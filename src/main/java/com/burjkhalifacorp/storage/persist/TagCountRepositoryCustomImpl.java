@@ -0,0 +1,118 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.persist.models.TagCount;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Collection;
+import java.util.List;
+
+public class TagCountRepositoryCustomImpl implements TagCountRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    public TagCountRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public void addAll(Collection<TagCount> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        // parallel upserts of the same _id are retried by server, no duplicate key error reaches here
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, TagCount.class);
+        for (TagCount delta : deltas) {
+            bulk.upsert(
+                    Query.query(Criteria.where("_id").is(delta.getId())),
+                    new Update()
+                            .inc("count", delta.getCount())
+                            .setOnInsert("scope", delta.getScope())
+                            .setOnInsert("tag", delta.getTag()));
+        }
+        bulk.execute();
+
+        List<String> decremented = deltas.stream()
+                .filter(delta -> delta.getCount() < 0)
+                .map(TagCount::getId)
+                .toList();
+        if (!decremented.isEmpty()) {
+            // counter incremented in between isn't matched, removed one is created again by next upsert
+            mongoTemplate.remove(
+                    Query.query(Criteria.where("_id").in(decremented).and("count").lte(0)), TagCount.class);
+        }
+    }
+
+    // Files are counted into a side collection and counters are corrected by the difference between recount
+    // and counters as they were before files were read. Deltas applied by other instances meanwhile are kept,
+    // $out over counters would discard them. Files changed while they are being read may be off by that change
+    @Override
+    public long rebuild() {
+        final String files = mongoTemplate.getCollectionName(FileMetadata.class);
+        final String counters = mongoTemplate.getCollectionName(TagCount.class);
+        final String base = counters + "_base";
+        final String recounted = counters + "_recounted";
+
+        mongoTemplate.getCollection(counters).aggregate(List.of(new Document("$out", base))).toCollection();
+        mongoTemplate.getCollection(files).aggregate(recount(files, recounted)).allowDiskUse(true).toCollection();
+
+        List<Document> correction = List.of(
+                new Document("$unionWith", new Document()
+                        .append("coll", base)
+                        .append("pipeline", List.of(new Document("$set", new Document("count",
+                                new Document("$multiply", List.of("$count", -1))))))),
+                new Document("$group", new Document()
+                        .append("_id", "$_id")
+                        .append("scope", new Document("$first", "$scope"))
+                        .append("tag", new Document("$first", "$tag"))
+                        .append("count", new Document("$sum", "$count"))),
+                new Document("$match", new Document("count", new Document("$ne", 0))),
+                new Document("$merge", new Document()
+                        .append("into", counters)
+                        .append("on", "_id")
+                        .append("whenMatched", List.of(new Document("$set", new Document("count",
+                                new Document("$add", List.of("$count", "$$new.count"))))))
+                        .append("whenNotMatched", "insert")));
+        mongoTemplate.getCollection(recounted).aggregate(correction).allowDiskUse(true).toCollection();
+        // the same as after decrements, correction of counter removed meanwhile is inserted below zero
+        mongoTemplate.remove(Query.query(Criteria.where("count").lte(0)), TagCount.class);
+
+        mongoTemplate.dropCollection(base);
+        mongoTemplate.dropCollection(recounted);
+        return mongoTemplate.getCollection(counters).countDocuments();
+    }
+
+    private static List<Document> recount(String files, String target) {
+        Document countByOwner = new Document("$group", new Document()
+                .append("_id", new Document()
+                        .append("scope", new Document("$concat", List.of(TagCount.USER_SCOPE_PREFIX, "$ownerId")))
+                        .append("tag", "$tags"))
+                .append("count", new Document("$sum", 1)));
+        Document countPublic = new Document("$group", new Document()
+                .append("_id", new Document()
+                        .append("scope", TagCount.PUBLIC_SCOPE)
+                        .append("tag", "$tags"))
+                .append("count", new Document("$sum", 1)));
+        return List.of(
+                new Document("$unwind", "$tags"),
+                countByOwner,
+                new Document("$unionWith", new Document()
+                        .append("coll", files)
+                        .append("pipeline", List.of(
+                                new Document("$match", new Document("visibility", Visibility.PUBLIC.name())),
+                                new Document("$unwind", "$tags"),
+                                countPublic))),
+                new Document("$project", new Document()
+                        .append("_id", new Document("$concat",
+                                List.of("$_id.scope", TagCount.ID_SEPARATOR, "$_id.tag")))
+                        .append("scope", "$_id.scope")
+                        .append("tag", "$_id.tag")
+                        .append("count", 1)),
+                new Document("$out", target));
+    }
+}
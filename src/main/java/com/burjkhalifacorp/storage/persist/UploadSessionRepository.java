@@ -0,0 +1,19 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.persist.models.UploadSession;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface UploadSessionRepository extends MongoRepository<UploadSession, String>, UploadSessionRepositoryCustom {
+    Optional<UploadSession> findByExternalId(UUID externalId);
+
+    // expired sessions which aren't being completed
+    List<UploadSession> findByCreatedDateBeforeAndCompletingFalse(Instant createdDate, Limit limit);
+}
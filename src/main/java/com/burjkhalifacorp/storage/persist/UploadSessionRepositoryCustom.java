@@ -0,0 +1,20 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.persist.models.UploadPart;
+import com.burjkhalifacorp.storage.persist.models.UploadSession;
+
+import java.util.Optional;
+import java.util.UUID;
+
+public interface UploadSessionRepositoryCustom {
+    // Stores uploaded part, returns false if session doesn't exist or is being completed
+    boolean putPart(UUID externalId, UploadPart part);
+
+    // Stores content type detected on the first part
+    void setContentType(UUID externalId, String contentType);
+
+    // Marks session as completing, returns session state or empty if it's already completing
+    Optional<UploadSession> startCompletion(UUID externalId);
+
+    void cancelCompletion(UUID externalId);
+}
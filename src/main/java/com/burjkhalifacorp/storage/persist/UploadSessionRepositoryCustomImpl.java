@@ -0,0 +1,47 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.persist.models.UploadPart;
+import com.burjkhalifacorp.storage.persist.models.UploadSession;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Optional;
+import java.util.UUID;
+
+public class UploadSessionRepositoryCustomImpl implements UploadSessionRepositoryCustom {
+    private final MongoTemplate mongoTemplate;
+
+    public UploadSessionRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public boolean putPart(UUID externalId, UploadPart part) {
+        Query query = Query.query(Criteria.where("externalId").is(externalId).and("completing").is(false));
+        Update update = new Update().set("parts." + part.getPartNumber(), part);
+        return mongoTemplate.updateFirst(query, update, UploadSession.class).getMatchedCount() == 1;
+    }
+
+    @Override
+    public void setContentType(UUID externalId, String contentType) {
+        Query query = Query.query(Criteria.where("externalId").is(externalId));
+        mongoTemplate.updateFirst(query, new Update().set("contentType", contentType), UploadSession.class);
+    }
+
+    @Override
+    public Optional<UploadSession> startCompletion(UUID externalId) {
+        Query query = Query.query(Criteria.where("externalId").is(externalId).and("completing").is(false));
+        Update update = new Update().set("completing", true);
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+                query, update, FindAndModifyOptions.options().returnNew(true), UploadSession.class));
+    }
+
+    @Override
+    public void cancelCompletion(UUID externalId) {
+        Query query = Query.query(Criteria.where("externalId").is(externalId));
+        mongoTemplate.updateFirst(query, new Update().set("completing", false), UploadSession.class);
+    }
+}
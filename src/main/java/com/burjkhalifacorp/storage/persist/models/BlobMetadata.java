@@ -0,0 +1,34 @@
+package com.burjkhalifacorp.storage.persist.models;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+// Content addressed object stored on MinIO, shared by all files with the same SHA-256
+@Document(collection = "blobs_metadata")
+@Data
+public class BlobMetadata {
+    // SHA-256 hex of the content
+    @Id
+    private String hash;
+
+    // MinIO object holding the content
+    @Indexed(unique = true)
+    private String storageKey;
+
+    private long size;
+
+    // size of MinIO object, differs from size when content is encoded
+    private long storedSize;
+
+    // null when content is stored as is, files with the same content share encoding of the first upload
+    private String encoding;
+
+    // number of FileMetadata records pointing to this blob
+    private long refCount;
+
+    private Instant createdDate;
+}
@@ -1,5 +1,6 @@
 package com.burjkhalifacorp.storage.persist.models;
 
+import com.burjkhalifacorp.storage.common.EnrichmentState;
 import com.burjkhalifacorp.storage.common.Visibility;
 import jakarta.validation.constraints.NotEmpty;
 
@@ -12,6 +13,7 @@ import org.springframework.data.mongodb.core.mapping.Document;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.UUID;
@@ -19,9 +21,35 @@ import java.util.UUID;
 @Document(collection = "files_metadata")
 @CompoundIndex(name = "owner_id_filename_unique_idx", def = "{'ownerId': 1, 'filename': 1}", unique = true)
 @CompoundIndex(name = "owner_id_hash_unique_idx", def = "{'ownerId': 1, 'hash': 1}", unique = true)
-@CompoundIndex(name = "tags_visibility_idx", def = "{'tags': 1, 'visibility': 1}")
+// listings filter by owner or visibility, optionally by tags, and sort by one field with _id as tie breaker
+// in the same direction, descending listings scan these indexes backward
+@CompoundIndex(name = "owner_id_filename_id_idx", def = "{'ownerId': 1, 'filename': 1, '_id': 1}")
+@CompoundIndex(name = "owner_id_upload_date_id_idx", def = "{'ownerId': 1, 'uploadDate': 1, '_id': 1}")
+@CompoundIndex(name = "owner_id_tags_sort_key_id_idx", def = "{'ownerId': 1, 'tagsSortKey': 1, '_id': 1}")
+@CompoundIndex(name = "owner_id_content_type_id_idx", def = "{'ownerId': 1, 'contentType': 1, '_id': 1}")
+@CompoundIndex(name = "owner_id_size_id_idx", def = "{'ownerId': 1, 'size': 1, '_id': 1}")
+@CompoundIndex(name = "owner_id_tags_filename_id_idx", def = "{'ownerId': 1, 'tags': 1, 'filename': 1, '_id': 1}")
+@CompoundIndex(name = "owner_id_tags_upload_date_id_idx", def = "{'ownerId': 1, 'tags': 1, 'uploadDate': 1, '_id': 1}")
+@CompoundIndex(name = "owner_id_tags_tags_sort_key_id_idx", def = "{'ownerId': 1, 'tags': 1, 'tagsSortKey': 1, '_id': 1}")
+@CompoundIndex(name = "owner_id_tags_content_type_id_idx", def = "{'ownerId': 1, 'tags': 1, 'contentType': 1, '_id': 1}")
+@CompoundIndex(name = "owner_id_tags_size_id_idx", def = "{'ownerId': 1, 'tags': 1, 'size': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_filename_id_idx", def = "{'visibility': 1, 'filename': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_upload_date_id_idx", def = "{'visibility': 1, 'uploadDate': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_tags_sort_key_id_idx", def = "{'visibility': 1, 'tagsSortKey': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_content_type_id_idx", def = "{'visibility': 1, 'contentType': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_size_id_idx", def = "{'visibility': 1, 'size': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_tags_filename_id_idx", def = "{'visibility': 1, 'tags': 1, 'filename': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_tags_upload_date_id_idx", def = "{'visibility': 1, 'tags': 1, 'uploadDate': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_tags_tags_sort_key_id_idx", def = "{'visibility': 1, 'tags': 1, 'tagsSortKey': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_tags_content_type_id_idx", def = "{'visibility': 1, 'tags': 1, 'contentType': 1, '_id': 1}")
+@CompoundIndex(name = "visibility_tags_size_id_idx", def = "{'visibility': 1, 'tags': 1, 'size': 1, '_id': 1}")
+// sweep of files left pending by rejected or lost enrichment, oldest first
+@CompoundIndex(name = "enrichment_upload_date_idx", def = "{'enrichment': 1, 'uploadDate': 1}")
 @Data
 public class FileMetadata {
+    // lower than any tag character, so files are ordered by sorted tag lists
+    public static final String TAGS_SORT_KEY_SEPARATOR = "\u0001";
+
     @Id
     private String id;
 
@@ -35,11 +63,30 @@ public class FileMetadata {
 
     private String hash;
 
-    @Indexed
+    // MinIO object with content, shared between files with the same hash (see BlobMetadata).
+    // Files uploaded before content addressing have no key and are stored under externalId.
+    // Files of blob which object is lost are found by it
+    @Indexed(name = "storage_key_idx", sparse = true)
+    private String storageKey;
+
+    // externalId as string for files which own their object, absent for files sharing a blob. Reconciler
+    // walks own objects in key order by it, binary UUIDs aren't ordered as their strings
+    @Indexed(name = "own_object_key_idx", unique = true, sparse = true)
+    private String ownObjectKey;
+
     private List<String> tags;
 
+    // scalar sort key of tags, sorting by array field itself can't use index
+    private String tagsSortKey;
+
     private long size;
 
+    // size of MinIO object, differs from size when content is encoded. Absent for files stored before encoding
+    private long storedSize;
+
+    // encoding of MinIO object taken from its blob, null when content is stored as is
+    private String encoding;
+
     private Visibility visibility;
 
     @NotEmpty(message = "contentType must not be empty")
@@ -47,7 +94,21 @@ public class FileMetadata {
 
     private Instant uploadDate;
 
+    // null for files stored before enrichment or with enrichment disabled
+    private EnrichmentState enrichment;
+
+    // set when pending file is taken again by sweep, other sweeps skip it until retry delay passes
+    private Instant enrichmentClaimDate;
+
+    // result of stored content check against hash and size, null until enrichment is done.
+    // False also when reconciler found the object missing
+    private Boolean contentVerified;
+
+    // set by enrichment extractors, e.g. image dimensions
+    private Map<String, String> attributes;
+
     public void setTags(Set<String> tags) {
         this.tags = new ArrayList<>(new TreeSet<>(tags)); // sort tags
+        this.tagsSortKey = String.join(TAGS_SORT_KEY_SEPARATOR, this.tags);
     }
 }
@@ -0,0 +1,30 @@
+package com.burjkhalifacorp.storage.persist.models;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+// One-off task over stored data, run by the instance which claims it. Claim of instance which died
+// is taken over when its lease ends, done task isn't run again
+@Document(collection = "migrations")
+@Data
+public class Migration {
+    public static final String TAGS_SORT_KEY = "tags-sort-key";
+    public static final String OWN_OBJECT_KEY = "own-object-key";
+    // the first count of tags of existing files
+    public static final String TAG_COUNTS = "tag-counts";
+    // recount on demand, claimed again by every rebuild and never done
+    public static final String TAG_COUNTS_REBUILD = "tag-counts-rebuild";
+
+    @Id
+    private String id;
+
+    private boolean done;
+
+    // claim is held until then
+    private Instant leaseUntil;
+
+    private Instant doneAt;
+}
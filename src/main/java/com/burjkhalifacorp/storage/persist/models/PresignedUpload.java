@@ -0,0 +1,47 @@
+package com.burjkhalifacorp.storage.persist.models;
+
+import com.burjkhalifacorp.storage.common.Visibility;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+// Upload of a file which client puts to MinIO by presigned URL, file is created on completion
+@Document(collection = "presigned_uploads")
+@Data
+public class PresignedUpload {
+    @Id
+    private String id;
+
+    @Indexed(unique = true)
+    private UUID externalId;
+
+    private String ownerId;
+
+    private String filename;
+
+    private List<String> tags;
+
+    private Visibility visibility;
+
+    // content type declared by user, could be empty
+    private String declaredContentType;
+
+    // MinIO object the URL is signed for, becomes id of created file
+    private String storageKey;
+
+    // abandoned uploads are dropped, objects put by them are left to reconciler
+    @Indexed(expireAfter = "1d")
+    private Instant createdDate;
+
+    public void setTags(Set<String> tags) {
+        this.tags = new ArrayList<>(new TreeSet<>(tags)); // sort tags
+    }
+}
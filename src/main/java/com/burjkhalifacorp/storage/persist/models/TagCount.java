@@ -0,0 +1,46 @@
+package com.burjkhalifacorp.storage.persist.models;
+
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// Number of files having a tag, kept per owner and for public files. Maintained incrementally as files
+// are created, deleted and retagged, so tag statistics don't scan files
+@Document(collection = "tag_counts")
+// top tags of a scope are read in index order
+@CompoundIndex(name = "scope_count_tag_idx", def = "{'scope': 1, 'count': -1, 'tag': 1}")
+@Data
+public class TagCount {
+    public static final String PUBLIC_SCOPE = "public";
+    public static final String USER_SCOPE_PREFIX = "user:";
+    // lower than any tag character, the same as in tags sort key
+    public static final String ID_SEPARATOR = FileMetadata.TAGS_SORT_KEY_SEPARATOR;
+
+    // scope and tag, so counter is found and upserted by _id
+    @Id
+    private String id;
+
+    private String scope;
+
+    private String tag;
+
+    private long count;
+
+    public static String userScope(String ownerId) {
+        return USER_SCOPE_PREFIX + ownerId;
+    }
+
+    public static String idOf(String scope, String tag) {
+        return scope + ID_SEPARATOR + tag;
+    }
+
+    public static TagCount of(String scope, String tag, long count) {
+        TagCount tagCount = new TagCount();
+        tagCount.setId(idOf(scope, tag));
+        tagCount.setScope(scope);
+        tagCount.setTag(tag);
+        tagCount.setCount(count);
+        return tagCount;
+    }
+}
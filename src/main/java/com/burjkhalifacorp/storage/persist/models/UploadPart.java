@@ -0,0 +1,20 @@
+package com.burjkhalifacorp.storage.persist.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UploadPart {
+    private int partNumber;
+
+    // MinIO part etag, required to complete multipart upload
+    private String etag;
+
+    private long size;
+
+    // SHA-256 hex of the part content
+    private String hash;
+}
@@ -0,0 +1,62 @@
+package com.burjkhalifacorp.storage.persist.models;
+
+import com.burjkhalifacorp.storage.common.Visibility;
+import lombok.Data;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+// Upload of a file in parts backed by MinIO multipart upload
+@Document(collection = "upload_sessions")
+@Data
+public class UploadSession {
+    @Id
+    private String id;
+
+    @Indexed(unique = true)
+    private UUID externalId;
+
+    private String ownerId;
+
+    private String filename;
+
+    private List<String> tags;
+
+    private Visibility visibility;
+
+    // content type declared by user, could be empty
+    private String declaredContentType;
+
+    // detected from header of the first part
+    private String contentType;
+
+    // MinIO object the parts are uploaded to, becomes id of created file
+    private String storageKey;
+
+    // MinIO multipart upload id
+    private String uploadId;
+
+    // parts by number, every part is set with its own update so parallel uploads don't conflict
+    private Map<String, UploadPart> parts = new HashMap<>();
+
+    // set while session is being completed, parts are rejected meanwhile
+    private boolean completing;
+
+    // abandoned sessions are aborted with their MinIO parts after upload-sessions.expiry,
+    // records left by failed aborts are dropped by the index
+    @Indexed(expireAfter = "7d")
+    private Instant createdDate;
+
+    public void setTags(Set<String> tags) {
+        this.tags = new ArrayList<>(new TreeSet<>(tags)); // sort tags
+    }
+}
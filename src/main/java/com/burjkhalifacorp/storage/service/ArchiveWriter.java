@@ -0,0 +1,159 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.api.models.ArchiveFormat;
+import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.service.models.StoredFile;
+import com.burjkhalifacorp.storage.utils.TarOutputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+// Streams files into zip or tar archive as they are read from storage, nothing is staged on disk.
+// Streams of the next entries are opened while the current one is written, so object storage
+// latency is paid once per prefetch window instead of once per file. Memory doesn't depend
+// on archive size: only prefetched responses and archive stream buffers are held.
+@Slf4j
+@Component
+public class ArchiveWriter {
+    @Value("${downloads.archive-prefetch}")
+    private int prefetch;
+
+    public void write(Iterator<StoredFile> files, ArchiveFormat format, OutputStream outputStream) throws IOException {
+        Deque<PendingEntry> pending = new ArrayDeque<>();
+        Set<String> names = new HashSet<>();
+        try {
+            EntryWriter writer = format == ArchiveFormat.ZIP
+                    ? new ZipEntryWriter(outputStream)
+                    : new TarEntryWriter(outputStream);
+            fill(pending, files);
+            while (!pending.isEmpty()) {
+                PendingEntry entry = pending.poll();
+                // the next response is requested before the current one is awaited
+                fill(pending, files);
+                try (InputStream fileStream = await(entry.stream())) {
+                    writer.write(uniqueName(entry.metadata().getFilename(), names), entry.metadata(), fileStream);
+                }
+            }
+            writer.finish();
+        } catch (Exception ex) {
+            log.error("error occurred during archive download: {}", ex.getMessage());
+            pending.forEach(entry -> entry.stream().thenAccept(ArchiveWriter::closeQuietly));
+            throw ex;
+        }
+    }
+
+    private void fill(Deque<PendingEntry> pending, Iterator<StoredFile> files) {
+        while (pending.size() < prefetch && files.hasNext()) {
+            StoredFile file = files.next();
+            pending.add(new PendingEntry(file.getMetadata(), file.openStreamAsync(0, file.getMetadata().getSize())));
+        }
+    }
+
+    private static InputStream await(CompletableFuture<InputStream> stream) throws IOException {
+        try {
+            return stream.join();
+        } catch (CompletionException ex) {
+            throw new IOException("failed to open file of archive", ex.getCause());
+        }
+    }
+
+    // entry names are flat, so path separators in filenames can't place entries outside of extraction directory,
+    // public files of other users may have the same names as own ones
+    static String uniqueName(String filename, Set<String> names) {
+        String name = filename.replace('/', '_').replace('\\', '_');
+        if (name.isEmpty() || name.equals(".") || name.equals("..")) {
+            name = "_" + name;
+        }
+        if (names.add(name)) {
+            return name;
+        }
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        String extension = dot > 0 ? name.substring(dot) : "";
+        for (int i = 1; ; i++) {
+            String candidate = "%s (%d)%s".formatted(base, i, extension);
+            if (names.add(candidate)) {
+                return candidate;
+            }
+        }
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException ex) {
+            log.warn("failed to close prefetched stream: {}", ex.getMessage());
+        }
+    }
+
+    private record PendingEntry(FileMetadataDto metadata, CompletableFuture<InputStream> stream) {
+    }
+
+    private interface EntryWriter {
+        void write(String name, FileMetadataDto metadata, InputStream content) throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static class ZipEntryWriter implements EntryWriter {
+        private final ZipOutputStream zip;
+
+        ZipEntryWriter(OutputStream outputStream) {
+            zip = new ZipOutputStream(outputStream);
+            // entries are deflated on the fly, stored entries would need CRC before content is read
+            zip.setLevel(Deflater.BEST_SPEED);
+        }
+
+        @Override
+        public void write(String name, FileMetadataDto metadata, InputStream content) throws IOException {
+            ZipEntry entry = new ZipEntry(name);
+            if (metadata.getUploadDate() != null) {
+                entry.setLastModifiedTime(FileTime.from(metadata.getUploadDate()));
+            }
+            zip.putNextEntry(entry);
+            content.transferTo(zip);
+            zip.closeEntry();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            zip.finish();
+            zip.flush();
+        }
+    }
+
+    private static class TarEntryWriter implements EntryWriter {
+        private final TarOutputStream tar;
+
+        TarEntryWriter(OutputStream outputStream) {
+            tar = new TarOutputStream(outputStream);
+        }
+
+        @Override
+        public void write(String name, FileMetadataDto metadata, InputStream content) throws IOException {
+            tar.putEntry(name, metadata.getSize(), metadata.getUploadDate());
+            content.transferTo(tar);
+            tar.closeEntry();
+        }
+
+        @Override
+        public void finish() throws IOException {
+            tar.finish();
+        }
+    }
+}
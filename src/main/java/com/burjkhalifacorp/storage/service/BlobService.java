@@ -0,0 +1,125 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.errors.InternalServerErrorException;
+import com.burjkhalifacorp.storage.errors.StorageException;
+import com.burjkhalifacorp.storage.persist.BlobMetadataRepository;
+import com.burjkhalifacorp.storage.persist.models.BlobMetadata;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Keeps one stored object per unique content, files reference it by hash
+@Slf4j
+@Service
+public class BlobService {
+    private final BlobStore blobStore;
+    private final BlobMetadataRepository blobRepository;
+    private final StorageMetrics metrics;
+
+    public BlobService(BlobStore blobStore, BlobMetadataRepository blobRepository, StorageMetrics metrics) {
+        this.blobStore = blobStore;
+        this.blobRepository = blobRepository;
+        this.metrics = metrics;
+    }
+
+    // Takes reference to content with given hash which was just written to stagedKey.
+    // Returns blob that must be used by the file, staged object is dropped if content is already stored.
+    public BlobMetadata attach(
+            String hash, String stagedKey, long size, long storedSize, String encoding) throws StorageException {
+        BlobMetadata blob;
+        try {
+            blob = blobRepository.acquire(hash, stagedKey, size, storedSize, encoding);
+        } catch (RuntimeException ex) {
+            log.error("failed to acquire blob {}: {}", hash, ex.getMessage());
+            removeObject(stagedKey, "rejected");
+            throw new InternalServerErrorException();
+        }
+
+        if (!blob.getStorageKey().equals(stagedKey)) {
+            log.info("content {} already stored as {}, remove staged object {}", hash, blob.getStorageKey(), stagedKey);
+            metrics.countReusedBlob();
+            removeObject(stagedKey, "duplicate");
+        }
+        return blob;
+    }
+
+    // Releases reference to content, object is removed from storage when the last reference is gone
+    public void detach(String hash) {
+        Optional<BlobMetadata> released = blobRepository.release(hash);
+        if (released.isEmpty()) {
+            log.warn("release of unknown blob {}", hash);
+            return;
+        }
+        if (released.get().getRefCount() > 0) {
+            return;
+        }
+
+        // parallel upload may take the blob again between release and removal, so remove only unreferenced
+        blobRepository.removeIfUnreferenced(hash)
+                .ifPresent(blob -> removeObject(blob.getStorageKey(), "unreferenced"));
+    }
+
+    // Releases references of many files at once, one bulk write for counters and one multi-delete for objects
+    public void detachAll(Collection<String> hashes) {
+        if (hashes.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> references = hashes.stream()
+                .collect(Collectors.groupingBy(Function.identity(), Collectors.summingInt(hash -> 1)));
+        blobRepository.releaseAll(references);
+        collectUnreferenced(references.keySet());
+    }
+
+    // Removes blobs of given hashes and their objects if nobody references them, returns number of removed ones.
+    // Also picks up blobs left unreferenced when removal failed or instance crashed after release
+    public int collectUnreferenced(Collection<String> hashes) {
+        if (hashes.isEmpty()) {
+            return 0;
+        }
+        List<String> storageKeys = new ArrayList<>();
+        for (BlobMetadata blob : blobRepository.findUnreferenced(hashes)) {
+            // the same check as in detach, blob could be taken again after it was found
+            blobRepository.removeIfUnreferenced(blob.getHash())
+                    .ifPresent(removed -> storageKeys.add(removed.getStorageKey()));
+        }
+        removeObjects(storageKeys, "unreferenced");
+        return storageKeys.size();
+    }
+
+    // Removes objects with multi-delete, failures are logged and objects are left in storage
+    public void removeObjects(Collection<String> storageKeys, String reason) {
+        if (storageKeys.isEmpty()) {
+            return;
+        }
+        log.info("remove {} objects", storageKeys.size());
+        long failed;
+        try {
+            failed = blobStore.deleteAll(storageKeys).size();
+        } catch (Exception ex) {
+            log.error("removeObjects failed: {}", ex.getMessage());
+            metrics.countRemovedObjects(reason, false, storageKeys.size());
+            return;
+        }
+        metrics.countRemovedObjects(reason, true, storageKeys.size() - failed);
+        metrics.countRemovedObjects(reason, false, failed);
+    }
+
+    private void removeObject(String storageKey, String reason) {
+        try {
+            log.info("remove object {}", storageKey);
+            blobStore.delete(storageKey);
+            metrics.countRemovedObject(reason, true);
+        } catch (Exception ex) {
+            metrics.countRemovedObject(reason, false);
+            log.error("removeObject failed for {}: {}", storageKey, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.utils.ByteBufferInputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.tika.Tika;
+import org.apache.tika.mime.MimeType;
+import org.apache.tika.mime.MimeTypeException;
+import org.apache.tika.mime.MimeTypes;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+@Slf4j
+@Component
+public class ContentTypeDetector {
+    public static final String DEFAULT_TYPE = "application/octet-stream";
+
+    private final Tika tika = new Tika();
+
+    public String detect(String contentTypeFromUser, byte[] fileHeader) {
+        return detect(contentTypeFromUser, ByteBuffer.wrap(fileHeader));
+    }
+
+    // header is read in place, detection doesn't copy it
+    public String detect(String contentTypeFromUser, ByteBuffer fileHeader) {
+        String declaredType = declared(contentTypeFromUser);
+        if (!declaredType.equals(DEFAULT_TYPE)) {
+            return declaredType;
+        }
+
+        log.warn("got unknown content type from user {}, will detect internally", contentTypeFromUser);
+        String detectedType = null;
+        try {
+            detectedType = tika.detect(new ByteBufferInputStream(fileHeader));
+        } catch (IOException ex) {
+            log.warn("failed to detect content type: {}", ex.getMessage());
+        }
+        if(detectedType != null && !detectedType.isEmpty()) {
+            return detectedType;
+        }
+
+        log.warn("default content type will be used");
+        // default, if nothing found
+        return DEFAULT_TYPE;
+    }
+
+    // user provided type has priority as mentioned in req, default type if it's unknown
+    public String declared(String contentTypeFromUser) {
+        if (contentTypeFromUser == null || contentTypeFromUser.isEmpty()) {
+            return DEFAULT_TYPE;
+        }
+        try {
+            MimeType mimetype = MimeTypes.getDefaultMimeTypes()
+                    .forName(contentTypeFromUser);
+            return mimetype.toString();
+        } catch (MimeTypeException ex) {
+            return DEFAULT_TYPE;
+        }
+    }
+
+    // detection by magic bytes of header and by file name when magic isn't conclusive, used after upload
+    // for files which type is still the default one
+    public String detectWithName(byte[] fileHeader, String filename) {
+        try {
+            String detectedType = tika.detect(fileHeader, filename);
+            if (detectedType != null && !detectedType.isEmpty()) {
+                return detectedType;
+            }
+        } catch (RuntimeException ex) {
+            log.warn("failed to detect content type of {}: {}", filename, ex.getMessage());
+        }
+        return DEFAULT_TYPE;
+    }
+}
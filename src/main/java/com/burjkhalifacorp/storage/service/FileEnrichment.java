@@ -0,0 +1,199 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.common.AppConstants;
+import com.burjkhalifacorp.storage.common.EnrichmentState;
+import com.burjkhalifacorp.storage.config.EnrichmentConfig;
+import com.burjkhalifacorp.storage.persist.FileMetadataRepository;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Pattern;
+
+// Completes metadata of uploaded files after upload is acknowledged, so upload takes only transfer
+// and one insert. Stored object is read back once: content type of files without declared one is
+// detected by header and file name, extractors read attributes from header and the whole content
+// is checked against hash and size. Every result is written as soon as it's ready
+@Slf4j
+@Component
+public class FileEnrichment {
+    private static final Pattern LEGACY_SESSION_HASH = Pattern.compile("[0-9a-f]{64}-\\d+");
+
+    private final BlobStore blobStore;
+    private final FileMetadataRepository fileRepository;
+    private final FileMetadataCache metadataCache;
+    private final ContentTypeDetector contentTypeDetector;
+    private final StorageCompression compression;
+    private final List<MetadataExtractor> extractors;
+    private final Executor executor;
+    private final StorageMetrics metrics;
+
+    @Value("${enrichment.enabled}")
+    private boolean enabled;
+
+    @Value("${enrichment.extractors}")
+    private Set<String> extractorNames;
+
+    @Value("${enrichment.retry-after}")
+    private Duration retryAfter;
+
+    @Value("${enrichment.sweep-batch-size}")
+    private int sweepBatchSize;
+
+    public FileEnrichment(
+            BlobStore blobStore,
+            FileMetadataRepository fileRepository,
+            FileMetadataCache metadataCache,
+            ContentTypeDetector contentTypeDetector,
+            StorageCompression compression,
+            List<MetadataExtractor> extractors,
+            @Qualifier(EnrichmentConfig.EXECUTOR_NAME) Executor executor,
+            StorageMetrics metrics
+    ) {
+        this.blobStore = blobStore;
+        this.fileRepository = fileRepository;
+        this.metadataCache = metadataCache;
+        this.contentTypeDetector = contentTypeDetector;
+        this.compression = compression;
+        this.extractors = extractors;
+        this.executor = executor;
+        this.metrics = metrics;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // File must be saved already. When workers are busy it stays PENDING with provisional content type,
+    // it's still downloadable as is
+    public void submit(FileMetadata metadata) {
+        try {
+            executor.execute(() -> enrich(metadata));
+        } catch (RejectedExecutionException ex) {
+            log.warn("enrichment of file {} rejected, queue is full", metadata.getExternalId());
+            metrics.countRejectedEnrichment();
+        }
+    }
+
+    // Files rejected by full queue or lost with instance which was enriching them stay PENDING,
+    // they are claimed and submitted again once retryAfter passes since upload or previous claim
+    @Scheduled(initialDelayString = "${enrichment.sweep-interval}", fixedDelayString = "${enrichment.sweep-interval}")
+    public void sweep() {
+        if (!enabled) {
+            return;
+        }
+        List<FileMetadata> stale;
+        try {
+            stale = fileRepository.claimStaleEnrichments(Instant.now().minus(retryAfter), sweepBatchSize);
+        } catch (RuntimeException ex) {
+            log.error("failed to claim pending enrichments: {}", ex.getMessage());
+            return;
+        }
+        if (!stale.isEmpty()) {
+            log.info("submit {} files left pending to enrichment", stale.size());
+            metrics.countResubmittedEnrichments(stale.size());
+        }
+        stale.forEach(this::submit);
+    }
+
+    void enrich(FileMetadata metadata) {
+        final UUID fileId = metadata.getExternalId();
+        Timer.Sample sample = metrics.startSample();
+        try (InputStream content = openContent(metadata)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            DigestInputStream digestStream = new DigestInputStream(content, digest);
+            final byte[] header = digestStream.readNBytes(AppConstants.CONTENT_HEADER_SIZE);
+
+            String contentType = metadata.getContentType();
+            if (ContentTypeDetector.DEFAULT_TYPE.equals(contentType)) {
+                contentType = metrics.recordContentTypeDetection(
+                        () -> contentTypeDetector.detectWithName(header, metadata.getFilename()));
+                if (!ContentTypeDetector.DEFAULT_TYPE.equals(contentType)) {
+                    fileRepository.setContentType(fileId, contentType);
+                    metadataCache.invalidate(fileId);
+                }
+            }
+
+            Map<String, String> attributes = extract(fileId, contentType, header);
+            if (!attributes.isEmpty()) {
+                fileRepository.putAttributes(fileId, attributes);
+                metadataCache.invalidate(fileId);
+            }
+
+            long size = header.length + digestStream.transferTo(OutputStream.nullOutputStream());
+            boolean verified = size == metadata.getSize() && hashMatches(metadata.getHash(), digest.digest());
+            if (!verified) {
+                log.error("stored content of file {} doesn't match its size or hash", fileId);
+            }
+            fileRepository.finishEnrichment(fileId, EnrichmentState.DONE, verified);
+            metadataCache.invalidate(fileId);
+            metrics.stopEnrichment(sample, verified ? "verified" : "mismatch");
+        } catch (Exception ex) {
+            log.error("enrichment of file {} failed: {}", fileId, ex.getMessage());
+            metrics.stopEnrichment(sample, "error");
+            try {
+                fileRepository.finishEnrichment(fileId, EnrichmentState.FAILED, null);
+                metadataCache.invalidate(fileId);
+            } catch (RuntimeException updateEx) {
+                log.error("failed to mark enrichment of file {} failed: {}", fileId, updateEx.getMessage());
+            }
+        }
+    }
+
+    // failed extractor doesn't stop the others
+    private Map<String, String> extract(UUID fileId, String contentType, byte[] header) {
+        Map<String, String> attributes = new HashMap<>();
+        for (MetadataExtractor extractor : extractors) {
+            if (!extractorNames.contains(extractor.getName()) || !extractor.supports(contentType)) {
+                continue;
+            }
+            try {
+                attributes.putAll(extractor.extract(header));
+            } catch (Exception ex) {
+                log.warn("extractor {} failed for file {}: {}", extractor.getName(), fileId, ex.getMessage());
+            }
+        }
+        return attributes;
+    }
+
+    // content as uploaded, decoded if it's stored encoded. Decoded content isn't bounded by file size,
+    // so content longer than recorded one is caught, gzip checks its own CRC at the end
+    private InputStream openContent(FileMetadata metadata) throws Exception {
+        // files which own their object have no storage key, object is keyed by file id
+        String storageKey = metadata.getStorageKey() != null
+                ? metadata.getStorageKey()
+                : metadata.getExternalId().toString();
+        InputStream object = blobStore.get(storageKey).get();
+        return metadata.getEncoding() == null
+                ? object
+                : compression.decode(metadata.getEncoding(), object, 0, Long.MAX_VALUE);
+    }
+
+    // Content of presigned uploads is known by MinIO ETag only, and session uploads stored before they were
+    // hashed by content have SHA-256 of part hashes with part count. Only size is checked for both
+    private static boolean hashMatches(String hash, byte[] digest) {
+        if (PresignedUploadService.isEtagHash(hash) || LEGACY_SESSION_HASH.matcher(hash).matches()) {
+            return true;
+        }
+        return hash.equals(HexFormat.of().formatHex(digest));
+    }
+}
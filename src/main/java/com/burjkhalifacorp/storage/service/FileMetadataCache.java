@@ -0,0 +1,66 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.persist.FileMetadataRepository;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.service.models.FileMetadataChangedEvent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+
+// Read-through cache of file metadata for downloads, so hot files skip Mongo lookup.
+// Entries are shared, callers must not modify returned metadata.
+@Slf4j
+@Component
+public class FileMetadataCache {
+    private final FileMetadataRepository fileRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Cache<UUID, FileMetadata> cache;
+
+    public FileMetadataCache(
+            FileMetadataRepository fileRepository,
+            ApplicationEventPublisher eventPublisher,
+            MeterRegistry meterRegistry,
+            @Value("${metadata-cache.max-size}") long maxSize,
+            @Value("${metadata-cache.ttl}") Duration ttl) {
+        this.fileRepository = fileRepository;
+        this.eventPublisher = eventPublisher;
+        // ttl bounds staleness of entries changed by other instances if invalidation channel is off
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "file-metadata");
+    }
+
+    public Optional<FileMetadata> findByExternalId(UUID fileId) {
+        // missing files aren't cached, loader returning null stores nothing
+        return Optional.ofNullable(
+                cache.get(fileId, id -> fileRepository.findByExternalId(id).orElse(null)));
+    }
+
+    // Drops entry here and on other instances
+    public void invalidate(UUID fileId) {
+        cache.invalidate(fileId);
+        eventPublisher.publishEvent(new FileMetadataChangedEvent(fileId));
+    }
+
+    // Drops entry on this instance only, used for changes received from other instances
+    public void invalidateLocal(UUID fileId) {
+        cache.invalidate(fileId);
+    }
+
+    // Drops all entries on this instance, used when changes made by other instances may be missed
+    public void invalidateAllLocal() {
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,141 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.common.AppConstants;
+import com.burjkhalifacorp.storage.common.EnrichmentState;
+import com.burjkhalifacorp.storage.errors.BadRequestException;
+import com.burjkhalifacorp.storage.errors.FileDuplicatedException;
+import com.burjkhalifacorp.storage.errors.InternalServerErrorException;
+import com.burjkhalifacorp.storage.errors.StorageException;
+import com.burjkhalifacorp.storage.mappers.FileMetadataMapper;
+import com.burjkhalifacorp.storage.persist.FileMetadataRepository;
+import com.burjkhalifacorp.storage.persist.models.BlobMetadata;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+// Creation of file records for content stored on MinIO, shared by direct and session uploads
+@Slf4j
+@Service
+public class FileMetadataService {
+    private final FileMetadataRepository fileRepository;
+    private final FileMetadataMapper fileMetadataMapper;
+    private final BlobService blobService;
+    private final FileEnrichment enrichment;
+    private final TagCountService tagCounts;
+    private final StorageMetrics metrics;
+
+    public FileMetadataService(
+            FileMetadataRepository fileRepository,
+            FileMetadataMapper fileMetadataMapper,
+            BlobService blobService,
+            FileEnrichment enrichment,
+            TagCountService tagCounts,
+            StorageMetrics metrics) {
+        this.fileRepository = fileRepository;
+        this.fileMetadataMapper = fileMetadataMapper;
+        this.blobService = blobService;
+        this.enrichment = enrichment;
+        this.tagCounts = tagCounts;
+        this.metrics = metrics;
+    }
+
+    // Rejects known duplicates before content is transferred, unique indexes still guard races.
+    // Hash is optional as it's not always known before transfer
+    public void rejectKnownDuplicates(String ownerId, String filename, String hash) throws StorageException {
+        if (fileRepository.existsByOwnerIdAndFilename(ownerId, filename)) {
+            log.warn("file with the same name already exist {}", filename);
+            metrics.countDuplicate("name");
+            throw new FileDuplicatedException();
+        }
+        if (hash != null && fileRepository.existsByOwnerIdAndHash(ownerId, hash)) {
+            log.warn("file with the same content already exist {}", hash);
+            metrics.countDuplicate("content");
+            throw new FileDuplicatedException();
+        }
+    }
+
+    // Saves file pointing to content just written to stagedKey, metadata must have hash, sizes and encoding
+    // of staged object set. They are replaced by the ones of stored blob if the same content was stored before.
+    // With enrichment content type may be provisional, it's refined after file is returned
+    public FileMetadataDto create(FileMetadata metadata, String stagedKey) throws StorageException {
+        final String hash = metadata.getHash();
+        final BlobMetadata blob = blobService.attach(
+                hash, stagedKey, metadata.getSize(), metadata.getStoredSize(), metadata.getEncoding());
+        metadata.setStorageKey(blob.getStorageKey());
+        metadata.setEncoding(blob.getEncoding());
+        // blobs stored before encoding have no stored size
+        metadata.setStoredSize(blob.getEncoding() != null ? blob.getStoredSize() : metadata.getSize());
+
+        return save(metadata, () -> {
+            // release content reference as file creation failed
+            log.info("release blob {} as creation of file {} failed", hash, metadata.getExternalId());
+            blobService.detach(hash);
+        });
+    }
+
+    // Saves file which owns object keyed by its id, content isn't shared with other files.
+    // Caller removes the object if file isn't created
+    public FileMetadataDto createWithOwnObject(FileMetadata metadata) throws StorageException {
+        metadata.setStorageKey(null);
+        metadata.setOwnObjectKey(metadata.getExternalId().toString());
+        return save(metadata, () -> {});
+    }
+
+    private FileMetadataDto save(FileMetadata metadata, Runnable onFailure) throws StorageException {
+        if (enrichment.isEnabled()) {
+            metadata.setEnrichment(EnrichmentState.PENDING);
+        }
+
+        final FileMetadata createdFileMetadata;
+        try {
+            createdFileMetadata = fileRepository.save(metadata);
+        } catch (RuntimeException ex) {
+            onFailure.run();
+
+            if (ex instanceof DuplicateKeyException) {
+                log.warn("file already exist ({}, {})", metadata.getFilename(), metadata.getHash());
+                metrics.countDuplicate("conflict");
+                throw new FileDuplicatedException();
+            }
+            log.error("failed to save file metadata: {}", ex.getMessage());
+            throw new InternalServerErrorException();
+        }
+        tagCounts.countCreated(createdFileMetadata);
+
+        if (enrichment.isEnabled()) {
+            enrichment.submit(createdFileMetadata);
+        }
+        return fileMetadataMapper.toDto(createdFileMetadata);
+    }
+
+    public Set<String> normalizeAndValidateTags(Set<String> tags) throws StorageException {
+        if(tags.stream().anyMatch(String::isEmpty)) {
+            throw new BadRequestException("tag shouldn't be empty");
+        }
+        Set<String> lowercaseTags = tags.stream()
+                .map(String::toLowerCase)
+                .collect(Collectors.toSet());
+        return lowercaseTags;
+    }
+
+    // declared SHA-256 of content, lowercase hex
+    public String normalizeAndValidateHash(String hash) throws StorageException {
+        final int SHA256_HEX_LENGTH = 64;
+        String lowercaseHash = hash.trim().toLowerCase();
+        if (lowercaseHash.length() != SHA256_HEX_LENGTH) {
+            throw new BadRequestException("invalid " + AppConstants.CONTENT_SHA256_HEADER);
+        }
+        try {
+            HexFormat.of().parseHex(lowercaseHash);
+        } catch (IllegalArgumentException ex) {
+            throw new BadRequestException("invalid " + AppConstants.CONTENT_SHA256_HEADER);
+        }
+        return lowercaseHash;
+    }
+}
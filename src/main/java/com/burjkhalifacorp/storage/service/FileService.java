@@ -1,13 +1,21 @@
 package com.burjkhalifacorp.storage.service;
 
+import com.burjkhalifacorp.storage.api.models.BatchResultDto;
 import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.api.models.FileSliceDto;
+import com.burjkhalifacorp.storage.api.models.PresignedUrlDto;
+import com.burjkhalifacorp.storage.api.models.TagCountDto;
+import com.burjkhalifacorp.storage.api.models.TagMatch;
 import com.burjkhalifacorp.storage.common.Visibility;
 import com.burjkhalifacorp.storage.errors.StorageException;
 import com.burjkhalifacorp.storage.service.models.StoredFile;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 
 import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
 
@@ -18,6 +26,8 @@ public interface FileService {
             String contentType,
             Visibility visibility,
             Set<String> tags,
+            String expectedHash,
+            long contentLength,
             InputStream inputStream) throws StorageException;
 
     void deleteFile(String userId, UUID fileId) throws StorageException;
@@ -26,7 +36,36 @@ public interface FileService {
 
     StoredFile getFile(String userId, UUID fileId) throws StorageException;
 
-    Page<FileMetadataDto> listPublicFiles(Set<String> tags, Pageable pageable) throws StorageException;
+    // URL of MinIO object signed for limited time, available with presigned mode only
+    PresignedUrlDto getDownloadUrl(String userId, UUID fileId) throws StorageException;
 
-    Page<FileMetadataDto> listUserFiles(String userId, Set<String> tags, Pageable pageable) throws StorageException;
+    Page<FileMetadataDto> listPublicFiles(
+            Set<String> tags, TagMatch tagMatch, Pageable pageable) throws StorageException;
+
+    Page<FileMetadataDto> listUserFiles(
+            String userId, Set<String> tags, TagMatch tagMatch, Pageable pageable) throws StorageException;
+
+    FileSliceDto scrollPublicFiles(
+            Set<String> tags, TagMatch tagMatch, Sort sort, int size, String cursor) throws StorageException;
+
+    FileSliceDto scrollUserFiles(
+            String userId, Set<String> tags, TagMatch tagMatch, Sort sort, int size, String cursor
+    ) throws StorageException;
+
+    // tag counts are maintained as files change, top tags are returned when no tags are given
+    List<TagCountDto> countPublicTags(Set<String> tags, int limit) throws StorageException;
+
+    List<TagCountDto> countUserTags(String userId, Set<String> tags, int limit) throws StorageException;
+
+    // files for archive download, given by ids or by tags of user's own files.
+    // ids are checked before anything is returned, files matching tags are read page by page while iterated
+    Iterator<StoredFile> getFiles(String userId, List<UUID> fileIds, Set<String> tags) throws StorageException;
+
+    // batch operations report result of every file, request fails only if the whole batch is invalid
+    BatchResultDto deleteFiles(String userId, List<UUID> fileIds) throws StorageException;
+
+    BatchResultDto getFilesMetadata(String userId, List<UUID> fileIds) throws StorageException;
+
+    BatchResultDto updateTags(
+            String userId, List<UUID> fileIds, Set<String> addTags, Set<String> removeTags) throws StorageException;
 }
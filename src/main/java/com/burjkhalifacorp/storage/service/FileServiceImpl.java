@@ -1,67 +1,138 @@
 package com.burjkhalifacorp.storage.service;
 
+import com.burjkhalifacorp.storage.api.models.BatchItemResultDto;
+import com.burjkhalifacorp.storage.api.models.BatchResultDto;
 import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.api.models.FileSliceDto;
+import com.burjkhalifacorp.storage.api.models.FileSortBy;
+import com.burjkhalifacorp.storage.api.models.PresignedUrlDto;
+import com.burjkhalifacorp.storage.api.models.TagCountDto;
+import com.burjkhalifacorp.storage.api.models.TagMatch;
+import com.burjkhalifacorp.storage.common.AppConstants;
 import com.burjkhalifacorp.storage.common.Visibility;
 import com.burjkhalifacorp.storage.errors.*;
 import com.burjkhalifacorp.storage.mappers.FileMetadataMapper;
 import com.burjkhalifacorp.storage.persist.FileMetadataRepository;
+import com.burjkhalifacorp.storage.persist.MigrationRepository;
 import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.persist.models.Migration;
+import com.burjkhalifacorp.storage.persist.models.TagCount;
+import com.burjkhalifacorp.storage.service.models.IngestedObject;
 import com.burjkhalifacorp.storage.service.models.StoredFile;
-import com.burjkhalifacorp.storage.utils.UploadHelperInputStream;
-import io.minio.*;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import com.burjkhalifacorp.storage.store.MinioPresigner;
+import com.burjkhalifacorp.storage.utils.CursorCodec;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.tika.Tika;
-import org.apache.tika.mime.MimeType;
-import org.apache.tika.mime.MimeTypeException;
-import org.apache.tika.mime.MimeTypes;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.support.WindowIterator;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.security.DigestInputStream;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
 import java.time.Instant;
-import java.util.HexFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 @Slf4j
 @Service
 public class FileServiceImpl implements FileService {
-    private final MinioClient minioClient;
+    // attempts to retag file which other requests keep changing
+    private static final int MAX_RETAG_ATTEMPTS = 3;
+
+    private final BlobStore blobStore;
     private final FileMetadataRepository fileRepository;
     private final FileMetadataMapper fileMetadataMapper;
-    private final Tika tika = new Tika();
-
-    @Value("${minio.bucket}")
-    private String bucketName;
+    private final BlobService blobService;
+    private final FileMetadataService fileMetadataService;
+    private final ContentTypeDetector contentTypeDetector;
+    private final FileMetadataCache metadataCache;
+    private final StoredFileFactory storedFiles;
+    private final StorageCompression storageCompression;
+    private final FileEnrichment enrichment;
+    private final UploadPipeline uploadPipeline;
+    private final TagCountService tagCounts;
+    private final Optional<MinioPresigner> presigner;
+    private final StorageMetrics metrics;
+    private final MigrationRepository migrationRepository;
+
+    @Value("${migrations.lease}")
+    private Duration migrationLease;
 
     public FileServiceImpl(
-            MinioClient minioClient,
+            BlobStore blobStore,
             FileMetadataRepository fileRepository,
-            FileMetadataMapper fileMetadataMapper) {
-        this.minioClient = minioClient;
+            FileMetadataMapper fileMetadataMapper,
+            BlobService blobService,
+            FileMetadataService fileMetadataService,
+            ContentTypeDetector contentTypeDetector,
+            FileMetadataCache metadataCache,
+            StoredFileFactory storedFiles,
+            StorageCompression storageCompression,
+            FileEnrichment enrichment,
+            UploadPipeline uploadPipeline,
+            TagCountService tagCounts,
+            Optional<MinioPresigner> presigner,
+            StorageMetrics metrics,
+            MigrationRepository migrationRepository) {
+        this.blobStore = blobStore;
         this.fileRepository = fileRepository;
         this.fileMetadataMapper = fileMetadataMapper;
+        this.blobService = blobService;
+        this.fileMetadataService = fileMetadataService;
+        this.contentTypeDetector = contentTypeDetector;
+        this.metadataCache = metadataCache;
+        this.storedFiles = storedFiles;
+        this.storageCompression = storageCompression;
+        this.enrichment = enrichment;
+        this.uploadPipeline = uploadPipeline;
+        this.tagCounts = tagCounts;
+        this.presigner = presigner;
+        this.metrics = metrics;
+        this.migrationRepository = migrationRepository;
     }
 
+    // files stored before tagsSortKey and ownObjectKey were introduced are updated once,
+    // later starts only read the markers
     @PostConstruct
     public void init() {
+        migrate(Migration.TAGS_SORT_KEY, fileRepository::backfillTagsSortKey, "tags sort key");
+        migrate(Migration.OWN_OBJECT_KEY, fileRepository::backfillOwnObjectKey, "own object key");
+    }
+
+    private void migrate(String migration, LongSupplier backfill, String what) {
+        if (!migrationRepository.claim(migration, migrationLease)) {
+            return;
+        }
         try {
-            boolean found = minioClient.bucketExists(
-                    BucketExistsArgs.builder().bucket(bucketName).build());
-            if (!found) {
-                minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
-            }
-        } catch (Exception e) {
-            log.error("failed to create MinIO bucket: {}", e.getMessage());
-            throw new InitializationFailedException("failed to create MinIO bucket", e.getCause());
+            long backfilled = backfill.getAsLong();
+            migrationRepository.complete(migration);
+            log.info("{} set for {} files", what, backfilled);
+        } catch (RuntimeException ex) {
+            migrationRepository.release(migration);
+            throw ex;
         }
     }
 
@@ -72,97 +143,79 @@ public class FileServiceImpl implements FileService {
             String contentType,
             Visibility visibility,
             Set<String> tags,
+            String expectedHash,
+            long contentLength,
             InputStream inputStream
     ) throws StorageException {
-        final int PART_SIZE = 10 * 1024 * 1024;
-
-        MessageDigest digestSha256;
-        try {
-            digestSha256 = MessageDigest.getInstance("SHA-256");
-        } catch (NoSuchAlgorithmException ex) {
-            log.error("SHA-256 not found");
-            throw new InternalServerErrorException();
-        }
+        final Set<String> normalizedTags = fileMetadataService.normalizeAndValidateTags(tags);
+        final String declaredHash = expectedHash != null ? fileMetadataService.normalizeAndValidateHash(expectedHash) : null;
+        fileMetadataService.rejectKnownDuplicates(userId, filename, declaredHash);
 
         final UUID fileId = UUID.randomUUID();
-
-        UploadHelperInputStream helperStream = new UploadHelperInputStream(inputStream);
-        DigestInputStream digestStream = new DigestInputStream(helperStream, digestSha256);
-
-        ObjectWriteResponse response = null;
-        try {
-            log.info("uploading file with id {}", fileId);
-            response = minioClient.putObject(
-                    PutObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(fileId.toString())
-                            .stream(digestStream, -1, PART_SIZE)
-                            .build()
-            );
-            log.info("minio response {}", response.toString());
-        } catch (Exception ex) {
-            log.error("putObject failed: {}", ex.getMessage());
-            throw new InternalServerErrorException();
+        log.info("uploading file with id {}", fileId);
+        // with enrichment the type is detected after upload, unless compression needs it before content is stored
+        final Function<ByteBuffer, String> contentTypeOf = enrichment.isEnabled() && !storageCompression.isEnabled()
+                ? header -> contentTypeDetector.declared(contentType)
+                : header -> metrics.recordContentTypeDetection(() -> contentTypeDetector.detect(contentType, header));
+        IngestedObject stored = uploadPipeline.ingest(fileId.toString(), contentLength, inputStream, contentTypeOf);
+        final String hashHex = stored.getHash();
+        final long size = stored.getSize();
+
+        if(size == 0) {
+            // nothing is written for empty content
+            throw new BadRequestException("empty file isn't acceptable");
         }
 
-        byte[] hashBytes = digestSha256.digest();
-        String hashHex = HexFormat.of().formatHex(hashBytes);
-
-        try {
-            if(helperStream.getTotalBytesCount() == 0) {
-                throw new BadRequestException("empty file isn't acceptable");
-            }
-
-            FileMetadata metadata = new FileMetadata();
-            metadata.setFilename(filename);
-            metadata.setUploadDate(Instant.now());
-            metadata.setExternalId(fileId);
-            metadata.setVisibility(visibility);
-            metadata.setOwnerId(userId);
-            metadata.setTags(normalizeAndValidateTags(tags));
-            metadata.setHash(hashHex);
-            metadata.setSize(helperStream.getTotalBytesCount());
-            metadata.setContentType(detectMimeType(contentType, helperStream.getHeaderBuffer()));
-
-            FileMetadata createdFileMetadata = fileRepository.save(metadata);
-            return fileMetadataMapper.toDto(createdFileMetadata);
-        } catch (RuntimeException ex) {
-            try {
-                // remove object on minio as file creation failed
-                log.info("remove file {} as upload failed", fileId.toString());
-                minioClient.removeObject(
-                        RemoveObjectArgs.builder()
-                                .bucket(bucketName)
-                                .object(fileId.toString())
-                                .build());
-            } catch (Exception ex2) {
-                log.error("removeObject failed in uploadFile: {}", ex.getMessage());
-            }
-
-            if (ex instanceof DuplicateKeyException) {
-                log.warn("file already exist ({}, {})", filename, hashHex);
-                throw new FileDuplicatedException();
-            }
+        if (declaredHash != null && !declaredHash.equals(hashHex)) {
+            log.warn("declared hash {} doesn't match content hash {}", declaredHash, hashHex);
+            removeObject(fileId.toString());
+            throw new BadRequestException("content doesn't match " + AppConstants.CONTENT_SHA256_HEADER);
         }
-        throw new InternalServerErrorException();
+
+        FileMetadata metadata = new FileMetadata();
+        metadata.setFilename(filename);
+        metadata.setUploadDate(Instant.now());
+        metadata.setExternalId(fileId);
+        metadata.setVisibility(visibility);
+        metadata.setOwnerId(userId);
+        metadata.setTags(normalizedTags);
+        metadata.setHash(hashHex);
+        metadata.setSize(size);
+        metadata.setStoredSize(stored.getStoredSize());
+        metadata.setEncoding(stored.getEncoding());
+        metadata.setContentType(stored.getContentType());
+
+        // object is staged under file id, it becomes shared blob or is dropped in favor of existing one
+        return fileMetadataService.create(metadata, fileId.toString());
     }
 
     @Override
     public void deleteFile(String userId, UUID fileId) throws StorageException {
         FileMetadata metadata = getFileMetadataWithAccessCheck(userId, fileId, false);
 
-        try {
-            minioClient.removeObject(
-                    RemoveObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(fileId.toString())
-                            .build());
-        } catch (Exception ex) {
-            log.error("removeObject failed in deleteFile: {}", ex.getMessage());
-            throw new InternalServerErrorException();
+        if (metadata.getStorageKey() == null) {
+            // file uploaded before content addressing owns its object
+            try {
+                blobStore.delete(fileId.toString());
+                metrics.countRemovedObject("unreferenced", true);
+            } catch (Exception ex) {
+                metrics.countRemovedObject("unreferenced", false);
+                log.error("removeObject failed in deleteFile: {}", ex.getMessage());
+                throw new InternalServerErrorException();
+            }
+            fileRepository.removeById(metadata.getId())
+                    .ifPresent(removed -> tagCounts.countDeleted(List.of(removed)));
+            metadataCache.invalidate(fileId);
+            return;
         }
 
-        fileRepository.deleteById(metadata.getId());
+        // file removed by parallel delete is already released
+        Optional<FileMetadata> removed = fileRepository.removeById(metadata.getId());
+        metadataCache.invalidate(fileId);
+        if (removed.isPresent()) {
+            tagCounts.countDeleted(List.of(removed.get()));
+            blobService.detach(removed.get().getHash());
+        }
     }
 
     @Override
@@ -171,12 +224,17 @@ public class FileServiceImpl implements FileService {
 
         if(!metadata.getFilename().equals(newFilename)) {
             metadata.setFilename(newFilename);
+            final boolean renamed;
             try {
-                fileRepository.save(metadata);
+                renamed = fileRepository.rename(metadata.getId(), newFilename);
             } catch (DuplicateKeyException ex) {
                 log.warn("file with the same name already exist {}", newFilename);
                 throw new FileDuplicatedException();
             }
+            metadataCache.invalidate(fileId);
+            if (!renamed) {
+                throw new FileNotFoundException(fileId);
+            }
         }
 
         return fileMetadataMapper.toDto(metadata);
@@ -184,28 +242,83 @@ public class FileServiceImpl implements FileService {
 
     @Override
     public StoredFile getFile(String userId, UUID fileId) throws StorageException {
-        FileMetadata metadata = getFileMetadataWithAccessCheck(userId, fileId, true);
+        // downloads are served from cached metadata, changes go to database directly
+        FileMetadata metadata = metrics.recordMetadataLookup(true, () -> metadataCache.findByExternalId(fileId))
+                .orElseThrow(() -> new FileNotFoundException(fileId));
+        checkAccess(metadata, userId, true);
+        return storedFiles.create(metadata);
+    }
+
+    @Override
+    public Iterator<StoredFile> getFiles(String userId, List<UUID> fileIds, Set<String> tags) throws StorageException {
+        final boolean byIds = fileIds != null && !fileIds.isEmpty();
+        final boolean byTags = tags != null && !tags.isEmpty();
+        if (byIds == byTags) {
+            throw new BadRequestException("either ids or tags should be given");
+        }
+
+        if (byIds) {
+            List<FileMetadata> files = new ArrayList<>();
+            for (Map.Entry<UUID, FileMetadata> entry : findBatch(fileIds).entrySet()) {
+                if (entry.getValue() == null) {
+                    throw new FileNotFoundException(entry.getKey());
+                }
+                checkAccess(entry.getValue(), userId, true);
+                files.add(entry.getValue());
+            }
+            return files.stream().map(storedFiles::create).iterator();
+        }
 
-        GetObjectArgs args = GetObjectArgs.builder()
-                .bucket(bucketName)
-                .object(fileId.toString())
-                .build();
+        final Set<String> normalizedTags = fileMetadataService.normalizeAndValidateTags(tags);
+        final Sort sort = Sort.by(FileSortBy.FILENAME.getDbField()).ascending();
+        WindowIterator<FileMetadata> files = WindowIterator.of(position -> fileRepository.findByOwnerIdAndTagsIn(
+                        userId, normalizedTags, position, Limit.of(AppConstants.MAX_FILES_PAGE_SIZE), sort))
+                .startingAt(ScrollPosition.keyset());
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return files.hasNext();
+            }
+
+            @Override
+            public StoredFile next() {
+                return storedFiles.create(files.next());
+            }
+        };
+    }
+
+    // client gets file from MinIO directly, headers of download are set by signed response-* parameters.
+    // Encoded content is sent as stored with its Content-Encoding, clients decode it themselves
+    @Override
+    public PresignedUrlDto getDownloadUrl(String userId, UUID fileId) throws StorageException {
+        final MinioPresigner signer = presigner.orElseThrow(NotImplementedException::new);
+        FileMetadata metadata = getFileMetadataWithAccessCheck(userId, fileId, true);
 
+        Map<String, String> responseHeaders = new HashMap<>();
+        responseHeaders.put("response-content-type", metadata.getContentType());
+        responseHeaders.put("response-content-disposition", "attachment; filename=" + metadata.getFilename());
+        if (metadata.getEncoding() != null) {
+            responseHeaders.put("response-content-encoding", metadata.getEncoding());
+        }
+        final Instant expiresAt = Instant.now().plus(signer.getExpiry());
         try {
-            InputStream inputStream = minioClient.getObject(args);
-            return new StoredFile(fileMetadataMapper.toDto(metadata), inputStream);
-        } catch (Exception ex) {
-            log.error("getObject failed in getFile: {}", ex.getMessage());
+            String url = signer.presignGet(StoredFileFactory.storageKeyOf(metadata), responseHeaders);
+            return new PresignedUrlDto(url, expiresAt);
+        } catch (IOException ex) {
+            log.error("failed to sign download URL of file {}: {}", fileId, ex.getMessage());
             throw new InternalServerErrorException();
         }
     }
 
     @Override
-    public Page<FileMetadataDto> listPublicFiles(Set<String> tags, Pageable pageable) {
+    public Page<FileMetadataDto> listPublicFiles(Set<String> tags, TagMatch tagMatch, Pageable pageable) {
         Page<FileMetadata> result;
         if(tags != null && !tags.isEmpty()) {
-            Set<String> normalizedTags = normalizeAndValidateTags(tags);
-            result = fileRepository.findAllPublicFilesByTagsIn(normalizedTags, pageable);
+            Set<String> normalizedTags = fileMetadataService.normalizeAndValidateTags(tags);
+            result = tagMatch == TagMatch.ALL
+                    ? fileRepository.findAllPublicFilesByAllTags(
+                            tagCounts.rarestFirst(TagCount.PUBLIC_SCOPE, normalizedTags), pageable)
+                    : fileRepository.findAllPublicFilesByTagsIn(normalizedTags, pageable);
         } else {
             result = fileRepository.findAllPublicFiles(pageable);
         }
@@ -213,64 +326,256 @@ public class FileServiceImpl implements FileService {
     }
 
     @Override
-    public Page<FileMetadataDto> listUserFiles(String userId, Set<String> tags, Pageable pageable) {
+    public Page<FileMetadataDto> listUserFiles(String userId, Set<String> tags, TagMatch tagMatch, Pageable pageable) {
         Page<FileMetadata> result;
         if(tags != null && !tags.isEmpty()) {
-            Set<String> normalizedTags = normalizeAndValidateTags(tags);
-            result = fileRepository.findByOwnerIdAndTagsIn(userId, normalizedTags, pageable);
+            Set<String> normalizedTags = fileMetadataService.normalizeAndValidateTags(tags);
+            result = tagMatch == TagMatch.ALL
+                    ? fileRepository.findByOwnerIdAndAllTags(
+                            userId, tagCounts.rarestFirst(TagCount.userScope(userId), normalizedTags), pageable)
+                    : fileRepository.findByOwnerIdAndTagsIn(userId, normalizedTags, pageable);
         } else {
             result = fileRepository.findByOwnerId(userId, pageable);
         }
         return result.map(fileMetadataMapper::toDto);
     }
 
-    private Set<String> normalizeAndValidateTags(Set<String> tags) throws StorageException {
-        if(tags.stream().anyMatch(String::isEmpty)) {
-            throw new BadRequestException("tag shouldn't be empty");
+    @Override
+    public FileSliceDto scrollPublicFiles(Set<String> tags, TagMatch tagMatch, Sort sort, int size, String cursor) {
+        KeysetScrollPosition position = CursorCodec.decode(sort, cursor);
+        Window<FileMetadata> result;
+        if(tags != null && !tags.isEmpty()) {
+            Set<String> normalizedTags = fileMetadataService.normalizeAndValidateTags(tags);
+            result = tagMatch == TagMatch.ALL
+                    ? fileRepository.findByVisibilityAndAllTags(Visibility.PUBLIC,
+                            tagCounts.rarestFirst(TagCount.PUBLIC_SCOPE, normalizedTags),
+                            position, Limit.of(size), sort)
+                    : fileRepository.findByVisibilityAndTagsIn(
+                            Visibility.PUBLIC, normalizedTags, position, Limit.of(size), sort);
+        } else {
+            result = fileRepository.findByVisibility(Visibility.PUBLIC, position, Limit.of(size), sort);
+        }
+        return toSlice(result, sort);
+    }
+
+    @Override
+    public FileSliceDto scrollUserFiles(
+            String userId, Set<String> tags, TagMatch tagMatch, Sort sort, int size, String cursor) {
+        KeysetScrollPosition position = CursorCodec.decode(sort, cursor);
+        Window<FileMetadata> result;
+        if(tags != null && !tags.isEmpty()) {
+            Set<String> normalizedTags = fileMetadataService.normalizeAndValidateTags(tags);
+            result = tagMatch == TagMatch.ALL
+                    ? fileRepository.findByOwnerIdAndAllTags(userId,
+                            tagCounts.rarestFirst(TagCount.userScope(userId), normalizedTags),
+                            position, Limit.of(size), sort)
+                    : fileRepository.findByOwnerIdAndTagsIn(userId, normalizedTags, position, Limit.of(size), sort);
+        } else {
+            result = fileRepository.findByOwnerId(userId, position, Limit.of(size), sort);
         }
-        Set<String> lowercaseTags = tags.stream()
-                .map(String::toLowerCase)
-                .collect(Collectors.toSet());
-        return lowercaseTags;
+        return toSlice(result, sort);
+    }
+
+    @Override
+    public List<TagCountDto> countPublicTags(Set<String> tags, int limit) throws StorageException {
+        return countTags(TagCount.PUBLIC_SCOPE, tags, limit);
+    }
+
+    @Override
+    public List<TagCountDto> countUserTags(String userId, Set<String> tags, int limit) throws StorageException {
+        return countTags(TagCount.userScope(userId), tags, limit);
+    }
+
+    // counts of given tags, top tags when none are given
+    private List<TagCountDto> countTags(String scope, Set<String> tags, int limit) throws StorageException {
+        if (tags == null || tags.isEmpty()) {
+            return tagCounts.top(scope, limit);
+        }
+        return tagCounts.counts(scope, fileMetadataService.normalizeAndValidateTags(tags));
+    }
+
+    @Override
+    public BatchResultDto deleteFiles(String userId, List<UUID> fileIds) throws StorageException {
+        List<BatchItemResultDto> results = new ArrayList<>();
+        List<FileMetadata> deleted = new ArrayList<>();
+        findBatch(fileIds).forEach((fileId, metadata) -> {
+            BatchItemResultDto failure = checkBatchItem(fileId, metadata, userId, false);
+            if (failure != null) {
+                results.add(failure);
+                return;
+            }
+            deleted.add(metadata);
+            results.add(succeeded(fileId, null));
+        });
+        if (deleted.isEmpty()) {
+            return new BatchResultDto(results);
+        }
+
+        // files are gone first, objects which failed to be removed stay in bucket.
+        // Files removed by parallel delete are already released by it
+        List<FileMetadata> removed = fileRepository.removeAllById(deleted.stream().map(FileMetadata::getId).toList());
+        deleted.forEach(metadata -> metadataCache.invalidate(metadata.getExternalId()));
+        tagCounts.countDeleted(removed);
+
+        List<String> hashes = new ArrayList<>();
+        List<String> ownObjects = new ArrayList<>();
+        for (FileMetadata metadata : removed) {
+            if (metadata.getStorageKey() != null) {
+                hashes.add(metadata.getHash());
+            } else {
+                // file uploaded before content addressing owns its object
+                ownObjects.add(metadata.getExternalId().toString());
+            }
+        }
+        blobService.detachAll(hashes);
+        blobService.removeObjects(ownObjects, "unreferenced");
+        return new BatchResultDto(results);
+    }
+
+    @Override
+    public BatchResultDto getFilesMetadata(String userId, List<UUID> fileIds) throws StorageException {
+        List<BatchItemResultDto> results = new ArrayList<>();
+        findBatch(fileIds).forEach((fileId, metadata) -> {
+            BatchItemResultDto failure = checkBatchItem(fileId, metadata, userId, true);
+            results.add(failure != null ? failure : succeeded(fileId, fileMetadataMapper.toDto(metadata)));
+        });
+        return new BatchResultDto(results);
+    }
+
+    // tags from removeTags are removed first, so tag present in both sets stays
+    @Override
+    public BatchResultDto updateTags(
+            String userId, List<UUID> fileIds, Set<String> addTags, Set<String> removeTags) throws StorageException {
+        final Set<String> added = addTags != null ? fileMetadataService.normalizeAndValidateTags(addTags) : Set.of();
+        final Set<String> removed = removeTags != null ? fileMetadataService.normalizeAndValidateTags(removeTags) : Set.of();
+        if (added.isEmpty() && removed.isEmpty()) {
+            throw new BadRequestException("no tags to add or remove");
+        }
+
+        List<BatchItemResultDto> results = new ArrayList<>();
+        TagCountService.Changes tagChanges = tagCounts.changes();
+        findBatch(fileIds).forEach((fileId, metadata) -> {
+            BatchItemResultDto failure = checkBatchItem(fileId, metadata, userId, false);
+            results.add(failure != null ? failure : retag(fileId, metadata, added, removed, tagChanges));
+        });
+        tagCounts.apply(tagChanges);
+        return new BatchResultDto(results);
     }
 
-    private String detectMimeType(String contentTypeFromUser, byte[] fileHeader) {
-        final String DEFAULT_TYPE = "application/octet-stream";
+    // Tags are written only if they are still the ones read, so parallel retags don't overwrite each other
+    // and counts are changed by tags actually replaced. Changed file is read again and retried
+    private BatchItemResultDto retag(UUID fileId, FileMetadata metadata, Set<String> added, Set<String> removed,
+                                     TagCountService.Changes tagChanges) {
+        for (int attempt = 1; ; attempt++) {
+            final List<String> oldTags = metadata.getTags();
+            Set<String> newTags = oldTags != null ? new HashSet<>(oldTags) : new HashSet<>();
+            newTags.removeAll(removed);
+            newTags.addAll(added);
+            if (newTags.size() > AppConstants.MAX_TAGS) {
+                return failed(fileId, new BadRequestException("Max %d tags allowed".formatted(AppConstants.MAX_TAGS)));
+            }
+            if (newTags.equals(oldTags != null ? new HashSet<>(oldTags) : Set.of())) {
+                return succeeded(fileId, fileMetadataMapper.toDto(metadata));
+            }
+
+            metadata.setTags(newTags);
+            if (fileRepository.updateTags(metadata, oldTags)) {
+                tagChanges.retag(metadata, oldTags);
+                metadataCache.invalidate(metadata.getExternalId());
+                return succeeded(fileId, fileMetadataMapper.toDto(metadata));
+            }
+            if (attempt == MAX_RETAG_ATTEMPTS) {
+                return failed(fileId, new FileModifiedException());
+            }
+            Optional<FileMetadata> current = fileRepository.findById(metadata.getId());
+            if (current.isEmpty()) {
+                return failed(fileId, new FileNotFoundException(fileId));
+            }
+            metadata = current.get();
+        }
+    }
+
+    // whole batch is read with one $in query, ids are deduplicated keeping request order,
+    // missing files are mapped to null
+    private Map<UUID, FileMetadata> findBatch(List<UUID> fileIds) throws StorageException {
+        if (fileIds == null || fileIds.isEmpty()) {
+            throw new BadRequestException("ids shouldn't be empty");
+        }
+        Set<UUID> uniqueIds = new LinkedHashSet<>(fileIds);
+        if (uniqueIds.contains(null)) {
+            throw new BadRequestException("id shouldn't be null");
+        }
+        if (uniqueIds.size() > AppConstants.MAX_BATCH_SIZE) {
+            throw new BadRequestException("Max %d ids allowed".formatted(AppConstants.MAX_BATCH_SIZE));
+        }
+
+        Map<UUID, FileMetadata> found = new HashMap<>();
+        metrics.recordMetadataLookup(false, () -> fileRepository.findByExternalIdIn(uniqueIds))
+                .forEach(metadata -> found.put(metadata.getExternalId(), metadata));
+        Map<UUID, FileMetadata> batch = new LinkedHashMap<>();
+        uniqueIds.forEach(fileId -> batch.put(fileId, found.get(fileId)));
+        return batch;
+    }
+
+    // returns null when file can be processed
+    private BatchItemResultDto checkBatchItem(
+            UUID fileId, FileMetadata metadata, String userId, Boolean doNotCheckAccessIfPublic) {
         try {
-            // user provided type has priority as mentioned in req
-            MimeType mimetype = MimeTypes.getDefaultMimeTypes()
-                    .forName(contentTypeFromUser);
-            if(!mimetype.toString().equals(DEFAULT_TYPE)) {
-                return mimetype.toString();
+            if (metadata == null) {
+                throw new FileNotFoundException(fileId);
             }
-        } catch (MimeTypeException ex) {
+            checkAccess(metadata, userId, doNotCheckAccessIfPublic);
+            return null;
+        } catch (StorageException ex) {
+            return failed(fileId, ex);
         }
+    }
+
+    private static BatchItemResultDto succeeded(UUID fileId, FileMetadataDto file) {
+        return new BatchItemResultDto(fileId, HttpStatus.OK.value(), null, file);
+    }
 
-        log.warn("got unknown content type from user {}, will detect internally", contentTypeFromUser);
-        String detectedType = tika.detect(fileHeader);
-        if(detectedType != null && !detectedType.isEmpty()) {
-            return detectedType;
+    private static BatchItemResultDto failed(UUID fileId, StorageException ex) {
+        return new BatchItemResultDto(fileId, ex.getStatusCode().value(), ex.getMessage(), null);
+    }
+
+    private FileSliceDto toSlice(Window<FileMetadata> window, Sort sort) {
+        String nextCursor = null;
+        if (window.hasNext() && !window.isEmpty()) {
+            KeysetScrollPosition last = (KeysetScrollPosition) window.positionAt(window.size() - 1);
+            nextCursor = CursorCodec.encode(sort, last);
         }
+        return new FileSliceDto(
+                window.map(fileMetadataMapper::toDto).getContent(), nextCursor != null, nextCursor);
+    }
 
-        log.warn("default content type will be used");
-        // default, if nothing found
-        return DEFAULT_TYPE;
+    private void removeObject(String objectKey) {
+        try {
+            blobStore.delete(objectKey);
+            metrics.countRemovedObject("rejected", true);
+        } catch (Exception ex) {
+            metrics.countRemovedObject("rejected", false);
+            log.error("removeObject failed for {}: {}", objectKey, ex.getMessage());
+        }
     }
 
     private FileMetadata getFileMetadataWithAccessCheck(
             String userId, UUID fileId, Boolean doNotCheckAccessIfPublic) throws StorageException {
-        FileMetadata fileMetadata = fileRepository.findByExternalId(fileId)
+        FileMetadata fileMetadata = metrics.recordMetadataLookup(false, () -> fileRepository.findByExternalId(fileId))
                 .orElseThrow(() -> new FileNotFoundException(fileId));
+        checkAccess(fileMetadata, userId, doNotCheckAccessIfPublic);
+        return fileMetadata;
+    }
 
+    private void checkAccess(
+            FileMetadata fileMetadata, String userId, Boolean doNotCheckAccessIfPublic) throws StorageException {
         if(doNotCheckAccessIfPublic && fileMetadata.getVisibility() == Visibility.PUBLIC) {
-            return fileMetadata;
+            return;
         }
 
         if (!fileMetadata.getOwnerId().equals(userId)) {
-            log.warn("attempt of unauthorized access to file {}, user {}", fileId.toString(), userId);
+            log.warn("attempt of unauthorized access to file {}, user {}", fileMetadata.getExternalId().toString(), userId);
             throw new AccessDeniedException();
         }
-
-        return fileMetadata;
     }
 }
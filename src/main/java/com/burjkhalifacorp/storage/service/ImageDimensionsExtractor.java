@@ -0,0 +1,47 @@
+package com.burjkhalifacorp.storage.service;
+
+import org.springframework.stereotype.Component;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+// Width and height of images readable by ImageIO. Readers take dimensions from image header,
+// pixels aren't decoded
+@Component
+public class ImageDimensionsExtractor implements MetadataExtractor {
+    public static final String NAME = "image-dimensions";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean supports(String contentType) {
+        return ImageIO.getImageReadersByMIMEType(contentType).hasNext();
+    }
+
+    @Override
+    public Map<String, String> extract(byte[] header) throws IOException {
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(header))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                return Map.of();
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                return Map.of(
+                        "imageWidth", String.valueOf(reader.getWidth(0)),
+                        "imageHeight", String.valueOf(reader.getHeight(0)));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.burjkhalifacorp.storage.service;
+
+import java.io.IOException;
+import java.util.Map;
+
+// Optional enrichment step which reads attributes of stored content, enabled ones are listed in enrichment.extractors
+public interface MetadataExtractor {
+    String getName();
+
+    boolean supports(String contentType);
+
+    // header is up to AppConstants.CONTENT_HEADER_SIZE first bytes of content as uploaded.
+    // Attribute names must not contain '.' or start with '$', they become field names
+    Map<String, String> extract(byte[] header) throws IOException;
+}
@@ -0,0 +1,162 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.service.models.FileMetadataChangedEvent;
+import com.mongodb.CursorType;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Filters;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.CollectionOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Spreads metadata cache invalidations between instances through capped collection tailed by every instance
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "metadata-cache.invalidation.enabled", havingValue = "true")
+public class MetadataInvalidationChannel {
+    private static final String COLLECTION_NAME = "metadata_invalidations";
+    private static final long RETRY_DELAY_MS = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final FileMetadataCache metadataCache;
+    private final String instanceId = UUID.randomUUID().toString();
+    private volatile boolean running;
+    private Thread listener;
+
+    @Value("${metadata-cache.invalidation.capacity}")
+    private DataSize capacity;
+
+    public MetadataInvalidationChannel(MongoTemplate mongoTemplate, FileMetadataCache metadataCache) {
+        this.mongoTemplate = mongoTemplate;
+        this.metadataCache = metadataCache;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!mongoTemplate.collectionExists(COLLECTION_NAME)) {
+            try {
+                mongoTemplate.createCollection(COLLECTION_NAME,
+                        CollectionOptions.empty().capped().size(capacity.toBytes()));
+            } catch (DataAccessException ex) {
+                // other instance created it first
+                log.info("collection {} not created: {}", COLLECTION_NAME, ex.getMessage());
+            }
+        }
+
+        running = true;
+        listener = new Thread(this::listen, "metadata-invalidation");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        listener.interrupt();
+    }
+
+    @EventListener
+    public void onFileMetadataChanged(FileMetadataChangedEvent event) {
+        Document message = new Document("fileId", event.getFileId().toString())
+                .append("instanceId", instanceId);
+        try {
+            mongoTemplate.getCollection(COLLECTION_NAME).insertOne(message);
+        } catch (RuntimeException ex) {
+            // other instances drop the entry on ttl expiration
+            log.error("failed to publish invalidation of {}: {}", event.getFileId(), ex.getMessage());
+        }
+    }
+
+    // Message ids are generated by publishing instances, their clocks differ, so ids don't follow insertion
+    // order and position is never compared by _id. Cursor reads capped collection in insertion order,
+    // reopened one skips messages up to the last seen. Collection is small, so reading it again is cheap
+    private void listen() {
+        // cache is empty on start, so messages published before the last existing one are useless
+        ObjectId lastSeen = null;
+        boolean started = false;
+        while (running) {
+            try {
+                if (!started) {
+                    lastSeen = lastMessageId();
+                    started = true;
+                }
+                boolean skipping = lastSeen != null;
+                if (skipping && !messageExists(lastSeen)) {
+                    // overwritten before it was read again, messages in between are lost
+                    log.warn("metadata invalidations may be missed, local cache is dropped");
+                    metadataCache.invalidateAllLocal();
+                    skipping = false;
+                }
+                lastSeen = tail(lastSeen, skipping);
+            } catch (RuntimeException ex) {
+                if (running) {
+                    log.warn("metadata invalidation cursor failed: {}", ex.getMessage());
+                }
+            }
+
+            try {
+                Thread.sleep(RETRY_DELAY_MS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Returns the last seen message when cursor dies. Messages seen before a failure are read again,
+    // invalidations are idempotent
+    private ObjectId tail(ObjectId lastSeen, boolean skipping) {
+        try (MongoCursor<Document> cursor = mongoTemplate.getCollection(COLLECTION_NAME)
+                .find()
+                .cursorType(CursorType.TailableAwait)
+                .maxAwaitTime(RETRY_DELAY_MS, TimeUnit.MILLISECONDS)
+                .iterator()) {
+            while (running) {
+                Document message = cursor.tryNext();
+                if (message == null) {
+                    // tailable cursor dies if nothing matched when it was opened
+                    if (cursor.getServerCursor() == null) {
+                        break;
+                    }
+                    continue;
+                }
+                ObjectId messageId = message.getObjectId("_id");
+                if (skipping) {
+                    skipping = !messageId.equals(lastSeen);
+                    continue;
+                }
+                lastSeen = messageId;
+                if (!instanceId.equals(message.getString("instanceId"))) {
+                    metadataCache.invalidateLocal(UUID.fromString(message.getString("fileId")));
+                }
+            }
+        }
+        return lastSeen;
+    }
+
+    // null when there are no messages
+    private ObjectId lastMessageId() {
+        Document last = mongoTemplate.getCollection(COLLECTION_NAME)
+                .find()
+                .sort(new Document("$natural", -1))
+                .limit(1)
+                .first();
+        return last != null ? last.getObjectId("_id") : null;
+    }
+
+    private boolean messageExists(ObjectId messageId) {
+        return mongoTemplate.getCollection(COLLECTION_NAME).find(Filters.eq("_id", messageId)).first() != null;
+    }
+}
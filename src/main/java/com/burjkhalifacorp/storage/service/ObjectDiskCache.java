@@ -0,0 +1,156 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.errors.InitializationFailedException;
+import com.burjkhalifacorp.storage.errors.InternalServerErrorException;
+import com.burjkhalifacorp.storage.service.models.ContentSource;
+import com.burjkhalifacorp.storage.utils.FileRangeInputStream;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+// Keeps whole objects of popular small files on local disk, keyed by content hash so entries never go stale
+@Slf4j
+@Component
+public class ObjectDiskCache {
+    private final Executor fillExecutor;
+    private final MeterRegistry meterRegistry;
+    // fills in progress, misses meanwhile are served from object storage
+    private final Set<String> fills = ConcurrentHashMap.newKeySet();
+    private Cache<String, Path> entries;
+
+    @Value("${object-cache.enabled}")
+    private boolean enabled;
+
+    @Value("${object-cache.directory}")
+    private Path directory;
+
+    @Value("${object-cache.capacity}")
+    private DataSize capacity;
+
+    @Value("${object-cache.max-object-size}")
+    private DataSize maxObjectSize;
+
+    public ObjectDiskCache(@Qualifier("downloadsExecutor") Executor fillExecutor, MeterRegistry meterRegistry) {
+        this.fillExecutor = fillExecutor;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            // index isn't persisted, files left from previous run are unknown
+            FileSystemUtils.deleteRecursively(directory);
+            Files.createDirectories(directory);
+        } catch (IOException ex) {
+            log.error("failed to prepare object cache directory {}: {}", directory, ex.getMessage());
+            throw new InitializationFailedException("failed to prepare object cache directory", ex);
+        }
+
+        // weighted in KiB, so capacity isn't limited by int weight
+        entries = Caffeine.newBuilder()
+                .maximumWeight(capacity.toKilobytes())
+                .<String, Path>weigher((hash, path) -> (int) Math.max(1, path.toFile().length() / 1024))
+                .removalListener((String hash, Path path, RemovalCause cause) -> {
+                    if (path != null) {
+                        // readers holding the file open keep reading it after removal
+                        deleteQuietly(path);
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, "object-disk-cache");
+    }
+
+    public boolean accepts(long size) {
+        return enabled && size <= maxObjectSize.toBytes();
+    }
+
+    // Content is served from local copy, read through FileRangeInputStream, so downloads write it to socket
+    // from direct buffers. On miss the copy is filled in background and the request is served from given
+    // source, so first byte of a miss isn't delayed by download of the whole object
+    public ContentSource cached(String hash, long size, ContentSource source) {
+        return (offset, length) -> {
+            Path cachedPath = entries.getIfPresent(hash);
+            if (cachedPath != null) {
+                InputStream cachedStream = openRange(cachedPath, offset, length);
+                if (cachedStream != null) {
+                    return CompletableFuture.completedFuture(cachedStream);
+                }
+            }
+            fill(hash, size, source);
+            return source.open(offset, length);
+        };
+    }
+
+    // concurrent misses on the same content start one fill, failed fill is retried by the next miss
+    private void fill(String hash, long size, ContentSource source) {
+        if (!fills.add(hash)) {
+            return;
+        }
+
+        // failures are logged by source and store
+        source.open(0, size)
+                .thenApplyAsync(stream -> store(hash, size, stream), fillExecutor)
+                .whenComplete((path, ex) -> fills.remove(hash));
+    }
+
+    private Path store(String hash, long size, InputStream stream) {
+        // unique name, so removal of evicted entry never hits file of later fill
+        final Path path = directory.resolve(hash + "." + UUID.randomUUID());
+        try (InputStream objectStream = stream) {
+            long copied = Files.copy(objectStream, path);
+            if (copied != size) {
+                throw new IOException("expected %d bytes, got %d".formatted(size, copied));
+            }
+        } catch (IOException ex) {
+            log.error("failed to cache object {}: {}", hash, ex.getMessage());
+            deleteQuietly(path);
+            throw new InternalServerErrorException();
+        }
+        entries.put(hash, path);
+        return path;
+    }
+
+    // null when entry was evicted between lookup and open
+    private InputStream openRange(Path path, long offset, long length) {
+        try {
+            return new FileRangeInputStream(FileChannel.open(path, StandardOpenOption.READ), offset, length);
+        } catch (IOException ex) {
+            log.warn("failed to open cached object {}: {}", path, ex.getMessage());
+            return null;
+        }
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            log.error("failed to delete cached object {}: {}", path, ex.getMessage());
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.persist.BlobMetadataRepository;
+import com.burjkhalifacorp.storage.persist.FileMetadataRepository;
+import com.burjkhalifacorp.storage.persist.models.BlobMetadata;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import com.burjkhalifacorp.storage.store.StoredObject;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+// Finds what best-effort cleanups of uploads and deletions leave behind after failures and crashes:
+// objects nobody references, blobs and files which objects are missing and blobs nobody references anymore.
+// Storage listing, blob cursor and cursor of files owning their objects are all ordered by key and are merged
+// in one pass, so memory is bounded by batch size however many objects storage holds. Passes of several instances
+// don't conflict, but they are wasted work, so reconciler is enabled on one instance only
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "reconciler.enabled", havingValue = "true")
+public class OrphanReconciler {
+    public enum OrphanAction {
+        // orphans are only logged and counted
+        REPORT,
+        // orphans are moved under quarantine prefix and removed after retention,
+        // files which objects are missing are marked as failed content check
+        QUARANTINE,
+        // orphans are removed, files which objects are missing are removed with their blobs
+        PURGE
+    }
+
+    private final BlobStore blobStore;
+    private final BlobMetadataRepository blobRepository;
+    private final FileMetadataRepository fileRepository;
+    private final BlobService blobService;
+    private final TagCountService tagCounts;
+    private final FileMetadataCache metadataCache;
+    private final StorageMetrics metrics;
+    private final AtomicLong scanned = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+
+    @Value("${reconciler.batch-size}")
+    private int batchSize;
+
+    // 0 disables the limit
+    @Value("${reconciler.objects-per-second}")
+    private int objectsPerSecond;
+
+    @Value("${reconciler.grace-period}")
+    private Duration gracePeriod;
+
+    @Value("${reconciler.orphan-action}")
+    private OrphanAction orphanAction;
+
+    @Value("${reconciler.quarantine-prefix}")
+    private String quarantinePrefix;
+
+    @Value("${reconciler.quarantine-retention}")
+    private Duration quarantineRetention;
+
+    public OrphanReconciler(
+            BlobStore blobStore,
+            BlobMetadataRepository blobRepository,
+            FileMetadataRepository fileRepository,
+            BlobService blobService,
+            TagCountService tagCounts,
+            FileMetadataCache metadataCache,
+            StorageMetrics metrics
+    ) {
+        this.blobStore = blobStore;
+        this.blobRepository = blobRepository;
+        this.fileRepository = fileRepository;
+        this.blobService = blobService;
+        this.tagCounts = tagCounts;
+        this.metadataCache = metadataCache;
+        this.metrics = metrics;
+        metrics.registerReconcilerProgress(scanned, completed);
+    }
+
+    @Scheduled(initialDelayString = "${reconciler.initial-delay}", fixedDelayString = "${reconciler.interval}")
+    public void run() {
+        Timer.Sample sample = metrics.startSample();
+        try {
+            Report report = reconcile();
+            completed.set(Instant.now().getEpochSecond());
+            metrics.stopReconciliation(sample, true);
+            log.info("reconciliation completed: {}", report);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            log.info("reconciliation interrupted after {} objects", scanned.get());
+        } catch (Exception ex) {
+            metrics.stopReconciliation(sample, false);
+            log.error("reconciliation failed after {} objects: {}", scanned.get(), ex.getMessage());
+        }
+    }
+
+    public Report reconcile() throws Exception {
+        Pass pass = new Pass(Instant.now());
+        scanned.set(0);
+        Iterable<StoredObject> objects = blobStore.list(batchSize);
+        try (Stream<BlobMetadata> blobStream = blobRepository.streamOrderedByStorageKey(batchSize);
+             Stream<FileMetadata> fileStream = fileRepository.streamOwnObjectsOrderedByKey(batchSize)) {
+            Cursor<BlobMetadata> blobs = new Cursor<>(blobStream, BlobMetadata::getStorageKey);
+            Cursor<FileMetadata> files = new Cursor<>(fileStream, FileMetadata::getOwnObjectKey);
+            for (StoredObject object : objects) {
+                String key = object.key();
+                while (blobs.isBefore(key)) {
+                    pass.blobWithoutObject(blobs.next());
+                }
+                while (files.isBefore(key)) {
+                    pass.fileWithoutObject(files.next());
+                }
+                boolean referenced = false;
+                if (blobs.isAt(key)) {
+                    pass.blobWithObject(blobs.next());
+                    referenced = true;
+                }
+                if (files.isAt(key)) {
+                    files.next();
+                    referenced = true;
+                }
+                if (!referenced) {
+                    if (key.startsWith(quarantinePrefix)) {
+                        pass.quarantined(object);
+                    } else {
+                        pass.objectWithoutBlob(object);
+                    }
+                }
+                throttle(pass.startNanos, scanned.incrementAndGet());
+            }
+            while (blobs.hasNext()) {
+                pass.blobWithoutObject(blobs.next());
+            }
+            while (files.hasNext()) {
+                pass.fileWithoutObject(files.next());
+            }
+        }
+        pass.flush();
+        return pass.report();
+    }
+
+    // sleeps once per batch when listing gets ahead of the allowed pace
+    private void throttle(long startNanos, long count) throws InterruptedException {
+        if (objectsPerSecond <= 0 || count % batchSize != 0) {
+            return;
+        }
+        long aheadNanos = count * TimeUnit.SECONDS.toNanos(1) / objectsPerSecond - (System.nanoTime() - startNanos);
+        if (aheadNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(aheadNanos);
+        }
+    }
+
+    // objects which were copied, others are left in place and retried by the next pass
+    private List<String> quarantine(List<String> keys) {
+        List<String> copied = new ArrayList<>();
+        for (String key : keys) {
+            try {
+                blobStore.copy(key, quarantinePrefix + key);
+                copied.add(key);
+            } catch (Exception ex) {
+                log.error("failed to quarantine object {}: {}", key, ex.getMessage());
+            }
+        }
+        return copied;
+    }
+
+    public record Report(long scanned, long recent, long orphans, long missing, long unreferenced, long expired) {
+    }
+
+    // head of key ordered stream, keys are ASCII, so String order is the binary order of storage listing
+    // and MongoDB index
+    private static class Cursor<T> {
+        private final Iterator<T> iterator;
+        private final Function<T, String> keyOf;
+        private T head;
+
+        Cursor(Stream<T> stream, Function<T, String> keyOf) {
+            this.iterator = stream.iterator();
+            this.keyOf = keyOf;
+            head = iterator.hasNext() ? iterator.next() : null;
+        }
+
+        boolean hasNext() {
+            return head != null;
+        }
+
+        boolean isBefore(String key) {
+            return head != null && keyOf.apply(head).compareTo(key) < 0;
+        }
+
+        boolean isAt(String key) {
+            return head != null && keyOf.apply(head).equals(key);
+        }
+
+        T next() {
+            T current = head;
+            head = iterator.hasNext() ? iterator.next() : null;
+            return current;
+        }
+    }
+
+    // state of one pass, holds at most one batch of every kind of findings
+    private class Pass {
+        private final long startNanos = System.nanoTime();
+        // objects and blobs created later may belong to uploads in progress
+        private final Instant settledBefore;
+        private final Instant expiredBefore;
+        private final List<String> orphanCandidates = new ArrayList<>();
+        private final List<String> unreferencedHashes = new ArrayList<>();
+        private final List<String> expiredKeys = new ArrayList<>();
+        private final List<BlobMetadata> missingBlobs = new ArrayList<>();
+        private final List<FileMetadata> missingFiles = new ArrayList<>();
+        private long recent;
+        private long orphans;
+        private long missing;
+        private long unreferenced;
+        private long expired;
+
+        Pass(Instant startedAt) {
+            settledBefore = startedAt.minus(gracePeriod);
+            expiredBefore = startedAt.minus(quarantineRetention);
+        }
+
+        void blobWithObject(BlobMetadata blob) {
+            if (blob.getRefCount() <= 0 && isSettled(blob.getCreatedDate())) {
+                unreferenced(blob);
+            }
+        }
+
+        void blobWithoutObject(BlobMetadata blob) {
+            if (!isSettled(blob.getCreatedDate())) {
+                return;
+            }
+            if (blob.getRefCount() <= 0) {
+                unreferenced(blob);
+                return;
+            }
+            // content is lost, downloads of files with this hash fail
+            log.error("object {} of blob {} is missing", blob.getStorageKey(), blob.getHash());
+            metrics.countReconciled("missing", 1);
+            ++missing;
+            missingBlobs.add(blob);
+            if (missingBlobs.size() >= batchSize) {
+                flushMissing();
+            }
+        }
+
+        void fileWithoutObject(FileMetadata file) {
+            if (!isSettled(file.getUploadDate())) {
+                return;
+            }
+            log.error("object of file {} is missing", file.getExternalId());
+            metrics.countReconciled("missing", 1);
+            ++missing;
+            missingFiles.add(file);
+            if (missingFiles.size() >= batchSize) {
+                flushMissing();
+            }
+        }
+
+        void objectWithoutBlob(StoredObject object) {
+            if (!isSettled(object.lastModified())) {
+                ++recent;
+                return;
+            }
+            orphanCandidates.add(object.key());
+            if (orphanCandidates.size() >= batchSize) {
+                flushOrphans();
+            }
+        }
+
+        void quarantined(StoredObject object) {
+            if (object.lastModified().isAfter(expiredBefore)) {
+                return;
+            }
+            expiredKeys.add(object.key());
+            if (expiredKeys.size() >= batchSize) {
+                flushExpired();
+            }
+        }
+
+        void flush() {
+            flushOrphans();
+            flushMissing();
+            flushUnreferenced();
+            flushExpired();
+        }
+
+        Report report() {
+            return new Report(scanned.get(), recent, orphans, missing, unreferenced, expired);
+        }
+
+        private boolean isSettled(Instant createdDate) {
+            return createdDate == null || createdDate.isBefore(settledBefore);
+        }
+
+        private void unreferenced(BlobMetadata blob) {
+            unreferencedHashes.add(blob.getHash());
+            if (unreferencedHashes.size() >= batchSize) {
+                flushUnreferenced();
+            }
+        }
+
+        // candidates are checked again, cursors could pass the key before the blob or file was created.
+        // Files owning their object are looked up by externalId, so ones without ownObjectKey yet are kept too
+        private void flushOrphans() {
+            if (orphanCandidates.isEmpty()) {
+                return;
+            }
+            Set<String> referenced = new HashSet<>();
+            blobRepository.findByStorageKeyIn(orphanCandidates)
+                    .forEach(blob -> referenced.add(blob.getStorageKey()));
+            List<UUID> fileIds = new ArrayList<>();
+            for (String key : orphanCandidates) {
+                try {
+                    fileIds.add(UUID.fromString(key));
+                } catch (IllegalArgumentException ex) {
+                    // not a file object
+                }
+            }
+            fileRepository.findByExternalIdIn(fileIds).stream()
+                    .filter(file -> file.getStorageKey() == null)
+                    .map(FileMetadata::getExternalId)
+                    .forEach(fileId -> referenced.add(fileId.toString()));
+
+            List<String> keys = orphanCandidates.stream().filter(key -> !referenced.contains(key)).toList();
+            orphanCandidates.clear();
+            if (keys.isEmpty()) {
+                return;
+            }
+            orphans += keys.size();
+            metrics.countReconciled("orphan", keys.size());
+            switch (orphanAction) {
+                case REPORT -> keys.forEach(key -> log.warn("orphan object {}", key));
+                case QUARANTINE -> blobService.removeObjects(quarantine(keys), "orphan");
+                case PURGE -> blobService.removeObjects(keys, "orphan");
+            }
+        }
+
+        // Purged blobs are removed before their files are looked up, so upload of the same content creates
+        // a new blob with its own object and its file isn't taken for lost one
+        private void flushMissing() {
+            if (orphanAction == OrphanAction.REPORT || (missingBlobs.isEmpty() && missingFiles.isEmpty())) {
+                missingBlobs.clear();
+                missingFiles.clear();
+                return;
+            }
+            List<FileMetadata> lost = new ArrayList<>(missingFiles);
+            for (BlobMetadata blob : missingBlobs) {
+                if (orphanAction == OrphanAction.PURGE) {
+                    blobRepository.removeLost(blob.getHash(), blob.getStorageKey());
+                }
+                lost.addAll(fileRepository.findByStorageKey(blob.getStorageKey()));
+            }
+            missingBlobs.clear();
+            missingFiles.clear();
+
+            List<String> ids = lost.stream().map(FileMetadata::getId).toList();
+            if (orphanAction == OrphanAction.PURGE) {
+                lost = fileRepository.removeAllById(ids);
+                tagCounts.countDeleted(lost);
+            } else {
+                fileRepository.markContentMissing(ids);
+            }
+            lost.forEach(file -> metadataCache.invalidate(file.getExternalId()));
+            metrics.countReconciled("lost", lost.size());
+            log.warn("{} files of missing objects are {}", lost.size(),
+                    orphanAction == OrphanAction.PURGE ? "removed" : "marked");
+        }
+
+        private void flushUnreferenced() {
+            int collected = blobService.collectUnreferenced(List.copyOf(unreferencedHashes));
+            unreferencedHashes.clear();
+            unreferenced += collected;
+            metrics.countReconciled("unreferenced", collected);
+        }
+
+        private void flushExpired() {
+            blobService.removeObjects(List.copyOf(expiredKeys), "quarantine-expired");
+            expired += expiredKeys.size();
+            metrics.countReconciled("expired", expiredKeys.size());
+            expiredKeys.clear();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.api.models.PresignedUploadDto;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.errors.*;
+import com.burjkhalifacorp.storage.persist.PresignedUploadRepository;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.persist.models.PresignedUpload;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import com.burjkhalifacorp.storage.store.MinioPresigner;
+import com.burjkhalifacorp.storage.store.ObjectStat;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+// Uploads which client puts to MinIO by presigned URL, service only signs the URL and creates file
+// from stored object on completion. Content isn't read by service, so its SHA-256 is unknown: hash of
+// such files is MinIO ETag with own suffix, it can't match hash of other uploads and content isn't
+// shared by blobs. Every file owns its object keyed by file id. The URL can put to its key until it expires,
+// so content is copied to the key of the file on completion and the URL never reaches a file's object
+@Slf4j
+@Service
+public class PresignedUploadService {
+    // ETag of object put in one request is its MD5, the suffix keeps it apart from SHA-256 hashes
+    private static final String ETAG_HASH_SUFFIX = "-etag";
+
+    private final Optional<MinioPresigner> presigner;
+    private final BlobStore blobStore;
+    private final PresignedUploadRepository uploadRepository;
+    private final FileMetadataService fileMetadataService;
+    private final ContentTypeDetector contentTypeDetector;
+    private final StorageMetrics metrics;
+
+    public PresignedUploadService(
+            Optional<MinioPresigner> presigner,
+            BlobStore blobStore,
+            PresignedUploadRepository uploadRepository,
+            FileMetadataService fileMetadataService,
+            ContentTypeDetector contentTypeDetector,
+            StorageMetrics metrics) {
+        this.presigner = presigner;
+        this.blobStore = blobStore;
+        this.uploadRepository = uploadRepository;
+        this.fileMetadataService = fileMetadataService;
+        this.contentTypeDetector = contentTypeDetector;
+        this.metrics = metrics;
+    }
+
+    // true for hash of file uploaded by presigned URL, it's not SHA-256 of content
+    public static boolean isEtagHash(String hash) {
+        return hash.endsWith(ETAG_HASH_SUFFIX);
+    }
+
+    public PresignedUploadDto createUpload(
+            String userId,
+            String filename,
+            String contentType,
+            Visibility visibility,
+            Set<String> tags
+    ) throws StorageException {
+        final MinioPresigner signer = presigner.orElseThrow(NotImplementedException::new);
+        final Set<String> normalizedTags = fileMetadataService.normalizeAndValidateTags(tags);
+        fileMetadataService.rejectKnownDuplicates(userId, filename, null);
+
+        final String storageKey = UUID.randomUUID().toString();
+        final Instant expiresAt = Instant.now().plus(signer.getExpiry());
+        final String url;
+        try {
+            url = signer.presignPut(storageKey);
+        } catch (IOException ex) {
+            log.error("failed to sign upload URL: {}", ex.getMessage());
+            throw new InternalServerErrorException();
+        }
+
+        PresignedUpload upload = new PresignedUpload();
+        upload.setExternalId(UUID.randomUUID());
+        upload.setOwnerId(userId);
+        upload.setFilename(filename);
+        upload.setTags(normalizedTags);
+        upload.setVisibility(visibility);
+        upload.setDeclaredContentType(contentType);
+        upload.setStorageKey(storageKey);
+        upload.setCreatedDate(Instant.now());
+        uploadRepository.save(upload);
+
+        log.info("created presigned upload {} for object {}", upload.getExternalId(), storageKey);
+        return new PresignedUploadDto(upload.getExternalId(), url, expiresAt);
+    }
+
+    // upload stays open until content is found, so client can retry failed transfer and complete again
+    public FileMetadataDto completeUpload(String userId, UUID uploadId) throws StorageException {
+        final MinioPresigner signer = presigner.orElseThrow(NotImplementedException::new);
+        final PresignedUpload upload = uploadRepository.findByExternalId(uploadId)
+                .orElseThrow(() -> new UploadSessionNotFoundException(uploadId));
+        if (!upload.getOwnerId().equals(userId)) {
+            log.warn("attempt of unauthorized access to presigned upload {}, user {}", uploadId, userId);
+            throw new AccessDeniedException();
+        }
+
+        statObject(signer, upload.getStorageKey())
+                .orElseThrow(() -> new BadRequestException("content isn't uploaded"));
+        // size and ETag are taken from the copy, content put after the copy isn't part of the file
+        final UUID fileId = UUID.randomUUID();
+        copyObject(upload.getStorageKey(), fileId.toString());
+        final ObjectStat stat = statObject(signer, fileId.toString()).orElseThrow(() -> {
+            log.error("copy of presigned upload {} is missing", uploadId);
+            return new InternalServerErrorException();
+        });
+        if (uploadRepository.deleteByExternalId(uploadId) == 0) {
+            // parallel completion made its own copy
+            removeObject(fileId.toString());
+            throw new UploadSessionConflictException();
+        }
+        // URL can put to the key again until it expires, such object is left to orphan reconciliation
+        removeObject(upload.getStorageKey());
+        if (stat.size() == 0) {
+            removeObject(fileId.toString());
+            throw new BadRequestException("empty file isn't acceptable");
+        }
+        metrics.addUploadedBytes(stat.size());
+
+        FileMetadata metadata = new FileMetadata();
+        metadata.setFilename(upload.getFilename());
+        metadata.setUploadDate(Instant.now());
+        metadata.setExternalId(fileId);
+        metadata.setVisibility(upload.getVisibility());
+        metadata.setOwnerId(upload.getOwnerId());
+        metadata.setTags(Set.copyOf(upload.getTags()));
+        metadata.setHash(stat.etag() + ETAG_HASH_SUFFIX);
+        metadata.setSize(stat.size());
+        // content is stored as put by client
+        metadata.setStoredSize(stat.size());
+        // header isn't seen by service, type is detected by enrichment if it's enabled
+        metadata.setContentType(contentTypeDetector.declared(upload.getDeclaredContentType()));
+
+        log.info("completed presigned upload {}, file {}", uploadId, metadata.getExternalId());
+        try {
+            return fileMetadataService.createWithOwnObject(metadata);
+        } catch (StorageException ex) {
+            removeObject(fileId.toString());
+            throw ex;
+        }
+    }
+
+    private void copyObject(String sourceKey, String targetKey) throws StorageException {
+        Timer.Sample sample = metrics.startSample();
+        boolean success = false;
+        try {
+            blobStore.copy(sourceKey, targetKey);
+            success = true;
+        } catch (IOException ex) {
+            log.error("copyObject failed for {}: {}", sourceKey, ex.getMessage());
+            throw new InternalServerErrorException();
+        } finally {
+            metrics.stopObjectOperation(sample, "copyObject", success);
+        }
+    }
+
+    private Optional<ObjectStat> statObject(MinioPresigner signer, String storageKey) throws StorageException {
+        Timer.Sample sample = metrics.startSample();
+        boolean success = false;
+        try {
+            Optional<ObjectStat> stat = signer.stat(storageKey);
+            success = true;
+            return stat;
+        } catch (IOException ex) {
+            log.error("statObject failed for {}: {}", storageKey, ex.getMessage());
+            throw new InternalServerErrorException();
+        } finally {
+            metrics.stopObjectOperation(sample, "statObject", success);
+        }
+    }
+
+    private void removeObject(String objectKey) {
+        try {
+            blobStore.delete(objectKey);
+            metrics.countRemovedObject("rejected", true);
+        } catch (Exception ex) {
+            metrics.countRemovedObject("rejected", false);
+            log.error("removeObject failed for {}: {}", objectKey, ex.getMessage());
+        }
+    }
+}
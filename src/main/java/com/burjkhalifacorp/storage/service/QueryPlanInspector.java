@@ -0,0 +1,129 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.api.models.FileSortBy;
+import com.burjkhalifacorp.storage.api.models.QueryPlanReport;
+import com.burjkhalifacorp.storage.common.EnrichmentState;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.mongodb.ExplainVerbosity;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Explains query shapes of FileMetadataRepository and reports plans with collection scans or in-memory sorts
+@Slf4j
+@Component
+public class QueryPlanInspector {
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${query-plans.check-on-startup}")
+    private boolean checkOnStartup;
+
+    public QueryPlanInspector(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void checkOnStartup() {
+        if (!checkOnStartup) {
+            return;
+        }
+        List<QueryPlanReport> degraded = inspect().stream()
+                .filter(report -> report.isCollectionScan() || report.isInMemorySort())
+                .toList();
+        for (QueryPlanReport report : degraded) {
+            log.warn("query {} {} sorted by {} uses collection scan: {}, in-memory sort: {}",
+                    report.getQuery(), report.getFilter(), report.getSort(),
+                    report.isCollectionScan(), report.isInMemorySort());
+        }
+        log.info("query plans checked, {} degraded", degraded.size());
+    }
+
+    public List<QueryPlanReport> inspect() {
+        // values don't matter for plan selection, only shape of filter and sort
+        final List<String> tags = List.of("tag_1", "tag_2");
+        Map<String, Document> listings = new LinkedHashMap<>();
+        listings.put("findByOwnerId", new Document("ownerId", "user"));
+        listings.put("findByOwnerIdAndTagsIn", new Document("ownerId", "user")
+                .append("tags", new Document("$in", tags)));
+        listings.put("findAllPublicFiles", new Document("visibility", Visibility.PUBLIC.name()));
+        listings.put("findAllPublicFilesByTagsIn", new Document("visibility", Visibility.PUBLIC.name())
+                .append("tags", new Document("$in", tags)));
+        listings.put("findByOwnerIdAndAllTags", new Document("ownerId", "user")
+                .append("tags", new Document("$all", tags)));
+        listings.put("findAllPublicFilesByAllTags", new Document("visibility", Visibility.PUBLIC.name())
+                .append("tags", new Document("$all", tags)));
+
+        List<QueryPlanReport> reports = new ArrayList<>();
+        for (Map.Entry<String, Document> listing : listings.entrySet()) {
+            for (FileSortBy sortBy : FileSortBy.values()) {
+                // page listing sorts by field, keyset listing adds _id in the same direction
+                reports.add(explain(listing.getKey(), listing.getValue(), new Document(sortBy.getDbField(), 1)));
+                reports.add(explain(listing.getKey(), listing.getValue(),
+                        new Document(sortBy.getDbField(), -1).append("_id", -1)));
+            }
+        }
+        reports.add(explain("findByExternalId", new Document("externalId", "id"), null));
+        reports.add(explain("existsByOwnerIdAndFilename",
+                new Document("ownerId", "user").append("filename", "file"), null));
+        reports.add(explain("existsByOwnerIdAndHash",
+                new Document("ownerId", "user").append("hash", "hash"), null));
+        reports.add(explain("claimStaleEnrichments",
+                new Document("enrichment", EnrichmentState.PENDING.name())
+                        .append("uploadDate", new Document("$lt", new Date())),
+                new Document("uploadDate", 1)));
+        reports.add(explain("findByStorageKey", new Document("storageKey", "key"), null));
+        reports.add(explain("streamOwnObjectsOrderedByKey",
+                new Document("ownObjectKey", new Document("$exists", true)), new Document("ownObjectKey", 1)));
+        return reports;
+    }
+
+    private QueryPlanReport explain(String query, Document filter, Document sort) {
+        Document explanation = mongoTemplate.getCollection(mongoTemplate.getCollectionName(FileMetadata.class))
+                .find(filter)
+                .sort(sort)
+                .explain(ExplainVerbosity.QUERY_PLANNER);
+        Document winningPlan = explanation.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+
+        List<String> stages = new ArrayList<>();
+        List<String> indexes = new ArrayList<>();
+        collectStages(winningPlan, stages, indexes);
+        return new QueryPlanReport(
+                query,
+                filter.toJson(),
+                sort != null ? sort.toJson() : null,
+                indexes,
+                stages.contains("COLLSCAN"),
+                // SORT_MERGE of index scans isn't blocking, only SORT is
+                stages.contains("SORT"));
+    }
+
+    // Plan is a tree of stages, newer servers nest it deeper (queryPlan, inputStage, inputStages)
+    private void collectStages(Object node, List<String> stages, List<String> indexes) {
+        if (node instanceof Document document) {
+            if (document.get("stage") instanceof String stage) {
+                stages.add(stage);
+            }
+            if (document.get("indexName") instanceof String indexName) {
+                indexes.add(indexName);
+            }
+            for (Object value : document.values()) {
+                collectStages(value, stages, indexes);
+            }
+        } else if (node instanceof List<?> list) {
+            for (Object value : list) {
+                collectStages(value, stages, indexes);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.errors.InternalServerErrorException;
+import com.burjkhalifacorp.storage.persist.ReactiveBlobMetadataRepository;
+import com.burjkhalifacorp.storage.persist.models.BlobMetadata;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+// Reference counting of BlobService for reactive API. Object removal of BlobStore is blocking,
+// it runs on bounded elastic scheduler
+@Slf4j
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveBlobService {
+    private final BlobStore blobStore;
+    private final ReactiveBlobMetadataRepository blobRepository;
+    private final StorageMetrics metrics;
+
+    public ReactiveBlobService(
+            BlobStore blobStore, ReactiveBlobMetadataRepository blobRepository, StorageMetrics metrics) {
+        this.blobStore = blobStore;
+        this.blobRepository = blobRepository;
+        this.metrics = metrics;
+    }
+
+    // Takes reference to content with given hash which was just written to stagedKey.
+    // Returns blob that must be used by the file, staged object is dropped if content is already stored.
+    public Mono<BlobMetadata> attach(String hash, String stagedKey, long size, long storedSize, String encoding) {
+        return blobRepository.acquire(hash, stagedKey, size, storedSize, encoding)
+                .onErrorResume(ex -> {
+                    log.error("failed to acquire blob {}: {}", hash, ex.getMessage());
+                    return removeObject(stagedKey, "rejected").then(Mono.error(new InternalServerErrorException()));
+                })
+                .flatMap(blob -> {
+                    if (blob.getStorageKey().equals(stagedKey)) {
+                        return Mono.just(blob);
+                    }
+                    log.info("content {} already stored as {}, remove staged object {}",
+                            hash, blob.getStorageKey(), stagedKey);
+                    metrics.countReusedBlob();
+                    return removeObject(stagedKey, "duplicate").thenReturn(blob);
+                });
+    }
+
+    // Releases reference to content, object is removed from storage when the last reference is gone
+    public Mono<Void> detach(String hash) {
+        return blobRepository.release(hash)
+                .switchIfEmpty(Mono.fromRunnable(() -> log.warn("release of unknown blob {}", hash)))
+                .filter(released -> released.getRefCount() <= 0)
+                // parallel upload may take the blob again between release and removal, so remove only unreferenced
+                .flatMap(released -> blobRepository.removeIfUnreferenced(hash))
+                .flatMap(blob -> removeObject(blob.getStorageKey(), "unreferenced"));
+    }
+
+    // failures are logged and object is left in storage
+    public Mono<Void> removeObject(String storageKey, String reason) {
+        return Mono.<Void>fromRunnable(() -> {
+                    log.info("remove object {}", storageKey);
+                    try {
+                        blobStore.delete(storageKey);
+                        metrics.countRemovedObject(reason, true);
+                    } catch (Exception ex) {
+                        metrics.countRemovedObject(reason, false);
+                        log.error("removeObject failed for {}: {}", storageKey, ex.getMessage());
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+}
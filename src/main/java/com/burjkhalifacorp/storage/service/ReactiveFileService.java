@@ -0,0 +1,27 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.service.models.StoredFile;
+import org.springframework.core.io.buffer.DataBuffer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Set;
+import java.util.UUID;
+
+// File operations of reactive profile, errors are signalled as StorageException
+public interface ReactiveFileService {
+    Mono<FileMetadataDto> upload(
+            String userId,
+            String filename,
+            String contentType,
+            Visibility visibility,
+            Set<String> tags,
+            String expectedHash,
+            Flux<DataBuffer> body);
+
+    Mono<Void> deleteFile(String userId, UUID fileId);
+
+    Mono<StoredFile> getFile(String userId, UUID fileId);
+}
@@ -0,0 +1,259 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.common.AppConstants;
+import com.burjkhalifacorp.storage.common.EnrichmentState;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.errors.AccessDeniedException;
+import com.burjkhalifacorp.storage.errors.BadRequestException;
+import com.burjkhalifacorp.storage.errors.FileDuplicatedException;
+import com.burjkhalifacorp.storage.errors.FileNotFoundException;
+import com.burjkhalifacorp.storage.errors.InternalServerErrorException;
+import com.burjkhalifacorp.storage.errors.StorageException;
+import com.burjkhalifacorp.storage.mappers.FileMetadataMapper;
+import com.burjkhalifacorp.storage.persist.ReactiveFileMetadataRepository;
+import com.burjkhalifacorp.storage.persist.models.BlobMetadata;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.service.models.IngestedObject;
+import com.burjkhalifacorp.storage.service.models.StoredFile;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+
+// Upload, download and delete of FileServiceImpl on reactive stack. Files and blobs are read and written
+// with reactive driver, tag counts and cache invalidation are blocking and run on bounded elastic scheduler.
+// Content is stored as is and downloads read metadata from database, not from metadata cache
+@Slf4j
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveFileServiceImpl implements ReactiveFileService {
+    private final BlobStore blobStore;
+    private final ReactiveFileMetadataRepository fileRepository;
+    private final FileMetadataMapper fileMetadataMapper;
+    private final ReactiveBlobService blobService;
+    private final FileMetadataService fileMetadataService;
+    private final ContentTypeDetector contentTypeDetector;
+    private final FileMetadataCache metadataCache;
+    private final StoredFileFactory storedFiles;
+    private final FileEnrichment enrichment;
+    private final ReactiveUploadPipeline uploadPipeline;
+    private final TagCountService tagCounts;
+    private final StorageMetrics metrics;
+
+    public ReactiveFileServiceImpl(
+            BlobStore blobStore,
+            ReactiveFileMetadataRepository fileRepository,
+            FileMetadataMapper fileMetadataMapper,
+            ReactiveBlobService blobService,
+            FileMetadataService fileMetadataService,
+            ContentTypeDetector contentTypeDetector,
+            FileMetadataCache metadataCache,
+            StoredFileFactory storedFiles,
+            FileEnrichment enrichment,
+            ReactiveUploadPipeline uploadPipeline,
+            TagCountService tagCounts,
+            StorageMetrics metrics) {
+        this.blobStore = blobStore;
+        this.fileRepository = fileRepository;
+        this.fileMetadataMapper = fileMetadataMapper;
+        this.blobService = blobService;
+        this.fileMetadataService = fileMetadataService;
+        this.contentTypeDetector = contentTypeDetector;
+        this.metadataCache = metadataCache;
+        this.storedFiles = storedFiles;
+        this.enrichment = enrichment;
+        this.uploadPipeline = uploadPipeline;
+        this.tagCounts = tagCounts;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Mono<FileMetadataDto> upload(
+            String userId,
+            String filename,
+            String contentType,
+            Visibility visibility,
+            Set<String> tags,
+            String expectedHash,
+            Flux<DataBuffer> body) {
+        return Mono.defer(() -> {
+            final Set<String> normalizedTags = fileMetadataService.normalizeAndValidateTags(tags);
+            final String declaredHash = expectedHash != null
+                    ? fileMetadataService.normalizeAndValidateHash(expectedHash) : null;
+
+            final UUID fileId = UUID.randomUUID();
+            // with enrichment the type is detected after upload
+            final Function<ByteBuffer, String> contentTypeOf = enrichment.isEnabled()
+                    ? header -> contentTypeDetector.declared(contentType)
+                    : header -> metrics.recordContentTypeDetection(() -> contentTypeDetector.detect(contentType, header));
+            return rejectKnownDuplicates(userId, filename, declaredHash)
+                    .then(Mono.fromRunnable(() -> log.info("uploading file with id {}", fileId)))
+                    .then(uploadPipeline.ingest(fileId.toString(), body, contentTypeOf))
+                    .flatMap(stored -> {
+                        if (stored.getSize() == 0) {
+                            // nothing is written for empty content
+                            return Mono.error(new BadRequestException("empty file isn't acceptable"));
+                        }
+                        FileMetadata metadata = new FileMetadata();
+                        metadata.setFilename(filename);
+                        metadata.setUploadDate(Instant.now());
+                        metadata.setExternalId(fileId);
+                        metadata.setVisibility(visibility);
+                        metadata.setOwnerId(userId);
+                        metadata.setTags(normalizedTags);
+                        metadata.setHash(stored.getHash());
+                        metadata.setSize(stored.getSize());
+                        metadata.setStoredSize(stored.getStoredSize());
+                        metadata.setEncoding(stored.getEncoding());
+                        metadata.setContentType(stored.getContentType());
+                        return checkContent(stored, declaredHash, fileId.toString())
+                                .then(create(metadata, fileId.toString()));
+                    });
+        });
+    }
+
+    @Override
+    public Mono<Void> deleteFile(String userId, UUID fileId) {
+        return findWithAccessCheck(userId, fileId, false).flatMap(metadata -> {
+            if (metadata.getStorageKey() == null) {
+                // file uploaded before content addressing owns its object
+                return Mono.fromRunnable(() -> deleteOwnObject(fileId))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .then(fileRepository.deleteByExternalId(fileId))
+                        .flatMap(removed -> afterDelete(metadata, removed));
+            }
+            // file removed by parallel delete is already released
+            return fileRepository.deleteByExternalId(fileId)
+                    .flatMap(removed -> afterDelete(metadata, removed)
+                            .then(removed > 0 ? blobService.detach(metadata.getHash()) : Mono.empty()));
+        });
+    }
+
+    @Override
+    public Mono<StoredFile> getFile(String userId, UUID fileId) {
+        return findWithAccessCheck(userId, fileId, true).map(storedFiles::create);
+    }
+
+    private Mono<Void> rejectKnownDuplicates(String ownerId, String filename, String hash) {
+        Mono<Boolean> contentExists = hash != null
+                ? fileRepository.existsByOwnerIdAndHash(ownerId, hash) : Mono.just(false);
+        return fileRepository.existsByOwnerIdAndFilename(ownerId, filename).flatMap(nameExists -> {
+            if (nameExists) {
+                log.warn("file with the same name already exist {}", filename);
+                metrics.countDuplicate("name");
+                return Mono.error(new FileDuplicatedException());
+            }
+            return contentExists.flatMap(exists -> {
+                if (exists) {
+                    log.warn("file with the same content already exist {}", hash);
+                    metrics.countDuplicate("content");
+                    return Mono.error(new FileDuplicatedException());
+                }
+                return Mono.empty();
+            });
+        });
+    }
+
+    private Mono<Void> checkContent(IngestedObject stored, String declaredHash, String objectKey) {
+        if (declaredHash == null || declaredHash.equals(stored.getHash())) {
+            return Mono.empty();
+        }
+        log.warn("declared hash {} doesn't match content hash {}", declaredHash, stored.getHash());
+        return blobService.removeObject(objectKey, "rejected").then(Mono.error(
+                new BadRequestException("content doesn't match " + AppConstants.CONTENT_SHA256_HEADER)));
+    }
+
+    // the same steps as FileMetadataService.create, staged object becomes shared blob or is dropped
+    private Mono<FileMetadataDto> create(FileMetadata metadata, String stagedKey) {
+        final String hash = metadata.getHash();
+        return blobService.attach(hash, stagedKey, metadata.getSize(), metadata.getStoredSize(), metadata.getEncoding())
+                .flatMap(blob -> save(withBlob(metadata, blob)).onErrorResume(ex -> {
+                    // release content reference as file creation failed
+                    log.info("release blob {} as creation of file {} failed", hash, metadata.getExternalId());
+                    return blobService.detach(hash).then(Mono.error(ex));
+                }));
+    }
+
+    private Mono<FileMetadataDto> save(FileMetadata metadata) {
+        if (enrichment.isEnabled()) {
+            metadata.setEnrichment(EnrichmentState.PENDING);
+        }
+        return fileRepository.insert(metadata)
+                .onErrorMap(ex -> !(ex instanceof StorageException), ex -> {
+                    if (ex instanceof DuplicateKeyException) {
+                        log.warn("file already exist ({}, {})", metadata.getFilename(), metadata.getHash());
+                        metrics.countDuplicate("conflict");
+                        return new FileDuplicatedException();
+                    }
+                    log.error("failed to save file metadata: {}", ex.getMessage());
+                    return new InternalServerErrorException();
+                })
+                .flatMap(created -> Mono.fromRunnable(() -> tagCounts.countCreated(created))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .thenReturn(created))
+                .map(created -> {
+                    if (enrichment.isEnabled()) {
+                        enrichment.submit(created);
+                    }
+                    return fileMetadataMapper.toDto(created);
+                });
+    }
+
+    private static FileMetadata withBlob(FileMetadata metadata, BlobMetadata blob) {
+        metadata.setStorageKey(blob.getStorageKey());
+        metadata.setEncoding(blob.getEncoding());
+        // blobs stored before encoding have no stored size
+        metadata.setStoredSize(blob.getEncoding() != null ? blob.getStoredSize() : metadata.getSize());
+        return metadata;
+    }
+
+    private void deleteOwnObject(UUID fileId) {
+        try {
+            blobStore.delete(fileId.toString());
+            metrics.countRemovedObject("unreferenced", true);
+        } catch (Exception ex) {
+            metrics.countRemovedObject("unreferenced", false);
+            log.error("removeObject failed in deleteFile: {}", ex.getMessage());
+            throw new InternalServerErrorException();
+        }
+    }
+
+    // removed is 0 when parallel delete got the file first
+    private Mono<Void> afterDelete(FileMetadata metadata, long removed) {
+        return Mono.<Void>fromRunnable(() -> {
+                    metadataCache.invalidate(metadata.getExternalId());
+                    if (removed > 0) {
+                        tagCounts.countDeleted(List.of(metadata));
+                    }
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<FileMetadata> findWithAccessCheck(String userId, UUID fileId, boolean doNotCheckAccessIfPublic) {
+        return fileRepository.findByExternalId(fileId)
+                .switchIfEmpty(Mono.error(() -> new FileNotFoundException(fileId)))
+                .flatMap(metadata -> {
+                    if (doNotCheckAccessIfPublic && metadata.getVisibility() == Visibility.PUBLIC) {
+                        return Mono.just(metadata);
+                    }
+                    if (!metadata.getOwnerId().equals(userId)) {
+                        log.warn("attempt of unauthorized access to file {}, user {}", fileId, userId);
+                        return Mono.error(new AccessDeniedException());
+                    }
+                    return Mono.just(metadata);
+                });
+    }
+}
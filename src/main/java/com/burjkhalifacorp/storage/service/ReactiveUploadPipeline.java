@@ -0,0 +1,231 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.common.AppConstants;
+import com.burjkhalifacorp.storage.errors.InternalServerErrorException;
+import com.burjkhalifacorp.storage.errors.StorageException;
+import com.burjkhalifacorp.storage.service.models.IngestedObject;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import com.burjkhalifacorp.storage.utils.BufferPool;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+// Writes body of reactive upload to object storage without holding a thread. Body buffers are hashed and
+// copied into pooled part buffers as they arrive, full parts are sent to storage while the next one is filled.
+// At most parallelism parts are in flight, body isn't requested meanwhile, so Netty stops reading the socket.
+// Content is stored as is, compression is applied by servlet uploads only
+@Slf4j
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveUploadPipeline {
+    private final BlobStore blobStore;
+    private final StorageMetrics metrics;
+    private BufferPool bufferPool;
+
+    @Value("${uploads.part-size}")
+    private DataSize partSize;
+
+    @Value("${uploads.parallelism}")
+    private int parallelism;
+
+    @Value("${uploads.pooled-buffers}")
+    private int pooledBuffers;
+
+    public ReactiveUploadPipeline(BlobStore blobStore, StorageMetrics metrics) {
+        this.blobStore = blobStore;
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public void init() {
+        bufferPool = new BufferPool(Math.toIntExact(partSize.toBytes()), pooledBuffers);
+    }
+
+    // Header is valid only during contentTypeOf, which isn't called for empty content.
+    // Nothing is written for empty content
+    public Mono<IngestedObject> ingest(
+            String objectKey, Flux<DataBuffer> body, Function<ByteBuffer, String> contentTypeOf) {
+        return Mono.defer(() -> {
+            final Assembly assembly = new Assembly(newSha256(), contentTypeOf);
+            final AtomicReference<String> multipartId = new AtomicReference<>();
+            final Mono<String> uploadId = Mono.defer(() -> Mono.fromFuture(createMultipart(objectKey)))
+                    .doOnNext(multipartId::set)
+                    .cache();
+
+            return body
+                    .concatMapIterable(assembly::add, 1)
+                    .concatWith(Mono.fromSupplier(assembly::last))
+                    .doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+                    // buffer being filled may still be written on cancel, so it's dropped instead of pooled
+                    .doFinally(signal -> {
+                        if (signal != SignalType.CANCEL) {
+                            assembly.release();
+                        }
+                    })
+                    .flatMapSequential(part -> part.number() == 1 && part.last()
+                            ? putSingle(objectKey, part)
+                            : uploadId.flatMap(id -> uploadPart(objectKey, id, part)), Math.max(1, parallelism), 1)
+                    // parts which weren't sent aren't used by anybody
+                    .doOnDiscard(Part.class, part -> bufferPool.release(part.buffer()))
+                    .collectList()
+                    .flatMap(partTags -> multipartId.get() == null
+                            ? Mono.<Void>empty()
+                            : Mono.fromFuture(() -> blobStore.completeMultipart(objectKey, multipartId.get(), partTags)))
+                    .then(Mono.fromSupplier(() -> {
+                        metrics.recordDigest(assembly.digestNanos);
+                        metrics.addUploadedBytes(assembly.size);
+                        return new IngestedObject(assembly.size, HexFormat.of().formatHex(assembly.digest.digest()),
+                                assembly.contentType, assembly.size, null);
+                    }))
+                    .onErrorResume(ex -> abort(objectKey, multipartId.get())
+                            .then(Mono.error(ex instanceof StorageException ? ex : failed(objectKey, ex))));
+        });
+    }
+
+    // tag isn't used for single put, complete isn't called then
+    private Mono<String> putSingle(String objectKey, Part part) {
+        Timer.Sample sample = metrics.startSample();
+        CompletableFuture<String> stored = blobStore.put(objectKey, part.buffer(), part.length())
+                .whenComplete((result, ex) -> {
+                    metrics.stopObjectOperation(sample, "putObject", ex == null);
+                    bufferPool.release(part.buffer());
+                })
+                .thenApply(result -> "");
+        // store keeps reading buffer until it's done, cancellation doesn't release it early
+        return Mono.fromFuture(stored, true);
+    }
+
+    private Mono<String> uploadPart(String objectKey, String uploadId, Part part) {
+        Timer.Sample sample = metrics.startSample();
+        CompletableFuture<String> uploaded = blobStore.putPart(
+                        objectKey, uploadId, part.number(), part.buffer(), part.length())
+                .whenComplete((tag, ex) -> {
+                    metrics.stopObjectOperation(sample, "uploadPart", ex == null);
+                    bufferPool.release(part.buffer());
+                });
+        return Mono.fromFuture(uploaded, true);
+    }
+
+    private CompletableFuture<String> createMultipart(String objectKey) {
+        Timer.Sample sample = metrics.startSample();
+        return blobStore.createMultipart(objectKey)
+                .whenComplete((id, ex) -> metrics.stopObjectOperation(sample, "createMultipartUpload", ex == null));
+    }
+
+    private Mono<Void> abort(String objectKey, String uploadId) {
+        if (uploadId == null) {
+            return Mono.empty();
+        }
+        return Mono.fromFuture(() -> blobStore.abortMultipart(objectKey, uploadId))
+                .onErrorResume(ex -> {
+                    log.warn("multipart upload {} of {} is left to storage lifecycle", uploadId, objectKey);
+                    return Mono.empty();
+                });
+    }
+
+    private static StorageException failed(String objectKey, Throwable ex) {
+        log.error("upload of {} failed: {}", objectKey, ex.getMessage());
+        return new InternalServerErrorException();
+    }
+
+    private static MessageDigest newSha256() throws StorageException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            log.error("SHA-256 not found");
+            throw new InternalServerErrorException();
+        }
+    }
+
+    // last is known when body completes, so full part is passed on only when more content arrives
+    private record Part(int number, byte[] buffer, int length, boolean last) {
+    }
+
+    // Parts of one upload, body signals come one by one, so the state isn't shared between threads at once
+    private final class Assembly {
+        private final MessageDigest digest;
+        private final Function<ByteBuffer, String> contentTypeOf;
+        private byte[] buffer;
+        private int length;
+        private int partNumber;
+        private long size;
+        private long digestNanos;
+        private String contentType;
+
+        Assembly(MessageDigest digest, Function<ByteBuffer, String> contentTypeOf) {
+            this.digest = digest;
+            this.contentTypeOf = contentTypeOf;
+        }
+
+        List<Part> add(DataBuffer dataBuffer) {
+            final List<Part> full = new ArrayList<>(1);
+            try (DataBuffer.ByteBufferIterator chunks = dataBuffer.readableByteBuffers()) {
+                while (chunks.hasNext()) {
+                    final ByteBuffer chunk = chunks.next();
+                    long start = System.nanoTime();
+                    digest.update(chunk.duplicate());
+                    digestNanos += System.nanoTime() - start;
+                    size += chunk.remaining();
+                    while (chunk.hasRemaining()) {
+                        if (buffer == null) {
+                            buffer = bufferPool.acquire();
+                            length = 0;
+                        } else if (length == buffer.length) {
+                            full.add(next(false));
+                            buffer = bufferPool.acquire();
+                            length = 0;
+                        }
+                        final int count = Math.min(chunk.remaining(), buffer.length - length);
+                        chunk.get(buffer, length, count);
+                        length += count;
+                    }
+                }
+            } finally {
+                DataBufferUtils.release(dataBuffer);
+            }
+            return full;
+        }
+
+        // null for empty content, completion emits nothing then
+        Part last() {
+            return buffer == null ? null : next(true);
+        }
+
+        private Part next(boolean last) {
+            if (partNumber == 0) {
+                // the first part holds header, type is known before anything is stored
+                contentType = contentTypeOf.apply(
+                        ByteBuffer.wrap(buffer, 0, Math.min(length, AppConstants.CONTENT_HEADER_SIZE)).asReadOnlyBuffer());
+            }
+            Part part = new Part(++partNumber, buffer, length, last);
+            buffer = null;
+            return part;
+        }
+
+        void release() {
+            if (buffer != null) {
+                bufferPool.release(buffer);
+                buffer = null;
+            }
+        }
+    }
+}
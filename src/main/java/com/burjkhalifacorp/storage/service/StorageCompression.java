@@ -0,0 +1,61 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.utils.GzipCompressingInputStream;
+import com.burjkhalifacorp.storage.utils.GzipRangeInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.unit.DataSize;
+
+import java.io.InputStream;
+import java.util.List;
+
+// Chooses encoding of stored objects by content type. Compressible content is stored in gzip,
+// encoding is recorded in blob and file metadata and is used as Content-Encoding when passed to client as is
+@Component
+public class StorageCompression {
+    public static final String GZIP = "gzip";
+
+    @Value("${compression.enabled}")
+    private boolean enabled;
+
+    @Value("${compression.level}")
+    private int level;
+
+    @Value("${compression.min-size}")
+    private DataSize minSize;
+
+    // wildcard subtypes like text/* are allowed
+    @Value("${compression.content-types}")
+    private List<MimeType> contentTypes;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // returns null when content should be stored as is, contentLength is -1 when unknown.
+    // Empty content isn't stored at all, so it's never encoded
+    public String encodingFor(String contentType, long contentLength) {
+        if (!enabled || contentLength == 0 || (contentLength > 0 && contentLength < minSize.toBytes())) {
+            return null;
+        }
+        try {
+            MimeType mimeType = MimeType.valueOf(contentType);
+            return contentTypes.stream().anyMatch(type -> type.includes(mimeType)) ? GZIP : null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    public GzipCompressingInputStream encode(InputStream content) {
+        return new GzipCompressingInputStream(content, level);
+    }
+
+    // range of decoded content, encoded stream must hold the whole stored object
+    public InputStream decode(String encoding, InputStream encoded, long offset, long length) {
+        if (!GZIP.equals(encoding)) {
+            throw new IllegalArgumentException("unknown encoding " + encoding);
+        }
+        return new GzipRangeInputStream(encoded, offset, length);
+    }
+}
@@ -0,0 +1,204 @@
+package com.burjkhalifacorp.storage.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Meters of upload and download stages, all names share "storage." prefix
+// so percentiles and histograms are configured for them at once
+@Component
+public class StorageMetrics {
+    public static final String PREFIX = "storage";
+
+    private final MeterRegistry meterRegistry;
+
+    private final Timer metadataLookupCache;
+    private final Timer metadataLookupDatabase;
+    private final Timer digest;
+    private final Timer contentTypeDetection;
+    private final Counter uploadedBytes;
+    private final Counter downloadedBytes;
+    private final Counter reusedBlobs;
+
+    public StorageMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        this.metadataLookupCache = metadataLookupTimer("cache");
+        this.metadataLookupDatabase = metadataLookupTimer("database");
+        this.digest = Timer.builder(PREFIX + ".upload.digest")
+                .description("CPU time spent on SHA-256 of uploaded content")
+                .register(meterRegistry);
+        this.contentTypeDetection = Timer.builder(PREFIX + ".upload.content-type.detection")
+                .description("Content type detection by file header")
+                .register(meterRegistry);
+        this.uploadedBytes = Counter.builder(PREFIX + ".bytes")
+                .baseUnit("bytes")
+                .tag("direction", "upload")
+                .register(meterRegistry);
+        this.downloadedBytes = Counter.builder(PREFIX + ".bytes")
+                .baseUnit("bytes")
+                .tag("direction", "download")
+                .register(meterRegistry);
+        this.reusedBlobs = Counter.builder(PREFIX + ".blobs.reused")
+                .description("Uploads which content was already stored")
+                .register(meterRegistry);
+    }
+
+    // cached lookups are served by downloads, database ones by changes of files
+    public <T> T recordMetadataLookup(boolean cached, Supplier<T> lookup) {
+        return (cached ? metadataLookupCache : metadataLookupDatabase).record(lookup);
+    }
+
+    public Timer.Sample startSample() {
+        return Timer.start(meterRegistry);
+    }
+
+    // operation is the name of MinIO call, outcome is success or error
+    public void stopObjectOperation(Timer.Sample sample, String operation, boolean success) {
+        sample.stop(Timer.builder(PREFIX + ".object.operation")
+                .description("MinIO calls, for downloads until response headers are received")
+                .tag("operation", operation)
+                .tag("outcome", success ? "success" : "error")
+                .register(meterRegistry));
+    }
+
+    public void recordDigest(long nanos) {
+        digest.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public <T> T recordContentTypeDetection(Supplier<T> detection) {
+        return contentTypeDetection.record(detection);
+    }
+
+    public void addUploadedBytes(long count) {
+        uploadedBytes.increment(count);
+    }
+
+    public void addDownloadedBytes(long count) {
+        downloadedBytes.increment(count);
+    }
+
+    // content is the size as uploaded, stored is the size of encoded object
+    public void addEncodedBytes(String encoding, long content, long stored) {
+        Counter.builder(PREFIX + ".encoded.bytes")
+                .baseUnit("bytes")
+                .tag("encoding", encoding)
+                .tag("kind", "content")
+                .register(meterRegistry)
+                .increment(content);
+        Counter.builder(PREFIX + ".encoded.bytes")
+                .baseUnit("bytes")
+                .tag("encoding", encoding)
+                .tag("kind", "stored")
+                .register(meterRegistry)
+                .increment(stored);
+    }
+
+    // reason is name or content for rejected uploads, conflict when unique index caught the race
+    public void countDuplicate(String reason) {
+        Counter.builder(PREFIX + ".upload.duplicates")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void countReusedBlob() {
+        reusedBlobs.increment();
+    }
+
+    // reason is why the object is dropped: duplicate, unreferenced or rejected content, orphan found by reconciler
+    public void countRemovedObject(String reason, boolean success) {
+        countRemovedObjects(reason, success, 1);
+    }
+
+    public void countRemovedObjects(String reason, boolean success, long count) {
+        Counter.builder(PREFIX + ".objects.removed")
+                .tag("reason", reason)
+                .tag("outcome", success ? "success" : "error")
+                .register(meterRegistry)
+                .increment(count);
+    }
+
+    // outcome is verified or mismatch of stored content against hash and size, error when enrichment failed
+    public void stopEnrichment(Timer.Sample sample, String outcome) {
+        sample.stop(Timer.builder(PREFIX + ".enrichment")
+                .description("Post-upload enrichment, including read of stored content")
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+    }
+
+    public void countRejectedEnrichment() {
+        Counter.builder(PREFIX + ".enrichment.rejected")
+                .description("Files left with provisional metadata as enrichment queue was full")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void countResubmittedEnrichments(long count) {
+        Counter.builder(PREFIX + ".enrichment.resubmitted")
+                .description("Files left pending which were submitted to enrichment again by sweep")
+                .register(meterRegistry)
+                .increment(count);
+    }
+
+    // reason is the exhausted limit: user or global concurrency, user or global bandwidth
+    public void countRejectedTransfer(String reason) {
+        Counter.builder(PREFIX + ".governor.rejected")
+                .description("Uploads and downloads rejected with 429")
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    public void recordThrottle(long nanos) {
+        Timer.builder(PREFIX + ".governor.throttled")
+                .description("Time admitted transfers waited for bandwidth")
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void countFailedTagCountUpdate() {
+        Counter.builder(PREFIX + ".tag-counts.failed")
+                .description("Failed updates of tag counters, counts are off until rebuilt")
+                .register(meterRegistry)
+                .increment();
+    }
+
+    // scanned is the number of objects listed by the running reconciliation pass,
+    // completed is the epoch second when the last pass ended, stale value means reconciler is stuck or failing
+    public void registerReconcilerProgress(AtomicLong scanned, AtomicLong completed) {
+        Gauge.builder(PREFIX + ".reconciler.scanned", scanned, AtomicLong::get)
+                .description("Objects listed by the running reconciliation pass")
+                .register(meterRegistry);
+        Gauge.builder(PREFIX + ".reconciler.completed", completed, AtomicLong::get)
+                .description("Time when the last reconciliation pass completed")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    // outcome is what reconciler found: orphan object, missing object of blob, unreferenced blob
+    // or expired quarantined object
+    public void countReconciled(String outcome, long count) {
+        Counter.builder(PREFIX + ".reconciler.found")
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .increment(count);
+    }
+
+    public void stopReconciliation(Timer.Sample sample, boolean success) {
+        sample.stop(Timer.builder(PREFIX + ".reconciler.pass")
+                .tag("outcome", success ? "success" : "error")
+                .register(meterRegistry));
+    }
+
+    private Timer metadataLookupTimer(String source) {
+        return Timer.builder(PREFIX + ".metadata.lookup")
+                .tag("source", source)
+                .register(meterRegistry);
+    }
+}
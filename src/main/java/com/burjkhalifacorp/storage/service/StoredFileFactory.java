@@ -0,0 +1,78 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.errors.InternalServerErrorException;
+import com.burjkhalifacorp.storage.mappers.FileMetadataMapper;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.service.models.ContentSource;
+import com.burjkhalifacorp.storage.service.models.StoredFile;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import com.burjkhalifacorp.storage.utils.CountingInputStream;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+// Content of files for download, shared by servlet and reactive APIs. Content is read from object cache
+// or storage and decoded if it's stored encoded
+@Slf4j
+@Component
+public class StoredFileFactory {
+    private final BlobStore blobStore;
+    private final FileMetadataMapper fileMetadataMapper;
+    private final ObjectDiskCache objectCache;
+    private final StorageCompression storageCompression;
+    private final StorageMetrics metrics;
+
+    public StoredFileFactory(
+            BlobStore blobStore,
+            FileMetadataMapper fileMetadataMapper,
+            ObjectDiskCache objectCache,
+            StorageCompression storageCompression,
+            StorageMetrics metrics) {
+        this.blobStore = blobStore;
+        this.fileMetadataMapper = fileMetadataMapper;
+        this.objectCache = objectCache;
+        this.storageCompression = storageCompression;
+        this.metrics = metrics;
+    }
+
+    public StoredFile create(FileMetadata metadata) {
+        final String storageKey = storageKeyOf(metadata);
+        final String encoding = metadata.getEncoding();
+
+        // bytes of stored object, encoded if content is stored encoded
+        ContentSource objectSource = (offset, length) -> {
+            // future completes with response headers, so the timer shows time to first byte
+            Timer.Sample getSample = metrics.startSample();
+            return blobStore.get(storageKey, offset, length)
+                    .whenComplete((stream, ex) -> metrics.stopObjectOperation(getSample, "getObject", ex == null))
+                    .exceptionally(ex -> {
+                        log.error("getObject failed for {}: {}", storageKey, ex.getMessage());
+                        throw new InternalServerErrorException();
+                    });
+        };
+        // encoded object is read from its beginning, content before offset is decoded and skipped
+        ContentSource storageSource = encoding == null
+                ? objectSource
+                : (offset, length) -> objectSource.open(0, metadata.getStoredSize())
+                        .thenApply(stream -> storageCompression.decode(encoding, stream, offset, length));
+        ContentSource cachedSource = objectCache.accepts(metadata.getSize())
+                ? objectCache.cached(metadata.getHash(), metadata.getSize(), storageSource)
+                : storageSource;
+        // bytes are counted as they are sent to client, whatever source serves them
+        ContentSource contentSource = (offset, length) -> cachedSource.open(offset, length)
+                .thenApply(stream -> new CountingInputStream(stream, metrics::addDownloadedBytes));
+        if (encoding == null) {
+            return new StoredFile(fileMetadataMapper.toDto(metadata), metadata.getHash(), contentSource);
+        }
+        ContentSource encodedSource = (offset, length) -> objectSource.open(offset, length)
+                .thenApply(stream -> new CountingInputStream(stream, metrics::addDownloadedBytes));
+        return new StoredFile(fileMetadataMapper.toDto(metadata), metadata.getHash(), contentSource,
+                encoding, metadata.getStoredSize(), encodedSource);
+    }
+
+    public static String storageKeyOf(FileMetadata metadata) {
+        return metadata.getStorageKey() != null
+                ? metadata.getStorageKey()
+                : metadata.getExternalId().toString();
+    }
+}
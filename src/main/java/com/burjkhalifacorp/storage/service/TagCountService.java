@@ -0,0 +1,188 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.api.models.TagCountDto;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.persist.MigrationRepository;
+import com.burjkhalifacorp.storage.persist.TagCountRepository;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.persist.models.Migration;
+import com.burjkhalifacorp.storage.persist.models.TagCount;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+// Tag counts of every owner and of public files, updated after files are written. Update which fails
+// is logged and counted, counts are off until they are rebuilt by POST /actuator/tagcounts.
+// Counters of files stored before counting are built once, by the instance which claims it
+@Slf4j
+@Service
+public class TagCountService {
+    private final TagCountRepository tagCountRepository;
+    private final MigrationRepository migrationRepository;
+    private final StorageMetrics metrics;
+
+    @Value("${migrations.lease}")
+    private Duration migrationLease;
+
+    public TagCountService(
+            TagCountRepository tagCountRepository,
+            MigrationRepository migrationRepository,
+            StorageMetrics metrics) {
+        this.tagCountRepository = tagCountRepository;
+        this.migrationRepository = migrationRepository;
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!migrationRepository.claim(Migration.TAG_COUNTS, migrationLease)) {
+            return;
+        }
+        try {
+            long counters = tagCountRepository.rebuild();
+            migrationRepository.complete(Migration.TAG_COUNTS);
+            log.info("tag counts built, {} counters", counters);
+        } catch (RuntimeException ex) {
+            migrationRepository.release(Migration.TAG_COUNTS);
+            throw ex;
+        }
+    }
+
+    // Recounts tags of all files, empty when counters are being built or rebuilt by another call
+    public Optional<Long> rebuild() {
+        boolean built = migrationRepository.findById(Migration.TAG_COUNTS).map(Migration::isDone).orElse(false);
+        if (!built || !migrationRepository.claim(Migration.TAG_COUNTS_REBUILD, migrationLease)) {
+            return Optional.empty();
+        }
+        try {
+            long counters = tagCountRepository.rebuild();
+            log.info("tag counts rebuilt, {} counters", counters);
+            return Optional.of(counters);
+        } finally {
+            migrationRepository.release(Migration.TAG_COUNTS_REBUILD);
+        }
+    }
+
+    public Changes changes() {
+        return new Changes();
+    }
+
+    public void countCreated(FileMetadata file) {
+        apply(changes().add(file));
+    }
+
+    public void countDeleted(Collection<FileMetadata> files) {
+        Changes changes = changes();
+        files.forEach(changes::remove);
+        apply(changes);
+    }
+
+    // counts are secondary to files, failure doesn't fail the change of files
+    public void apply(Changes changes) {
+        try {
+            tagCountRepository.addAll(changes.deltas());
+        } catch (RuntimeException ex) {
+            metrics.countFailedTagCountUpdate();
+            log.error("failed to update tag counts: {}", ex.getMessage());
+        }
+    }
+
+    // the most used tags of the scope
+    public List<TagCountDto> top(String scope, int limit) {
+        return tagCountRepository.findByScopeAndCountGreaterThanOrderByCountDescTagAsc(scope, 0, Limit.of(limit))
+                .stream()
+                .map(tagCount -> new TagCountDto(tagCount.getTag(), tagCount.getCount()))
+                .toList();
+    }
+
+    // counts of given tags in the scope, unused tags are counted as zero. Ordered like top tags
+    public List<TagCountDto> counts(String scope, Collection<String> tags) {
+        Map<String, Long> counts = find(scope, tags);
+        return tags.stream()
+                .map(tag -> new TagCountDto(tag, counts.getOrDefault(tag, 0L)))
+                .sorted(Comparator.comparingLong(TagCountDto::getCount).reversed().thenComparing(TagCountDto::getTag))
+                .toList();
+    }
+
+    // Tags ordered from the rarest, so $all query scans tags index for the most selective one.
+    // Order is only a hint, any tags are returned if counts can't be read
+    public List<String> rarestFirst(String scope, Collection<String> tags) {
+        Map<String, Long> counts;
+        try {
+            counts = find(scope, tags);
+        } catch (RuntimeException ex) {
+            log.warn("failed to read tag counts: {}", ex.getMessage());
+            return List.copyOf(tags);
+        }
+        return tags.stream()
+                .sorted(Comparator.<String>comparingLong(tag -> counts.getOrDefault(tag, 0L))
+                        .thenComparing(Comparator.naturalOrder()))
+                .toList();
+    }
+
+    private Map<String, Long> find(String scope, Collection<String> tags) {
+        List<String> ids = tags.stream().map(tag -> TagCount.idOf(scope, tag)).toList();
+        return tagCountRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(TagCount::getTag, TagCount::getCount));
+    }
+
+    // Changes of counters collected from files before and after they are written, applied in one bulk write
+    public static class Changes {
+        private final Map<String, TagCount> deltas = new HashMap<>();
+
+        private Changes() {
+        }
+
+        public Changes add(FileMetadata file) {
+            return count(file, 1);
+        }
+
+        public Changes remove(FileMetadata file) {
+            return count(file, -1);
+        }
+
+        // file has new tags already
+        public Changes retag(FileMetadata file, Collection<String> oldTags) {
+            count(file, oldTags, -1);
+            return count(file, 1);
+        }
+
+        private Changes count(FileMetadata file, long delta) {
+            return count(file, file.getTags(), delta);
+        }
+
+        private Changes count(FileMetadata file, Collection<String> tags, long delta) {
+            if (tags == null) {
+                return this;
+            }
+            for (String tag : tags) {
+                count(TagCount.userScope(file.getOwnerId()), tag, delta);
+                if (file.getVisibility() == Visibility.PUBLIC) {
+                    count(TagCount.PUBLIC_SCOPE, tag, delta);
+                }
+            }
+            return this;
+        }
+
+        private void count(String scope, String tag, long delta) {
+            TagCount counter = deltas.computeIfAbsent(TagCount.idOf(scope, tag), id -> TagCount.of(scope, tag, 0));
+            counter.setCount(counter.getCount() + delta);
+        }
+
+        // tags removed and added back by the same change are left out
+        private List<TagCount> deltas() {
+            return deltas.values().stream().filter(delta -> delta.getCount() != 0).toList();
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.errors.InitializationFailedException;
+import com.burjkhalifacorp.storage.errors.TooManyRequestsException;
+import com.burjkhalifacorp.storage.utils.OutputStreamChannel;
+import jakarta.annotation.PostConstruct;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Admission control of uploads and downloads. Transfers of every user and of the whole instance are
+// limited in number and bandwidth, transfer beyond the limits is rejected with Retry-After instead of
+// waiting in executor or Tomcat queues. Admitted transfers are paced while bytes flow: bucket of a user
+// and the global one are kept as time when their next byte is due (GCRA), bytes due later than the burst
+// allows wait for it. Users are hashed into stripes of atomic counters, so there is no lock and no map
+// of users to clean up. Users sharing a stripe share its limits, stripes should outnumber active users
+@Component
+public class TransferGovernor {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final Transfer UNLIMITED = new Transfer(null, -1);
+
+    private final StorageMetrics metrics;
+
+    @Value("${governor.enabled}")
+    private boolean enabled;
+
+    @Value("${governor.stripes}")
+    private int stripes;
+
+    @Value("${governor.user-concurrency}")
+    private int userConcurrency;
+
+    @Value("${governor.global-concurrency}")
+    private int globalConcurrency;
+
+    @Value("${governor.user-bandwidth}")
+    private DataSize userBandwidth;
+
+    @Value("${governor.global-bandwidth}")
+    private DataSize globalBandwidth;
+
+    @Value("${governor.burst}")
+    private Duration burst;
+
+    // global counters are kept in the slot after user stripes
+    private int globalSlot;
+    private long burstNanos;
+    private AtomicIntegerArray active;
+    // System.nanoTime when the next byte of the bucket is due, bucket is full when it's in the past
+    private AtomicLongArray dueAt;
+
+    public TransferGovernor(StorageMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (Integer.bitCount(stripes) != 1) {
+            throw new InitializationFailedException("governor.stripes must be a power of two", null);
+        }
+        globalSlot = stripes;
+        burstNanos = burst.toNanos();
+        active = new AtomicIntegerArray(stripes + 1);
+        dueAt = new AtomicLongArray(stripes + 1);
+        final long now = System.nanoTime();
+        for (int slot = 0; slot <= stripes; slot++) {
+            dueAt.set(slot, now);
+        }
+    }
+
+    // Transfer must be closed when it ends, it's rejected while user or instance is over its limits
+    public Transfer admit(String userId) throws TooManyRequestsException {
+        if (!enabled) {
+            return UNLIMITED;
+        }
+        final int stripe = userId.hashCode() & (stripes - 1);
+        final long now = System.nanoTime();
+        if (userBandwidth.toBytes() > 0 && backlog(stripe, now) > 0) {
+            throw reject("user-bandwidth", backlog(stripe, now));
+        }
+        if (globalBandwidth.toBytes() > 0 && backlog(globalSlot, now) > 0) {
+            throw reject("global-bandwidth", backlog(globalSlot, now));
+        }
+        if (!tryAcquire(stripe, userConcurrency)) {
+            throw reject("user-concurrency", NANOS_PER_SECOND);
+        }
+        if (!tryAcquire(globalSlot, globalConcurrency)) {
+            active.decrementAndGet(stripe);
+            throw reject("global-concurrency", NANOS_PER_SECOND);
+        }
+        return new Transfer(this, stripe);
+    }
+
+    private TooManyRequestsException reject(String reason, long waitNanos) {
+        metrics.countRejectedTransfer(reason);
+        return new TooManyRequestsException(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + NANOS_PER_SECOND - 1)));
+    }
+
+    private boolean tryAcquire(int slot, int limit) {
+        int current;
+        do {
+            current = active.get(slot);
+            if (current >= limit) {
+                return false;
+            }
+        } while (!active.compareAndSet(slot, current, current + 1));
+        return true;
+    }
+
+    // time bucket is behind beyond the burst, positive when it's exhausted
+    private long backlog(int slot, long now) {
+        return dueAt.get(slot) - now - burstNanos;
+    }
+
+    // takes bytes from bucket, returns time to wait until they are within the burst
+    private long take(int slot, long bytes, DataSize bandwidth, long now) {
+        if (bandwidth.toBytes() <= 0) {
+            return 0;
+        }
+        final long cost = bytes * NANOS_PER_SECOND / bandwidth.toBytes();
+        long due;
+        long next;
+        do {
+            due = dueAt.get(slot);
+            // idle bucket doesn't save up more than the burst
+            next = (due - now < 0 ? now : due) + cost;
+        } while (!dueAt.compareAndSet(slot, due, next));
+        return next - now - burstNanos;
+    }
+
+    // takes bytes from user and global buckets, returns time to wait before they are sent or 0
+    private long delay(int stripe, long bytes) {
+        final long now = System.nanoTime();
+        final long wait = Math.max(
+                take(stripe, bytes, userBandwidth, now),
+                take(globalSlot, bytes, globalBandwidth, now));
+        if (wait <= 0) {
+            return 0;
+        }
+        metrics.recordThrottle(wait);
+        return wait;
+    }
+
+    private void pace(int stripe, long bytes) throws IOException {
+        final long wait = delay(stripe, bytes);
+        if (wait <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("transfer interrupted while throttled");
+        }
+    }
+
+    private void release(int stripe) {
+        active.decrementAndGet(stripe);
+        active.decrementAndGet(globalSlot);
+    }
+
+    // Admitted upload or download, streams wrapped by it are paced by bandwidth of user and instance
+    public static final class Transfer implements AutoCloseable {
+        private final TransferGovernor governor;
+        private final int stripe;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Transfer(TransferGovernor governor, int stripe) {
+            this.governor = governor;
+            this.stripe = stripe;
+        }
+
+        public InputStream govern(InputStream inputStream) {
+            return governor == null ? inputStream : new GovernedInputStream(inputStream, this);
+        }
+
+        public OutputStream govern(OutputStream outputStream) {
+            return governor == null ? outputStream : new GovernedOutputStream(outputStream, this);
+        }
+
+        // body of reactive upload or download, buffers are delayed instead of blocking the thread
+        public Flux<DataBuffer> govern(Flux<DataBuffer> body) {
+            if (governor == null) {
+                return body;
+            }
+            return body.concatMap(buffer -> {
+                final long wait = delay(buffer.readableByteCount());
+                return wait > 0 ? Mono.just(buffer).delayElement(Duration.ofNanos(wait)) : Mono.just(buffer);
+            }, 1);
+        }
+
+        // for transfers which can't block: bytes are taken at once, caller delays them by returned nanos
+        public long delay(long bytes) {
+            return governor == null ? 0 : governor.delay(stripe, bytes);
+        }
+
+        private void pace(long bytes) throws IOException {
+            governor.pace(stripe, bytes);
+        }
+
+        // could be called more than once, transfer is released on the first call
+        @Override
+        public void close() {
+            if (governor != null && closed.compareAndSet(false, true)) {
+                governor.release(stripe);
+            }
+        }
+    }
+
+    private static class GovernedInputStream extends FilterInputStream {
+        private final Transfer transfer;
+
+        GovernedInputStream(InputStream inputStream, Transfer transfer) {
+            super(inputStream);
+            this.transfer = transfer;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                transfer.pace(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NotNull byte[] b, int off, int len) throws IOException {
+            int bytesRead = in.read(b, off, len);
+            if (bytesRead > 0) {
+                transfer.pace(bytesRead);
+            }
+            return bytesRead;
+        }
+    }
+
+    // also a channel, so buffers written by local file transfers are paced and passed to socket as is
+    private static class GovernedOutputStream extends FilterOutputStream implements WritableByteChannel {
+        private final Transfer transfer;
+        private final WritableByteChannel channel;
+
+        GovernedOutputStream(OutputStream outputStream, Transfer transfer) {
+            super(outputStream);
+            this.transfer = transfer;
+            WritableByteChannel direct = OutputStreamChannel.of(outputStream);
+            this.channel = direct != null ? direct : Channels.newChannel(outputStream);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            transfer.pace(1);
+            out.write(b);
+        }
+
+        // written as is, FilterOutputStream would write the array byte by byte
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) throws IOException {
+            transfer.pace(len);
+            out.write(b, off, len);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            transfer.pace(src.remaining());
+            return channel.write(src);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.common.AppConstants;
+import com.burjkhalifacorp.storage.errors.InternalServerErrorException;
+import com.burjkhalifacorp.storage.errors.StorageException;
+import com.burjkhalifacorp.storage.service.models.IngestedObject;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import com.burjkhalifacorp.storage.utils.BufferPool;
+import com.burjkhalifacorp.storage.utils.GzipCompressingInputStream;
+import com.burjkhalifacorp.storage.utils.UploadHelperInputStream;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+// Writes uploaded content to object storage. Request body is read into pooled part buffers through
+// UploadHelperInputStream, which counts and hashes content in the same pass, parts are uploaded to storage
+// in parallel while the next one is read. Upload holds at most parallelism buffers, reading of the next part
+// waits until some part is done. Header for type detection is a view of the first part buffer, not a copy
+@Slf4j
+@Component
+public class UploadPipeline {
+    private final BlobStore blobStore;
+    private final StorageMetrics metrics;
+    private final StorageCompression compression;
+    private BufferPool bufferPool;
+
+    @Value("${uploads.part-size}")
+    private DataSize partSize;
+
+    @Value("${uploads.parallelism}")
+    private int parallelism;
+
+    @Value("${uploads.pooled-buffers}")
+    private int pooledBuffers;
+
+    public UploadPipeline(BlobStore blobStore, StorageMetrics metrics, StorageCompression compression) {
+        this.blobStore = blobStore;
+        this.metrics = metrics;
+        this.compression = compression;
+    }
+
+    @PostConstruct
+    public void init() {
+        bufferPool = new BufferPool(Math.toIntExact(partSize.toBytes()), pooledBuffers);
+    }
+
+    // contentLength is -1 when unknown. Content type is detected by header before content is stored,
+    // so compressible content is encoded while it's uploaded. Header is valid only during contentTypeOf
+    public IngestedObject ingest(
+            String objectKey, long contentLength, InputStream inputStream, Function<ByteBuffer, String> contentTypeOf
+    ) throws StorageException {
+        final MessageDigest digest = newSha256();
+        // header is read into the first part buffer, so helper doesn't capture it
+        final UploadHelperInputStream content = new UploadHelperInputStream(inputStream, digest, null);
+        final int bufferSize = bufferPool.getBufferSize();
+        byte[] first = bufferPool.acquire();
+        try {
+            final int headerLength = content.readNBytes(first, 0, Math.min(AppConstants.CONTENT_HEADER_SIZE, bufferSize));
+            final String contentType = contentTypeOf.apply(ByteBuffer.wrap(first, 0, headerLength).asReadOnlyBuffer());
+            // short header is the whole content
+            final long knownLength = headerLength < AppConstants.CONTENT_HEADER_SIZE ? headerLength : contentLength;
+            final String encoding = compression.encodingFor(contentType, knownLength);
+            if (encoding == null) {
+                // buffer is handed over with header in it
+                byte[] buffer = first;
+                first = null;
+                long size = store(objectKey, buffer, headerLength, content);
+                metrics.recordDigest(content.getDigestNanos());
+                return new IngestedObject(size, hex(digest), contentType, size, null);
+            }
+
+            // content is hashed as uploaded while it's read by encoder, encoded parts aren't hashed
+            final GzipCompressingInputStream encoded = compression.encode(
+                    new SequenceInputStream(new ByteArrayInputStream(first, 0, headerLength), content));
+            long storedSize = store(objectKey, bufferPool.acquire(), 0, encoded);
+            metrics.recordDigest(content.getDigestNanos());
+            metrics.addEncodedBytes(encoding, content.getTotalBytesCount(), storedSize);
+            return new IngestedObject(content.getTotalBytesCount(), hex(digest), contentType, storedSize, encoding);
+        } catch (IOException ex) {
+            log.error("failed to read uploaded content: {}", ex.getMessage());
+            throw new InternalServerErrorException();
+        } finally {
+            if (first != null) {
+                bufferPool.release(first);
+            }
+        }
+    }
+
+    // buffer is taken over with filled bytes already in it, returns stored size
+    private long store(String objectKey, byte[] buffer, int filled, InputStream inputStream) throws StorageException {
+        final int length;
+        try {
+            length = filled + inputStream.readNBytes(buffer, filled, buffer.length - filled);
+        } catch (IOException ex) {
+            bufferPool.release(buffer);
+            log.error("failed to read uploaded content: {}", ex.getMessage());
+            throw new InternalServerErrorException();
+        }
+        if (length < buffer.length) {
+            try {
+                return putSingle(objectKey, buffer, length);
+            } finally {
+                bufferPool.release(buffer);
+            }
+        }
+        return putMultipart(objectKey, buffer, inputStream);
+    }
+
+    private long putSingle(String objectKey, byte[] content, int length) throws StorageException {
+        if (length == 0) {
+            return 0;
+        }
+
+        Timer.Sample sample = metrics.startSample();
+        boolean success = false;
+        try {
+            await("putObject", blobStore.put(objectKey, content, length));
+            success = true;
+        } finally {
+            metrics.stopObjectOperation(sample, "putObject", success);
+        }
+        metrics.addUploadedBytes(length);
+        return length;
+    }
+
+    // first buffer is full, so content takes more than one part
+    private long putMultipart(String objectKey, byte[] first, InputStream inputStream) throws StorageException {
+        final String uploadId;
+        try {
+            uploadId = await("createMultipartUpload", blobStore.createMultipart(objectKey));
+        } catch (StorageException ex) {
+            bufferPool.release(first);
+            throw ex;
+        }
+
+        // first buffer is already taken
+        final Semaphore ring = new Semaphore(Math.max(1, parallelism) - 1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<CompletableFuture<?>> inFlight = new ArrayList<>();
+        final List<CompletableFuture<String>> parts = new ArrayList<>();
+        long size = 0;
+
+        try {
+            byte[] buffer = first;
+            int length = buffer.length;
+            int partNumber = 1;
+            while (true) {
+                final byte[] partBuffer = buffer;
+                final int partLength = length;
+                CompletableFuture<String> uploaded = uploadPart(objectKey, uploadId, partNumber, partBuffer, partLength);
+                parts.add(uploaded);
+
+                // buffer is reused when part is sent
+                CompletableFuture<String> done = uploaded.whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        failure.compareAndSet(null, ex);
+                    }
+                    bufferPool.release(partBuffer);
+                    ring.release();
+                });
+                inFlight.add(done);
+                size += partLength;
+
+                if (partLength < partBuffer.length) {
+                    break;
+                }
+                ring.acquire();
+                if (failure.get() != null) {
+                    ring.release();
+                    break;
+                }
+                buffer = bufferPool.acquire();
+                try {
+                    length = inputStream.readNBytes(buffer, 0, buffer.length);
+                } catch (IOException ex) {
+                    bufferPool.release(buffer);
+                    ring.release();
+                    throw ex;
+                }
+                if (length == 0) {
+                    bufferPool.release(buffer);
+                    ring.release();
+                    break;
+                }
+                ++partNumber;
+            }
+
+            await("uploadPart", CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new)));
+            List<String> partTags = parts.stream().map(CompletableFuture::join).toList();
+            await("completeMultipartUpload", blobStore.completeMultipart(objectKey, uploadId, partTags));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            abort(objectKey, uploadId, inFlight);
+            log.error("upload of {} interrupted", objectKey);
+            throw new InternalServerErrorException();
+        } catch (IOException ex) {
+            abort(objectKey, uploadId, inFlight);
+            log.error("failed to read uploaded content: {}", ex.getMessage());
+            throw new InternalServerErrorException();
+        } catch (RuntimeException ex) {
+            abort(objectKey, uploadId, inFlight);
+            throw ex;
+        }
+
+        metrics.addUploadedBytes(size);
+        return size;
+    }
+
+    private CompletableFuture<String> uploadPart(String objectKey, String uploadId, int partNumber, byte[] buffer, int length) {
+        Timer.Sample sample = metrics.startSample();
+        return blobStore.putPart(objectKey, uploadId, partNumber, buffer, length)
+                .whenComplete((tag, ex) -> metrics.stopObjectOperation(sample, "uploadPart", ex == null));
+    }
+
+    // parts in flight are let to finish, so buffers aren't reused while they are being sent
+    private void abort(String objectKey, String uploadId, List<CompletableFuture<?>> inFlight) {
+        CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new))
+                .exceptionally(ex -> null)
+                .join();
+        try {
+            await("abortMultipartUpload", blobStore.abortMultipart(objectKey, uploadId));
+        } catch (StorageException ex) {
+            log.warn("multipart upload {} of {} is left to storage lifecycle", uploadId, objectKey);
+        }
+    }
+
+    private MessageDigest newSha256() throws StorageException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            log.error("SHA-256 not found");
+            throw new InternalServerErrorException();
+        }
+    }
+
+    private static String hex(MessageDigest digest) {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private <T> T await(String operation, CompletableFuture<T> future) throws StorageException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            log.error("{} interrupted", operation);
+            throw new InternalServerErrorException();
+        } catch (Exception ex) {
+            log.error("{} failed: {}", operation, ex.getMessage());
+            throw new InternalServerErrorException();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.api.models.UploadPartDto;
+import com.burjkhalifacorp.storage.api.models.UploadSessionDto;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.errors.StorageException;
+
+import java.io.InputStream;
+import java.util.Set;
+import java.util.UUID;
+
+public interface UploadSessionService {
+    UploadSessionDto createSession(
+            String userId,
+            String filename,
+            String contentType,
+            Visibility visibility,
+            Set<String> tags) throws StorageException;
+
+    UploadPartDto uploadPart(
+            String userId,
+            UUID sessionId,
+            int partNumber,
+            long size,
+            InputStream inputStream) throws StorageException;
+
+    UploadSessionDto getSession(String userId, UUID sessionId) throws StorageException;
+
+    FileMetadataDto completeSession(String userId, UUID sessionId) throws StorageException;
+
+    void abortSession(String userId, UUID sessionId) throws StorageException;
+}
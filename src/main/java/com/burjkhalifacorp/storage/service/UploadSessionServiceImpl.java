@@ -0,0 +1,357 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.api.models.UploadPartDto;
+import com.burjkhalifacorp.storage.api.models.UploadSessionDto;
+import com.burjkhalifacorp.storage.common.AppConstants;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.errors.*;
+import com.burjkhalifacorp.storage.mappers.UploadSessionMapper;
+import com.burjkhalifacorp.storage.persist.UploadSessionRepository;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.persist.models.UploadPart;
+import com.burjkhalifacorp.storage.persist.models.UploadSession;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import com.burjkhalifacorp.storage.utils.BufferPool;
+import com.burjkhalifacorp.storage.utils.UploadHelperInputStream;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+@Slf4j
+@Service
+public class UploadSessionServiceImpl implements UploadSessionService {
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+    // expired sessions aborted by one check
+    private static final int EXPIRED_SESSIONS_BATCH = 100;
+
+    private final BlobStore blobStore;
+    private final UploadSessionRepository sessionRepository;
+    private final UploadSessionMapper sessionMapper;
+    private final FileMetadataService fileMetadataService;
+    private final ContentTypeDetector contentTypeDetector;
+    private final FileEnrichment enrichment;
+    private final StorageMetrics metrics;
+    // idle header buffers kept for next uploads take up to 4MB
+    private final BufferPool headerBuffers = UploadHelperInputStream.newHeaderPool(64);
+
+    @Value("${upload-sessions.expiry}")
+    private Duration expiry;
+
+    public UploadSessionServiceImpl(
+            BlobStore blobStore,
+            UploadSessionRepository sessionRepository,
+            UploadSessionMapper sessionMapper,
+            FileMetadataService fileMetadataService,
+            ContentTypeDetector contentTypeDetector,
+            FileEnrichment enrichment,
+            StorageMetrics metrics) {
+        this.blobStore = blobStore;
+        this.sessionRepository = sessionRepository;
+        this.sessionMapper = sessionMapper;
+        this.fileMetadataService = fileMetadataService;
+        this.contentTypeDetector = contentTypeDetector;
+        this.enrichment = enrichment;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public UploadSessionDto createSession(
+            String userId,
+            String filename,
+            String contentType,
+            Visibility visibility,
+            Set<String> tags
+    ) throws StorageException {
+        final Set<String> normalizedTags = fileMetadataService.normalizeAndValidateTags(tags);
+        fileMetadataService.rejectKnownDuplicates(userId, filename, null);
+
+        // parts are uploaded to the object which becomes file content on completion
+        final String storageKey = UUID.randomUUID().toString();
+        final String uploadId = callStore("createMultipartUpload", () -> blobStore.createMultipart(storageKey));
+
+        UploadSession session = new UploadSession();
+        session.setExternalId(UUID.randomUUID());
+        session.setOwnerId(userId);
+        session.setFilename(filename);
+        session.setTags(normalizedTags);
+        session.setVisibility(visibility);
+        session.setDeclaredContentType(contentType);
+        session.setStorageKey(storageKey);
+        session.setUploadId(uploadId);
+        session.setCreatedDate(Instant.now());
+
+        log.info("created upload session {} for object {}", session.getExternalId(), storageKey);
+        return sessionMapper.toDto(sessionRepository.save(session));
+    }
+
+    @Override
+    public UploadPartDto uploadPart(
+            String userId,
+            UUID sessionId,
+            int partNumber,
+            long size,
+            InputStream inputStream
+    ) throws StorageException {
+        if (partNumber < 1 || partNumber > AppConstants.MAX_UPLOAD_PARTS) {
+            throw new BadRequestException("part number must be in range 1..%d".formatted(AppConstants.MAX_UPLOAD_PARTS));
+        }
+        if (size <= 0) {
+            throw new BadRequestException("part size must be set with Content-Length");
+        }
+        if (size > AppConstants.MAX_UPLOAD_PART_SIZE) {
+            throw new BadRequestException("part size exceeds %d bytes".formatted(AppConstants.MAX_UPLOAD_PART_SIZE));
+        }
+
+        final UploadSession session = getSessionWithAccessCheck(userId, sessionId);
+        if (session.isCompleting()) {
+            throw new UploadSessionConflictException();
+        }
+
+        // part hash is computed while streaming, so completion doesn't read the object again
+        MessageDigest digestSha256 = newSha256();
+        // only the first part carries file header, with enrichment the type is detected after completion
+        final boolean detectType = partNumber == 1 && !enrichment.isEnabled();
+        UploadHelperInputStream helperStream = new UploadHelperInputStream(
+                inputStream, digestSha256, detectType ? headerBuffers : null);
+
+        final UploadPart part;
+        try {
+            String tag = callStore("uploadPart", () -> blobStore.putPart(
+                    session.getStorageKey(), session.getUploadId(), partNumber, helperStream, size));
+            metrics.recordDigest(helperStream.getDigestNanos());
+            metrics.addUploadedBytes(size);
+
+            part = new UploadPart(
+                    partNumber, tag, size, HexFormat.of().formatHex(digestSha256.digest()));
+
+            if (detectType) {
+                sessionRepository.setContentType(sessionId, metrics.recordContentTypeDetection(
+                        () -> contentTypeDetector.detect(session.getDeclaredContentType(), helperStream.getHeader())));
+            }
+        } finally {
+            helperStream.release();
+        }
+        if (!sessionRepository.putPart(sessionId, part)) {
+            log.warn("part {} of session {} uploaded while session is closing", partNumber, sessionId);
+            throw new UploadSessionConflictException();
+        }
+
+        log.info("uploaded part {} of session {}, size {}", partNumber, sessionId, size);
+        return sessionMapper.toDto(part);
+    }
+
+    @Override
+    public UploadSessionDto getSession(String userId, UUID sessionId) throws StorageException {
+        return sessionMapper.toDto(getSessionWithAccessCheck(userId, sessionId));
+    }
+
+    @Override
+    public FileMetadataDto completeSession(String userId, UUID sessionId) throws StorageException {
+        getSessionWithAccessCheck(userId, sessionId);
+        final UploadSession session = sessionRepository.startCompletion(sessionId)
+                .orElseThrow(UploadSessionConflictException::new);
+
+        final List<UploadPart> parts;
+        try {
+            parts = getValidatedParts(session);
+            List<String> partTags = parts.stream().map(UploadPart::getEtag).toList();
+            callStore("completeMultipartUpload", () ->
+                    blobStore.completeMultipart(session.getStorageKey(), session.getUploadId(), partTags));
+        } catch (StorageException ex) {
+            // session stays usable, client could upload missing parts and retry
+            sessionRepository.cancelCompletion(sessionId);
+            throw ex;
+        }
+        sessionRepository.delete(session);
+        final String hash;
+        try {
+            hash = contentHash(session.getStorageKey());
+        } catch (StorageException ex) {
+            removeObject(session.getStorageKey());
+            throw ex;
+        }
+
+        FileMetadata metadata = new FileMetadata();
+        metadata.setFilename(session.getFilename());
+        metadata.setUploadDate(Instant.now());
+        metadata.setExternalId(UUID.fromString(session.getStorageKey()));
+        metadata.setVisibility(session.getVisibility());
+        metadata.setOwnerId(session.getOwnerId());
+        metadata.setTags(Set.copyOf(session.getTags()));
+        metadata.setHash(hash);
+        metadata.setSize(parts.stream().mapToLong(UploadPart::getSize).sum());
+        // parts are stored as uploaded by client
+        metadata.setStoredSize(metadata.getSize());
+        metadata.setContentType(session.getContentType() != null
+                ? session.getContentType()
+                : contentTypeDetector.declared(session.getDeclaredContentType()));
+
+        log.info("completed upload session {}, file {}", sessionId, metadata.getExternalId());
+        return fileMetadataService.create(metadata, session.getStorageKey());
+    }
+
+    // Every instance checks, a session is claimed by startCompletion so it's aborted once
+    @Scheduled(initialDelayString = "${upload-sessions.expiry-check-interval}",
+            fixedDelayString = "${upload-sessions.expiry-check-interval}")
+    public void abortExpiredSessions() {
+        final Instant expiredBefore = Instant.now().minus(expiry);
+        int aborted = 0;
+        for (UploadSession expired : sessionRepository.findByCreatedDateBeforeAndCompletingFalse(
+                expiredBefore, Limit.of(EXPIRED_SESSIONS_BATCH))) {
+            Optional<UploadSession> session = sessionRepository.startCompletion(expired.getExternalId());
+            if (session.isEmpty()) {
+                continue;
+            }
+            try {
+                callStore("abortMultipartUpload", () ->
+                        blobStore.abortMultipart(session.get().getStorageKey(), session.get().getUploadId()));
+            } catch (StorageException ex) {
+                // retried by next check
+                sessionRepository.cancelCompletion(expired.getExternalId());
+                continue;
+            }
+            sessionRepository.delete(session.get());
+            aborted++;
+        }
+        if (aborted > 0) {
+            log.info("aborted {} expired upload sessions", aborted);
+        }
+    }
+
+    @Override
+    public void abortSession(String userId, UUID sessionId) throws StorageException {
+        getSessionWithAccessCheck(userId, sessionId);
+        final UploadSession session = sessionRepository.startCompletion(sessionId)
+                .orElseThrow(UploadSessionConflictException::new);
+
+        try {
+            callStore("abortMultipartUpload", () ->
+                    blobStore.abortMultipart(session.getStorageKey(), session.getUploadId()));
+        } catch (StorageException ex) {
+            sessionRepository.cancelCompletion(sessionId);
+            throw ex;
+        }
+        sessionRepository.delete(session);
+        log.info("aborted upload session {}", sessionId);
+    }
+
+    private UploadSession getSessionWithAccessCheck(String userId, UUID sessionId) throws StorageException {
+        UploadSession session = sessionRepository.findByExternalId(sessionId)
+                .orElseThrow(() -> new UploadSessionNotFoundException(sessionId));
+
+        if (!session.getOwnerId().equals(userId)) {
+            log.warn("attempt of unauthorized access to upload session {}, user {}", sessionId, userId);
+            throw new AccessDeniedException();
+        }
+        return session;
+    }
+
+    private List<UploadPart> getValidatedParts(UploadSession session) throws StorageException {
+        List<UploadPart> parts = session.getParts().values().stream()
+                .sorted(Comparator.comparingInt(UploadPart::getPartNumber))
+                .toList();
+        if (parts.isEmpty()) {
+            throw new BadRequestException("empty file isn't acceptable");
+        }
+        for (int i = 0; i < parts.size(); ++i) {
+            UploadPart part = parts.get(i);
+            if (part.getPartNumber() != i + 1) {
+                throw new BadRequestException("part %d is missing".formatted(i + 1));
+            }
+            if (i < parts.size() - 1 && part.getSize() < AppConstants.MIN_UPLOAD_PART_SIZE) {
+                throw new BadRequestException("part %d is smaller than %d bytes"
+                        .formatted(part.getPartNumber(), AppConstants.MIN_UPLOAD_PART_SIZE));
+            }
+        }
+        return parts;
+    }
+
+    // SHA-256 of the whole file can't be combined from hashes of parts uploaded in parallel. Joined object
+    // is read back in order instead, so file gets the same hash as direct upload of the same content
+    // and shares its blob
+    private String contentHash(String storageKey) throws StorageException {
+        final InputStream content = callStore("getObject", () -> blobStore.get(storageKey));
+        final MessageDigest digestSha256 = newSha256();
+        long digestNanos = 0;
+        try (content) {
+            byte[] buffer = new byte[HASH_BUFFER_SIZE];
+            int count;
+            while ((count = content.read(buffer)) != -1) {
+                long start = System.nanoTime();
+                digestSha256.update(buffer, 0, count);
+                digestNanos += System.nanoTime() - start;
+            }
+        } catch (IOException ex) {
+            log.error("failed to read object {} for hash: {}", storageKey, ex.getMessage());
+            throw new InternalServerErrorException();
+        }
+        metrics.recordDigest(digestNanos);
+        return HexFormat.of().formatHex(digestSha256.digest());
+    }
+
+    private void removeObject(String objectKey) {
+        try {
+            blobStore.delete(objectKey);
+            metrics.countRemovedObject("rejected", true);
+        } catch (Exception ex) {
+            metrics.countRemovedObject("rejected", false);
+            log.error("removeObject failed for {}: {}", objectKey, ex.getMessage());
+        }
+    }
+
+    private MessageDigest newSha256() throws StorageException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            log.error("SHA-256 not found");
+            throw new InternalServerErrorException();
+        }
+    }
+
+    private <T> T callStore(String operation, Supplier<CompletableFuture<T>> call) throws StorageException {
+        Timer.Sample sample = metrics.startSample();
+        boolean success = false;
+        try {
+            T result = call.get().get();
+            success = true;
+            return result;
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof EOFException) {
+                log.warn("{} got less data than expected: {}", operation, ex.getCause().getMessage());
+                throw new BadRequestException("content is shorter than Content-Length");
+            }
+            log.error("{} failed: {}", operation, ex.getCause().getMessage());
+            throw new InternalServerErrorException();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            log.error("{} interrupted", operation);
+            throw new InternalServerErrorException();
+        } catch (Exception ex) {
+            log.error("{} failed: {}", operation, ex.getMessage());
+            throw new InternalServerErrorException();
+        } finally {
+            metrics.stopObjectOperation(sample, operation, success);
+        }
+    }
+}
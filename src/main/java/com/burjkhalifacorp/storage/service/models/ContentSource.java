@@ -0,0 +1,11 @@
+package com.burjkhalifacorp.storage.service.models;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+// Opens stored content lazily, so requests answered from metadata don't touch object storage.
+// Stream is completed when object storage responds, no thread waits for it meanwhile.
+@FunctionalInterface
+public interface ContentSource {
+    CompletableFuture<InputStream> open(long offset, long length);
+}
@@ -0,0 +1,12 @@
+package com.burjkhalifacorp.storage.service.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.UUID;
+
+@AllArgsConstructor
+@Getter
+public class FileMetadataChangedEvent {
+    UUID fileId;
+}
@@ -0,0 +1,19 @@
+package com.burjkhalifacorp.storage.service.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Content written to MinIO by upload pipeline, nothing is written for empty content
+@AllArgsConstructor
+@Getter
+public class IngestedObject {
+    // size of content as uploaded
+    long size;
+    // SHA-256 of content as uploaded, hex encoded
+    String hash;
+    String contentType;
+    // size of MinIO object, differs from size when content is encoded
+    long storedSize;
+    // null when content is stored as is
+    String encoding;
+}
@@ -1,14 +1,51 @@
 package com.burjkhalifacorp.storage.service.models;
 
 import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.errors.StorageException;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
 import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @AllArgsConstructor
 @Getter
 public class StoredFile {
     FileMetadataDto metadata;
-    InputStream inputStream;
+    String hash;
+    // content as uploaded, decoded if it's stored encoded
+    ContentSource contentSource;
+    // null when content is stored as is
+    String encoding;
+    long encodedSize;
+    // stored object as is, may be passed to client which accepts its encoding
+    ContentSource encodedSource;
+
+    public StoredFile(FileMetadataDto metadata, String hash, ContentSource contentSource) {
+        this(metadata, hash, contentSource, null, metadata.getSize(), contentSource);
+    }
+
+    public InputStream openStream() throws StorageException {
+        return openStream(0, metadata.getSize());
+    }
+
+    public InputStream openStream(long offset, long length) throws StorageException {
+        try {
+            return contentSource.open(offset, length).join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof StorageException storageException) {
+                throw storageException;
+            }
+            throw ex;
+        }
+    }
+
+    public CompletableFuture<InputStream> openStreamAsync(long offset, long length) {
+        return contentSource.open(offset, length);
+    }
+
+    public CompletableFuture<InputStream> openEncodedStreamAsync() {
+        return encodedSource.open(0, encodedSize);
+    }
 }
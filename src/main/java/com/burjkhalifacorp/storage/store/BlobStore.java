@@ -0,0 +1,45 @@
+package com.burjkhalifacorp.storage.store;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// Object storage backend which holds stored content. Keys are ASCII. Asynchronous calls never throw,
+// failures complete their futures, content shorter than declared length fails with EOFException
+public interface BlobStore {
+    // content is written as a whole, object becomes visible when it's complete
+    CompletableFuture<Void> put(String key, byte[] content, int length);
+
+    // whole object
+    CompletableFuture<InputStream> get(String key);
+
+    // range of object, shorter when object ends earlier
+    CompletableFuture<InputStream> get(String key, long offset, long length);
+
+    // returns upload id
+    CompletableFuture<String> createMultipart(String key);
+
+    // returns tag of uploaded part, part uploaded again gets a new tag
+    CompletableFuture<String> putPart(String key, String uploadId, int partNumber, byte[] buffer, int length);
+
+    // stream is read before the call returns, caller thread isn't handed over to the backend
+    CompletableFuture<String> putPart(String key, String uploadId, int partNumber, InputStream stream, long length);
+
+    // tags of parts 1..n in order
+    CompletableFuture<Void> completeMultipart(String key, String uploadId, List<String> partTags);
+
+    CompletableFuture<Void> abortMultipart(String key, String uploadId);
+
+    // missing object isn't an error
+    void delete(String key) throws IOException;
+
+    // returns keys which failed to be removed
+    List<String> deleteAll(Collection<String> keys) throws IOException;
+
+    void copy(String sourceKey, String targetKey) throws IOException;
+
+    // all objects in binary order of keys, read while iterated. Failures while iterating are UncheckedIOException
+    Iterable<StoredObject> list(int pageSize) throws IOException;
+}
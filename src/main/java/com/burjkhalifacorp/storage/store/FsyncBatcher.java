@@ -0,0 +1,171 @@
+package com.burjkhalifacorp.storage.store;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+// Moves written files into place and makes the renames durable. Data of files is forced by writers
+// in parallel, renames are made by one thread in batches and every directory of a batch is synced once,
+// so concurrent writes into the same shard share one directory fsync. Renames queued while a batch
+// is synced form the next one, a lone write doesn't wait for others. Moves are completed on the io
+// executor, so stages chained by callers don't hold up the next batch
+@Slf4j
+class FsyncBatcher {
+    private final boolean fsync;
+    private final int batchSize;
+    private final Executor completionExecutor;
+    private final BlockingQueue<Move> queue = new LinkedBlockingQueue<>();
+    private Thread committer;
+    private volatile boolean running;
+
+    FsyncBatcher(boolean fsync, int batchSize, Executor completionExecutor) {
+        this.fsync = fsync;
+        this.batchSize = batchSize;
+        this.completionExecutor = completionExecutor;
+    }
+
+    void start() {
+        if (!fsync) {
+            return;
+        }
+        running = true;
+        committer = new Thread(this::commitLoop, "local-store-fsync");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    void stop() {
+        if (committer == null) {
+            return;
+        }
+        running = false;
+        committer.interrupt();
+    }
+
+    // source and target must be on the same filesystem
+    CompletableFuture<Void> move(Path source, Path target) {
+        if (!fsync) {
+            try {
+                rename(source, target);
+                return CompletableFuture.completedFuture(null);
+            } catch (IOException ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+        }
+        Move move = new Move(source, target, new CompletableFuture<>());
+        queue.add(move);
+        if (!running) {
+            // stopped meanwhile, committer may be gone already
+            failQueued();
+        }
+        return move.done();
+    }
+
+    // directory created by writer, its own entry is synced in parent
+    void syncDirectory(Path directory) throws IOException {
+        if (!fsync) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    private void commitLoop() {
+        List<Move> batch = new ArrayList<>();
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException ex) {
+                break;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            commit(batch);
+            batch.clear();
+        }
+        failQueued();
+    }
+
+    private void commit(List<Move> batch) {
+        Set<Path> directories = new LinkedHashSet<>();
+        List<Move> renamed = new ArrayList<>();
+        for (Move move : batch) {
+            try {
+                rename(move.source(), move.target());
+                directories.add(move.target().getParent());
+                renamed.add(move);
+            } catch (IOException ex) {
+                complete(move, ex);
+            }
+        }
+
+        Map<Path, IOException> failures = new HashMap<>();
+        for (Path directory : directories) {
+            try {
+                syncDirectory(directory);
+            } catch (IOException ex) {
+                log.error("failed to sync directory {}: {}", directory, ex.getMessage());
+                failures.put(directory, ex);
+            }
+        }
+        for (Move move : renamed) {
+            complete(move, failures.get(move.target().getParent()));
+        }
+    }
+
+    private void complete(Move move, IOException failure) {
+        Runnable completion = failure != null
+                ? () -> move.done().completeExceptionally(failure)
+                : () -> move.done().complete(null);
+        try {
+            completionExecutor.execute(completion);
+        } catch (RejectedExecutionException ex) {
+            // executor is shut down on stop, callers must still be released
+            completion.run();
+        }
+    }
+
+    private void failQueued() {
+        Move move;
+        while ((move = queue.poll()) != null) {
+            deleteQuietly(move.source());
+            complete(move, new IOException("local store is stopped"));
+        }
+    }
+
+    private static void rename(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            deleteQuietly(source);
+            throw ex;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ex) {
+            log.error("failed to delete {}: {}", path, ex.getMessage());
+        }
+    }
+
+    private record Move(Path source, Path target, CompletableFuture<Void> done) {
+    }
+}
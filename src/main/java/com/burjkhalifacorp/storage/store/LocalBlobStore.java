@@ -0,0 +1,491 @@
+package com.burjkhalifacorp.storage.store;
+
+import com.burjkhalifacorp.storage.config.LocalStoreConfig;
+import com.burjkhalifacorp.storage.errors.InitializationFailedException;
+import com.burjkhalifacorp.storage.utils.FileRangeInputStream;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+// Keeps objects in local directory, for single node deployments and edge caches which don't need
+// a network hop to S3. Objects are sharded by first two pairs of key characters, objects/ab/cd/abcd...,
+// so directories stay small and listing them in order gives objects in order of keys.
+// Every write goes to tmp first and is renamed into place when it's complete, readers never see
+// partial objects, and is acknowledged when data and rename are synced unless fsync is disabled
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "local")
+public class LocalBlobStore implements BlobStore {
+    private static final int SHARD_LENGTH = 2;
+
+    private final Executor ioExecutor;
+    // shard directories known to exist
+    private final Set<Path> shards = ConcurrentHashMap.newKeySet();
+    private FsyncBatcher batcher;
+    private Path objectsDirectory;
+    private Path uploadsDirectory;
+    private Path tmpDirectory;
+
+    @Value("${storage.local.directory}")
+    private Path directory;
+
+    // without fsync writes survive process crash but not power loss
+    @Value("${storage.local.fsync}")
+    private boolean fsync;
+
+    // max renames synced at once
+    @Value("${storage.local.fsync-batch}")
+    private int fsyncBatch;
+
+    public LocalBlobStore(@Qualifier(LocalStoreConfig.EXECUTOR_NAME) Executor ioExecutor) {
+        this.ioExecutor = ioExecutor;
+    }
+
+    @PostConstruct
+    public void init() {
+        objectsDirectory = directory.resolve("objects");
+        uploadsDirectory = directory.resolve("uploads");
+        tmpDirectory = directory.resolve("tmp");
+        try {
+            Files.createDirectories(objectsDirectory);
+            Files.createDirectories(uploadsDirectory);
+            // writes interrupted by previous run
+            FileSystemUtils.deleteRecursively(tmpDirectory);
+            Files.createDirectories(tmpDirectory);
+        } catch (IOException ex) {
+            log.error("failed to prepare local store directory {}: {}", directory, ex.getMessage());
+            throw new InitializationFailedException("failed to prepare local store directory", ex);
+        }
+        batcher = new FsyncBatcher(fsync, fsyncBatch, ioExecutor);
+        batcher.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        batcher.stop();
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, byte[] content, int length) {
+        return async(() -> {
+                    Path target = objectPath(key);
+                    return new Write(writeTemp(ByteBuffer.wrap(content, 0, length)), target);
+                })
+                .thenCompose(this::publish);
+    }
+
+    @Override
+    public CompletableFuture<InputStream> get(String key) {
+        return open(key, 0, -1);
+    }
+
+    @Override
+    public CompletableFuture<InputStream> get(String key, long offset, long length) {
+        return open(key, offset, length);
+    }
+
+    @Override
+    public CompletableFuture<String> createMultipart(String key) {
+        return async(() -> {
+            objectPath(key);
+            String uploadId = UUID.randomUUID().toString();
+            Files.createDirectory(uploadsDirectory.resolve(uploadId));
+            batcher.syncDirectory(uploadsDirectory);
+            return uploadId;
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> putPart(String key, String uploadId, int partNumber, byte[] buffer, int length) {
+        final String tag = UUID.randomUUID().toString();
+        return async(() -> {
+                    Path target = partPath(uploadId, partNumber, tag);
+                    return new Write(writeTemp(ByteBuffer.wrap(buffer, 0, length)), target);
+                })
+                .thenCompose(this::publishPart)
+                .thenApply(done -> tag);
+    }
+
+    // request body is written by the caller thread, it's blocked on the stream anyway
+    @Override
+    public CompletableFuture<String> putPart(String key, String uploadId, int partNumber, InputStream stream, long length) {
+        final String tag = UUID.randomUUID().toString();
+        final Write write;
+        try {
+            Path target = partPath(uploadId, partNumber, tag);
+            write = new Write(writeTemp(stream, length), target);
+        } catch (IOException | IllegalArgumentException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        return publishPart(write).thenApply(done -> tag);
+    }
+
+    // parts are copied into the object with copy_file_range where the filesystem supports it,
+    // data of parts isn't read into user space
+    @Override
+    public CompletableFuture<Void> completeMultipart(String key, String uploadId, List<String> partTags) {
+        return async(() -> {
+                    Path target = objectPath(key);
+                    List<Path> parts = new ArrayList<>();
+                    long size = 0;
+                    for (int i = 0; i < partTags.size(); ++i) {
+                        Path part = partPath(uploadId, i + 1, partTags.get(i));
+                        size += Files.size(part);
+                        parts.add(part);
+                    }
+                    Path temp = newTempPath();
+                    try (RandomAccessFile file = new RandomAccessFile(temp.toFile(), "rw")) {
+                        // final size is set at once, parts are written into allocated range
+                        file.setLength(size);
+                        FileChannel channel = file.getChannel();
+                        long position = 0;
+                        for (Path part : parts) {
+                            try (FileChannel source = FileChannel.open(part, StandardOpenOption.READ)) {
+                                position += transferFully(source, channel, position);
+                            }
+                        }
+                        force(channel);
+                    } catch (IOException ex) {
+                        Files.deleteIfExists(temp);
+                        throw ex;
+                    }
+                    return new Write(temp, target);
+                })
+                .thenCompose(this::publish)
+                .thenRun(() -> deleteUpload(uploadId));
+    }
+
+    @Override
+    public CompletableFuture<Void> abortMultipart(String key, String uploadId) {
+        return async(() -> {
+            FileSystemUtils.deleteRecursively(uploadPath(uploadId));
+            return null;
+        });
+    }
+
+    // removal isn't synced, object which comes back after power loss is found by reconciler
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(objectPath(key));
+    }
+
+    @Override
+    public List<String> deleteAll(Collection<String> keys) {
+        List<String> failed = new ArrayList<>();
+        for (String key : keys) {
+            try {
+                delete(key);
+            } catch (IOException | IllegalArgumentException ex) {
+                log.error("delete failed for {}: {}", key, ex.getMessage());
+                failed.add(key);
+            }
+        }
+        return failed;
+    }
+
+    // copy is a new object with its own modification time
+    @Override
+    public void copy(String sourceKey, String targetKey) throws IOException {
+        Path target = objectPath(targetKey);
+        Path temp = newTempPath();
+        try (FileChannel source = FileChannel.open(objectPath(sourceKey), StandardOpenOption.READ);
+             FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            transferFully(source, channel, 0);
+            force(channel);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+        try {
+            publish(new Write(temp, target)).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("copy of %s interrupted".formatted(sourceKey));
+        } catch (ExecutionException ex) {
+            throw new IOException(ex.getCause().getMessage(), ex.getCause());
+        }
+    }
+
+    // shard directories are read one at a time, page size doesn't apply
+    @Override
+    public Iterable<StoredObject> list(int pageSize) {
+        return Listing::new;
+    }
+
+    private CompletableFuture<InputStream> open(String key, long offset, long length) {
+        try {
+            FileChannel channel = FileChannel.open(objectPath(key), StandardOpenOption.READ);
+            long available = Math.max(0, channel.size() - offset);
+            return CompletableFuture.completedFuture(new FileRangeInputStream(
+                    channel, offset, length < 0 ? available : Math.min(length, available)));
+        } catch (IOException | IllegalArgumentException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    private CompletableFuture<Void> publish(Write write) {
+        try {
+            ensureShard(write.target().getParent());
+        } catch (IOException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        return batcher.move(write.temp(), write.target());
+    }
+
+    // directory of aborted upload isn't created again, part fails
+    private CompletableFuture<Void> publishPart(Write write) {
+        return batcher.move(write.temp(), write.target());
+    }
+
+    private Path writeTemp(ByteBuffer content) throws IOException {
+        Path temp = newTempPath();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+            force(channel);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+        return temp;
+    }
+
+    // declared length is allocated before the stream is read, positional writes fill it
+    private Path writeTemp(InputStream stream, long length) throws IOException {
+        Path temp = newTempPath();
+        try (RandomAccessFile file = new RandomAccessFile(temp.toFile(), "rw")) {
+            file.setLength(length);
+            FileChannel channel = file.getChannel();
+            ReadableByteChannel source = Channels.newChannel(stream);
+            long written = 0;
+            while (written < length) {
+                long count = channel.transferFrom(source, written, length - written);
+                if (count <= 0) {
+                    throw new EOFException("expected %d bytes, got %d".formatted(length, written));
+                }
+                written += count;
+            }
+            force(channel);
+        } catch (IOException ex) {
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+        return temp;
+    }
+
+    private void force(FileChannel channel) throws IOException {
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    private void ensureShard(Path shard) throws IOException {
+        if (shards.contains(shard)) {
+            return;
+        }
+        // entries of created directories are synced in their parents
+        Path parent = shard.getParent();
+        if (!Files.isDirectory(parent)) {
+            Files.createDirectories(parent);
+            batcher.syncDirectory(parent.getParent());
+        }
+        if (!Files.isDirectory(shard)) {
+            Files.createDirectories(shard);
+            batcher.syncDirectory(parent);
+        }
+        shards.add(shard);
+    }
+
+    private void deleteUpload(String uploadId) {
+        try {
+            FileSystemUtils.deleteRecursively(uploadPath(uploadId));
+        } catch (IOException ex) {
+            log.warn("parts of completed upload {} are left: {}", uploadId, ex.getMessage());
+        }
+    }
+
+    private Path newTempPath() {
+        return tmpDirectory.resolve(UUID.randomUUID().toString());
+    }
+
+    private Path objectPath(String key) {
+        if (key.length() < 2 * SHARD_LENGTH) {
+            throw new IllegalArgumentException("key %s is too short".formatted(key));
+        }
+        return objectsDirectory
+                .resolve(encode(key.substring(0, SHARD_LENGTH)))
+                .resolve(encode(key.substring(SHARD_LENGTH, 2 * SHARD_LENGTH)))
+                .resolve(encode(key));
+    }
+
+    private Path uploadPath(String uploadId) {
+        // upload id becomes a path, only ids made by createMultipart are accepted
+        return uploadsDirectory.resolve(UUID.fromString(uploadId).toString());
+    }
+
+    private Path partPath(String uploadId, int partNumber, String tag) {
+        return uploadPath(uploadId).resolve(partNumber + "." + UUID.fromString(tag));
+    }
+
+    private static long transferFully(FileChannel source, FileChannel target, long position) throws IOException {
+        long size = source.size();
+        long transferred = 0;
+        while (transferred < size) {
+            long count = target.transferFrom(source, position + transferred, size - transferred);
+            if (count <= 0) {
+                throw new EOFException("%d bytes of %d transferred".formatted(transferred, size));
+            }
+            transferred += count;
+        }
+        return transferred;
+    }
+
+    // file names keep letters, digits, '-' and '_', other characters are %XX of their UTF-8 bytes
+    static String encode(String key) {
+        StringBuilder name = new StringBuilder(key.length());
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_') {
+                name.append(c);
+            } else {
+                name.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xf, 16)));
+            }
+        }
+        return name.toString();
+    }
+
+    static String decode(String name) {
+        ByteArrayOutputStream key = new ByteArrayOutputStream(name.length());
+        for (int i = 0; i < name.length(); ++i) {
+            char c = name.charAt(i);
+            if (c == '%' && i + 2 < name.length()) {
+                key.write(Integer.parseInt(name, i + 1, i + 3, 16));
+                i += 2;
+            } else {
+                key.write(c);
+            }
+        }
+        return key.toString(StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface IoTask<T> {
+        T run() throws IOException;
+    }
+
+    private <T> CompletableFuture<T> async(IoTask<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        try {
+            ioExecutor.execute(() -> {
+                try {
+                    result.complete(task.run());
+                } catch (IOException | RuntimeException ex) {
+                    result.completeExceptionally(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            result.completeExceptionally(ex);
+        }
+        return result;
+    }
+
+    private record Write(Path temp, Path target) {
+    }
+
+    // walks both shard levels and objects in order of their decoded names
+    private class Listing implements Iterator<StoredObject> {
+        private final Iterator<Path> firstLevel = sortedEntries(objectsDirectory);
+        private Iterator<Path> secondLevel = Collections.emptyIterator();
+        private Iterator<Path> objects = Collections.emptyIterator();
+        private StoredObject next;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (objects.hasNext()) {
+                    next = toStoredObject(objects.next());
+                } else if (secondLevel.hasNext()) {
+                    objects = sortedEntries(secondLevel.next());
+                } else if (firstLevel.hasNext()) {
+                    secondLevel = sortedEntries(firstLevel.next());
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public StoredObject next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            StoredObject result = next;
+            next = null;
+            return result;
+        }
+
+        private Iterator<Path> sortedEntries(Path directory) {
+            try (Stream<Path> entries = Files.list(directory)) {
+                return entries
+                        .sorted(Comparator.comparing(path -> decode(path.getFileName().toString())))
+                        .toList()
+                        .iterator();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        // null when object was removed after its directory was read
+        private StoredObject toStoredObject(Path path) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                return new StoredObject(decode(path.getFileName().toString()), attributes.size(),
+                        attributes.lastModifiedTime().toInstant());
+            } catch (NoSuchFileException ex) {
+                return null;
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.burjkhalifacorp.storage.store;
+
+import com.burjkhalifacorp.storage.errors.InitializationFailedException;
+import io.minio.BucketExistsArgs;
+import io.minio.CopyObjectArgs;
+import io.minio.CopySource;
+import io.minio.GetObjectArgs;
+import io.minio.ListObjectsArgs;
+import io.minio.MakeBucketArgs;
+import io.minio.MinioAsyncClient;
+import io.minio.MinioClient;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import io.minio.RemoveObjectsArgs;
+import io.minio.Result;
+import io.minio.UploadPartResponse;
+import io.minio.errors.InsufficientDataException;
+import io.minio.messages.DeleteError;
+import io.minio.messages.DeleteObject;
+import io.minio.messages.Item;
+import io.minio.messages.Part;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+// Keeps objects in one MinIO bucket
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "storage.backend", havingValue = "minio", matchIfMissing = true)
+public class MinioBlobStore implements BlobStore {
+    private final MinioClient minioClient;
+    // multipart upload API is exposed by async client only
+    private final MinioAsyncClient minioAsyncClient;
+
+    @Value("${minio.bucket}")
+    private String bucketName;
+
+    public MinioBlobStore(MinioClient minioClient, MinioAsyncClient minioAsyncClient) {
+        this.minioClient = minioClient;
+        this.minioAsyncClient = minioAsyncClient;
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            boolean found = minioClient.bucketExists(
+                    BucketExistsArgs.builder().bucket(bucketName).build());
+            if (!found) {
+                minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
+            }
+        } catch (Exception e) {
+            log.error("failed to create MinIO bucket: {}", e.getMessage());
+            throw new InitializationFailedException("failed to create MinIO bucket", e.getCause());
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, byte[] content, int length) {
+        return start(() -> minioAsyncClient.putObject(
+                        PutObjectArgs.builder()
+                                .bucket(bucketName)
+                                .object(key)
+                                .stream(new ByteArrayInputStream(content, 0, length), length, -1)
+                                .build()))
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<InputStream> get(String key) {
+        return start(() -> minioAsyncClient.getObject(
+                        GetObjectArgs.builder()
+                                .bucket(bucketName)
+                                .object(key)
+                                .build()))
+                .thenApply(response -> response);
+    }
+
+    @Override
+    public CompletableFuture<InputStream> get(String key, long offset, long length) {
+        // future completes with response headers, body is read from the stream
+        return start(() -> minioAsyncClient.getObject(
+                        GetObjectArgs.builder()
+                                .bucket(bucketName)
+                                .object(key)
+                                .offset(offset)
+                                .length(length)
+                                .build()))
+                .thenApply(response -> response);
+    }
+
+    @Override
+    public CompletableFuture<String> createMultipart(String key) {
+        return start(() -> minioAsyncClient.createMultipartUploadAsync(bucketName, null, key, null, null))
+                .thenApply(response -> response.result().uploadId());
+    }
+
+    @Override
+    public CompletableFuture<String> putPart(String key, String uploadId, int partNumber, byte[] buffer, int length) {
+        return start(() -> minioAsyncClient.uploadPartAsync(
+                        bucketName, null, key, buffer, length, uploadId, partNumber, null, null))
+                .thenApply(UploadPartResponse::etag);
+    }
+
+    @Override
+    public CompletableFuture<String> putPart(String key, String uploadId, int partNumber, InputStream stream, long length) {
+        return start(() -> minioAsyncClient.uploadPartAsync(
+                        bucketName, null, key, stream, length, uploadId, partNumber, null, null))
+                .thenApply(UploadPartResponse::etag);
+    }
+
+    @Override
+    public CompletableFuture<Void> completeMultipart(String key, String uploadId, List<String> partTags) {
+        Part[] parts = IntStream.range(0, partTags.size())
+                .mapToObj(i -> new Part(i + 1, partTags.get(i)))
+                .toArray(Part[]::new);
+        return start(() -> minioAsyncClient.completeMultipartUploadAsync(
+                        bucketName, null, key, uploadId, parts, null, null))
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> abortMultipart(String key, String uploadId) {
+        return start(() -> minioAsyncClient.abortMultipartUploadAsync(bucketName, null, key, uploadId, null, null))
+                .thenApply(response -> null);
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        call(() -> {
+            minioClient.removeObject(
+                    RemoveObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(key)
+                            .build());
+            return null;
+        });
+    }
+
+    // one multi-delete request per 1000 keys
+    @Override
+    public List<String> deleteAll(Collection<String> keys) throws IOException {
+        List<DeleteObject> objects = keys.stream().map(DeleteObject::new).toList();
+        return call(() -> {
+            // objects are removed while results are iterated, only failures are returned
+            Iterable<Result<DeleteError>> results = minioClient.removeObjects(
+                    RemoveObjectsArgs.builder()
+                            .bucket(bucketName)
+                            .objects(objects)
+                            .build());
+            List<String> failed = new ArrayList<>();
+            for (Result<DeleteError> result : results) {
+                DeleteError error = result.get();
+                log.error("removeObjects failed for {}: {}", error.objectName(), error.message());
+                failed.add(error.objectName());
+            }
+            return failed;
+        });
+    }
+
+    @Override
+    public void copy(String sourceKey, String targetKey) throws IOException {
+        call(() -> minioClient.copyObject(
+                CopyObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(targetKey)
+                        .source(CopySource.builder()
+                                .bucket(bucketName)
+                                .object(sourceKey)
+                                .build())
+                        .build()));
+    }
+
+    // pages of listing are requested while it's iterated
+    @Override
+    public Iterable<StoredObject> list(int pageSize) {
+        Iterable<Result<Item>> items = minioClient.listObjects(
+                ListObjectsArgs.builder()
+                        .bucket(bucketName)
+                        .recursive(true)
+                        .maxKeys(pageSize)
+                        .build());
+        return () -> new Iterator<>() {
+            private final Iterator<Result<Item>> results = items.iterator();
+
+            @Override
+            public boolean hasNext() {
+                return results.hasNext();
+            }
+
+            @Override
+            public StoredObject next() {
+                try {
+                    Item item = results.next().get();
+                    return new StoredObject(item.objectName(), item.size(), item.lastModified().toInstant());
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                } catch (Exception ex) {
+                    throw new UncheckedIOException(new IOException(ex.getMessage(), ex));
+                }
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface MinioCall<T> {
+        CompletableFuture<T> start() throws Exception;
+    }
+
+    // request is built and sent by caller thread, its failures are passed through future as well
+    private static <T> CompletableFuture<T> start(MinioCall<T> call) {
+        try {
+            return call.start();
+        } catch (InsufficientDataException ex) {
+            return CompletableFuture.failedFuture(new EOFException(ex.getMessage()));
+        } catch (Exception ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    @FunctionalInterface
+    private interface SyncCall<T> {
+        T call() throws Exception;
+    }
+
+    private static <T> T call(SyncCall<T> call) throws IOException {
+        try {
+            return call.call();
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+}
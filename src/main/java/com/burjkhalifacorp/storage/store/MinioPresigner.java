@@ -0,0 +1,98 @@
+package com.burjkhalifacorp.storage.store;
+
+import io.minio.GetPresignedObjectUrlArgs;
+import io.minio.MinioClient;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
+import io.minio.http.Method;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+
+// Signs URLs which let clients put and get objects on MinIO directly, content doesn't pass the service.
+// Needs minio backend, the client of bucket is used to check objects uploaded by clients
+@Component
+@ConditionalOnProperty(name = "presigned.enabled", havingValue = "true")
+public class MinioPresigner {
+    private final MinioClient minioClient;
+    // signs for address clients reach MinIO at, it never sends requests itself
+    private final MinioClient signingClient;
+
+    @Value("${minio.bucket}")
+    private String bucketName;
+
+    @Value("${presigned.expiry}")
+    private Duration expiry;
+
+    public MinioPresigner(
+            MinioClient minioClient,
+            @Value("${presigned.endpoint}") String endpoint,
+            @Value("${presigned.region}") String region,
+            @Value("${minio.access-key}") String accessKey,
+            @Value("${minio.secret-key}") String secretKey) {
+        this.minioClient = minioClient;
+        // with region set signing doesn't ask MinIO for bucket location
+        this.signingClient = MinioClient.builder()
+                .endpoint(endpoint)
+                .credentials(accessKey, secretKey)
+                .region(region)
+                .build();
+    }
+
+    public Duration getExpiry() {
+        return expiry;
+    }
+
+    public String presignPut(String key) throws IOException {
+        return presign(Method.PUT, key, Map.of());
+    }
+
+    // response headers are overridden by response-* parameters, they are covered by signature
+    public String presignGet(String key, Map<String, String> responseHeaders) throws IOException {
+        return presign(Method.GET, key, responseHeaders);
+    }
+
+    // empty if object isn't uploaded
+    public Optional<ObjectStat> stat(String key) throws IOException {
+        try {
+            StatObjectResponse response = minioClient.statObject(
+                    StatObjectArgs.builder()
+                            .bucket(bucketName)
+                            .object(key)
+                            .build());
+            return Optional.of(new ObjectStat(response.size(), response.etag()));
+        } catch (ErrorResponseException ex) {
+            if ("NoSuchKey".equals(ex.errorResponse().code())) {
+                return Optional.empty();
+            }
+            throw new IOException(ex.getMessage(), ex);
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    private String presign(Method method, String key, Map<String, String> queryParams) throws IOException {
+        try {
+            return signingClient.getPresignedObjectUrl(
+                    GetPresignedObjectUrlArgs.builder()
+                            .method(method)
+                            .bucket(bucketName)
+                            .object(key)
+                            .expiry((int) expiry.toSeconds())
+                            .extraQueryParams(queryParams)
+                            .build());
+        } catch (IOException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.burjkhalifacorp.storage.store;
+
+// Object as reported by MinIO, ETag is MD5 of content for objects put in one request
+public record ObjectStat(long size, String etag) {
+}
@@ -0,0 +1,28 @@
+package com.burjkhalifacorp.storage.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Reusable buffers of the same size, at most maxIdle released buffers are kept for reuse
+public class BufferPool {
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> idle;
+
+    public BufferPool(int bufferSize, int maxIdle) {
+        this.bufferSize = bufferSize;
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, maxIdle));
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public byte[] acquire() {
+        byte[] buffer = idle.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    public void release(byte[] buffer) {
+        idle.offer(buffer);
+    }
+}
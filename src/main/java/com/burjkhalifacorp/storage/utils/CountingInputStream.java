@@ -0,0 +1,78 @@
+package com.burjkhalifacorp.storage.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.LongConsumer;
+
+// Reports number of bytes read from the stream when it's closed
+public class CountingInputStream extends FilterInputStream implements LocalFileStream {
+    private final LongConsumer onClose;
+    private long count = 0;
+    private boolean closed = false;
+
+    public CountingInputStream(InputStream inputStream, LongConsumer onClose) {
+        super(inputStream);
+        this.onClose = onClose;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1) {
+            count++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+        int bytesRead = in.read(b, off, len);
+        if (bytesRead > 0) {
+            count += bytesRead;
+        }
+        return bytesRead;
+    }
+
+    // delegated, so transferTo of wrapped stream is used instead of the default copy loop
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        long transferred = in.transferTo(out);
+        count += transferred;
+        return transferred;
+    }
+
+    @Override
+    public boolean isLocalFile() {
+        return in instanceof LocalFileStream local && local.isLocalFile();
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel target, ByteBuffer buffer) throws IOException {
+        if (!(in instanceof LocalFileStream local)) {
+            throw new UnsupportedOperationException("stream isn't backed by local file");
+        }
+        long transferred = local.transferTo(target, buffer);
+        count += transferred;
+        return transferred;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            onClose.accept(count);
+        }
+        super.close();
+    }
+}
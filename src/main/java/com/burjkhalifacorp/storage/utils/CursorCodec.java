@@ -0,0 +1,60 @@
+package com.burjkhalifacorp.storage.utils;
+
+import com.burjkhalifacorp.storage.errors.BadRequestException;
+import com.mongodb.MongoClientSettings;
+import org.bson.Document;
+import org.bson.codecs.DocumentCodec;
+import org.bson.json.JsonMode;
+import org.bson.json.JsonParseException;
+import org.bson.json.JsonWriterSettings;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Encodes keyset of the last listed file (sort key and _id) into opaque url-safe cursor.
+// Extended JSON keeps BSON types of keys, so dates and ids compare the same way after decoding.
+public class CursorCodec {
+    private static final String SORT_FIELD = "s";
+    private static final String KEYS_FIELD = "k";
+
+    private static final DocumentCodec CODEC = new DocumentCodec(MongoClientSettings.getDefaultCodecRegistry());
+    private static final JsonWriterSettings JSON_SETTINGS = JsonWriterSettings.builder()
+            .outputMode(JsonMode.EXTENDED)
+            .build();
+
+    public static String encode(Sort sort, KeysetScrollPosition position) {
+        Document cursor = new Document(SORT_FIELD, sort.toString())
+                .append(KEYS_FIELD, new Document(position.getKeys()));
+        byte[] json = cursor.toJson(JSON_SETTINGS, CODEC).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+    }
+
+    // Returns initial position for absent cursor
+    public static KeysetScrollPosition decode(Sort sort, String token) {
+        if (token == null || token.isBlank()) {
+            return ScrollPosition.keyset();
+        }
+
+        Document cursor;
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            cursor = Document.parse(json, CODEC);
+        } catch (IllegalArgumentException | JsonParseException ex) {
+            throw new BadRequestException("invalid cursor");
+        }
+
+        // keyset of other sort order would skip or repeat files
+        if (!sort.toString().equals(cursor.getString(SORT_FIELD))
+                || !(cursor.get(KEYS_FIELD) instanceof Document keys)
+                || keys.isEmpty()) {
+            throw new BadRequestException("cursor doesn't match listing order");
+        }
+        Map<String, Object> keyset = new LinkedHashMap<>(keys);
+        return ScrollPosition.forward(keyset);
+    }
+}
@@ -0,0 +1,27 @@
+package com.burjkhalifacorp.storage.utils;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Reusable direct buffers of the same size, at most maxIdle released buffers are kept for reuse.
+// Allocation of direct buffer is expensive and its memory is freed only by GC, so they are pooled
+public class DirectBufferPool {
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> idle;
+
+    public DirectBufferPool(int bufferSize, int maxIdle) {
+        this.bufferSize = bufferSize;
+        this.idle = new ArrayBlockingQueue<>(Math.max(1, maxIdle));
+    }
+
+    // cleared buffer
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = idle.poll();
+        return buffer != null ? buffer.clear() : ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public void release(ByteBuffer buffer) {
+        idle.offer(buffer);
+    }
+}
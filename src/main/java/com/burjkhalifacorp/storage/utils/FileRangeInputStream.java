@@ -0,0 +1,106 @@
+package com.burjkhalifacorp.storage.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+
+// Reads range of local file. To file or socket channel the range is sent with sendfile, other channels
+// like Tomcat's response stream get it through direct buffer which is written to socket as is
+public class FileRangeInputStream extends InputStream implements LocalFileStream {
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private long position;
+    private long remaining;
+
+    public FileRangeInputStream(FileChannel channel, long offset, long length) {
+        this.channel = channel;
+        this.position = offset;
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (remaining <= 0) {
+            return -1;
+        }
+        int count = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+        if (count == -1) {
+            // file is shorter than expected range
+            remaining = 0;
+            return -1;
+        }
+        position += count;
+        remaining -= count;
+        return count;
+    }
+
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+        WritableByteChannel target = OutputStreamChannel.of(out);
+        if (target == null) {
+            // stream takes arrays only, bytes pass through heap anyway
+            return super.transferTo(out);
+        }
+        ByteBuffer buffer = target instanceof FileChannel || target instanceof SocketChannel
+                ? null
+                : ByteBuffer.allocateDirect((int) Math.min(remaining, TRANSFER_BUFFER_SIZE));
+        return transferTo(target, buffer);
+    }
+
+    @Override
+    public long transferTo(WritableByteChannel target, ByteBuffer buffer) throws IOException {
+        long transferred = 0;
+        while (remaining > 0) {
+            long count;
+            if (target instanceof FileChannel || target instanceof SocketChannel) {
+                count = channel.transferTo(position, remaining, target);
+            } else {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), remaining));
+                count = channel.read(buffer, position);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    target.write(buffer);
+                }
+            }
+            if (count <= 0) {
+                // file is shorter than expected range
+                break;
+            }
+            position += count;
+            remaining -= count;
+            transferred += count;
+        }
+        return transferred;
+    }
+
+    @Override
+    public boolean isLocalFile() {
+        return true;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(remaining, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
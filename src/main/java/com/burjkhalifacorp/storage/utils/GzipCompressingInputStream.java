@@ -0,0 +1,101 @@
+package com.burjkhalifacorp.storage.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Reads content of another stream compressed to gzip format, so compressed content can be
+// uploaded by the same pipeline as plain one without writing it to output stream first
+public class GzipCompressingInputStream extends InputStream {
+    private static final byte[] HEADER = {
+            0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+    private static final int INPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] input = new byte[INPUT_BUFFER_SIZE];
+    private final byte[] trailer = new byte[8];
+    private int headerPosition = 0;
+    private int trailerPosition = -1;
+    private boolean closed = false;
+
+    public GzipCompressingInputStream(InputStream in, int level) {
+        this.in = in;
+        // gzip header and trailer are written here, deflater produces raw deflate data
+        this.deflater = new Deflater(level, true);
+    }
+
+    // number of bytes read from underlying stream, which is size of uncompressed content
+    public long getBytesRead() {
+        return deflater.getBytesRead();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (headerPosition < HEADER.length) {
+            int count = Math.min(len, HEADER.length - headerPosition);
+            System.arraycopy(HEADER, headerPosition, b, off, count);
+            headerPosition += count;
+            return count;
+        }
+
+        while (!deflater.finished()) {
+            if (deflater.needsInput()) {
+                int count = in.read(input, 0, input.length);
+                if (count == -1) {
+                    deflater.finish();
+                } else if (count > 0) {
+                    crc.update(input, 0, count);
+                    deflater.setInput(input, 0, count);
+                }
+            }
+            int count = deflater.deflate(b, off, len);
+            if (count > 0) {
+                return count;
+            }
+        }
+
+        if (trailerPosition < 0) {
+            writeInt(trailer, 0, (int) crc.getValue());
+            writeInt(trailer, 4, (int) deflater.getBytesRead());
+            trailerPosition = 0;
+        }
+        if (trailerPosition == trailer.length) {
+            return -1;
+        }
+        int count = Math.min(len, trailer.length - trailerPosition);
+        System.arraycopy(trailer, trailerPosition, b, off, count);
+        trailerPosition += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            deflater.end();
+            in.close();
+        }
+    }
+
+    private static void writeInt(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
+    }
+}
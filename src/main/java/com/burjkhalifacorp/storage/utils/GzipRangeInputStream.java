@@ -0,0 +1,56 @@
+package com.burjkhalifacorp.storage.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+// Reads range of content stored in gzip format. Compressed stream can't be positioned,
+// so content before offset is decompressed and skipped. Nothing is read until the first read,
+// so the stream can be created in a thread which shouldn't block on network.
+public class GzipRangeInputStream extends InputStream {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream encoded;
+    private final long offset;
+    private long remaining;
+    private InputStream decoded;
+
+    public GzipRangeInputStream(InputStream encoded, long offset, long length) {
+        this.encoded = encoded;
+        this.offset = offset;
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(@NotNull byte[] b, int off, int len) throws IOException {
+        if (remaining <= 0) {
+            return -1;
+        }
+        if (decoded == null) {
+            decoded = new GZIPInputStream(encoded, BUFFER_SIZE);
+            decoded.skipNBytes(offset);
+        }
+        int count = decoded.read(b, off, (int) Math.min(len, remaining));
+        if (count > 0) {
+            remaining -= count;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (decoded != null) {
+            decoded.close();
+        } else {
+            encoded.close();
+        }
+    }
+}
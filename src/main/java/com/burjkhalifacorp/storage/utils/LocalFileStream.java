@@ -0,0 +1,15 @@
+package com.burjkhalifacorp.storage.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// Stream which may read a range of local file. Such range is written to output channel through
+// direct buffer, so its bytes aren't copied through heap
+public interface LocalFileStream {
+    // false when stream isn't backed by local file
+    boolean isLocalFile();
+
+    // writes rest of the range, buffer is used unless target takes the file itself
+    long transferTo(WritableByteChannel target, ByteBuffer buffer) throws IOException;
+}
@@ -0,0 +1,48 @@
+package com.burjkhalifacorp.storage.utils;
+
+import org.apache.catalina.connector.CoyoteOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+// Channel view of output stream. Tomcat's response stream takes byte buffers as is, so direct buffer
+// is written to socket without being copied to heap
+public final class OutputStreamChannel implements WritableByteChannel {
+    private final CoyoteOutputStream outputStream;
+    private boolean open = true;
+
+    private OutputStreamChannel(CoyoteOutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    // null when stream takes bytes only as arrays
+    public static WritableByteChannel of(OutputStream outputStream) {
+        if (outputStream instanceof WritableByteChannel channel) {
+            return channel;
+        }
+        if (outputStream instanceof CoyoteOutputStream coyoteOutputStream) {
+            return new OutputStreamChannel(coyoteOutputStream);
+        }
+        return null;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int count = src.remaining();
+        outputStream.write(src);
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    // response stream is closed by container
+    @Override
+    public void close() {
+        open = false;
+    }
+}
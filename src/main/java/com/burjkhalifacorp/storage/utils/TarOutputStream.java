@@ -0,0 +1,172 @@
+package com.burjkhalifacorp.storage.utils;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+// Writes POSIX tar (ustar) archive entry by entry, content of entry is passed through without buffering.
+// Names which don't fit ustar header and sizes over 8GB are written to PAX extended header.
+public class TarOutputStream extends FilterOutputStream {
+    private static final int BLOCK_SIZE = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final long MAX_USTAR_SIZE = 077777777777L;
+    private static final byte[] PADDING = new byte[BLOCK_SIZE];
+
+    private long entryRemaining = 0;
+    private long entrySize = 0;
+    private boolean entryOpen = false;
+    private boolean finished = false;
+
+    public TarOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    // size must be known upfront, it's written to header before content
+    public void putEntry(String name, long size, Instant modified) throws IOException {
+        if (entryOpen) {
+            closeEntry();
+        }
+        final byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        final boolean asciiName = nameBytes.length == name.length();
+        final long mtime = modified != null ? Math.max(modified.getEpochSecond(), 0) : 0;
+
+        StringBuilder pax = new StringBuilder();
+        if (!asciiName || nameBytes.length >= NAME_LENGTH) {
+            pax.append(paxRecord("path", name));
+        }
+        if (size > MAX_USTAR_SIZE) {
+            pax.append(paxRecord("size", Long.toString(size)));
+        }
+        if (!pax.isEmpty()) {
+            byte[] paxBytes = pax.toString().getBytes(StandardCharsets.UTF_8);
+            out.write(header("PaxHeader", paxBytes.length, mtime, (byte) 'x'));
+            out.write(paxBytes);
+            pad(paxBytes.length);
+        }
+
+        // readers which don't know PAX get truncated name, the rest take it from extended header
+        String headerName = asciiName && nameBytes.length < NAME_LENGTH ? name : asciiFallback(name);
+        out.write(header(headerName, Math.min(size, MAX_USTAR_SIZE), mtime, (byte) '0'));
+        entrySize = size;
+        entryRemaining = size;
+        entryOpen = true;
+    }
+
+    public void closeEntry() throws IOException {
+        if (!entryOpen) {
+            return;
+        }
+        if (entryRemaining != 0) {
+            throw new IOException("entry is %d bytes shorter than declared size".formatted(entryRemaining));
+        }
+        pad(entrySize);
+        entryOpen = false;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        checkWrite(1);
+        out.write(b);
+        entryRemaining--;
+    }
+
+    @Override
+    public void write(@NotNull byte[] b, int off, int len) throws IOException {
+        checkWrite(len);
+        out.write(b, off, len);
+        entryRemaining -= len;
+    }
+
+    // two empty blocks mark end of archive, underlying stream stays open
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        closeEntry();
+        out.write(PADDING);
+        out.write(PADDING);
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        super.close();
+    }
+
+    private void checkWrite(int len) throws IOException {
+        if (!entryOpen) {
+            throw new IOException("no entry to write to");
+        }
+        if (len > entryRemaining) {
+            throw new IOException("entry is longer than declared size");
+        }
+    }
+
+    private void pad(long written) throws IOException {
+        int tail = (int) (written % BLOCK_SIZE);
+        if (tail != 0) {
+            out.write(PADDING, 0, BLOCK_SIZE - tail);
+        }
+    }
+
+    private static byte[] header(String name, long size, long mtime, byte type) {
+        byte[] header = new byte[BLOCK_SIZE];
+        putString(header, 0, NAME_LENGTH, name);
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 108, 8, 0);
+        putOctal(header, 116, 8, 0);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, mtime);
+        header[156] = type;
+        putString(header, 257, 6, "ustar");
+        putString(header, 263, 2, "00");
+
+        // checksum is computed with its own field filled by spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        putOctal(header, 148, 7, checksum);
+        return header;
+    }
+
+    private static void putString(byte[] header, int offset, int length, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(bytes, 0, header, offset, Math.min(bytes.length, length));
+    }
+
+    // zero padded octal number terminated by NUL
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String octal = Long.toOctalString(value);
+        String padded = "0".repeat(length - 1 - octal.length()) + octal;
+        putString(header, offset, length - 1, padded);
+    }
+
+    // record length includes its own digits
+    private static String paxRecord(String key, String value) {
+        int payload = key.length() + value.getBytes(StandardCharsets.UTF_8).length + 3;
+        int length = payload + Integer.toString(payload).length();
+        if (Integer.toString(length).length() != Integer.toString(payload).length()) {
+            length++;
+        }
+        return length + " " + key + "=" + value + "\n";
+    }
+
+    private static String asciiFallback(String name) {
+        StringBuilder fallback = new StringBuilder();
+        for (int i = 0; i < name.length() && fallback.length() < NAME_LENGTH - 1; i++) {
+            char c = name.charAt(i);
+            fallback.append(c < 0x80 ? c : '_');
+        }
+        return fallback.toString();
+    }
+}
@@ -1,57 +1,117 @@
 package com.burjkhalifacorp.storage.utils;
 
+import com.burjkhalifacorp.storage.common.AppConstants;
 import org.jetbrains.annotations.NotNull;
 
-import java.io.ByteArrayOutputStream;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 
-// Count uploaded file size and buffering file header for contentType
+// Counts uploaded bytes, updates digest and captures file header for contentType in one pass over read bytes.
+// Header buffer is taken from pool, it's returned by release() and header view isn't valid after that
 public class UploadHelperInputStream extends FilterInputStream {
-    private final int MAX_BUFFER_SIZE = 64 * 1024;
+    private static final int SKIP_BUFFER_SIZE = 8192;
 
+    private final MessageDigest digest;
+    private final BufferPool headerPool;
+    private byte[] header;
+    // bytes read through by skip, taken on first skip and kept for the next ones
+    private byte[] skipBuffer;
+    private int headerLength = 0;
     private long totalBytesCount = 0;
-    private final ByteArrayOutputStream headerBuffer = new ByteArrayOutputStream();
-    private int bufferPos = 0;
+    private long digestNanos = 0;
 
-    public UploadHelperInputStream(InputStream inputStream) {
+    // header isn't captured when pool is null
+    public UploadHelperInputStream(InputStream inputStream, MessageDigest digest, BufferPool headerPool) {
         super(inputStream);
+        this.digest = digest;
+        this.headerPool = headerPool;
+        this.header = headerPool != null ? headerPool.acquire() : null;
+    }
+
+    // pool of buffers for header capture
+    public static BufferPool newHeaderPool(int maxIdle) {
+        return new BufferPool(AppConstants.CONTENT_HEADER_SIZE, maxIdle);
     }
 
     public long getTotalBytesCount() {
         return totalBytesCount;
     }
 
-    public byte[] getHeaderBuffer() {
-        return headerBuffer.toByteArray();
+    // time spent in digest apart from reading
+    public long getDigestNanos() {
+        return digestNanos;
+    }
+
+    public ByteBuffer getHeader() {
+        if (header == null) {
+            return ByteBuffer.allocate(0).asReadOnlyBuffer();
+        }
+        return ByteBuffer.wrap(header, 0, headerLength).asReadOnlyBuffer();
+    }
+
+    public void release() {
+        if (header != null) {
+            headerPool.release(header);
+            header = null;
+        }
     }
 
     @Override
     public int read() throws IOException {
-        int b = super.read();
+        int b = in.read();
         if (b != -1) {
             totalBytesCount++;
-
-            if(bufferPos < MAX_BUFFER_SIZE) {
-                headerBuffer.write(b);
+            if (header != null && headerLength < header.length) {
+                header[headerLength++] = (byte) b;
             }
+            // single bytes aren't timed, clock would cost more than update
+            digest.update((byte) b);
         }
         return b;
     }
 
     @Override
     public int read(@NotNull byte[] b, int off, int len) throws IOException {
-        int bytesRead = super.read(b, off, len);
+        int bytesRead = in.read(b, off, len);
         if (bytesRead > 0) {
             totalBytesCount += bytesRead;
-
-            if(bufferPos < MAX_BUFFER_SIZE) {
-                int toBuffer = Math.min(MAX_BUFFER_SIZE - bufferPos, bytesRead);
-                headerBuffer.write(b, off, toBuffer);
-                bufferPos += toBuffer;
+            if (header != null && headerLength < header.length) {
+                int toBuffer = Math.min(header.length - headerLength, bytesRead);
+                System.arraycopy(b, off, header, headerLength, toBuffer);
+                headerLength += toBuffer;
             }
+            long start = System.nanoTime();
+            digest.update(b, off, bytesRead);
+            digestNanos += System.nanoTime() - start;
         }
         return bytesRead;
     }
+
+    // skipped bytes are read through, so they are counted and hashed
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        if (skipBuffer == null) {
+            skipBuffer = new byte[SKIP_BUFFER_SIZE];
+        }
+        long skipped = 0;
+        while (skipped < n) {
+            int bytesRead = read(skipBuffer, 0, (int) Math.min(n - skipped, skipBuffer.length));
+            if (bytesRead < 0) {
+                break;
+            }
+            skipped += bytesRead;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
 }
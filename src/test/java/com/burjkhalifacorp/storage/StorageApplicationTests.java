@@ -1,15 +1,27 @@
 package com.burjkhalifacorp.storage;
 
+import com.burjkhalifacorp.storage.config.DownloadConfig;
+import com.burjkhalifacorp.storage.persist.BlobMetadataRepository;
 import com.burjkhalifacorp.storage.persist.FileMetadataRepository;
+import com.burjkhalifacorp.storage.persist.MigrationRepository;
+import com.burjkhalifacorp.storage.persist.PresignedUploadRepository;
+import com.burjkhalifacorp.storage.persist.TagCountRepository;
+import com.burjkhalifacorp.storage.persist.UploadSessionRepository;
 import com.burjkhalifacorp.storage.service.FileServiceImpl;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
 @SpringBootTest
 @ActiveProfiles("test")
 @EnableAutoConfiguration(exclude = {MongoAutoConfiguration.class})
@@ -19,9 +31,31 @@ class StorageApplicationTests {
 	private FileServiceImpl fileServiceMock;
 	@MockitoBean
 	private FileMetadataRepository repositoryMock;
+	@MockitoBean
+	private BlobMetadataRepository blobRepositoryMock;
+	@MockitoBean
+	private UploadSessionRepository uploadSessionRepositoryMock;
+	@MockitoBean
+	private PresignedUploadRepository presignedUploadRepositoryMock;
+	@MockitoBean
+	private MigrationRepository migrationRepositoryMock;
+	@MockitoBean
+	private TagCountRepository tagCountRepositoryMock;
+	@MockitoBean
+	private BlobStore blobStoreMock;
+	@MockitoBean
+	private MongoTemplate mongoTemplateMock;
+	@Autowired
+	private MeterRegistry meterRegistry;
 
 	@Test
 	void shouldLoadContext() {
 	}
 
+	@Test
+	void shouldMonitorDownloadsExecutor() {
+		assertNotNull(meterRegistry.find("executor.queued").tag("name", DownloadConfig.EXECUTOR_NAME).gauge());
+		assertNotNull(meterRegistry.find("executor.active").tag("name", DownloadConfig.EXECUTOR_NAME).gauge());
+	}
+
 }
@@ -25,6 +25,7 @@ import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.UUID;
@@ -187,6 +188,61 @@ public class StorageServiceIntegrationTest extends TestBase {
         assertEquals(filenameNew, metadataAfterRename.getFilename());
     }
 
+    @Test
+    void shouldBeAbleUploadFileInParts() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        final int firstPartSize = 5 * 1024 * 1024;
+        final int lastPartSize = 1024;
+
+        URI createUri = getEndpointUriBuilder().path("uploads")
+                .queryParam("userId", userId1)
+                .queryParam("filename", "file_in_parts.dat")
+                .queryParam("visibility", Visibility.PRIVATE).build();
+        HttpResponse<String> createResponse = client.send(
+                HttpRequest.newBuilder().uri(createUri).POST(HttpRequest.BodyPublishers.noBody()).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, createResponse.statusCode());
+        String sessionId = objectMapper.readTree(createResponse.body()).get("id").asText();
+
+        byte[] firstPart = new byte[firstPartSize];
+        byte[] lastPart = new byte[lastPartSize];
+        random.nextBytes(firstPart);
+        random.nextBytes(lastPart);
+
+        // parts are uploaded out of order
+        assertEquals(200, client.send(mkUploadPartRequest(userId1, sessionId, 2, lastPart),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(200, client.send(mkUploadPartRequest(userId1, sessionId, 1, firstPart),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+
+        URI completeUri = getEndpointUriBuilder().path("uploads/" + sessionId + "/complete")
+                .queryParam("userId", userId1).build();
+        HttpResponse<String> completeResponse = client.send(
+                HttpRequest.newBuilder().uri(completeUri).POST(HttpRequest.BodyPublishers.noBody()).build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, completeResponse.statusCode());
+
+        FileMetadataDto metadata = objectMapper.readValue(completeResponse.body(), FileMetadataDto.class);
+        assertEquals(firstPartSize + lastPartSize, metadata.getSize());
+
+        HttpResponse<byte[]> responseDownload = client.send(
+                mkFileDownloadRequest(userId1, metadata.getId()), HttpResponse.BodyHandlers.ofByteArray());
+        assertEquals(200, responseDownload.statusCode());
+        byte[] dataDownloaded = responseDownload.body();
+        assertArrayEquals(firstPart, Arrays.copyOfRange(dataDownloaded, 0, firstPartSize));
+        assertArrayEquals(lastPart, Arrays.copyOfRange(dataDownloaded, firstPartSize, dataDownloaded.length));
+    }
+
+    private HttpRequest mkUploadPartRequest(String userId, String sessionId, int partNumber, byte[] content) {
+        URI uri = getEndpointUriBuilder().path("uploads/" + sessionId + "/parts/" + partNumber)
+                .queryParam("userId", userId).build();
+        return HttpRequest.newBuilder()
+                .uri(uri)
+                .header("Content-Type", "application/octet-stream")
+                .PUT(HttpRequest.BodyPublishers.ofByteArray(content))
+                .build();
+    }
+
     private UriBuilder getEndpointUriBuilder() {
         return new DefaultUriBuilderFactory(
                 "http://localhost:" + port + "/api/v1/files/").builder();
@@ -1,39 +1,73 @@
 package com.burjkhalifacorp.storage.api.controller;
 
 import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.api.models.ArchiveFormat;
+import com.burjkhalifacorp.storage.api.models.BatchItemResultDto;
+import com.burjkhalifacorp.storage.api.models.BatchRequestDto;
+import com.burjkhalifacorp.storage.api.models.BatchResultDto;
+import com.burjkhalifacorp.storage.api.models.BatchTagsRequestDto;
 import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.api.models.FileSliceDto;
+import com.burjkhalifacorp.storage.api.models.TagCountDto;
+import com.burjkhalifacorp.storage.api.models.TagMatch;
+import com.burjkhalifacorp.storage.common.AppConstants;
 import com.burjkhalifacorp.storage.common.Visibility;
 import com.burjkhalifacorp.storage.config.DownloadConfig;
 import com.burjkhalifacorp.storage.mappers.FileMetadataMapper;
 import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.service.ArchiveWriter;
 import com.burjkhalifacorp.storage.service.FileService;
+import com.burjkhalifacorp.storage.service.StorageMetrics;
+import com.burjkhalifacorp.storage.service.TransferGovernor;
+import com.burjkhalifacorp.storage.service.models.StoredFile;
+import com.burjkhalifacorp.storage.utils.FileRangeInputStream;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
+import java.io.ByteArrayInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.IntStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 
 @WebMvcTest(controllers = FileController.class)
 @AutoConfigureMockMvc(addFilters = false)
-@Import({FileMetadataMapper.class, DownloadConfig.class})
+@Import({FileMetadataMapper.class, DownloadConfig.class, ArchiveWriter.class, TransferGovernor.class})
 public class FileControllerTest extends TestBase {
 
     @Autowired
@@ -42,9 +76,15 @@ public class FileControllerTest extends TestBase {
     @MockitoBean
     private FileService fileService;
 
+    @MockitoBean
+    private StorageMetrics storageMetrics;
+
     @Autowired
     FileMetadataMapper fileMetadataMapper;
 
+    @TempDir
+    private Path directory;
+
     @Test
     void shouldListPublicFiles() throws Exception {
         List<FileMetadataDto> files = IntStream.range(0, 10)
@@ -52,7 +92,7 @@ public class FileControllerTest extends TestBase {
                 .toList();
         doReturn(new PageImpl<>(files))
                 .when(fileService)
-                .listPublicFiles(any(), any());
+                .listPublicFiles(any(), eq(TagMatch.ANY), any());
 
         mockMvc.perform(get("/api/v1/files/public").queryParam("userId", userId1))
                 .andExpect(status().isOk())
@@ -66,13 +106,62 @@ public class FileControllerTest extends TestBase {
                 .toList();
         doReturn(new PageImpl<>(files))
                 .when(fileService)
-                .listUserFiles(eq(userId1), any(), any());
+                .listUserFiles(eq(userId1), any(), eq(TagMatch.ANY), any());
 
         mockMvc.perform(get("/api/v1/files/my").queryParam("userId", userId1))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.page.totalElements").value(10));
     }
 
+    @Test
+    void shouldScrollPublicFilesWithCursor() throws Exception {
+        List<FileMetadataDto> files = IntStream.range(0, 10)
+                .mapToObj(i -> fileMetadataMapper.toDto(mkRandomFileMetadata(userId1, Visibility.PUBLIC, tags1)))
+                .toList();
+        doReturn(new FileSliceDto(files, true, "next"))
+                .when(fileService)
+                .scrollPublicFiles(any(), eq(TagMatch.ANY), eq(Sort.by("size").descending()), eq(10), eq("current"));
+
+        mockMvc.perform(get("/api/v1/files/public/scroll")
+                        .queryParam("userId", userId1)
+                        .queryParam("cursor", "current")
+                        .queryParam("size", "10")
+                        .queryParam("sortBy", "FILE_SIZE")
+                        .queryParam("ascending", "false"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()").value(10))
+                .andExpect(jsonPath("$.nextCursor").value("next"));
+    }
+
+    @Test
+    void shouldListUserFilesHavingAllTags() throws Exception {
+        doReturn(new PageImpl<>(List.of()))
+                .when(fileService)
+                .listUserFiles(eq(userId1), eq(Set.of("scuba", "ocean")), eq(TagMatch.ALL), any());
+
+        mockMvc.perform(get("/api/v1/files/my")
+                        .queryParam("userId", userId1)
+                        .queryParam("tags", "scuba", "ocean")
+                        .queryParam("tagMatch", "ALL"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.page.totalElements").value(0));
+    }
+
+    @Test
+    void shouldCountTopPublicTags() throws Exception {
+        doReturn(List.of(new TagCountDto("ocean", 12), new TagCountDto("scuba", 7)))
+                .when(fileService)
+                .countPublicTags(eq(Set.of()), eq(2));
+
+        mockMvc.perform(get("/api/v1/files/public/tags")
+                        .queryParam("userId", userId1)
+                        .queryParam("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].tag").value("ocean"))
+                .andExpect(jsonPath("$[0].count").value(12))
+                .andExpect(jsonPath("$[1].tag").value("scuba"));
+    }
+
     @Test
     void shouldRenameFile() throws Exception {
         FileMetadataDto fileDto = fileMetadataMapper.toDto(
@@ -90,6 +179,24 @@ public class FileControllerTest extends TestBase {
         assertEquals(fileDto, fileDtoResponse);
     }
 
+    @Test
+    void shouldPassDeclaredHashOnUpload() throws Exception {
+        FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        doReturn(fileMetadataMapper.toDto(file))
+                .when(fileService)
+                .upload(eq(userId1), eq(file.getFilename()), any(), eq(Visibility.PRIVATE), any(), eq(file.getHash()), anyLong(), any());
+
+        mockMvc.perform(post("/api/v1/files/upload")
+                        .queryParam("userId", userId1)
+                        .queryParam("filename", file.getFilename())
+                        .queryParam("visibility", Visibility.PRIVATE.name())
+                        .header(AppConstants.CONTENT_SHA256_HEADER, file.getHash())
+                        .contentType("application/octet-stream")
+                        .content(new byte[] {1, 2, 3}))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(file.getExternalId().toString()));
+    }
+
     @Test
     void shouldDeleteFile() throws Exception {
         FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
@@ -97,4 +204,233 @@ public class FileControllerTest extends TestBase {
                 .queryParam("userId", userId1))
                 .andExpect(status().isOk());
     }
+
+    @Test
+    void shouldDeleteFilesInBatch() throws Exception {
+        UUID deleted = UUID.randomUUID();
+        UUID missing = UUID.randomUUID();
+        doReturn(new BatchResultDto(List.of(
+                new BatchItemResultDto(deleted, 200, null, null),
+                new BatchItemResultDto(missing, 404, "File not found", null))))
+                .when(fileService)
+                .deleteFiles(userId1, List.of(deleted, missing));
+
+        mockMvc.perform(post("/api/v1/files/batch/delete")
+                        .queryParam("userId", userId1)
+                        .contentType("application/json")
+                        .content(objectMapper.writeValueAsString(new BatchRequestDto(List.of(deleted, missing)))))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results[0].status").value(200))
+                .andExpect(jsonPath("$.results[1].id").value(missing.toString()))
+                .andExpect(jsonPath("$.results[1].status").value(404));
+    }
+
+    @Test
+    void shouldUpdateTagsInBatch() throws Exception {
+        FileMetadataDto fileDto = fileMetadataMapper.toDto(mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags2));
+        BatchResultDto expected = new BatchResultDto(List.of(new BatchItemResultDto(fileDto.getId(), 200, null, fileDto)));
+        doReturn(expected)
+                .when(fileService)
+                .updateTags(userId1, List.of(fileDto.getId()), Set.of("photo"), Set.of("scuba"));
+
+        MvcResult result = mockMvc.perform(post("/api/v1/files/batch/tags")
+                        .queryParam("userId", userId1)
+                        .contentType("application/json")
+                        .content(objectMapper.writeValueAsString(new BatchTagsRequestDto(
+                                List.of(fileDto.getId()), Set.of("photo"), Set.of("scuba")))))
+                .andExpect(status().isOk())
+                .andReturn();
+        assertEquals(expected, objectMapper.readValue(result.getResponse().getContentAsString(), BatchResultDto.class));
+    }
+
+    @Test
+    void shouldDownloadFileWithEtag() throws Exception {
+        byte[] content = mkContent(1000);
+        FileMetadata file = mockStoredFile(content);
+
+        MockHttpServletResponse response = performDownload(get("/api/v1/files/{id}", file.getExternalId())
+                .queryParam("userId", userId1));
+        assertEquals(200, response.getStatus());
+        assertEquals("\"" + file.getHash() + "\"", response.getHeader("ETag"));
+        assertEquals("bytes", response.getHeader("Accept-Ranges"));
+        assertArrayEquals(content, response.getContentAsByteArray());
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenEtagMatches() throws Exception {
+        FileMetadata file = mockStoredFile(mkContent(1000));
+
+        MockHttpServletResponse response = performDownload(get("/api/v1/files/{id}", file.getExternalId())
+                .queryParam("userId", userId1)
+                .header("If-None-Match", "W/\"" + file.getHash() + "\""));
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    void shouldDownloadSingleRange() throws Exception {
+        byte[] content = mkContent(1000);
+        FileMetadata file = mockStoredFile(content);
+
+        MockHttpServletResponse response = performDownload(get("/api/v1/files/{id}", file.getExternalId())
+                .queryParam("userId", userId1)
+                .header("Range", "bytes=100-199"));
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 100-199/1000", response.getHeader("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 200), response.getContentAsByteArray());
+    }
+
+    @Test
+    void shouldStreamRangeOfLocalFile() throws Exception {
+        Path path = directory.resolve("content");
+        byte[] content = mkContent(100_000);
+        Files.write(path, content);
+        FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        file.setSize(100_000);
+        FileChannel channel = FileChannel.open(path);
+        doReturn(new StoredFile(fileMetadataMapper.toDto(file), file.getHash(),
+                (offset, length) -> CompletableFuture.completedFuture(
+                        new FileRangeInputStream(channel, offset, length))))
+                .when(fileService)
+                .getFile(eq(userId1), eq(file.getExternalId()));
+
+        MockHttpServletResponse response = performDownload(get("/api/v1/files/{id}", file.getExternalId())
+                .queryParam("userId", userId1)
+                .header("Range", "bytes=1000-60999"));
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 1000-60999/100000", response.getHeader("Content-Range"));
+        assertArrayEquals(Arrays.copyOfRange(content, 1000, 61000), response.getContentAsByteArray());
+    }
+
+    @Test
+    void shouldIgnoreRangeWhenIfRangeDoesNotMatch() throws Exception {
+        byte[] content = mkContent(1000);
+        FileMetadata file = mockStoredFile(content);
+
+        MockHttpServletResponse response = performDownload(get("/api/v1/files/{id}", file.getExternalId())
+                .queryParam("userId", userId1)
+                .header("Range", "bytes=100-199")
+                .header("If-Range", "\"other\""));
+        assertEquals(200, response.getStatus());
+        assertArrayEquals(content, response.getContentAsByteArray());
+    }
+
+    @Test
+    void shouldDownloadMultipleRanges() throws Exception {
+        byte[] content = mkContent(1000);
+        FileMetadata file = mockStoredFile(content);
+
+        MockHttpServletResponse response = performDownload(get("/api/v1/files/{id}", file.getExternalId())
+                .queryParam("userId", userId1)
+                .header("Range", "bytes=0-9,-10"));
+        assertEquals(206, response.getStatus());
+        assertTrue(response.getContentType().startsWith("multipart/byteranges"));
+        String body = response.getContentAsString();
+        assertTrue(body.contains("Content-Range: bytes 0-9/1000"));
+        assertTrue(body.contains("Content-Range: bytes 990-999/1000"));
+    }
+
+    @Test
+    void shouldRejectUnsatisfiableRange() throws Exception {
+        FileMetadata file = mockStoredFile(mkContent(1000));
+
+        MockHttpServletResponse response = performDownload(get("/api/v1/files/{id}", file.getExternalId())
+                .queryParam("userId", userId1)
+                .header("Range", "bytes=1000-"));
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */1000", response.getHeader("Content-Range"));
+    }
+
+    @Test
+    void shouldPassEncodedContentWhenClientAcceptsEncoding() throws Exception {
+        byte[] content = mkContent(1000);
+        byte[] encoded = mkContent(300);
+        FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        file.setSize(content.length);
+        StoredFile storedFile = new StoredFile(fileMetadataMapper.toDto(file), file.getHash(),
+                (offset, length) -> CompletableFuture.completedFuture(
+                        new ByteArrayInputStream(content, (int) offset, (int) length)),
+                "gzip", encoded.length,
+                (offset, length) -> CompletableFuture.completedFuture(
+                        new ByteArrayInputStream(encoded, (int) offset, (int) length)));
+        doReturn(storedFile)
+                .when(fileService)
+                .getFile(eq(userId1), eq(file.getExternalId()));
+
+        MockHttpServletResponse response = performDownload(get("/api/v1/files/{id}", file.getExternalId())
+                .queryParam("userId", userId1)
+                .header("Accept-Encoding", "br;q=1.0, gzip;q=0.8"));
+        assertEquals(200, response.getStatus());
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertArrayEquals(encoded, response.getContentAsByteArray());
+
+        response = performDownload(get("/api/v1/files/{id}", file.getExternalId())
+                .queryParam("userId", userId1)
+                .header("Accept-Encoding", "gzip;q=0"));
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader("Content-Encoding"));
+        assertArrayEquals(content, response.getContentAsByteArray());
+    }
+
+    @Test
+    void shouldDownloadZipArchiveOfTaggedFiles() throws Exception {
+        byte[] content1 = mkContent(1000);
+        byte[] content2 = mkContent(2000);
+        StoredFile file1 = mkStoredFile(mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags2), content1);
+        StoredFile file2 = mkStoredFile(mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags2), content2);
+        doReturn(List.of(file1, file2).iterator())
+                .when(fileService)
+                .getFiles(eq(userId1), eq(List.of()), eq(Set.of("photo")));
+
+        MockHttpServletResponse response = performDownload(get("/api/v1/files/archive")
+                .queryParam("userId", userId1)
+                .queryParam("tags", "photo"));
+        assertEquals(200, response.getStatus());
+        assertEquals(ArchiveFormat.ZIP.getContentType(), response.getContentType());
+
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        assertEquals(2, entries.size());
+        assertArrayEquals(content1, entries.get(file1.getMetadata().getFilename()));
+        assertArrayEquals(content2, entries.get(file2.getMetadata().getFilename()));
+    }
+
+    private MockHttpServletResponse performDownload(MockHttpServletRequestBuilder requestBuilder) throws Exception {
+        MvcResult result = mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult dispatched = mockMvc.perform(asyncDispatch(result)).andReturn();
+        if (dispatched.getRequest().isAsyncStarted()) {
+            // response body is streamed asynchronously as well
+            dispatched.getAsyncResult();
+        }
+        return dispatched.getResponse();
+    }
+
+    private byte[] mkContent(int size) {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+        return content;
+    }
+
+    private FileMetadata mockStoredFile(byte[] content) {
+        FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        doReturn(mkStoredFile(file, content))
+                .when(fileService)
+                .getFile(eq(userId1), eq(file.getExternalId()));
+        return file;
+    }
+
+    private StoredFile mkStoredFile(FileMetadata file, byte[] content) {
+        file.setSize(content.length);
+        return new StoredFile(fileMetadataMapper.toDto(file), file.getHash(),
+                (offset, length) -> CompletableFuture.completedFuture(
+                        new ByteArrayInputStream(content, (int) offset, (int) length)));
+    }
 }
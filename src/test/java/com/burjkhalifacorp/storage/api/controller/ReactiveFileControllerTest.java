@@ -0,0 +1,173 @@
+package com.burjkhalifacorp.storage.api.controller;
+
+import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.common.AppConstants;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.errors.FileNotFoundException;
+import com.burjkhalifacorp.storage.mappers.FileMetadataMapper;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.service.ReactiveFileService;
+import com.burjkhalifacorp.storage.service.StorageMetrics;
+import com.burjkhalifacorp.storage.service.TransferGovernor;
+import com.burjkhalifacorp.storage.service.models.StoredFile;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+
+@WebFluxTest(controllers = ReactiveFileController.class)
+@Import({FileMetadataMapper.class, TransferGovernor.class})
+public class ReactiveFileControllerTest extends TestBase {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @MockitoBean
+    private ReactiveFileService fileService;
+
+    @MockitoBean
+    private StorageMetrics storageMetrics;
+
+    @Autowired
+    FileMetadataMapper fileMetadataMapper;
+
+    @Test
+    void shouldStreamUploadBodyToService() {
+        FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        byte[] content = mkContent(100_000);
+        doAnswer(invocation -> {
+            Flux<DataBuffer> body = invocation.getArgument(6);
+            return DataBufferUtils.join(body).map(joined -> {
+                byte[] received = new byte[joined.readableByteCount()];
+                joined.read(received);
+                DataBufferUtils.release(joined);
+                assertArrayEquals(content, received);
+                return fileMetadataMapper.toDto(file);
+            });
+        }).when(fileService)
+                .upload(eq(userId1), eq(file.getFilename()), any(), eq(Visibility.PRIVATE), any(), eq(file.getHash()), any());
+
+        webTestClient.post()
+                .uri(builder -> builder.path("/api/v1/files/upload")
+                        .queryParam("userId", userId1)
+                        .queryParam("filename", file.getFilename())
+                        .queryParam("visibility", Visibility.PRIVATE.name())
+                        .build())
+                .header(AppConstants.CONTENT_SHA256_HEADER, file.getHash())
+                .header("Content-Type", "application/octet-stream")
+                .bodyValue(content)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.id").isEqualTo(file.getExternalId().toString());
+    }
+
+    @Test
+    void shouldDownloadFileWithEtag() {
+        byte[] content = mkContent(1000);
+        FileMetadata file = mockStoredFile(content);
+
+        byte[] body = webTestClient.get()
+                .uri("/api/v1/files/{id}?userId={userId}", file.getExternalId(), userId1)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals("ETag", "\"" + file.getHash() + "\"")
+                .expectHeader().valueEquals("Accept-Ranges", "bytes")
+                .expectBody(byte[].class).returnResult().getResponseBody();
+        assertArrayEquals(content, body);
+    }
+
+    @Test
+    void shouldReturnNotModifiedWhenEtagMatches() {
+        FileMetadata file = mockStoredFile(mkContent(1000));
+
+        webTestClient.get()
+                .uri("/api/v1/files/{id}?userId={userId}", file.getExternalId(), userId1)
+                .header("If-None-Match", "W/\"" + file.getHash() + "\"")
+                .exchange()
+                .expectStatus().isNotModified()
+                .expectBody().isEmpty();
+    }
+
+    @Test
+    void shouldDownloadSingleRange() {
+        byte[] content = mkContent(1000);
+        FileMetadata file = mockStoredFile(content);
+
+        byte[] body = webTestClient.get()
+                .uri("/api/v1/files/{id}?userId={userId}", file.getExternalId(), userId1)
+                .header("Range", "bytes=100-199")
+                .exchange()
+                .expectStatus().isEqualTo(206)
+                .expectHeader().valueEquals("Content-Range", "bytes 100-199/1000")
+                .expectBody(byte[].class).returnResult().getResponseBody();
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 200), body);
+    }
+
+    @Test
+    void shouldRejectUnsatisfiableRange() {
+        FileMetadata file = mockStoredFile(mkContent(1000));
+
+        webTestClient.get()
+                .uri("/api/v1/files/{id}?userId={userId}", file.getExternalId(), userId1)
+                .header("Range", "bytes=2000-")
+                .exchange()
+                .expectStatus().isEqualTo(416)
+                .expectHeader().valueEquals("Content-Range", "bytes */1000");
+    }
+
+    @Test
+    void shouldReturnNotFoundForMissingFile() {
+        FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        doReturn(Mono.error(new FileNotFoundException(file.getExternalId())))
+                .when(fileService)
+                .getFile(userId1, file.getExternalId());
+
+        webTestClient.get()
+                .uri("/api/v1/files/{id}?userId={userId}", file.getExternalId(), userId1)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void shouldDeleteFile() {
+        FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        doReturn(Mono.empty()).when(fileService).deleteFile(userId1, file.getExternalId());
+
+        webTestClient.delete()
+                .uri("/api/v1/files/{id}?userId={userId}", file.getExternalId(), userId1)
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    private FileMetadata mockStoredFile(byte[] content) {
+        FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        file.setSize(content.length);
+        StoredFile storedFile = new StoredFile(fileMetadataMapper.toDto(file), file.getHash(),
+                (offset, length) -> CompletableFuture.completedFuture(
+                        new ByteArrayInputStream(content, (int) offset, (int) length)));
+        doReturn(Mono.just(storedFile)).when(fileService).getFile(userId1, file.getExternalId());
+        return file;
+    }
+
+    private byte[] mkContent(int size) {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+        return content;
+    }
+}
@@ -0,0 +1,83 @@
+package com.burjkhalifacorp.storage.api.controller;
+
+import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.api.models.UploadPartDto;
+import com.burjkhalifacorp.storage.api.models.UploadSessionDto;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.service.StorageMetrics;
+import com.burjkhalifacorp.storage.service.TransferGovernor;
+import com.burjkhalifacorp.storage.service.UploadSessionService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = UploadSessionController.class)
+@AutoConfigureMockMvc(addFilters = false)
+@Import(TransferGovernor.class)
+public class UploadSessionControllerTest extends TestBase {
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private UploadSessionService uploadSessionService;
+
+    @MockitoBean
+    private StorageMetrics storageMetrics;
+
+    @Test
+    void shouldCreateSession() throws Exception {
+        UploadSessionDto session = new UploadSessionDto(UUID.randomUUID(), "file.dat", List.of(),
+                Visibility.PRIVATE, getCurrentTime(), 0, List.of());
+        doReturn(session)
+                .when(uploadSessionService)
+                .createSession(eq(userId1), eq("file.dat"), any(), eq(Visibility.PRIVATE), any());
+
+        mockMvc.perform(post("/api/v1/files/uploads")
+                        .queryParam("userId", userId1)
+                        .queryParam("filename", "file.dat")
+                        .queryParam("visibility", Visibility.PRIVATE.name()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(session.getId().toString()));
+    }
+
+    @Test
+    void shouldUploadPart() throws Exception {
+        UUID sessionId = UUID.randomUUID();
+        byte[] content = new byte[] {1, 2, 3};
+        doReturn(new UploadPartDto(2, content.length, "hash"))
+                .when(uploadSessionService)
+                .uploadPart(eq(userId1), eq(sessionId), eq(2), eq((long) content.length), any());
+
+        mockMvc.perform(put("/api/v1/files/uploads/{id}/parts/{part}", sessionId, 2)
+                        .queryParam("userId", userId1)
+                        .contentType("application/octet-stream")
+                        .content(content))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.partNumber").value(2))
+                .andExpect(jsonPath("$.size").value(content.length));
+    }
+
+    @Test
+    void shouldRejectInvalidPartNumber() throws Exception {
+        mockMvc.perform(put("/api/v1/files/uploads/{id}/parts/{part}", UUID.randomUUID(), 0)
+                        .queryParam("userId", userId1)
+                        .content(new byte[] {1}))
+                .andExpect(jsonPath("$.status").value(400));
+        verifyNoInteractions(uploadSessionService);
+    }
+}
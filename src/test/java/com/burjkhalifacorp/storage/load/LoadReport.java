@@ -0,0 +1,92 @@
+package com.burjkhalifacorp.storage.load;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Latency histograms and response statuses per endpoint, written as JSON at the end of the run
+public class LoadReport {
+    // status of requests failed without response, e.g. connection reset
+    public static final int NO_RESPONSE = -1;
+
+    private static final long MAX_LATENCY_US = TimeUnit.MINUTES.toMicros(10);
+
+    private final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+
+    public void record(String endpoint, long latencyNanos, int status) {
+        endpoints.computeIfAbsent(endpoint, name -> new EndpointStats())
+                .record(latencyNanos, status);
+    }
+
+    public long totalRequests() {
+        return endpoints.values().stream().mapToLong(stats -> stats.histogram.getTotalCount()).sum();
+    }
+
+    public Map<String, Object> summary(Duration measured, Map<String, Object> settings) {
+        Map<String, Object> endpointSummaries = new TreeMap<>();
+        endpoints.forEach((name, stats) -> endpointSummaries.put(name, stats.summary(measured)));
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("settings", settings);
+        summary.put("measuredSeconds", measured.toMillis() / 1000.0);
+        summary.put("endpoints", endpointSummaries);
+        return summary;
+    }
+
+    public void write(Path path, Map<String, Object> summary) throws IOException {
+        new ObjectMapper()
+                .enable(SerializationFeature.INDENT_OUTPUT)
+                .writeValue(path.toFile(), summary);
+    }
+
+    private static class EndpointStats {
+        private final Histogram histogram = new ConcurrentHistogram(MAX_LATENCY_US, 3);
+        private final Map<Integer, AtomicLong> statuses = new ConcurrentHashMap<>();
+
+        void record(long latencyNanos, int status) {
+            histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_LATENCY_US));
+            statuses.computeIfAbsent(status, code -> new AtomicLong()).incrementAndGet();
+        }
+
+        Map<String, Object> summary(Duration measured) {
+            long requests = histogram.getTotalCount();
+            long errors = statuses.entrySet().stream()
+                    .filter(entry -> entry.getKey() == NO_RESPONSE || entry.getKey() >= 500)
+                    .mapToLong(entry -> entry.getValue().get())
+                    .sum();
+
+            Map<String, Object> latency = new LinkedHashMap<>();
+            latency.put("p50", toMillis(histogram.getValueAtPercentile(50)));
+            latency.put("p99", toMillis(histogram.getValueAtPercentile(99)));
+            latency.put("p999", toMillis(histogram.getValueAtPercentile(99.9)));
+            latency.put("max", toMillis(histogram.getMaxValue()));
+            latency.put("mean", toMillis((long) histogram.getMean()));
+
+            Map<String, Long> statusCounts = new TreeMap<>();
+            statuses.forEach((code, count) -> statusCounts.put(String.valueOf(code), count.get()));
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("requests", requests);
+            summary.put("errors", errors);
+            summary.put("throughputPerSecond", requests * 1000.0 / Math.max(1, measured.toMillis()));
+            summary.put("latencyMs", latency);
+            summary.put("statuses", statusCounts);
+            return summary;
+        }
+
+        private static double toMillis(long micros) {
+            return micros / 1000.0;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.burjkhalifacorp.storage.load;
+
+import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.api.models.FileMetadataDto;
+import com.burjkhalifacorp.storage.common.Visibility;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.util.DefaultUriBuilderFactory;
+import org.springframework.web.util.UriBuilder;
+import org.testcontainers.containers.ComposeContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Mixed upload/list/download/delete workload against the app with Mongo and MinIO from docker-compose-tests.yml.
+// Excluded from regular build, run with: mvn -Pload-test test -Dload.duration=PT2M -Dload.concurrency=64
+// Settings (system properties):
+//   load.duration     measured run, ISO-8601 duration
+//   load.warmup       run before measurement, not recorded
+//   load.concurrency  number of clients sending requests back to back
+//   load.mix          operation weights, operations: upload, list, scroll, download, delete
+//   load.sizes        weights of uploaded file sizes
+//   load.users        number of file owners
+//   load.report       path of JSON report with p50/p99/p999 latency and throughput per endpoint
+@Slf4j
+@Testcontainers
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@Tag("load")
+public class LoadTest extends TestBase {
+    @LocalServerPort
+    private int port;
+
+    @Container
+    private static ComposeContainer env = new ComposeContainer(new File("docker-compose-tests.yml"))
+            .withExposedService("mongo", 27017, Wait.forListeningPort())
+            .withExposedService("minio", 9000, Wait.forListeningPort());
+
+    private final Duration duration = Duration.parse(System.getProperty("load.duration", "PT1M"));
+    private final Duration warmup = Duration.parse(System.getProperty("load.warmup", "PT10S"));
+    private final int concurrency = Integer.getInteger("load.concurrency", 32);
+    private final String mix = System.getProperty("load.mix", "upload:20,list:15,scroll:10,download:45,delete:10");
+    private final String sizes = System.getProperty("load.sizes", "4KB:60,256KB:30,8MB:9,64MB:1");
+    private final int users = Integer.getInteger("load.users", 20);
+    private final Path reportPath = Path.of(System.getProperty("load.report", "target/load-test-report.json"));
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final LoadReport report = new LoadReport();
+    // files available for download and delete
+    private final List<UploadedFile> uploadedFiles = new ArrayList<>();
+
+    @AllArgsConstructor
+    @Getter
+    private static class UploadedFile {
+        private final UUID id;
+        private final String ownerId;
+    }
+
+    @Test
+    void shouldReportLatencyOfMixedWorkload() throws Exception {
+        final Map<String, Integer> operations = parseWeights(mix);
+        final Map<Long, Integer> fileSizes = new LinkedHashMap<>();
+        parseWeights(sizes).forEach((size, weight) -> fileSizes.put(DataSize.parse(size).toBytes(), weight));
+
+        final long startNanos = System.nanoTime();
+        final long measureFromNanos = startNanos + warmup.toNanos();
+        final long deadlineNanos = measureFromNanos + duration.toNanos();
+
+        ExecutorService clients = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            clients.submit(() -> {
+                while (System.nanoTime() < deadlineNanos) {
+                    String operation = pick(operations);
+                    long requestStart = System.nanoTime();
+                    int status;
+                    try {
+                        status = run(operation, pick(fileSizes));
+                    } catch (IOException ex) {
+                        status = LoadReport.NO_RESPONSE;
+                    } catch (InterruptedException ex) {
+                        return;
+                    }
+                    if (requestStart >= measureFromNanos) {
+                        report.record(operation, System.nanoTime() - requestStart, status);
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        assertTrue(clients.awaitTermination(duration.plus(warmup).toSeconds() + 600, TimeUnit.SECONDS));
+
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("duration", duration.toString());
+        settings.put("warmup", warmup.toString());
+        settings.put("concurrency", concurrency);
+        settings.put("mix", mix);
+        settings.put("sizes", sizes);
+        settings.put("users", users);
+        Map<String, Object> summary = report.summary(duration, settings);
+        report.write(reportPath, summary);
+        log.info("load test report written to {}: {}", reportPath.toAbsolutePath(), summary.get("endpoints"));
+
+        assertTrue(report.totalRequests() > 0);
+    }
+
+    private int run(String operation, long fileSize) throws IOException, InterruptedException {
+        UploadedFile file;
+        switch (operation) {
+            case "upload":
+                return upload(fileSize);
+            case "list":
+                return send(HttpRequest.newBuilder(getEndpointUriBuilder().path("public")
+                        .queryParam("userId", randomUser())
+                        .queryParam("size", 20)
+                        .queryParam("sortBy", "UPLOAD_DATE")
+                        .queryParam("ascending", false)
+                        .build()).GET().build());
+            case "scroll":
+                return send(HttpRequest.newBuilder(getEndpointUriBuilder().path("public/scroll")
+                        .queryParam("userId", randomUser())
+                        .queryParam("size", 20)
+                        .queryParam("sortBy", "UPLOAD_DATE")
+                        .queryParam("ascending", false)
+                        .build()).GET().build());
+            case "download":
+                file = pickUploadedFile(false);
+                if (file == null) {
+                    return upload(fileSize);
+                }
+                return send(HttpRequest.newBuilder(getEndpointUriBuilder().path(file.getId().toString())
+                        .queryParam("userId", file.getOwnerId())
+                        .build()).GET().build());
+            case "delete":
+                file = pickUploadedFile(true);
+                if (file == null) {
+                    return upload(fileSize);
+                }
+                return send(HttpRequest.newBuilder(getEndpointUriBuilder().path(file.getId().toString())
+                        .queryParam("userId", file.getOwnerId())
+                        .build()).DELETE().build());
+            default:
+                throw new IllegalArgumentException("unknown operation " + operation);
+        }
+    }
+
+    private int upload(long fileSize) throws IOException, InterruptedException {
+        final String ownerId = randomUser();
+        HttpRequest request = HttpRequest.newBuilder(getEndpointUriBuilder().path("upload")
+                        .queryParam("userId", ownerId)
+                        .queryParam("filename", "load_" + UUID.randomUUID() + ".dat")
+                        .queryParam("visibility", Visibility.PUBLIC)
+                        .build())
+                .header("Content-Type", "application/octet-stream")
+                .POST(HttpRequest.BodyPublishers.fromPublisher(
+                        HttpRequest.BodyPublishers.ofInputStream(() -> mkUniqueContent(fileSize)), fileSize))
+                .build();
+
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 200) {
+            FileMetadataDto metadata = objectMapper.readValue(response.body(), FileMetadataDto.class);
+            synchronized (uploadedFiles) {
+                uploadedFiles.add(new UploadedFile(metadata.getId(), ownerId));
+            }
+        }
+        return response.statusCode();
+    }
+
+    private int send(HttpRequest request) throws IOException, InterruptedException {
+        return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private UploadedFile pickUploadedFile(boolean remove) {
+        synchronized (uploadedFiles) {
+            if (uploadedFiles.isEmpty()) {
+                return null;
+            }
+            int index = ThreadLocalRandom.current().nextInt(uploadedFiles.size());
+            UploadedFile file = uploadedFiles.get(index);
+            if (remove) {
+                // swap with last, order doesn't matter
+                uploadedFiles.set(index, uploadedFiles.get(uploadedFiles.size() - 1));
+                uploadedFiles.remove(uploadedFiles.size() - 1);
+            }
+            return file;
+        }
+    }
+
+    private String randomUser() {
+        return "load_user_" + ThreadLocalRandom.current().nextInt(users);
+    }
+
+    // random head makes every file unique for deduplication, the rest is cheap repeated pattern
+    private static InputStream mkUniqueContent(long size) {
+        final byte[] head = new byte[32];
+        ThreadLocalRandom.current().nextBytes(head);
+        return new InputStream() {
+            private long position = 0;
+
+            @Override
+            public int read() {
+                if (position >= size) {
+                    return -1;
+                }
+                int b = position < head.length ? head[(int) position] : (int) (position & 0xff);
+                position++;
+                return b & 0xff;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                if (position >= size) {
+                    return -1;
+                }
+                int count = (int) Math.min(length, size - position);
+                for (int i = 0; i < count; i++) {
+                    buffer[offset + i] = (byte) read();
+                }
+                return count;
+            }
+        };
+    }
+
+    private static Map<String, Integer> parseWeights(String weights) {
+        Map<String, Integer> parsed = new LinkedHashMap<>();
+        for (String entry : weights.split(",")) {
+            String[] parts = entry.trim().split(":");
+            parsed.put(parts[0], Integer.parseInt(parts[1]));
+        }
+        return parsed;
+    }
+
+    private static <T> T pick(Map<T, Integer> weights) {
+        int total = weights.values().stream().mapToInt(Integer::intValue).sum();
+        int value = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<T, Integer> entry : weights.entrySet()) {
+            value -= entry.getValue();
+            if (value < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("weights must be positive");
+    }
+
+    private UriBuilder getEndpointUriBuilder() {
+        return new DefaultUriBuilderFactory("http://localhost:" + port + "/api/v1/files/").builder();
+    }
+}
@@ -0,0 +1,98 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.persist.models.BlobMetadata;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.containers.ComposeContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Testcontainers
+@DataMongoTest
+@ActiveProfiles("test")
+@Tag("integration")
+public class BlobMetadataRepositoryTest extends TestBase {
+    @Autowired
+    private BlobMetadataRepository repository;
+
+    @Container
+    private static ComposeContainer env = new ComposeContainer(new File("docker-compose-tests.yml"))
+            .withExposedService("mongo", 27017, Wait.forListeningPort());
+
+    private final String hash = "a".repeat(64);
+
+    @BeforeEach
+    void setUp() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void shouldKeepFirstStorageKeyWhenAcquireSameHash() {
+        BlobMetadata first = repository.acquire(hash, "key_1", 100, 100, null);
+        BlobMetadata second = repository.acquire(hash, "key_2", 100, 100, null);
+
+        assertEquals("key_1", first.getStorageKey());
+        assertEquals("key_1", second.getStorageKey());
+        assertEquals(2, second.getRefCount());
+    }
+
+    @Test
+    void shouldKeepEncodingOfFirstUploadWhenAcquireSameHash() {
+        repository.acquire(hash, "key_1", 100, 40, "gzip");
+        BlobMetadata second = repository.acquire(hash, "key_2", 100, 100, null);
+
+        assertEquals("gzip", second.getEncoding());
+        assertEquals(40, second.getStoredSize());
+        assertEquals(100, second.getSize());
+    }
+
+    @Test
+    void shouldRemoveOnlyUnreferencedBlob() {
+        repository.acquire(hash, "key_1", 100, 100, null);
+        repository.acquire(hash, "key_2", 100, 100, null);
+
+        assertEquals(1, repository.release(hash).orElseThrow().getRefCount());
+        assertTrue(repository.removeIfUnreferenced(hash).isEmpty());
+
+        assertEquals(0, repository.release(hash).orElseThrow().getRefCount());
+        Optional<BlobMetadata> removed = repository.removeIfUnreferenced(hash);
+        assertTrue(removed.isPresent());
+        assertEquals("key_1", removed.get().getStorageKey());
+        assertTrue(repository.findById(hash).isEmpty());
+    }
+
+    @Test
+    void shouldReleaseManyReferencesInOneWrite() {
+        String otherHash = "b".repeat(64);
+        repository.acquire(hash, "key_1", 100, 100, null);
+        repository.acquire(hash, "key_2", 100, 100, null);
+        repository.acquire(otherHash, "key_3", 100, 100, null);
+        repository.acquire(otherHash, "key_4", 100, 100, null);
+
+        repository.releaseAll(Map.of(hash, 2, otherHash, 1));
+
+        List<BlobMetadata> unreferenced = repository.findUnreferenced(List.of(hash, otherHash));
+        assertEquals(1, unreferenced.size());
+        assertEquals(hash, unreferenced.get(0).getHash());
+        assertEquals(1, repository.findById(otherHash).orElseThrow().getRefCount());
+    }
+
+    @Test
+    void shouldReturnEmptyWhenReleaseUnknownBlob() {
+        assertTrue(repository.release(hash).isEmpty());
+    }
+}
@@ -1,14 +1,19 @@
 package com.burjkhalifacorp.storage.persist;
 
 import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.common.EnrichmentState;
 import com.burjkhalifacorp.storage.common.Visibility;
 import com.burjkhalifacorp.storage.persist.models.FileMetadata;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import com.burjkhalifacorp.storage.utils.CursorCodec;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
 import org.springframework.test.context.ActiveProfiles;
 import org.testcontainers.containers.ComposeContainer;
 import org.testcontainers.containers.wait.strategy.Wait;
@@ -17,10 +22,19 @@ import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.io.File;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 
 @Testcontainers
@@ -92,6 +106,25 @@ public class FileMetadataRepositoryTest extends TestBase {
         assertEquals(4, tags1and2Files.getTotalElements());
     }
 
+    @Test
+    void shouldFindFilesHavingAllTags() {
+        repository.insert(mkRandomFileMetadata(userId1, Visibility.PUBLIC, Set.of("scuba", "ocean")));
+        repository.insert(mkRandomFileMetadata(userId1, Visibility.PUBLIC, Set.of("scuba")));
+        repository.insert(mkRandomFileMetadata(userId1, Visibility.PRIVATE, Set.of("scuba", "ocean", "movie")));
+        repository.insert(mkRandomFileMetadata(userId2, Visibility.PRIVATE, Set.of("scuba", "ocean")));
+
+        PageRequest pageReq = PageRequest.of(0, 20, Sort.by("uploadDate").descending());
+        assertEquals(2, repository.findByOwnerIdAndAllTags(userId1, List.of("ocean", "scuba"), pageReq)
+                .getTotalElements());
+        assertEquals(1, repository.findAllPublicFilesByAllTags(List.of("ocean", "scuba"), pageReq)
+                .getTotalElements());
+
+        Sort sort = Sort.by("filename").ascending();
+        Window<FileMetadata> window = repository.findByVisibilityAndAllTags(Visibility.PRIVATE,
+                List.of("movie", "scuba"), CursorCodec.decode(sort, null), Limit.of(10), sort);
+        assertEquals(1, window.size());
+    }
+
     @Test
     void shouldThrowErrorWhenSaveSameName() {
         FileMetadata file1 = mkRandomFileMetadata(userId1, Visibility.PUBLIC, tags1);
@@ -147,4 +180,205 @@ public class FileMetadataRepositoryTest extends TestBase {
         Page<FileMetadata> resultAsc = repository.findByOwnerId(userId1, pageReqAsc);
         assertEquals(file1, resultAsc.iterator().next());
     }
+
+    @Test
+    void shouldScrollAllFilesByKeyset() {
+        List<FileMetadata> files = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PUBLIC, tags1);
+            // equal keys are ordered by _id
+            file.setSize(i / 2);
+            files.add(repository.insert(file));
+        }
+        repository.insert(mkRandomFileMetadata(userId2, Visibility.PRIVATE, tags1));
+
+        Sort sort = Sort.by("size").ascending();
+        List<FileMetadata> scrolled = new ArrayList<>();
+        String cursor = null;
+        do {
+            Window<FileMetadata> window = repository.findByVisibility(
+                    Visibility.PUBLIC, CursorCodec.decode(sort, cursor), Limit.of(2), sort);
+            scrolled.addAll(window.getContent());
+            cursor = window.hasNext()
+                    ? CursorCodec.encode(sort, (KeysetScrollPosition) window.positionAt(window.size() - 1))
+                    : null;
+        } while (cursor != null);
+
+        assertEquals(files, scrolled);
+    }
+
+    @Test
+    void shouldScrollFilesInDescendingOrder() {
+        List<FileMetadata> files = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+            // equal keys are ordered by _id in the same direction
+            file.setSize(i / 2);
+            files.add(0, repository.insert(file));
+        }
+
+        Sort sort = Sort.by("size").descending();
+        List<FileMetadata> scrolled = new ArrayList<>();
+        String cursor = null;
+        do {
+            Window<FileMetadata> window = repository.findByOwnerIdAndTagsIn(
+                    userId1, tags1, CursorCodec.decode(sort, cursor), Limit.of(2), sort);
+            scrolled.addAll(window.getContent());
+            cursor = window.hasNext()
+                    ? CursorCodec.encode(sort, (KeysetScrollPosition) window.positionAt(window.size() - 1))
+                    : null;
+        } while (cursor != null);
+
+        assertEquals(files, scrolled);
+    }
+
+    @Test
+    void shouldReturnRemovedFileOnlyOnce() {
+        FileMetadata file = repository.insert(mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1));
+
+        assertEquals(file.getExternalId(), repository.removeById(file.getId()).orElseThrow().getExternalId());
+        assertTrue(repository.removeById(file.getId()).isEmpty());
+    }
+
+    @Test
+    void shouldReturnOnlyFilesRemovedByThisBatch() {
+        FileMetadata file1 = repository.insert(mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1));
+        FileMetadata file2 = repository.insert(mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags2));
+        repository.removeById(file1.getId());
+
+        List<FileMetadata> removed = repository.removeAllById(List.of(file1.getId(), file2.getId()));
+
+        assertEquals(List.of(file2.getExternalId()), removed.stream().map(FileMetadata::getExternalId).toList());
+        assertEquals(0, repository.count());
+    }
+
+    @Test
+    void shouldFindBatchAndUpdateTagsInBulk() {
+        FileMetadata file1 = repository.insert(mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1));
+        FileMetadata file2 = repository.insert(mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags2));
+        repository.insert(mkRandomFileMetadata(userId2, Visibility.PRIVATE, tags1));
+
+        List<FileMetadata> batch = repository.findByExternalIdIn(List.of(file1.getExternalId(), file2.getExternalId()));
+        assertEquals(2, batch.size());
+
+        List<String> oldTags1 = file1.getTags();
+        List<String> oldTags2 = file2.getTags();
+        file1.setTags(Set.of("b", "a"));
+        file2.setTags(Set.of());
+        assertTrue(repository.updateTags(file1, oldTags1));
+        assertTrue(repository.updateTags(file2, oldTags2));
+
+        FileMetadata updated1 = repository.findByExternalId(file1.getExternalId()).orElseThrow();
+        FileMetadata updated2 = repository.findByExternalId(file2.getExternalId()).orElseThrow();
+        assertEquals(List.of("a", "b"), updated1.getTags());
+        assertEquals(file1.getTagsSortKey(), updated1.getTagsSortKey());
+        assertEquals(file1.getFilename(), updated1.getFilename());
+        assertEquals(List.of(), updated2.getTags());
+    }
+
+    @Test
+    void shouldRenameWithoutOverwritingOtherFields() {
+        FileMetadata file = repository.insert(mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1));
+        repository.setContentType(file.getExternalId(), "image/png");
+
+        assertTrue(repository.rename(file.getId(), "renamed.png"));
+
+        FileMetadata renamed = repository.findByExternalId(file.getExternalId()).orElseThrow();
+        assertEquals("renamed.png", renamed.getFilename());
+        assertEquals("image/png", renamed.getContentType());
+        repository.deleteById(file.getId());
+        assertFalse(repository.rename(file.getId(), "again.png"));
+    }
+
+    @Test
+    void shouldNotUpdateTagsChangedInBetween() {
+        FileMetadata file = repository.insert(mkRandomFileMetadata(userId1, Visibility.PRIVATE, Set.of("ocean")));
+        List<String> oldTags = file.getTags();
+
+        FileMetadata other = repository.findByExternalId(file.getExternalId()).orElseThrow();
+        other.setTags(Set.of("ocean", "scuba"));
+        assertTrue(repository.updateTags(other, oldTags));
+
+        file.setTags(Set.of("movie"));
+        assertFalse(repository.updateTags(file, oldTags));
+        assertEquals(List.of("ocean", "scuba"), repository.findByExternalId(file.getExternalId()).orElseThrow().getTags());
+    }
+
+    @Test
+    void shouldWriteEnrichmentResultsIncrementally() {
+        FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        file.setEnrichment(EnrichmentState.PENDING);
+        file = repository.insert(file);
+
+        repository.setContentType(file.getExternalId(), "image/png");
+        repository.putAttributes(file.getExternalId(), Map.of("imageWidth", "3"));
+        repository.putAttributes(file.getExternalId(), Map.of("imageHeight", "2"));
+        repository.finishEnrichment(file.getExternalId(), EnrichmentState.DONE, true);
+
+        FileMetadata updated = repository.findByExternalId(file.getExternalId()).orElseThrow();
+        assertEquals("image/png", updated.getContentType());
+        assertEquals(Map.of("imageWidth", "3", "imageHeight", "2"), updated.getAttributes());
+        assertEquals(EnrichmentState.DONE, updated.getEnrichment());
+        assertEquals(true, updated.getContentVerified());
+        assertEquals(file.getFilename(), updated.getFilename());
+    }
+
+    @Test
+    void shouldClaimStalePendingFilesOnce() {
+        final Instant now = Instant.now();
+        FileMetadata stale = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        stale.setEnrichment(EnrichmentState.PENDING);
+        stale.setUploadDate(now.minus(Duration.ofHours(2)));
+        stale = repository.insert(stale);
+        FileMetadata recent = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        recent.setEnrichment(EnrichmentState.PENDING);
+        recent.setUploadDate(now);
+        repository.insert(recent);
+        FileMetadata done = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        done.setEnrichment(EnrichmentState.DONE);
+        done.setUploadDate(now.minus(Duration.ofHours(2)));
+        repository.insert(done);
+
+        List<FileMetadata> claimed = repository.claimStaleEnrichments(now.minus(Duration.ofHours(1)), 10);
+        assertEquals(List.of(stale.getExternalId()), claimed.stream().map(FileMetadata::getExternalId).toList());
+        assertNotNull(claimed.get(0).getEnrichmentClaimDate());
+
+        // claimed file waits for the next retry delay
+        assertTrue(repository.claimStaleEnrichments(now.minus(Duration.ofHours(1)), 10).isEmpty());
+        // once the delay passes since claim or upload, both pending files are taken
+        assertEquals(2, repository.claimStaleEnrichments(Instant.now().plusSeconds(1), 10).size());
+    }
+
+    @Test
+    void shouldStreamOwnObjectsInKeyOrderAfterBackfill() {
+        List<FileMetadata> ownObjectFiles = new ArrayList<>();
+        for (int i = 0; i < 3; ++i) {
+            FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+            ownObjectFiles.add(repository.insert(file));
+        }
+        FileMetadata blobFile = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        blobFile.setStorageKey("blob-key");
+        repository.insert(blobFile);
+
+        assertEquals(3, repository.backfillOwnObjectKey());
+        assertEquals(0, repository.backfillOwnObjectKey());
+
+        List<String> expected = ownObjectFiles.stream().map(file -> file.getExternalId().toString()).sorted().toList();
+        try (Stream<FileMetadata> files = repository.streamOwnObjectsOrderedByKey(2)) {
+            assertEquals(expected, files.map(FileMetadata::getOwnObjectKey).toList());
+        }
+        assertEquals(List.of(blobFile.getExternalId()),
+                repository.findByStorageKey("blob-key").stream().map(FileMetadata::getExternalId).toList());
+    }
+
+    @Test
+    void shouldMarkContentMissing() {
+        FileMetadata file = repository.insert(mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1));
+
+        repository.markContentMissing(List.of(file.getId()));
+
+        FileMetadata updated = repository.findById(file.getId()).orElseThrow();
+        assertEquals(false, updated.getContentVerified());
+        assertEquals(file.getFilename(), updated.getFilename());
+    }
 }
@@ -0,0 +1,60 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.persist.models.Migration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.containers.ComposeContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.File;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Testcontainers
+@DataMongoTest
+@ActiveProfiles("test")
+@Tag("integration")
+public class MigrationRepositoryTest extends TestBase {
+    private static final Duration LEASE = Duration.ofMinutes(10);
+
+    @Autowired
+    private MigrationRepository repository;
+
+    @Container
+    private static ComposeContainer env = new ComposeContainer(new File("docker-compose-tests.yml"))
+            .withExposedService("mongo", 27017, Wait.forListeningPort());
+
+    @BeforeEach
+    void setUp() {
+        repository.deleteAll();
+    }
+
+    @Test
+    void shouldClaimMigrationOnce() {
+        assertTrue(repository.claim(Migration.TAGS_SORT_KEY, LEASE));
+        assertFalse(repository.claim(Migration.TAGS_SORT_KEY, LEASE));
+
+        repository.release(Migration.TAGS_SORT_KEY);
+        assertTrue(repository.claim(Migration.TAGS_SORT_KEY, LEASE));
+
+        repository.complete(Migration.TAGS_SORT_KEY);
+        repository.release(Migration.TAGS_SORT_KEY);
+        assertFalse(repository.claim(Migration.TAGS_SORT_KEY, LEASE));
+    }
+
+    @Test
+    void shouldTakeOverExpiredClaim() {
+        // lease which has already ended, like the one of instance which died
+        assertTrue(repository.claim(Migration.TAGS_SORT_KEY, Duration.ofSeconds(-1)));
+        assertTrue(repository.claim(Migration.TAGS_SORT_KEY, LEASE));
+    }
+}
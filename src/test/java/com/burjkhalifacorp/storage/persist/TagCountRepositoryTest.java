@@ -0,0 +1,85 @@
+package com.burjkhalifacorp.storage.persist;
+
+import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.persist.models.TagCount;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.containers.ComposeContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.File;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@Testcontainers
+@DataMongoTest
+@ActiveProfiles("test")
+@Tag("integration")
+public class TagCountRepositoryTest extends TestBase {
+    @Autowired
+    private TagCountRepository repository;
+
+    @Autowired
+    private FileMetadataRepository fileRepository;
+
+    @Container
+    private static ComposeContainer env = new ComposeContainer(new File("docker-compose-tests.yml"))
+            .withExposedService("mongo", 27017, Wait.forListeningPort());
+
+    @BeforeEach
+    void setUp() {
+        repository.deleteAll();
+        fileRepository.deleteAll();
+    }
+
+    @Test
+    void shouldAddDeltasAndRemoveCountersDroppedToZero() {
+        final String scope = TagCount.userScope(userId1);
+        repository.addAll(List.of(TagCount.of(scope, "ocean", 3), TagCount.of(scope, "scuba", 1)));
+        repository.addAll(List.of(TagCount.of(scope, "ocean", -1), TagCount.of(scope, "scuba", -1)));
+
+        assertEquals(2, repository.findById(TagCount.idOf(scope, "ocean")).orElseThrow().getCount());
+        assertFalse(repository.existsById(TagCount.idOf(scope, "scuba")));
+    }
+
+    @Test
+    void shouldReadTopTagsOfScope() {
+        final String scope = TagCount.userScope(userId1);
+        repository.addAll(List.of(
+                TagCount.of(scope, "ocean", 5),
+                TagCount.of(scope, "movie", 2),
+                TagCount.of(scope, "scuba", 5),
+                TagCount.of(TagCount.PUBLIC_SCOPE, "photo", 10)));
+
+        List<TagCount> top = repository.findByScopeAndCountGreaterThanOrderByCountDescTagAsc(scope, 0, Limit.of(2));
+
+        assertEquals(List.of("ocean", "scuba"), top.stream().map(TagCount::getTag).toList());
+    }
+
+    @Test
+    void shouldRebuildCountersFromFiles() {
+        repository.addAll(List.of(TagCount.of(TagCount.PUBLIC_SCOPE, "stale", 1)));
+        fileRepository.insert(mkRandomFileMetadata(userId1, Visibility.PUBLIC, tags1));
+        fileRepository.insert(mkRandomFileMetadata(userId1, Visibility.PRIVATE, Set.of("scuba")));
+        fileRepository.insert(mkRandomFileMetadata(userId2, Visibility.PUBLIC, Set.of("scuba")));
+
+        // owners: 3 tags of userId1 and 1 of userId2, public: 3 tags
+        assertEquals(7, repository.rebuild());
+
+        assertEquals(2, repository.findById(TagCount.idOf(TagCount.userScope(userId1), "scuba")).orElseThrow().getCount());
+        assertEquals(2, repository.findById(TagCount.idOf(TagCount.PUBLIC_SCOPE, "scuba")).orElseThrow().getCount());
+        assertEquals(1, repository.findById(TagCount.idOf(TagCount.PUBLIC_SCOPE, "movie")).orElseThrow().getCount());
+        assertFalse(repository.existsById(TagCount.idOf(TagCount.PUBLIC_SCOPE, "stale")));
+    }
+}
@@ -0,0 +1,164 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.api.models.ArchiveFormat;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.mappers.FileMetadataMapper;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.service.models.StoredFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArchiveWriterTest extends TestBase {
+    private static final int PREFETCH = 2;
+
+    private final FileMetadataMapper mapper = new FileMetadataMapper();
+    private final AtomicInteger openStreams = new AtomicInteger();
+    private final AtomicInteger maxOpenStreams = new AtomicInteger();
+    private final List<StoredFile> files = new ArrayList<>();
+    private final Map<String, byte[]> contents = new LinkedHashMap<>();
+    private ArchiveWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        writer = new ArchiveWriter();
+        ReflectionTestUtils.setField(writer, "prefetch", PREFETCH);
+        for (int size : new int[] {0, 1, 511, 512, 513, 100_000}) {
+            byte[] content = new byte[size];
+            random.nextBytes(content);
+            addFile("file_%d.dat".formatted(size), content);
+        }
+    }
+
+    @Test
+    void shouldWriteZipArchive() throws Exception {
+        addFile("file_0.dat", new byte[] {1, 2, 3});
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        writer.write(files.iterator(), ArchiveFormat.ZIP, archive);
+
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(archive.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                entries.put(entry.getName(), zip.readAllBytes());
+            }
+        }
+        assertEquals(contents.keySet(), entries.keySet());
+        contents.forEach((name, content) -> assertArrayEquals(content, entries.get(name)));
+        // the one being written and the prefetched ones
+        assertTrue(maxOpenStreams.get() <= PREFETCH + 1);
+        assertEquals(0, openStreams.get());
+    }
+
+    @Test
+    void shouldWriteTarArchiveWithPaxNames() throws Exception {
+        addFile("\u30d5\u30a1\u30a4\u30eb.txt", "unicode".getBytes(StandardCharsets.UTF_8));
+        addFile("long_" + "x".repeat(150) + ".txt", "long".getBytes(StandardCharsets.UTF_8));
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        writer.write(files.iterator(), ArchiveFormat.TAR, archive);
+
+        Map<String, byte[]> entries = readTar(archive.toByteArray());
+        assertEquals(contents.keySet(), entries.keySet());
+        contents.forEach((name, content) -> assertArrayEquals(content, entries.get(name)));
+        assertEquals(0, archive.size() % 512);
+    }
+
+    @Test
+    void shouldFailWhenFileCannotBeOpened() {
+        FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        file.setSize(10);
+        files.add(new StoredFile(mapper.toDto(file), file.getHash(),
+                (offset, length) -> CompletableFuture.failedFuture(new IllegalStateException("unavailable"))));
+
+        assertThrows(IOException.class,
+                () -> writer.write(files.iterator(), ArchiveFormat.ZIP, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void shouldMakeEntryNamesUniqueAndFlat() {
+        Set<String> names = new HashSet<>();
+        assertEquals("a.txt", ArchiveWriter.uniqueName("a.txt", names));
+        assertEquals("a (1).txt", ArchiveWriter.uniqueName("a.txt", names));
+        assertEquals("a (2).txt", ArchiveWriter.uniqueName("a.txt", names));
+        assertEquals(".._etc_passwd", ArchiveWriter.uniqueName("../etc/passwd", names));
+        assertEquals("_..", ArchiveWriter.uniqueName("..", names));
+    }
+
+    private void addFile(String filename, byte[] content) {
+        FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        file.setFilename(filename);
+        file.setSize(content.length);
+        String name = contents.containsKey(filename) ? filename.replace(".", " (1).") : filename;
+        contents.put(name, content);
+        files.add(new StoredFile(mapper.toDto(file), file.getHash(), (offset, length) -> {
+            maxOpenStreams.accumulateAndGet(openStreams.incrementAndGet(), Math::max);
+            return CompletableFuture.completedFuture(new ByteArrayInputStream(content, (int) offset, (int) length) {
+                @Override
+                public void close() {
+                    openStreams.decrementAndGet();
+                }
+            });
+        }));
+    }
+
+    // minimal reader of ustar entries with PAX path records
+    private static Map<String, byte[]> readTar(byte[] archive) {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        String paxPath = null;
+        int position = 0;
+        while (position + 512 <= archive.length && archive[position] != 0) {
+            byte[] header = Arrays.copyOfRange(archive, position, position + 512);
+            assertEquals(checksum(header), Long.parseLong(field(header, 148, 6), 8));
+            String name = field(header, 0, 100);
+            long size = Long.parseLong(field(header, 124, 11), 8);
+            byte[] data = Arrays.copyOfRange(archive, position + 512, position + 512 + (int) size);
+            position += 512 + (int) ((size + 511) / 512 * 512);
+            if (header[156] == 'x') {
+                String record = new String(data, StandardCharsets.UTF_8);
+                paxPath = record.substring(record.indexOf("path=") + 5, record.length() - 1);
+                continue;
+            }
+            entries.put(paxPath != null ? paxPath : name, data);
+            paxPath = null;
+        }
+        return entries;
+    }
+
+    private static String field(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.US_ASCII).trim();
+    }
+
+    private static long checksum(byte[] header) {
+        long sum = 0;
+        for (int i = 0; i < header.length; i++) {
+            sum += (i >= 148 && i < 156) ? ' ' : header[i] & 0xff;
+        }
+        return sum;
+    }
+}
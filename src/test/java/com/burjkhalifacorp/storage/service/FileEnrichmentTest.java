@@ -0,0 +1,181 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.common.EnrichmentState;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.persist.FileMetadataRepository;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeType;
+import org.springframework.util.unit.DataSize;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.NoSuchFileException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class FileEnrichmentTest extends TestBase {
+    private final BlobStore blobStore = mock(BlobStore.class);
+    private final FileMetadataRepository fileRepository = mock(FileMetadataRepository.class);
+    private final FileMetadataCache metadataCache = mock(FileMetadataCache.class);
+    private final StorageCompression compression = new StorageCompression();
+    private FileEnrichment enrichment;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(compression, "enabled", true);
+        ReflectionTestUtils.setField(compression, "level", 6);
+        ReflectionTestUtils.setField(compression, "minSize", DataSize.ofKilobytes(1));
+        ReflectionTestUtils.setField(compression, "contentTypes", List.of(MimeType.valueOf("text/*")));
+        enrichment = new FileEnrichment(blobStore, fileRepository, metadataCache, new ContentTypeDetector(),
+                compression, List.of(new ImageDimensionsExtractor()), Runnable::run,
+                new StorageMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(enrichment, "enabled", true);
+        ReflectionTestUtils.setField(enrichment, "extractorNames", Set.of(ImageDimensionsExtractor.NAME));
+        ReflectionTestUtils.setField(enrichment, "retryAfter", Duration.ofMinutes(30));
+        ReflectionTestUtils.setField(enrichment, "sweepBatchSize", 10);
+    }
+
+    @Test
+    void shouldDetectContentTypeAndExtractImageDimensions() throws Exception {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(new BufferedImage(3, 2, BufferedImage.TYPE_INT_RGB), "png", png);
+        FileMetadata file = mkStoredFile("picture", png.toByteArray(), png.toByteArray(), null);
+
+        enrichment.submit(file);
+
+        verify(fileRepository).setContentType(file.getExternalId(), "image/png");
+        verify(fileRepository).putAttributes(file.getExternalId(), Map.of("imageWidth", "3", "imageHeight", "2"));
+        verify(fileRepository).finishEnrichment(file.getExternalId(), EnrichmentState.DONE, true);
+        verify(metadataCache, times(3)).invalidate(file.getExternalId());
+    }
+
+    @Test
+    void shouldKeepDeclaredContentTypeAndVerifyEncodedContent() throws Exception {
+        byte[] content = "line\n".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(encoded)) {
+            gzip.write(content);
+        }
+        FileMetadata file = mkStoredFile("lines.txt", content, encoded.toByteArray(), StorageCompression.GZIP);
+        file.setContentType("text/plain");
+
+        enrichment.submit(file);
+
+        verify(fileRepository, never()).setContentType(any(), anyString());
+        verify(fileRepository, never()).putAttributes(any(), anyMap());
+        verify(fileRepository).finishEnrichment(file.getExternalId(), EnrichmentState.DONE, true);
+    }
+
+    @Test
+    void shouldReportContentNotMatchingHash() throws Exception {
+        byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+        FileMetadata file = mkStoredFile("file.txt", content, content, null);
+        file.setHash(HexFormat.of().formatHex(new byte[32]));
+
+        enrichment.submit(file);
+
+        verify(fileRepository).finishEnrichment(file.getExternalId(), EnrichmentState.DONE, false);
+    }
+
+    @Test
+    void shouldCheckOnlySizeOfPresignedUpload() throws Exception {
+        byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+        FileMetadata file = mkStoredFile("file.txt", content, content, null);
+        file.setHash("9e107d9d372bb6826bd81d3542a419d6-etag");
+
+        enrichment.submit(file);
+
+        verify(fileRepository).finishEnrichment(file.getExternalId(), EnrichmentState.DONE, true);
+    }
+
+    @Test
+    void shouldNotExemptOtherHashesWithDash() throws Exception {
+        byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+        FileMetadata file = mkStoredFile("file.txt", content, content, null);
+        file.setHash("not-a-content-hash");
+
+        enrichment.submit(file);
+
+        verify(fileRepository).finishEnrichment(file.getExternalId(), EnrichmentState.DONE, false);
+    }
+
+    @Test
+    void shouldMarkFailedWhenObjectCannotBeRead() throws Exception {
+        FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        file.setStorageKey(UUID.randomUUID().toString());
+        when(blobStore.get(file.getStorageKey()))
+                .thenReturn(CompletableFuture.failedFuture(new NoSuchFileException(file.getStorageKey())));
+
+        enrichment.submit(file);
+
+        verify(fileRepository).finishEnrichment(eq(file.getExternalId()), eq(EnrichmentState.FAILED), isNull());
+    }
+
+    @Test
+    void shouldSubmitFilesLeftPendingAgain() throws Exception {
+        byte[] content = "content".getBytes(StandardCharsets.UTF_8);
+        FileMetadata file = mkStoredFile("file.txt", content, content, null);
+        when(fileRepository.claimStaleEnrichments(any(), eq(10))).thenReturn(List.of(file));
+
+        enrichment.sweep();
+
+        ArgumentCaptor<Instant> staleBefore = ArgumentCaptor.forClass(Instant.class);
+        verify(fileRepository).claimStaleEnrichments(staleBefore.capture(), eq(10));
+        assertTrue(staleBefore.getValue().isBefore(Instant.now().minus(Duration.ofMinutes(29))));
+        verify(fileRepository).finishEnrichment(file.getExternalId(), EnrichmentState.DONE, true);
+    }
+
+    @Test
+    void shouldNotSweepWhenDisabled() {
+        ReflectionTestUtils.setField(enrichment, "enabled", false);
+
+        enrichment.sweep();
+
+        verify(fileRepository, never()).claimStaleEnrichments(any(), anyInt());
+    }
+
+    private FileMetadata mkStoredFile(String filename, byte[] content, byte[] object, String encoding) throws Exception {
+        FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        file.setFilename(filename);
+        file.setContentType(ContentTypeDetector.DEFAULT_TYPE);
+        file.setSize(content.length);
+        file.setHash(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content)));
+        file.setStorageKey(UUID.randomUUID().toString());
+        file.setEncoding(encoding);
+        file.setStoredSize(object.length);
+        when(blobStore.get(file.getStorageKey()))
+                .thenReturn(CompletableFuture.completedFuture(new ByteArrayInputStream(object)));
+        return file;
+    }
+}
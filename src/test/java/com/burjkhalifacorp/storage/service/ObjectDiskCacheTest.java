@@ -0,0 +1,96 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.service.models.ContentSource;
+import com.burjkhalifacorp.storage.utils.FileRangeInputStream;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ObjectDiskCacheTest extends TestBase {
+    @TempDir
+    private Path directory;
+
+    private ObjectDiskCache cache;
+    private final String hash = "b".repeat(64);
+    private final byte[] content = new byte[4096];
+    // fills are run by test when it's ready for them
+    private final Queue<Runnable> fillTasks = new ConcurrentLinkedQueue<>();
+
+    @BeforeEach
+    void setUp() {
+        random.nextBytes(content);
+        cache = new ObjectDiskCache(fillTasks::add, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "directory", directory.resolve("cache"));
+        ReflectionTestUtils.setField(cache, "capacity", DataSize.ofMegabytes(1));
+        ReflectionTestUtils.setField(cache, "maxObjectSize", DataSize.ofKilobytes(8));
+        cache.init();
+    }
+
+    @Test
+    void shouldServeMissesFromSourceWhileCacheIsFilled() throws Exception {
+        AtomicInteger opens = new AtomicInteger();
+        ContentSource source = (offset, length) -> {
+            opens.incrementAndGet();
+            return CompletableFuture.completedFuture(new ByteArrayInputStream(content, (int) offset, (int) length));
+        };
+
+        // misses don't wait for the fill, it runs when executor gets to it
+        ContentSource cached = cache.cached(hash, content.length, source);
+        assertArrayEquals(content, cached.open(0, content.length).get().readAllBytes());
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 300), cached.open(100, 200).get().readAllBytes());
+        // two reads of clients and one fill shared by both misses
+        assertEquals(3, opens.get());
+        assertEquals(1, fillTasks.size());
+
+        fillTasks.poll().run();
+        InputStream hit = cached.open(100, 200).get();
+        assertInstanceOf(FileRangeInputStream.class, hit);
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 300), hit.readAllBytes());
+        assertEquals(3, opens.get());
+    }
+
+    @Test
+    void shouldNotCacheTruncatedObject() throws Exception {
+        AtomicInteger opens = new AtomicInteger();
+        ContentSource source = (offset, length) -> {
+            opens.incrementAndGet();
+            return CompletableFuture.completedFuture(
+                    new ByteArrayInputStream(content, (int) offset, (int) Math.min(length, 1000)));
+        };
+
+        ContentSource cached = cache.cached(hash, content.length, source);
+        assertEquals(1000, cached.open(0, content.length).get().readAllBytes().length);
+        fillTasks.poll().run();
+
+        // failed fill is retried by the next miss
+        assertEquals(1000, cached.open(0, content.length).get().readAllBytes().length);
+        assertEquals(4, opens.get());
+        assertEquals(1, fillTasks.size());
+    }
+
+    @Test
+    void shouldAcceptOnlySmallObjects() {
+        assertTrue(cache.accepts(content.length));
+        assertFalse(cache.accepts(DataSize.ofKilobytes(9).toBytes()));
+    }
+}
@@ -0,0 +1,212 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.persist.BlobMetadataRepository;
+import com.burjkhalifacorp.storage.persist.FileMetadataRepository;
+import com.burjkhalifacorp.storage.persist.models.BlobMetadata;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import com.burjkhalifacorp.storage.store.StoredObject;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class OrphanReconcilerTest extends TestBase {
+    private static final Instant OLD = Instant.now().minus(Duration.ofDays(30));
+    private static final Instant RECENT = Instant.now().minus(Duration.ofMinutes(1));
+
+    private final BlobStore blobStore = mock(BlobStore.class);
+    private final BlobMetadataRepository blobRepository = mock(BlobMetadataRepository.class);
+    private final FileMetadataRepository fileRepository = mock(FileMetadataRepository.class);
+    private final BlobService blobService = mock(BlobService.class);
+    private final TagCountService tagCounts = mock(TagCountService.class);
+    private final FileMetadataCache metadataCache = mock(FileMetadataCache.class);
+    private final List<StoredObject> objects = new ArrayList<>();
+    private final List<BlobMetadata> blobs = new ArrayList<>();
+    private final List<FileMetadata> ownObjectFiles = new ArrayList<>();
+    private OrphanReconciler reconciler;
+
+    // keys are sorted as storage listing returns them
+    private List<String> keys;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        reconciler = new OrphanReconciler(blobStore, blobRepository, fileRepository, blobService, tagCounts,
+                metadataCache, new StorageMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(reconciler, "batchSize", 2);
+        ReflectionTestUtils.setField(reconciler, "objectsPerSecond", 0);
+        ReflectionTestUtils.setField(reconciler, "gracePeriod", Duration.ofHours(24));
+        ReflectionTestUtils.setField(reconciler, "orphanAction", OrphanReconciler.OrphanAction.PURGE);
+        ReflectionTestUtils.setField(reconciler, "quarantinePrefix", "quarantine/");
+        ReflectionTestUtils.setField(reconciler, "quarantineRetention", Duration.ofDays(7));
+
+        keys = IntStream.range(0, 9).mapToObj(i -> UUID.randomUUID().toString()).sorted().toList();
+        addBlob(keys.get(0), 1, OLD);
+        addObject(keys.get(0), OLD);
+        // orphans
+        addObject(keys.get(1), OLD);
+        addObject(keys.get(2), OLD);
+        // uploaded during the pass
+        addObject(keys.get(3), RECENT);
+        // file stored before content addressing
+        addObject(keys.get(4), OLD);
+        // object is lost
+        addBlob(keys.get(5), 2, OLD);
+        // released but not removed
+        addBlob(keys.get(6), 0, OLD);
+        addObject(keys.get(6), OLD);
+        // blob created during the pass
+        addBlob(keys.get(7), 1, RECENT);
+        addObject("quarantine/expired", OLD);
+        addObject("quarantine/retained", RECENT);
+
+        FileMetadata legacyFile = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        legacyFile.setExternalId(UUID.fromString(keys.get(4)));
+        legacyFile.setStorageKey(null);
+        legacyFile.setOwnObjectKey(keys.get(4));
+        ownObjectFiles.add(legacyFile);
+
+        when(blobStore.list(anyInt())).thenReturn(objects);
+        when(blobRepository.streamOrderedByStorageKey(anyInt())).thenAnswer(invocation -> blobs.stream());
+        when(fileRepository.streamOwnObjectsOrderedByKey(anyInt())).thenAnswer(invocation -> ownObjectFiles.stream());
+        when(blobRepository.findByStorageKeyIn(anyCollection())).thenReturn(List.of());
+        when(fileRepository.findByExternalIdIn(anyCollection())).thenReturn(List.of(legacyFile));
+        when(blobService.collectUnreferenced(anyCollection())).thenAnswer(invocation ->
+                invocation.<List<String>>getArgument(0).size());
+    }
+
+    @Test
+    void shouldPurgeOrphansAndCollectUnreferencedBlobs() throws Exception {
+        OrphanReconciler.Report report = reconciler.reconcile();
+
+        assertEquals(new OrphanReconciler.Report(8, 1, 2, 1, 1, 1), report);
+        verify(blobService).removeObjects(List.of(keys.get(1), keys.get(2)), "orphan");
+        verify(blobService).collectUnreferenced(List.of(blobs.get(2).getHash()));
+        verify(blobService).removeObjects(List.of("quarantine/expired"), "quarantine-expired");
+        verify(blobStore, never()).copy(anyString(), anyString());
+    }
+
+    @Test
+    void shouldQuarantineOrphans() throws Exception {
+        ReflectionTestUtils.setField(reconciler, "orphanAction", OrphanReconciler.OrphanAction.QUARANTINE);
+
+        reconciler.reconcile();
+
+        verify(blobStore).copy(keys.get(1), "quarantine/" + keys.get(1));
+        verify(blobStore).copy(keys.get(2), "quarantine/" + keys.get(2));
+        verify(blobService).removeObjects(List.of(keys.get(1), keys.get(2)), "orphan");
+    }
+
+    @Test
+    void shouldKeepOrphanWhichGotBlobDuringPass() throws Exception {
+        ReflectionTestUtils.setField(reconciler, "orphanAction", OrphanReconciler.OrphanAction.REPORT);
+        BlobMetadata attached = new BlobMetadata();
+        attached.setStorageKey(keys.get(1));
+        when(blobRepository.findByStorageKeyIn(anyCollection())).thenReturn(List.of(attached));
+
+        OrphanReconciler.Report report = reconciler.reconcile();
+
+        assertEquals(1, report.orphans());
+        verify(blobService, never()).removeObjects(anyCollection(), eq("orphan"));
+        verify(blobStore, never()).copy(anyString(), anyString());
+    }
+
+    @Test
+    void shouldRemoveFilesOfMissingObjectsOnPurge() throws Exception {
+        FileMetadata lostFile = addLostOwnObjectFile();
+        FileMetadata blobFile = addBlobFile(keys.get(5));
+        when(fileRepository.removeAllById(anyCollection())).thenReturn(List.of(lostFile, blobFile));
+
+        OrphanReconciler.Report report = reconciler.reconcile();
+
+        assertEquals(2, report.missing());
+        // own object of legacy file is matched by cursor, it isn't an orphan candidate
+        verify(fileRepository).findByExternalIdIn(
+                List.of(UUID.fromString(keys.get(1)), UUID.fromString(keys.get(2))));
+        verify(blobRepository).removeLost(blobs.get(1).getHash(), keys.get(5));
+        verify(fileRepository).removeAllById(List.of(lostFile.getId(), blobFile.getId()));
+        verify(tagCounts).countDeleted(List.of(lostFile, blobFile));
+        verify(metadataCache).invalidate(lostFile.getExternalId());
+        verify(metadataCache).invalidate(blobFile.getExternalId());
+        verify(fileRepository, never()).markContentMissing(anyCollection());
+    }
+
+    @Test
+    void shouldMarkFilesOfMissingObjectsOnQuarantine() throws Exception {
+        ReflectionTestUtils.setField(reconciler, "orphanAction", OrphanReconciler.OrphanAction.QUARANTINE);
+        FileMetadata lostFile = addLostOwnObjectFile();
+        FileMetadata blobFile = addBlobFile(keys.get(5));
+
+        reconciler.reconcile();
+
+        verify(fileRepository).markContentMissing(List.of(lostFile.getId(), blobFile.getId()));
+        verify(metadataCache).invalidate(lostFile.getExternalId());
+        verify(blobRepository, never()).removeLost(anyString(), anyString());
+        verify(fileRepository, never()).removeAllById(anyCollection());
+    }
+
+    @Test
+    void shouldOnlyReportMissingObjects() throws Exception {
+        ReflectionTestUtils.setField(reconciler, "orphanAction", OrphanReconciler.OrphanAction.REPORT);
+        addLostOwnObjectFile();
+
+        OrphanReconciler.Report report = reconciler.reconcile();
+
+        assertEquals(2, report.missing());
+        verify(fileRepository, never()).findByStorageKey(anyString());
+        verify(fileRepository, never()).markContentMissing(anyCollection());
+        verify(fileRepository, never()).removeAllById(anyCollection());
+        verify(blobRepository, never()).removeLost(anyString(), anyString());
+    }
+
+    // own object keyed after every listed object
+    private FileMetadata addLostOwnObjectFile() {
+        FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        file.setId(UUID.randomUUID().toString());
+        file.setExternalId(UUID.fromString(keys.get(8)));
+        file.setOwnObjectKey(keys.get(8));
+        file.setUploadDate(OLD);
+        ownObjectFiles.add(file);
+        return file;
+    }
+
+    private FileMetadata addBlobFile(String storageKey) {
+        FileMetadata file = mkRandomFileMetadata(userId1, Visibility.PRIVATE, tags1);
+        file.setId(UUID.randomUUID().toString());
+        file.setStorageKey(storageKey);
+        when(fileRepository.findByStorageKey(storageKey)).thenReturn(List.of(file));
+        return file;
+    }
+
+    private void addObject(String key, Instant lastModified) {
+        objects.add(new StoredObject(key, 1, lastModified));
+    }
+
+    private void addBlob(String storageKey, long refCount, Instant createdDate) {
+        BlobMetadata blob = new BlobMetadata();
+        blob.setHash(UUID.randomUUID().toString());
+        blob.setStorageKey(storageKey);
+        blob.setRefCount(refCount);
+        blob.setCreatedDate(createdDate);
+        blobs.add(blob);
+    }
+}
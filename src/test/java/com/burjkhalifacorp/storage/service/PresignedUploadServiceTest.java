@@ -0,0 +1,103 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.errors.BadRequestException;
+import com.burjkhalifacorp.storage.errors.FileDuplicatedException;
+import com.burjkhalifacorp.storage.persist.PresignedUploadRepository;
+import com.burjkhalifacorp.storage.persist.models.FileMetadata;
+import com.burjkhalifacorp.storage.persist.models.PresignedUpload;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import com.burjkhalifacorp.storage.store.MinioPresigner;
+import com.burjkhalifacorp.storage.store.ObjectStat;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PresignedUploadServiceTest extends TestBase {
+    private final MinioPresigner presigner = mock(MinioPresigner.class);
+    private final BlobStore blobStore = mock(BlobStore.class);
+    private final PresignedUploadRepository uploadRepository = mock(PresignedUploadRepository.class);
+    private final FileMetadataService fileMetadataService = mock(FileMetadataService.class);
+    private PresignedUploadService service;
+    private PresignedUpload upload;
+
+    @BeforeEach
+    void setUp() {
+        service = new PresignedUploadService(Optional.of(presigner), blobStore, uploadRepository,
+                fileMetadataService, new ContentTypeDetector(), new StorageMetrics(new SimpleMeterRegistry()));
+
+        upload = new PresignedUpload();
+        upload.setExternalId(UUID.randomUUID());
+        upload.setOwnerId(userId1);
+        upload.setFilename("movie.mp4");
+        upload.setTags(tags1);
+        upload.setVisibility(Visibility.PRIVATE);
+        upload.setDeclaredContentType("video/mp4");
+        upload.setStorageKey(UUID.randomUUID().toString());
+        upload.setCreatedDate(Instant.now());
+        when(uploadRepository.findByExternalId(upload.getExternalId())).thenReturn(Optional.of(upload));
+        when(uploadRepository.deleteByExternalId(upload.getExternalId())).thenReturn(1L);
+    }
+
+    @Test
+    void shouldCreateFileOwningCopyOfUploadedObject() throws Exception {
+        when(presigner.stat(any()))
+                .thenReturn(Optional.of(new ObjectStat(1234, "9e107d9d372bb6826bd81d3542a419d6")));
+
+        service.completeUpload(userId1, upload.getExternalId());
+
+        ArgumentCaptor<FileMetadata> created = ArgumentCaptor.forClass(FileMetadata.class);
+        verify(fileMetadataService).createWithOwnObject(created.capture());
+        FileMetadata file = created.getValue();
+        // presigned URL doesn't reach object of the file
+        assertNotEquals(UUID.fromString(upload.getStorageKey()), file.getExternalId());
+        verify(blobStore).copy(upload.getStorageKey(), file.getExternalId().toString());
+        verify(blobStore).delete(upload.getStorageKey());
+        verify(blobStore, never()).delete(file.getExternalId().toString());
+        assertNull(file.getStorageKey());
+        assertEquals(1234, file.getSize());
+        assertEquals("9e107d9d372bb6826bd81d3542a419d6-etag", file.getHash());
+        assertEquals("video/mp4", file.getContentType());
+    }
+
+    @Test
+    void shouldKeepUploadOpenUntilContentIsUploaded() throws Exception {
+        when(presigner.stat(upload.getStorageKey())).thenReturn(Optional.empty());
+
+        assertThrows(BadRequestException.class, () -> service.completeUpload(userId1, upload.getExternalId()));
+
+        verify(uploadRepository, never()).deleteByExternalId(any());
+        verify(fileMetadataService, never()).createWithOwnObject(any());
+    }
+
+    @Test
+    void shouldRemoveObjectOfRejectedFile() throws Exception {
+        when(presigner.stat(any()))
+                .thenReturn(Optional.of(new ObjectStat(1234, "9e107d9d372bb6826bd81d3542a419d6")));
+        when(fileMetadataService.createWithOwnObject(any())).thenThrow(new FileDuplicatedException());
+
+        assertThrows(FileDuplicatedException.class, () -> service.completeUpload(userId1, upload.getExternalId()));
+
+        ArgumentCaptor<String> copyKey = ArgumentCaptor.forClass(String.class);
+        verify(blobStore).copy(eq(upload.getStorageKey()), copyKey.capture());
+        verify(blobStore).delete(upload.getStorageKey());
+        verify(blobStore).delete(copyKey.getValue());
+    }
+}
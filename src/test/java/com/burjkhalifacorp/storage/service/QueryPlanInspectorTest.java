@@ -0,0 +1,68 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.api.models.QueryPlanReport;
+import com.burjkhalifacorp.storage.common.Visibility;
+import com.burjkhalifacorp.storage.persist.FileMetadataRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ActiveProfiles;
+import org.testcontainers.containers.ComposeContainer;
+import org.testcontainers.containers.wait.strategy.Wait;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@Testcontainers
+@DataMongoTest
+@Import(QueryPlanInspector.class)
+@ActiveProfiles("test")
+@Tag("integration")
+public class QueryPlanInspectorTest extends TestBase {
+    @Autowired
+    private QueryPlanInspector queryPlanInspector;
+
+    @Autowired
+    private FileMetadataRepository repository;
+
+    @Container
+    private static ComposeContainer env = new ComposeContainer(new File("docker-compose-tests.yml"))
+            .withExposedService("mongo", 27017, Wait.forListeningPort());
+
+    @BeforeEach
+    void setUp() {
+        repository.deleteAll();
+        repository.insert(mkRandomFileMetadata(userId1, Visibility.PUBLIC, tags1));
+    }
+
+    @Test
+    void shouldUseIndexesForAllListingQueries() {
+        List<QueryPlanReport> reports = queryPlanInspector.inspect();
+
+        for (QueryPlanReport report : reports) {
+            String description = report.getQuery() + " " + report.getFilter() + " " + report.getSort();
+            assertFalse(report.isCollectionScan(), description);
+            assertFalse(report.isInMemorySort(), description);
+        }
+    }
+
+    @Test
+    void shouldSetTagsSortKeyOfOldFiles() {
+        repository.findAll().forEach(file -> {
+            file.setTagsSortKey(null);
+            repository.save(file);
+        });
+
+        assertEquals(1, repository.backfillTagsSortKey());
+        assertEquals("movie\u0001ocean\u0001scuba", repository.findAll().get(0).getTagsSortKey());
+    }
+}
@@ -0,0 +1,196 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.common.AppConstants;
+import com.burjkhalifacorp.storage.errors.InternalServerErrorException;
+import com.burjkhalifacorp.storage.service.models.IngestedObject;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ReactiveUploadPipelineTest extends TestBase {
+    private static final int PART_SIZE = 64 * 1024;
+    private static final int CHUNK_SIZE = 10_000;
+    private static final int PARALLELISM = 3;
+    private static final String OBJECT_KEY = "object";
+    private static final String UPLOAD_ID = "upload";
+
+    private final BlobStore blobStore = mock(BlobStore.class);
+    private final ExecutorService storeThreads = Executors.newCachedThreadPool();
+    private final Map<Integer, byte[]> uploadedParts = new ConcurrentHashMap<>();
+    private final AtomicInteger partsInFlight = new AtomicInteger();
+    private final AtomicInteger maxPartsInFlight = new AtomicInteger();
+    private ReactiveUploadPipeline pipeline;
+    private byte[] detectedHeader;
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new ReactiveUploadPipeline(blobStore, new StorageMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(pipeline, "partSize", DataSize.ofBytes(PART_SIZE));
+        ReflectionTestUtils.setField(pipeline, "parallelism", PARALLELISM);
+        ReflectionTestUtils.setField(pipeline, "pooledBuffers", PARALLELISM);
+        pipeline.init();
+
+        when(blobStore.createMultipart(OBJECT_KEY)).thenReturn(CompletableFuture.completedFuture(UPLOAD_ID));
+        when(blobStore.completeMultipart(eq(OBJECT_KEY), eq(UPLOAD_ID), anyList()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(blobStore.abortMultipart(OBJECT_KEY, UPLOAD_ID)).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        storeThreads.shutdownNow();
+    }
+
+    @Test
+    void shouldUploadPartsConcurrentlyAndHashContentInOrder() throws Exception {
+        mockUploadPart(-1);
+        byte[] content = new byte[PART_SIZE * 10 + 1000];
+        random.nextBytes(content);
+
+        IngestedObject stored = pipeline.ingest(OBJECT_KEY, body(content),
+                header -> detect(header, ContentTypeDetector.DEFAULT_TYPE)).block();
+
+        assertEquals(content.length, stored.getSize());
+        assertEquals(content.length, stored.getStoredSize());
+        assertEquals(sha256(content), stored.getHash());
+        assertNull(stored.getEncoding());
+        assertArrayEquals(Arrays.copyOf(content, AppConstants.CONTENT_HEADER_SIZE), detectedHeader);
+
+        ByteArrayOutputStream assembled = new ByteArrayOutputStream();
+        for (int partNumber = 1; partNumber <= uploadedParts.size(); ++partNumber) {
+            assembled.write(uploadedParts.get(partNumber));
+        }
+        assertArrayEquals(content, assembled.toByteArray());
+        assertTrue(maxPartsInFlight.get() > 1);
+        assertTrue(maxPartsInFlight.get() <= PARALLELISM);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<String>> partTags = ArgumentCaptor.forClass(List.class);
+        verify(blobStore).completeMultipart(eq(OBJECT_KEY), eq(UPLOAD_ID), partTags.capture());
+        assertEquals(11, partTags.getValue().size());
+        for (int i = 0; i < partTags.getValue().size(); ++i) {
+            assertEquals("tag-" + (i + 1), partTags.getValue().get(i));
+        }
+    }
+
+    @Test
+    void shouldPutSmallContentInSingleRequest() throws Exception {
+        when(blobStore.put(eq(OBJECT_KEY), any(), anyInt())).thenReturn(CompletableFuture.completedFuture(null));
+        byte[] content = new byte[25_000];
+        random.nextBytes(content);
+
+        IngestedObject stored = pipeline.ingest(OBJECT_KEY, body(content),
+                header -> detect(header, ContentTypeDetector.DEFAULT_TYPE)).block();
+
+        assertEquals(content.length, stored.getSize());
+        assertEquals(sha256(content), stored.getHash());
+        assertArrayEquals(content, detectedHeader);
+        verify(blobStore).put(eq(OBJECT_KEY), any(), eq(content.length));
+        verify(blobStore, never()).createMultipart(anyString());
+    }
+
+    @Test
+    void shouldNotWriteEmptyContent() {
+        IngestedObject stored = pipeline.ingest(OBJECT_KEY, Flux.empty(),
+                header -> ContentTypeDetector.DEFAULT_TYPE).block();
+
+        assertEquals(0, stored.getSize());
+        verify(blobStore, never()).put(anyString(), any(), anyInt());
+        verify(blobStore, never()).createMultipart(anyString());
+    }
+
+    @Test
+    void shouldAbortUploadWhenPartFails() {
+        mockUploadPart(2);
+        byte[] content = new byte[PART_SIZE * 10];
+        random.nextBytes(content);
+
+        assertThrows(InternalServerErrorException.class, () -> pipeline.ingest(
+                OBJECT_KEY, body(content), header -> ContentTypeDetector.DEFAULT_TYPE).block());
+
+        verify(blobStore).abortMultipart(OBJECT_KEY, UPLOAD_ID);
+        verify(blobStore, never()).completeMultipart(anyString(), anyString(), anyList());
+    }
+
+    // body arrives in chunks which don't line up with parts
+    private static Flux<DataBuffer> body(byte[] content) {
+        return Flux.range(0, (content.length + CHUNK_SIZE - 1) / CHUNK_SIZE)
+                .map(chunk -> DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(
+                        content, chunk * CHUNK_SIZE, Math.min(content.length, (chunk + 1) * CHUNK_SIZE))));
+    }
+
+    // parts are taken by storage threads with a delay, so several of them are in flight at once
+    private void mockUploadPart(int failingPart) {
+        when(blobStore.putPart(eq(OBJECT_KEY), eq(UPLOAD_ID), anyInt(), any(byte[].class), anyInt()))
+                .thenAnswer(invocation -> {
+                    int partNumber = invocation.getArgument(2);
+                    byte[] buffer = invocation.getArgument(3);
+                    int length = invocation.getArgument(4);
+                    maxPartsInFlight.accumulateAndGet(partsInFlight.incrementAndGet(), Math::max);
+                    return CompletableFuture.supplyAsync(() -> {
+                        try {
+                            TimeUnit.MILLISECONDS.sleep(20);
+                            uploadedParts.put(partNumber, Arrays.copyOf(buffer, length));
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            partsInFlight.decrementAndGet();
+                        }
+                        if (partNumber == failingPart) {
+                            throw new IllegalStateException("part upload failed");
+                        }
+                        return "tag-" + partNumber;
+                    }, storeThreads);
+                });
+    }
+
+    // header view is valid only while type is detected
+    private String detect(ByteBuffer header, String contentType) {
+        assertTrue(header.isReadOnly());
+        detectedHeader = new byte[header.remaining()];
+        header.get(detectedHeader);
+        return contentType;
+    }
+
+    private String sha256(byte[] content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+}
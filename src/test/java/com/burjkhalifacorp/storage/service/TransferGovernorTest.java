@@ -0,0 +1,105 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.errors.TooManyRequestsException;
+import com.burjkhalifacorp.storage.utils.FileRangeInputStream;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TransferGovernorTest extends TestBase {
+    private TransferGovernor governor;
+
+    @BeforeEach
+    void setUp() {
+        governor = new TransferGovernor(new StorageMetrics(new SimpleMeterRegistry()));
+        ReflectionTestUtils.setField(governor, "enabled", true);
+        ReflectionTestUtils.setField(governor, "stripes", 64);
+        ReflectionTestUtils.setField(governor, "userConcurrency", 2);
+        ReflectionTestUtils.setField(governor, "globalConcurrency", 3);
+        ReflectionTestUtils.setField(governor, "userBandwidth", DataSize.ofKilobytes(100));
+        ReflectionTestUtils.setField(governor, "globalBandwidth", DataSize.ofBytes(0));
+        ReflectionTestUtils.setField(governor, "burst", Duration.ofMillis(100));
+        governor.init();
+    }
+
+    @Test
+    void shouldRejectTransfersBeyondConcurrencyUntilReleased() {
+        TransferGovernor.Transfer first = governor.admit(userId1);
+        TransferGovernor.Transfer second = governor.admit(userId1);
+
+        TooManyRequestsException ex = assertThrows(TooManyRequestsException.class, () -> governor.admit(userId1));
+        assertEquals(1, ex.getRetryAfterSeconds());
+        // other user has its own limit, instance limit is reached after it
+        governor.admit(userId2);
+        assertThrows(TooManyRequestsException.class, () -> governor.admit(userId3));
+
+        first.close();
+        first.close();
+        assertDoesNotThrow(() -> governor.admit(userId3));
+        second.close();
+    }
+
+    @Test
+    void shouldPaceTransferAndRejectUserOverBandwidth() throws Exception {
+        byte[] chunk = new byte[10 * 1024];
+        long started = System.nanoTime();
+        try (TransferGovernor.Transfer transfer = governor.admit(userId1)) {
+            OutputStream out = transfer.govern(new ByteArrayOutputStream());
+            // 10KB fits the burst, 30KB more take about 300ms at 100KB/s
+            for (int i = 0; i < 4; i++) {
+                out.write(chunk);
+            }
+        }
+        assertTrue(System.nanoTime() - started >= Duration.ofMillis(250).toNanos());
+
+        TransferGovernor.Transfer transfer = governor.admit(userId1);
+        // chunk of a second and a half is taken at once, bucket stays behind after the write
+        Thread writer = new Thread(() -> {
+            try {
+                transfer.govern(new ByteArrayOutputStream()).write(new byte[150 * 1024]);
+            } catch (Exception ignored) {
+            }
+        });
+        writer.start();
+        Thread.sleep(200);
+        assertThrows(TooManyRequestsException.class, () -> governor.admit(userId1));
+        writer.interrupt();
+        writer.join();
+        transfer.close();
+    }
+
+    @Test
+    void shouldPaceLocalFileTransferredThroughChannel(@TempDir Path directory) throws Exception {
+        byte[] content = new byte[40 * 1024];
+        new Random(42).nextBytes(content);
+        Path path = directory.resolve("content");
+        Files.write(path, content);
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        long started = System.nanoTime();
+        try (TransferGovernor.Transfer transfer = governor.admit(userId1);
+             FileRangeInputStream stream = new FileRangeInputStream(FileChannel.open(path), 0, content.length)) {
+            assertEquals(content.length, stream.transferTo(transfer.govern(received)));
+        }
+        assertTrue(System.nanoTime() - started >= Duration.ofMillis(250).toNanos());
+        assertArrayEquals(content, received.toByteArray());
+    }
+}
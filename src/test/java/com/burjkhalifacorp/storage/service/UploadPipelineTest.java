@@ -0,0 +1,236 @@
+package com.burjkhalifacorp.storage.service;
+
+import com.burjkhalifacorp.storage.TestBase;
+import com.burjkhalifacorp.storage.common.AppConstants;
+import com.burjkhalifacorp.storage.errors.InternalServerErrorException;
+import com.burjkhalifacorp.storage.service.models.IngestedObject;
+import com.burjkhalifacorp.storage.store.BlobStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeType;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UploadPipelineTest extends TestBase {
+    private static final int PART_SIZE = 64 * 1024;
+    private static final int PARALLELISM = 3;
+    private static final String OBJECT_KEY = "object";
+    private static final String UPLOAD_ID = "upload";
+
+    private final BlobStore blobStore = mock(BlobStore.class);
+    private final ExecutorService storeThreads = Executors.newCachedThreadPool();
+    private final Map<Integer, byte[]> uploadedParts = new ConcurrentHashMap<>();
+    private final AtomicInteger partsInFlight = new AtomicInteger();
+    private final AtomicInteger maxPartsInFlight = new AtomicInteger();
+    private final StorageCompression compression = new StorageCompression();
+    private UploadPipeline pipeline;
+    private byte[] detectedHeader;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ReflectionTestUtils.setField(compression, "enabled", false);
+        ReflectionTestUtils.setField(compression, "level", 6);
+        ReflectionTestUtils.setField(compression, "minSize", DataSize.ofKilobytes(1));
+        ReflectionTestUtils.setField(compression, "contentTypes", List.of(MimeType.valueOf("text/*")));
+        pipeline = new UploadPipeline(blobStore, new StorageMetrics(new SimpleMeterRegistry()), compression);
+        ReflectionTestUtils.setField(pipeline, "partSize", DataSize.ofBytes(PART_SIZE));
+        ReflectionTestUtils.setField(pipeline, "parallelism", PARALLELISM);
+        ReflectionTestUtils.setField(pipeline, "pooledBuffers", PARALLELISM);
+        pipeline.init();
+
+        when(blobStore.createMultipart(OBJECT_KEY)).thenReturn(CompletableFuture.completedFuture(UPLOAD_ID));
+        when(blobStore.completeMultipart(eq(OBJECT_KEY), eq(UPLOAD_ID), anyList()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        when(blobStore.abortMultipart(OBJECT_KEY, UPLOAD_ID)).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @AfterEach
+    void tearDown() {
+        storeThreads.shutdownNow();
+    }
+
+    @Test
+    void shouldUploadPartsConcurrentlyAndHashContentInOrder() throws Exception {
+        mockUploadPart(-1);
+        byte[] content = new byte[PART_SIZE * 10 + 1000];
+        random.nextBytes(content);
+
+        IngestedObject stored = pipeline.ingest(OBJECT_KEY, -1, new ByteArrayInputStream(content),
+                header -> detect(header, ContentTypeDetector.DEFAULT_TYPE));
+
+        assertEquals(content.length, stored.getSize());
+        assertEquals(sha256(content), stored.getHash());
+        assertArrayEquals(Arrays.copyOf(content, AppConstants.CONTENT_HEADER_SIZE), detectedHeader);
+
+        ByteArrayOutputStream assembled = new ByteArrayOutputStream();
+        for (int partNumber = 1; partNumber <= uploadedParts.size(); ++partNumber) {
+            assembled.write(uploadedParts.get(partNumber));
+        }
+        assertArrayEquals(content, assembled.toByteArray());
+        assertTrue(maxPartsInFlight.get() > 1);
+        assertTrue(maxPartsInFlight.get() <= PARALLELISM);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<String>> partTags = ArgumentCaptor.forClass(List.class);
+        verify(blobStore).completeMultipart(eq(OBJECT_KEY), eq(UPLOAD_ID), partTags.capture());
+        assertEquals(11, partTags.getValue().size());
+        for (int i = 0; i < partTags.getValue().size(); ++i) {
+            assertEquals("tag-" + (i + 1), partTags.getValue().get(i));
+        }
+    }
+
+    @Test
+    void shouldPutSmallContentInSingleRequest() throws Exception {
+        when(blobStore.put(eq(OBJECT_KEY), any(), anyInt())).thenReturn(CompletableFuture.completedFuture(null));
+        byte[] content = new byte[1000];
+        random.nextBytes(content);
+
+        IngestedObject stored = pipeline.ingest(OBJECT_KEY, content.length, new ByteArrayInputStream(content),
+                header -> detect(header, ContentTypeDetector.DEFAULT_TYPE));
+
+        assertEquals(content.length, stored.getSize());
+        assertEquals(sha256(content), stored.getHash());
+        assertArrayEquals(content, detectedHeader);
+        verify(blobStore).put(eq(OBJECT_KEY), any(), eq(content.length));
+        verify(blobStore, never()).createMultipart(anyString());
+    }
+
+    @Test
+    void shouldNotWriteEmptyContent() throws Exception {
+        IngestedObject stored = pipeline.ingest(OBJECT_KEY, -1, new ByteArrayInputStream(new byte[0]),
+                header -> ContentTypeDetector.DEFAULT_TYPE);
+
+        assertEquals(0, stored.getSize());
+        verify(blobStore, never()).put(anyString(), any(), anyInt());
+        verify(blobStore, never()).createMultipart(anyString());
+    }
+
+    @Test
+    void shouldStoreCompressibleContentInGzip() throws Exception {
+        ReflectionTestUtils.setField(compression, "enabled", true);
+        mockUploadPart(-1);
+        byte[] content = new byte[PART_SIZE * 10 + 1000];
+        for (int i = 0; i < content.length; ++i) {
+            content[i] = (byte) ('a' + random.nextInt(4));
+        }
+
+        IngestedObject stored = pipeline.ingest(OBJECT_KEY, content.length, new ByteArrayInputStream(content),
+                header -> detect(header, "text/plain"));
+
+        // hash and size are of content as uploaded, so files are deduplicated whatever encoding is
+        assertEquals(content.length, stored.getSize());
+        assertEquals(sha256(content), stored.getHash());
+        assertEquals("text/plain", stored.getContentType());
+        assertEquals(StorageCompression.GZIP, stored.getEncoding());
+        assertTrue(stored.getStoredSize() < content.length);
+        assertArrayEquals(Arrays.copyOf(content, AppConstants.CONTENT_HEADER_SIZE), detectedHeader);
+
+        ByteArrayOutputStream assembled = new ByteArrayOutputStream();
+        for (int partNumber = 1; partNumber <= uploadedParts.size(); ++partNumber) {
+            assembled.write(uploadedParts.get(partNumber));
+        }
+        assertEquals(stored.getStoredSize(), assembled.size());
+        assertArrayEquals(content,
+                new GZIPInputStream(new ByteArrayInputStream(assembled.toByteArray())).readAllBytes());
+    }
+
+    @Test
+    void shouldStoreIncompressibleContentAsIs() throws Exception {
+        ReflectionTestUtils.setField(compression, "enabled", true);
+        when(blobStore.put(eq(OBJECT_KEY), any(), anyInt())).thenReturn(CompletableFuture.completedFuture(null));
+        byte[] content = new byte[2000];
+        random.nextBytes(content);
+
+        IngestedObject stored = pipeline.ingest(OBJECT_KEY, -1, new ByteArrayInputStream(content),
+                header -> "image/png");
+
+        assertEquals(content.length, stored.getSize());
+        assertEquals(content.length, stored.getStoredSize());
+        assertEquals(sha256(content), stored.getHash());
+        assertNull(stored.getEncoding());
+    }
+
+    @Test
+    void shouldAbortUploadWhenPartFails() throws Exception {
+        mockUploadPart(2);
+        byte[] content = new byte[PART_SIZE * 10];
+        random.nextBytes(content);
+
+        assertThrows(InternalServerErrorException.class,
+                () -> pipeline.ingest(OBJECT_KEY, -1, new ByteArrayInputStream(content), header -> ContentTypeDetector.DEFAULT_TYPE));
+
+        verify(blobStore).abortMultipart(OBJECT_KEY, UPLOAD_ID);
+        verify(blobStore, never()).completeMultipart(anyString(), anyString(), anyList());
+    }
+
+    // parts are taken by storage threads with a delay, so several of them are in flight at once
+    private void mockUploadPart(int failingPart) {
+        when(blobStore.putPart(eq(OBJECT_KEY), eq(UPLOAD_ID), anyInt(), any(byte[].class), anyInt()))
+                .thenAnswer(invocation -> {
+                    int partNumber = invocation.getArgument(2);
+                    byte[] buffer = invocation.getArgument(3);
+                    int length = invocation.getArgument(4);
+                    maxPartsInFlight.accumulateAndGet(partsInFlight.incrementAndGet(), Math::max);
+                    return CompletableFuture.supplyAsync(() -> {
+                        try {
+                            TimeUnit.MILLISECONDS.sleep(20);
+                            uploadedParts.put(partNumber, Arrays.copyOf(buffer, length));
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            partsInFlight.decrementAndGet();
+                        }
+                        if (partNumber == failingPart) {
+                            throw new IllegalStateException("part upload failed");
+                        }
+                        return "tag-" + partNumber;
+                    }, storeThreads);
+                });
+    }
+
+    // header view is valid only while type is detected
+    private String detect(ByteBuffer header, String contentType) {
+        assertTrue(header.isReadOnly());
+        detectedHeader = new byte[header.remaining()];
+        header.get(detectedHeader);
+        return contentType;
+    }
+
+    private String sha256(byte[] content) throws Exception {
+        return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+    }
+}
@@ -0,0 +1,135 @@
+package com.burjkhalifacorp.storage.store;
+
+import com.burjkhalifacorp.storage.TestBase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class LocalBlobStoreTest extends TestBase {
+    @TempDir
+    private Path directory;
+
+    private final ExecutorService ioExecutor = Executors.newFixedThreadPool(4);
+    private LocalBlobStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new LocalBlobStore(ioExecutor);
+        ReflectionTestUtils.setField(store, "directory", directory);
+        ReflectionTestUtils.setField(store, "fsync", true);
+        ReflectionTestUtils.setField(store, "fsyncBatch", 16);
+        store.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.stop();
+        ioExecutor.shutdownNow();
+    }
+
+    @Test
+    void shouldPutAndReadRanges() throws Exception {
+        byte[] content = randomBytes(10_000);
+        String key = UUID.randomUUID().toString();
+
+        store.put(key, content, 8_000).get();
+
+        assertArrayEquals(Arrays.copyOf(content, 8_000), store.get(key).get().readAllBytes());
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 300), store.get(key, 100, 200).get().readAllBytes());
+        // range past the end is cut at object size
+        assertArrayEquals(Arrays.copyOfRange(content, 7_900, 8_000), store.get(key, 7_900, 1_000).get().readAllBytes());
+        try (Stream<Path> temps = Files.list(directory.resolve("tmp"))) {
+            assertFalse(temps.findAny().isPresent());
+        }
+    }
+
+    @Test
+    void shouldAssembleMultipartUploadFromLatestParts() throws Exception {
+        String key = UUID.randomUUID().toString();
+        byte[] first = randomBytes(5_000);
+        byte[] second = randomBytes(3_000);
+
+        String uploadId = store.createMultipart(key).get();
+        String staleTag = store.putPart(key, uploadId, 1, randomBytes(5_000), 5_000).get();
+        String firstTag = store.putPart(key, uploadId, 1, first, first.length).get();
+        String secondTag = store.putPart(key, uploadId, 2, new ByteArrayInputStream(second), second.length).get();
+        assertNotEquals(staleTag, firstTag);
+        store.completeMultipart(key, uploadId, List.of(firstTag, secondTag)).get();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(second);
+        assertArrayEquals(expected.toByteArray(), store.get(key).get().readAllBytes());
+        assertFalse(Files.exists(directory.resolve("uploads").resolve(uploadId)));
+    }
+
+    @Test
+    void shouldFailPartShorterThanDeclared() throws Exception {
+        String key = UUID.randomUUID().toString();
+        String uploadId = store.createMultipart(key).get();
+
+        CompletableFuture<String> part = store.putPart(key, uploadId, 1, new ByteArrayInputStream(new byte[100]), 200);
+
+        ExecutionException ex = assertThrows(ExecutionException.class, part::get);
+        assertInstanceOf(EOFException.class, ex.getCause());
+        store.abortMultipart(key, uploadId).get();
+        assertFalse(Files.exists(directory.resolve("uploads").resolve(uploadId)));
+    }
+
+    @Test
+    void shouldListObjectsInKeyOrder() throws Exception {
+        List<String> keys = new ArrayList<>(IntStream.range(0, 50).mapToObj(i -> UUID.randomUUID().toString()).toList());
+        keys.add("quarantine/" + keys.get(0));
+        List<CompletableFuture<Void>> puts = new ArrayList<>();
+        for (String key : keys) {
+            puts.add(store.put(key, key.getBytes(), key.length()));
+        }
+        CompletableFuture.allOf(puts.toArray(CompletableFuture[]::new)).get();
+        store.copy(keys.get(1), "quarantine/" + keys.get(1));
+        keys.add("quarantine/" + keys.get(1));
+        store.delete(keys.get(2));
+        assertEquals(List.of(), store.deleteAll(List.of(keys.get(3), keys.get(4))));
+        keys.removeAll(List.of(keys.get(2), keys.get(3), keys.get(4)));
+
+        List<StoredObject> listed = new ArrayList<>();
+        store.list(10).forEach(listed::add);
+
+        assertEquals(keys.stream().sorted().toList(), listed.stream().map(StoredObject::key).toList());
+        StoredObject copied = listed.stream()
+                .filter(object -> object.key().equals("quarantine/" + keys.get(1)))
+                .findFirst()
+                .orElseThrow();
+        assertEquals(keys.get(1).length(), copied.size());
+    }
+
+    private byte[] randomBytes(int size) {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+        return content;
+    }
+}
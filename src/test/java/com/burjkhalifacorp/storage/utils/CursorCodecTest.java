@@ -0,0 +1,46 @@
+package com.burjkhalifacorp.storage.utils;
+
+import com.burjkhalifacorp.storage.errors.BadRequestException;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CursorCodecTest {
+    private final Sort sort = Sort.by("uploadDate").descending();
+
+    @Test
+    void shouldKeepKeyTypesAfterDecoding() {
+        Map<String, Object> keys = new LinkedHashMap<>();
+        keys.put("uploadDate", new Date());
+        keys.put("size", Long.MAX_VALUE);
+        keys.put("_id", new ObjectId());
+
+        String token = CursorCodec.encode(sort, ScrollPosition.forward(keys));
+        KeysetScrollPosition position = CursorCodec.decode(sort, token);
+
+        assertEquals(keys, position.getKeys());
+    }
+
+    @Test
+    void shouldStartFromBeginningWithoutCursor() {
+        assertTrue(CursorCodec.decode(sort, null).isInitial());
+    }
+
+    @Test
+    void shouldRejectCursorOfOtherOrder() {
+        String token = CursorCodec.encode(sort, ScrollPosition.forward(Map.of("uploadDate", new Date())));
+
+        assertThrows(BadRequestException.class, () -> CursorCodec.decode(sort.ascending(), token));
+        assertThrows(BadRequestException.class, () -> CursorCodec.decode(sort, "not a cursor"));
+    }
+}
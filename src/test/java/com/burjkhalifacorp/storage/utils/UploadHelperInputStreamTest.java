@@ -0,0 +1,82 @@
+package com.burjkhalifacorp.storage.utils;
+
+import com.burjkhalifacorp.storage.common.AppConstants;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UploadHelperInputStreamTest {
+    private final byte[] content = new byte[AppConstants.CONTENT_HEADER_SIZE * 2 + 100];
+
+    UploadHelperInputStreamTest() {
+        new Random(42).nextBytes(content);
+    }
+
+    @Test
+    void shouldCaptureOnlyHeaderWithSingleByteReads() throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        UploadHelperInputStream stream = new UploadHelperInputStream(
+                new ByteArrayInputStream(content), digest, UploadHelperInputStream.newHeaderPool(1));
+
+        int read = 0;
+        while (stream.read() != -1) {
+            if (++read % 1000 == 0) {
+                stream.read(new byte[333]);
+            }
+        }
+
+        assertEquals(content.length, stream.getTotalBytesCount());
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), digest.digest());
+        assertArrayEquals(Arrays.copyOf(content, AppConstants.CONTENT_HEADER_SIZE), toArray(stream.getHeader()));
+    }
+
+    @Test
+    void shouldExposeReadOnlyHeaderAndReuseBuffer() throws Exception {
+        BufferPool pool = UploadHelperInputStream.newHeaderPool(1);
+        byte[] small = Arrays.copyOf(content, 100);
+        UploadHelperInputStream stream = new UploadHelperInputStream(
+                new ByteArrayInputStream(small), MessageDigest.getInstance("SHA-256"), pool);
+        stream.readAllBytes();
+
+        ByteBuffer header = stream.getHeader();
+        assertTrue(header.isReadOnly());
+        assertArrayEquals(small, toArray(header));
+
+        stream.release();
+        byte[] released = pool.acquire();
+        assertEquals(AppConstants.CONTENT_HEADER_SIZE, released.length);
+        pool.release(released);
+        assertSame(released, pool.acquire());
+    }
+
+    @Test
+    void shouldHashSkippedBytes() throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        UploadHelperInputStream stream = new UploadHelperInputStream(new ByteArrayInputStream(content), digest, null);
+
+        assertEquals(0, stream.skip(-1));
+        assertEquals(0, stream.skip(0));
+        assertEquals(1000, stream.skip(1000));
+        assertEquals(20000, stream.skip(20000));
+        stream.readAllBytes();
+
+        assertEquals(content.length, stream.getTotalBytesCount());
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), digest.digest());
+        assertEquals(0, stream.getHeader().remaining());
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}